@@ -0,0 +1,9 @@
+import java.io.Serializable;
+
+/**
+ * State class that is only visible to the class loader of the test module - used for unit testing of state handover.
+ */
+public class MyLittleTestState implements Serializable {
+
+   static final long serialVersionUID = 1L;
+}
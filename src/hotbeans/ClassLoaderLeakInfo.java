@@ -0,0 +1,107 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans;
+
+import java.io.Serializable;
+
+/**
+ * Class containing information about the class loader of an unloaded hot bean module revision, that is suspected to
+ * leak (i.e. the class loader is still reachable a number of garbage collection cycles after the module was unloaded).
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class ClassLoaderLeakInfo implements Serializable {
+
+   static final long serialVersionUID = -3302795846018474725L;
+
+   private final String moduleName;
+
+   private final long revision;
+
+   private final long unloadedAt;
+
+   private final long gcCycles;
+
+   private final String[] retentionRoots;
+
+   /**
+    * Creates a new ClassLoaderLeakInfo.
+    */
+   public ClassLoaderLeakInfo(String moduleName, long revision, long unloadedAt, long gcCycles, String[] retentionRoots) {
+      this.moduleName = moduleName;
+      this.revision = revision;
+      this.unloadedAt = unloadedAt;
+      this.gcCycles = gcCycles;
+      this.retentionRoots = (retentionRoots != null) ? retentionRoots : new String[0];
+   }
+
+   /**
+    * Gets the name of the module.
+    */
+   public String getModuleName() {
+      return moduleName;
+   }
+
+   /**
+    * Gets the revision of the module.
+    */
+   public long getRevision() {
+      return revision;
+   }
+
+   /**
+    * Gets the time when the module revision was unloaded.
+    */
+   public long getUnloadedAt() {
+      return unloadedAt;
+   }
+
+   /**
+    * Gets the number of observed garbage collection cycles since the module revision was unloaded.
+    */
+   public long getGcCycles() {
+      return gcCycles;
+   }
+
+   /**
+    * Gets descriptions of the likely retention roots of the class loader (thread context class loaders, thread locals,
+    * JDBC drivers, logging etc.). An empty array means that no known retention root was found.
+    */
+   public String[] getRetentionRoots() {
+      return retentionRoots;
+   }
+
+   /**
+    * Gets a string representation of this ClassLoaderLeakInfo.
+    */
+   public String toString() {
+      StringBuffer toStringString = new StringBuffer();
+      toStringString.append("ClassLoaderLeakInfo[");
+      toStringString.append(this.moduleName);
+      toStringString.append(" (").append(this.revision).append(")");
+      toStringString.append(" - GC cycles since unload: ").append(this.gcCycles);
+      toStringString.append(", retention roots: ");
+      if (this.retentionRoots.length == 0) toStringString.append("unknown");
+      for (int i = 0; i < this.retentionRoots.length; i++) {
+         if (i > 0) toStringString.append("; ");
+         toStringString.append(this.retentionRoots[i]);
+      }
+      toStringString.append("]");
+
+      return toStringString.toString();
+   }
+}
@@ -33,6 +33,8 @@ public class HotBeanModule {
 
    private HotBeanContext hotBeanContext;
 
+   private long lastInvocationTime;
+
    /**
     * Creates an unloaded HotBeanModule.
     */
@@ -48,6 +50,7 @@ public class HotBeanModule {
       this.hotBeanModuleInfo = hotBeanModuleInfo;
       this.hotBeanModuleLoader = hotBeanModuleLoader;
       this.hotBeanContext = hotBeanContext;
+      this.lastInvocationTime = System.currentTimeMillis();
 
       if (hotBeanContext != null) this.hotBeanModuleInfo.setState(HotBeanModuleInfo.ACTIVE);
       else this.hotBeanModuleInfo.setState(HotBeanModuleInfo.UNLOADED);
@@ -131,11 +134,24 @@ public class HotBeanModule {
    }
 
    /**
-    * Decrements usage count.
+    * Increments usage count. This method also updates the time of the last invocation.
     */
    public void incrementUsageCount() {
       synchronized (this) {
          hotBeanModuleInfo.setUsageCount(hotBeanModuleInfo.getUsageCount() + 1);
+         this.lastInvocationTime = System.currentTimeMillis();
+      }
+   }
+
+   /**
+    * Gets the time of the last invocation of a bean in this module, or the time this module was created if no bean has
+    * been invoked.
+    * 
+    * @since 1.3
+    */
+   public long getLastInvocationTime() {
+      synchronized (this) {
+         return this.lastInvocationTime;
       }
    }
 
@@ -253,21 +269,47 @@ public class HotBeanModule {
    }
 
    /**
-    * Put this module in the {@link HotBeanModuleInfo#UNLOADING} state.
+    * Put this module in the {@link HotBeanModuleInfo#UNLOADING} state, and queue the destruction of the loader and
+    * context in the default {@link ModuleUnloadExecutor}.
     */
    public void unload() {
+      this.unload(ModuleUnloadExecutor.getDefaultExecutor());
+   }
+
+   /**
+    * Put this module in the {@link HotBeanModuleInfo#UNLOADING} state, and queue the destruction of the loader and
+    * context in the specified {@link ModuleUnloadExecutor}.
+    * 
+    * @since 1.3
+    */
+   public void unload(final ModuleUnloadExecutor moduleUnloadExecutor) {
       synchronized (this) {
          this.setState(HotBeanModuleInfo.UNLOADING);
 
          // Execute destruction of loader and context in a separate thread (to avoid synchronization issues - mostly
          // during testing actually...).
-         new UnloadThread(this, this.hotBeanModuleLoader, this.hotBeanContext);
+         moduleUnloadExecutor.execute(this, this.hotBeanModuleLoader, this.hotBeanContext);
 
          this.hotBeanContext = null;
          this.hotBeanModuleLoader = null;
       }
    }
 
+   /**
+    * Detaches the loader and context from this module, without destroying them, so that they may be handed over to
+    * another revision of the module. The module is put in the {@link HotBeanModuleInfo#UNLOADED} state.
+    * 
+    * @since 1.3
+    */
+   public void detach() {
+      synchronized (this) {
+         this.hotBeanContext = null;
+         this.hotBeanModuleLoader = null;
+
+         this.setState(HotBeanModuleInfo.UNLOADED);
+      }
+   }
+
    /**
     * Gets the error reason. This method delegates to the corresponding method in {@link HotBeanModuleInfo}.
     */
@@ -312,56 +354,4 @@ public class HotBeanModule {
       if (includeClassName) return "HotBeanModule" + toStringString;
       else return toStringString.toString();
    }
-
-   /* ### ### */
-
-   /**
-    * Thread class for unloading a module.
-    */
-   private static final class UnloadThread extends Thread {
-
-      private HotBeanModule module;
-
-      private HotBeanModuleLoader hotBeanModuleLoader;
-
-      private HotBeanContext hotBeanContext;
-
-      public UnloadThread(HotBeanModule module, HotBeanModuleLoader hotBeanModuleLoader, HotBeanContext hotBeanContext) {
-         super("HotBeanModule(" + module.getName() + " rev." + module.getRevision() + ") unload thread");
-
-         this.module = module;
-         this.hotBeanModuleLoader = hotBeanModuleLoader;
-         this.hotBeanContext = hotBeanContext;
-
-         this.setDaemon(true);
-         this.start();
-      }
-
-      public void run() {
-         if (this.module.logger.isDebugEnabled())
-            this.module.logger.debug("Starting destruction of HotBeanModule(" + this.module.getName() + " rev."
-                     + this.module.getRevision() + ").");
-
-         try {
-            if (this.hotBeanContext != null) this.hotBeanContext.destroy();
-         } catch (Exception e) {
-         }
-
-         try {
-            if (this.hotBeanModuleLoader != null) this.hotBeanModuleLoader.destroy();
-         } catch (Exception e) {
-         }
-
-         if (this.module.logger.isDebugEnabled())
-            this.module.logger.debug("Destruction of HotBeanModule(" + this.module.getName() + " rev."
-                     + this.module.getRevision() + ") complete.");
-
-         this.module = null;
-         this.hotBeanModuleLoader = null;
-         this.hotBeanContext = null;
-
-         System.runFinalization();
-         System.gc();
-      }
-   }
 }
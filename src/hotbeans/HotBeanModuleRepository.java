@@ -97,6 +97,25 @@ public interface HotBeanModuleRepository {
     */
    public Object getHotBean(String moduleName, String beanName, Class[] interfaceClasses);
 
+   /**
+    * Gets a reference, via a proxy, to a the hot bean with the specified name in the newest active version of the
+    * specified module that is in the specified version range (for instance <code>[1.0,2.0)</code>). The version of a
+    * module is specified by the <code>Implementation-Version</code> attribute of its manifest. When invoking methods on
+    * the proxy, exceptions of the types {@link ModuleNotFoundException} and {@link BeanNotFoundException} will be
+    * thrown to indicate that no module in the version range or no bean was found.
+    * 
+    * @since 1.3
+    */
+   public Object getHotBean(String moduleName, String versionRange, String beanName, Class interfaceClass);
+
+   /**
+    * Gets a reference, via a proxy, to a the hot bean with the specified name in the newest active version of the
+    * specified module that is in the specified version range (for instance <code>[1.0,2.0)</code>).
+    * 
+    * @since 1.3
+    */
+   public Object getHotBean(String moduleName, String versionRange, String beanName, Class[] interfaceClasses);
+
    /**
     * Gets the class name of the bean with the specified name in the specified module.
     * 
@@ -110,4 +129,12 @@ public interface HotBeanModuleRepository {
     * @since 1.0.1 (20070212)
     */
    public Class getHotBeanClass(String moduleName, String beanName);
+
+   /**
+    * Gets information about the class loaders of unloaded module revisions that are suspected to leak, i.e. class
+    * loaders that are still reachable a number of garbage collection cycles after the module revision was unloaded.
+    * 
+    * @since 1.3
+    */
+   public ClassLoaderLeakInfo[] getClassLoaderLeaks();
 }
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans;
+
+import hotbeans.util.WorkerPool;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Executor for the destruction of the loaders and contexts of unloaded hot bean module revisions. Unloads are queued
+ * and performed by a bounded number of worker threads, which are started on demand and stopped when idle. Before the
+ * context of a module revision is destroyed, the executor waits for in-flight calls to the module to complete (i.e.
+ * for the usage count of the module to reach zero), for at most the drain timeout. If the module is still in use when
+ * the drain timeout has elapsed, the unload is forced.<br>
+ * <br>
+ * The executor keeps metrics about the performed unloads, such as the number of queued and forced unloads, and the
+ * time spent waiting for modules to drain and destroying contexts and loaders.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class ModuleUnloadExecutor {
+
+   public static final int DEFAULT_MAX_THREADS = 2;
+
+   public static final long DEFAULT_DRAIN_TIMEOUT = 10000;
+
+   private static final long DRAIN_POLL_INTERVAL = 50;
+
+   private static ModuleUnloadExecutor defaultExecutor;
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private final WorkerPool workerPool;
+
+   private long drainTimeout = DEFAULT_DRAIN_TIMEOUT;
+
+   private long queuedUnloadCount = 0;
+
+   private long completedUnloadCount = 0;
+
+   private long forcedUnloadCount = 0;
+
+   private long failedUnloadCount = 0;
+
+   private long totalDrainTime = 0;
+
+   private long maxDrainTime = 0;
+
+   private long totalDestroyTime = 0;
+
+   private long maxDestroyTime = 0;
+
+   /**
+    * Creates a new ModuleUnloadExecutor.
+    */
+   public ModuleUnloadExecutor() {
+      this.workerPool = new WorkerPool("ModuleUnloadExecutor", DEFAULT_MAX_THREADS);
+   }
+
+   /**
+    * Gets the default (shared) executor, used by {@link HotBeanModule#unload()}.
+    */
+   public static synchronized ModuleUnloadExecutor getDefaultExecutor() {
+      if (defaultExecutor == null) defaultExecutor = new ModuleUnloadExecutor();
+      return defaultExecutor;
+   }
+
+   /**
+    * Gets the maximum number of worker threads.
+    */
+   public int getMaxThreads() {
+      return this.workerPool.getMaxThreads();
+   }
+
+   /**
+    * Sets the maximum number of worker threads.
+    */
+   public void setMaxThreads(int maxThreads) {
+      this.workerPool.setMaxThreads(maxThreads);
+   }
+
+   /**
+    * Gets the maximum time (in milliseconds) to wait for in-flight calls to a module to complete before its context is
+    * destroyed.
+    */
+   public synchronized long getDrainTimeout() {
+      return drainTimeout;
+   }
+
+   /**
+    * Sets the maximum time (in milliseconds) to wait for in-flight calls to a module to complete before its context is
+    * destroyed.
+    */
+   public synchronized void setDrainTimeout(long drainTimeout) {
+      this.drainTimeout = Math.max(0, drainTimeout);
+   }
+
+   /**
+    * Queues the destruction of the specified loader and context of a module revision.
+    */
+   public void execute(final HotBeanModule module, final HotBeanModuleLoader hotBeanModuleLoader,
+            final HotBeanContext hotBeanContext) {
+      synchronized (this) {
+         this.queuedUnloadCount++;
+      }
+      this.workerPool.execute(new UnloadTask(module, hotBeanModuleLoader, hotBeanContext));
+   }
+
+   /**
+    * Performs an unload task. The drain timeout starts when the task is performed, not when it is queued, so that tasks
+    * queued behind modules that are still draining get the full drain timeout.
+    */
+   private void unload(final UnloadTask task) {
+      HotBeanModule module = task.module;
+
+      if (logger.isDebugEnabled())
+         logger.debug("Starting destruction of HotBeanModule(" + module.getName() + " rev." + module.getRevision()
+                  + ").");
+
+      // Wait for in-flight calls to complete
+      long beginDrain = System.currentTimeMillis();
+      long drainDeadline = beginDrain + this.getDrainTimeout();
+      while (module.inUse() && (System.currentTimeMillis() < drainDeadline)) {
+         try {
+            Thread.sleep(DRAIN_POLL_INTERVAL);
+         } catch (InterruptedException ie) {
+            break;
+         }
+      }
+      long drainTime = System.currentTimeMillis() - beginDrain;
+      boolean forced = module.inUse();
+
+      if (forced)
+         logger.warn("HotBeanModule(" + module.getName() + " rev." + module.getRevision() + ") still in use ("
+                  + module.getUsageCount() + " calls) after " + drainTime + " ms - forcing unload.");
+
+      // Destroy context and loader
+      long beginDestroy = System.currentTimeMillis();
+      boolean failed = false;
+      try {
+         if (task.hotBeanContext != null) task.hotBeanContext.destroy();
+      } catch (Exception e) {
+         failed = true;
+         logger.warn("Error destroying context of HotBeanModule(" + module.getName() + " rev." + module.getRevision()
+                  + ") - " + e + "!", e);
+      }
+
+      try {
+         if (task.hotBeanModuleLoader != null) task.hotBeanModuleLoader.destroy();
+      } catch (Exception e) {
+         failed = true;
+         logger.warn("Error destroying loader of HotBeanModule(" + module.getName() + " rev." + module.getRevision()
+                  + ") - " + e + "!", e);
+      }
+      long destroyTime = System.currentTimeMillis() - beginDestroy;
+
+      if (logger.isDebugEnabled())
+         logger.debug("Destruction of HotBeanModule(" + module.getName() + " rev." + module.getRevision()
+                  + ") complete (drain time: " + drainTime + " ms, destroy time: " + destroyTime + " ms).");
+
+      synchronized (this) {
+         this.completedUnloadCount++;
+         if (forced) this.forcedUnloadCount++;
+         if (failed) this.failedUnloadCount++;
+         this.totalDrainTime += drainTime;
+         this.maxDrainTime = Math.max(this.maxDrainTime, drainTime);
+         this.totalDestroyTime += destroyTime;
+         this.maxDestroyTime = Math.max(this.maxDestroyTime, destroyTime);
+      }
+
+      // Collect garbage once when a batch of unloads is complete, rather than after each unload
+      if (this.workerPool.getPendingCount() == 0) {
+         System.runFinalization();
+         System.gc();
+      }
+   }
+
+   /**
+    * Gets the number of unloads that have been queued.
+    */
+   public synchronized long getQueuedUnloadCount() {
+      return queuedUnloadCount;
+   }
+
+   /**
+    * Gets the number of unloads that are waiting to be performed.
+    */
+   public int getPendingUnloadCount() {
+      return this.workerPool.getPendingCount();
+   }
+
+   /**
+    * Gets the number of completed unloads.
+    */
+   public synchronized long getCompletedUnloadCount() {
+      return completedUnloadCount;
+   }
+
+   /**
+    * Gets the number of unloads that were forced, i.e. performed while the module was still in use because the drain
+    * timeout elapsed.
+    */
+   public synchronized long getForcedUnloadCount() {
+      return forcedUnloadCount;
+   }
+
+   /**
+    * Gets the number of unloads in which the destruction of the context or loader failed.
+    */
+   public synchronized long getFailedUnloadCount() {
+      return failedUnloadCount;
+   }
+
+   /**
+    * Gets the total time (in milliseconds) spent waiting for modules to drain.
+    */
+   public synchronized long getTotalDrainTime() {
+      return totalDrainTime;
+   }
+
+   /**
+    * Gets the maximum time (in milliseconds) spent waiting for a module to drain.
+    */
+   public synchronized long getMaxDrainTime() {
+      return maxDrainTime;
+   }
+
+   /**
+    * Gets the total time (in milliseconds) spent destroying contexts and loaders.
+    */
+   public synchronized long getTotalDestroyTime() {
+      return totalDestroyTime;
+   }
+
+   /**
+    * Gets the maximum time (in milliseconds) spent destroying the context and loader of a module.
+    */
+   public synchronized long getMaxDestroyTime() {
+      return maxDestroyTime;
+   }
+
+   /**
+    * Gets the number of currently running worker threads.
+    */
+   public int getWorkerCount() {
+      return this.workerPool.getWorkerCount();
+   }
+
+   /* ### ### */
+
+   /**
+    * Class representing a queued unload.
+    */
+   private final class UnloadTask implements Runnable {
+
+      private final HotBeanModule module;
+
+      private final HotBeanModuleLoader hotBeanModuleLoader;
+
+      private final HotBeanContext hotBeanContext;
+
+      public UnloadTask(HotBeanModule module, HotBeanModuleLoader hotBeanModuleLoader, HotBeanContext hotBeanContext) {
+         this.module = module;
+         this.hotBeanModuleLoader = hotBeanModuleLoader;
+         this.hotBeanContext = hotBeanContext;
+      }
+
+      public void run() {
+         try {
+            unload(this);
+         } catch (Throwable t) {
+            logger.error("Unexpected error unloading HotBeanModule(" + this.module.getName() + " rev."
+                     + this.module.getRevision() + ") - " + t + "!", t);
+         }
+      }
+   }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans;
+
+/**
+ * Interface that may be implemented by beans in hot bean modules, that wish to hand over their in-memory state (such
+ * as caches) to their counterparts in a new revision of the module. When a new revision is loaded, and state handover
+ * is enabled in the repository, the state of each instantiated stateful bean in the current revision is exported and
+ * imported into the bean with the same name in the new revision, before the new revision is made current.<br>
+ * <br>
+ * The exported state must be class loader neutral, i.e. it may only consist of byte arrays and types that are visible
+ * to the class loader of the repository (such as JDK types). The state is transferred in serialized form.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public interface StatefulHotBean {
+
+   /**
+    * Exports the state of this bean. This method is invoked on the bean in the outgoing revision of a module.
+    * 
+    * @return the state of this bean, or <code>null</code> if there is no state to hand over.
+    */
+   public Object exportState() throws Exception;
+
+   /**
+    * Imports the state exported by the corresponding bean in the previous revision of a module. This method is invoked
+    * on the bean in the incoming revision of a module, before the revision is made current.
+    */
+   public void importState(Object state) throws Exception;
+}
@@ -16,6 +16,7 @@
 package hotbeans.support;
 
 import hotbeans.BeanNotFoundException;
+import hotbeans.ClassLoaderLeakInfo;
 import hotbeans.HotBeanContext;
 import hotbeans.HotBeanContextFactory;
 import hotbeans.HotBeanModule;
@@ -23,18 +24,35 @@ import hotbeans.HotBeanModuleInfo;
 import hotbeans.HotBeanModuleLoader;
 import hotbeans.HotBeanModuleLoaderFactory;
 import hotbeans.HotBeanModuleRepository;
+import hotbeans.HotBeansException;
 import hotbeans.ModuleNotFoundException;
+import hotbeans.ModuleUnloadExecutor;
+import hotbeans.StatefulHotBean;
+import hotbeans.util.SerializationUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.jar.Manifest;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.UrlResource;
+import org.springframework.util.ClassUtils;
 
 /**
  * Abstract HotBeanModuleRepository implementation providing basic support for HotBeanModuleRepository implementations.<br>
@@ -42,13 +60,51 @@ import org.springframework.beans.factory.BeanNameAware;
  * This class makes it possible to specify factories for creating {@link HotBeanContext} objects ({@link HotBeanContextFactory})
  * and {@link HotBeanModuleLoader} objects ({@link HotBeanModuleLoaderFactory}). If no factories are specified,
  * default implementations will be used. These default implementations will simply create implementations of the types
- * {@link SpringHotBeanContext} and {@link JarFileHotBeanModuleLoader}.
+ * {@link SpringHotBeanContext} (or {@link PropertiesHotBeanContext}, if specified by the manifest attribute
+ * {@link ModuleManifestUtils#CONTEXT_TYPE_ATTRIBUTE}) and {@link JarFileHotBeanModuleLoader}.
  * 
  * @author Tobias Lfstrand
  */
 public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotBeanModuleRepository, BeanNameAware {
 
-   private Log log;
+   public static final int DEFAULT_WARM_UP_ITERATIONS = 10;
+
+   public static final long DEFAULT_WARM_UP_DURATION = 5000;
+
+   public static final int DEFAULT_WARM_UP_SAMPLE_SIZE = 100;
+
+   public static final int DEFAULT_WARM_UP_SAMPLE_INTERVAL = 10;
+
+   public static final long DEFAULT_STATE_HANDOVER_MAX_SIZE = 16 * 1024 * 1024;
+
+   public static final long DEFAULT_STATE_HANDOVER_TIMEOUT = 5000;
+
+   public static final long DEFAULT_MODULE_CACHE_MAX_SIZE = 16 * 1024 * 1024;
+
+   public static final int DEFAULT_MODULE_CACHE_MAX_ENTRIES = 10000;
+
+   public static final long DEFAULT_MEMORY_PRESSURE_IDLE_TIME = 60000;
+
+   public static final int DEFAULT_CANARY_WEIGHT = 10;
+
+   public static final long DEFAULT_AUTO_ROLLBACK_WINDOW = 60000;
+
+   public static final int DEFAULT_AUTO_ROLLBACK_MIN_INVOCATIONS = 100;
+
+   public static final double DEFAULT_AUTO_ROLLBACK_LATENCY_PERCENTILE = 99;
+
+   public static final double DEFAULT_AUTO_ROLLBACK_LATENCY_FACTOR = 2;
+
+   public static final long DEFAULT_AUTO_ROLLBACK_MIN_LATENCY = 10;
+
+   public static final double DEFAULT_AUTO_ROLLBACK_ERROR_RATE_INCREASE = 0.05;
+
+   public static final int DEFAULT_SHADOW_SAMPLE_RATE = 10;
+
+   /** @since 1.3 */
+   public static final String SHARED_CONTEXT_FILE_NAME = "hotBeanSharedContext.xml";
+
+   private volatile Log log;
 
    private String name = "AbstractHotBeanModuleRepository";
 
@@ -60,6 +116,125 @@ public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotB
 
    private HotBeanModuleLoaderFactory hotBeanModuleLoaderFactory;
 
+   private final ClassLoaderLeakDetector classLoaderLeakDetector;
+
+   private volatile HashMap invocationRecorders; // Module name (String) -> InvocationRecorder (copied on write)
+
+   private final Object invocationRecordersLock = new Object(); // Guards creation of invocation recorders
+
+   private boolean warmUpEnabled = false;
+
+   private int warmUpIterations = DEFAULT_WARM_UP_ITERATIONS;
+
+   private long warmUpDuration = DEFAULT_WARM_UP_DURATION;
+
+   private int warmUpSampleSize = DEFAULT_WARM_UP_SAMPLE_SIZE;
+
+   private int warmUpSampleInterval = DEFAULT_WARM_UP_SAMPLE_INTERVAL;
+
+   private int invocationSampleCounter = 0; // Not synchronized, since exact sampling isn't required
+
+   private List classTransformers; // ModuleClassTransformer
+
+   private boolean lazyInitEnabled = false;
+
+   private long standbyGracePeriod = 0;
+
+   private ModuleUnloadExecutor moduleUnloadExecutor;
+
+   private final HashMap sharedContexts; // Module name (String) -> ConfigurableApplicationContext
+
+   private boolean stateHandoverEnabled = false;
+
+   private long stateHandoverMaxSize = DEFAULT_STATE_HANDOVER_MAX_SIZE;
+
+   private long stateHandoverTimeout = DEFAULT_STATE_HANDOVER_TIMEOUT;
+
+   private final HashMap stateHandoverResults; // Module name (String) -> StateHandover.Result
+
+   private boolean moduleCacheEnabled = false;
+
+   private long moduleCacheMaxSize = DEFAULT_MODULE_CACHE_MAX_SIZE;
+
+   private int moduleCacheMaxEntries = DEFAULT_MODULE_CACHE_MAX_ENTRIES;
+
+   private final HashMap moduleCaches; // Module name (String) -> ModuleCache
+
+   private long idleUnloadTimeout = 0;
+
+   private long idleUnloadedRevisionCount = 0;
+
+   private long idleUnloadedClassCount = 0;
+
+   private long idleUnloadedFileSize = 0;
+
+   private final MemoryPressureMonitor memoryPressureMonitor;
+
+   private boolean memoryPressureMonitoringEnabled = false;
+
+   private long memoryPressureIdleTime = DEFAULT_MEMORY_PRESSURE_IDLE_TIME;
+
+   private boolean canaryEnabled = false;
+
+   private int defaultCanaryWeight = DEFAULT_CANARY_WEIGHT;
+
+   private volatile HashMap canaryDeployments; // Module name (String) -> CanaryDeployment (copied on write)
+
+   private boolean autoRollbackEnabled = false;
+
+   private long autoRollbackWindow = DEFAULT_AUTO_ROLLBACK_WINDOW;
+
+   private int autoRollbackMinInvocations = DEFAULT_AUTO_ROLLBACK_MIN_INVOCATIONS;
+
+   private double autoRollbackLatencyPercentile = DEFAULT_AUTO_ROLLBACK_LATENCY_PERCENTILE;
+
+   private double autoRollbackLatencyFactor = DEFAULT_AUTO_ROLLBACK_LATENCY_FACTOR;
+
+   private long autoRollbackMinLatency = DEFAULT_AUTO_ROLLBACK_MIN_LATENCY;
+
+   private double autoRollbackErrorRateIncrease = DEFAULT_AUTO_ROLLBACK_ERROR_RATE_INCREASE;
+
+   private long autoRollbackCount = 0;
+
+   private volatile HashMap revisionStatistics; // Module name (String) -> InvocationStatistics[] (copied on write)
+
+   private final HashMap regressionWatches; // Module name (String) -> RegressionWatch
+
+   private final HashSet autoRollbacksInProgress; // Module name (String)
+
+   private int defaultShadowSampleRate = DEFAULT_SHADOW_SAMPLE_RATE;
+
+   private ShadowInvocationExecutor shadowInvocationExecutor;
+
+   private volatile HashMap shadowDeployments; // Module name (String) -> ShadowDeployment (copied on write)
+
+   private boolean sideBySideVersionsEnabled = false;
+
+   private volatile int registrationCount = 0; // Incremented when module revisions are registered or unregistered
+                                               // (read without holding the lock)
+
+   /**
+    * A new module revision that is watched for regressions, compared with the previous revision.
+    */
+   private static final class RegressionWatch {
+
+      private final String moduleName;
+
+      private final InvocationStatistics baselineStatistics;
+
+      private final InvocationStatistics statistics;
+
+      private final long startTime;
+
+      public RegressionWatch(String moduleName, InvocationStatistics baselineStatistics,
+               InvocationStatistics statistics) {
+         this.moduleName = moduleName;
+         this.baselineStatistics = baselineStatistics;
+         this.statistics = statistics;
+         this.startTime = System.currentTimeMillis();
+      }
+   }
+
    /**
     * Creates a new AbstractHotBeanModuleRepository, using this as lock (mutex) object.
     */
@@ -72,6 +247,19 @@ public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotB
     */
    protected AbstractHotBeanModuleRepository(Object lock) {
       this.moduleRegistry = new HashMap();
+      this.classLoaderLeakDetector = new ClassLoaderLeakDetector();
+      this.invocationRecorders = new HashMap();
+      this.moduleUnloadExecutor = new ModuleUnloadExecutor();
+      this.sharedContexts = new HashMap();
+      this.stateHandoverResults = new HashMap();
+      this.moduleCaches = new HashMap();
+      this.memoryPressureMonitor = new MemoryPressureMonitor(this);
+      this.canaryDeployments = new HashMap();
+      this.revisionStatistics = new HashMap();
+      this.regressionWatches = new HashMap();
+      this.autoRollbacksInProgress = new HashSet();
+      this.shadowInvocationExecutor = new ShadowInvocationExecutor();
+      this.shadowDeployments = new HashMap();
 
       if (lock == null) this.lock = this;
       else this.lock = lock;
@@ -83,6 +271,9 @@ public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotB
     * called before the name is set.
     */
    protected Log getLog() {
+      Log log = this.log; // Checked without holding the lock, since this method is invoked on every proxy invocation
+      if (log != null) return log;
+
       synchronized (this.getLock()) {
          if (this.log == null) this.log = LogFactory.getLog(this.getClass().getName() + "." + this.getName());
          return this.log;
@@ -156,235 +347,1159 @@ public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotB
    }
 
    /**
-    * Initializes this AbstractHotBeanModuleRepository. Subclasses may override this method, but should call the super
-    * class implementation.
+    * Gets the {@link ClassLoaderLeakDetector} used to track the class loaders of unloaded module revisions.
+    * 
+    * @since 1.3
     */
-   public void init() throws Exception {
-      if (getLog().isInfoEnabled())
-         getLog().info(
-                  "Initializing " + this.getName() + " (version "
-                           + AbstractHotBeanModuleRepository.class.getPackage().getImplementationVersion() + ").");
-
-      if (this.hotBeanContextFactory == null) {
-         // this.hotBeanContextFactory = new DefaultHotBeanContextFactory();
-         this.hotBeanContextFactory = new HotBeanContextFactory() {
-
-            public HotBeanContext createHotBeanContext(final HotBeanModuleRepository hotBeanModuleRepository,
-                     final Manifest moduleManifest, final ClassLoader classLoader) throws Exception {
-               return new SpringHotBeanContext(classLoader);
-            }
-         };
-      }
-
-      if (this.hotBeanModuleLoaderFactory == null) {
-         this.hotBeanModuleLoaderFactory = new HotBeanModuleLoaderFactory() {
-
-            public HotBeanModuleLoader createHotBeanModuleLoader(final File moduleJarFile, final File tempDir)
-                     throws Exception {
-               return new JarFileHotBeanModuleLoader(moduleJarFile, tempDir);
-            }
-         };
-      }
+   public ClassLoaderLeakDetector getClassLoaderLeakDetector() {
+      return classLoaderLeakDetector;
    }
 
    /**
-    * Destroys this AbstractHotBeanModuleRepository. Subclasses may override this method, but should call the super
-    * class implementation.
+    * Gets the number of garbage collection cycles after which the class loader of an unloaded module revision, that is
+    * still reachable, is considered to be leaking.
+    * 
+    * @since 1.3
     */
-   public void destroy() throws Exception {
-      Log logger = this.getLog();
-
-      synchronized (this.lock) {
-         String[] moduleNames = this.getHotBeanModuleNames();
-         if (logger.isInfoEnabled())
-            logger.info("Destroying " + this.getName() + " (" + ((moduleNames != null) ? moduleNames.length : 0)
-                     + " modules).");
-         HotBeanModuleType moduleType;
-         HotBeanModule[] modules;
-         for (int i = 0; i < moduleNames.length; i++) {
-            if (logger.isDebugEnabled()) logger.debug("Unloading revisions of module " + moduleNames[i] + ".");
-
-            moduleType = this.getHotBeanModuleType(moduleNames[i]);
-            if (moduleType != null) {
-               modules = moduleType.getModules();
-               for (int j = 0; j < modules.length; j++) {
-                  if (logger.isDebugEnabled()) logger.debug("Checking" + modules[i] + ".");
-
-                  if (modules[j].isActive() || modules[j].isInactive()) {
-                     if (logger.isDebugEnabled()) logger.debug("Unloading " + modules[j] + ".");
-                     modules[j].unload();
-                  }
-                  this.unregisterHotBeanModule(modules[j]);
-               }
-            }
-         }
-      }
+   public int getLeakDetectionGcCycles() {
+      return this.classLoaderLeakDetector.getGcCycleThreshold();
    }
 
    /**
-    * Reinitializes this AbstractHotBeanModuleRepository.
+    * Sets the number of garbage collection cycles after which the class loader of an unloaded module revision, that is
+    * still reachable, is considered to be leaking.
+    * 
+    * @since 1.3
     */
-   public void reinitialize() {
-      try {
-         this.destroy();
-         this.init();
-      } catch (Exception e) {
-         throw new RuntimeException("Error reinitializing - " + e + "!", e);
-      }
+   public void setLeakDetectionGcCycles(int leakDetectionGcCycles) {
+      this.classLoaderLeakDetector.setGcCycleThreshold(leakDetectionGcCycles);
    }
 
    /**
-    * Creates HotBeanContext, using the configured factory (see {@link #setHotBeanContextFactory(HotBeanContextFactory)}.
+    * Gets the {@link ModuleClassTransformer}s applied to the classes of all modules.
+    * 
+    * @since 1.3
     */
-   protected HotBeanContext createHotBeanContext(final HotBeanModuleRepository hotBeanModuleRepository,
-            final Manifest moduleManifest, final ClassLoader classLoader) throws Exception {
-      return this.hotBeanContextFactory.createHotBeanContext(hotBeanModuleRepository, moduleManifest, classLoader);
+   public List getClassTransformers() {
+      return classTransformers;
    }
 
    /**
-    * Creates HotBeanModuleLoader, using the configured factory (see
-    * {@link #setHotBeanModuleLoaderFactory(HotBeanModuleLoaderFactory)}.
+    * Sets the {@link ModuleClassTransformer}s applied to the classes of all modules. Transformers may also be specified
+    * for a single module through the manifest attribute {@link ModuleManifestUtils#CLASS_TRANSFORMERS_ATTRIBUTE}. Note
+    * that class transformers are only supported by loaders of the type {@link JarFileHotBeanModuleLoader}.
+    * 
+    * @since 1.3
     */
-   protected HotBeanModuleLoader createHotBeanModuleLoader(final File moduleJarFile, final File tempDir)
-            throws Exception {
-      return this.hotBeanModuleLoaderFactory.createHotBeanModuleLoader(moduleJarFile, tempDir);
+   public void setClassTransformers(List classTransformers) {
+      this.classTransformers = classTransformers;
    }
 
-   /* ### HotBeanModuleRepository METHODS BEGIN ### */
-
    /**
-    * Gets the names of all existing hot bean modules.
+    * Checks if lazy initialization of the singleton beans of modules is enabled by default. Lazy initialization may
+    * also be enabled or disabled for a single module through the manifest attribute
+    * {@link ModuleManifestUtils#LAZY_INIT_ATTRIBUTE}. Note that lazy initialization is only supported by contexts of
+    * the type {@link SpringHotBeanContext}.
+    * 
+    * @since 1.3
     */
-   public String[] getHotBeanModuleNames() {
-      synchronized (this.lock) {
-         Set moduleNames = (Set) this.moduleRegistry.keySet();
-         if (moduleNames != null) { return (String[]) moduleNames.toArray(new String[] {}); }
-      }
-
-      return new String[0];
+   public boolean isLazyInitEnabled() {
+      return lazyInitEnabled;
    }
 
    /**
-    * Gets information about the latest revisions of all existing hot bean modules.
+    * Sets if lazy initialization of the singleton beans of modules is enabled by default.
+    * 
+    * @since 1.3
     */
-   public HotBeanModuleInfo[] getHotBeanModuleInfo() {
-      ArrayList hotBeanModuleInfo = new ArrayList();
-
-      synchronized (this.lock) {
-         Set moduleNames = (Set) this.moduleRegistry.keySet();
-         if (moduleNames != null) {
-            Iterator it = moduleNames.iterator();
-            HotBeanModuleType moduleType;
-            HotBeanModuleInfo moduleInfo;
-
-            while (it.hasNext()) // Iterate over module names
-            {
-               moduleType = (HotBeanModuleType) this.moduleRegistry.get(it.next());
-               if (moduleType != null) {
-                  moduleInfo = moduleType.getCurrentModuleInfo();
-                  if (moduleInfo != null) hotBeanModuleInfo.add(moduleInfo.getClone()); // Get clone of module info
-               }
-            }
-         }
-      }
-
-      return (HotBeanModuleInfo[]) hotBeanModuleInfo.toArray(new HotBeanModuleInfo[0]);
+   public void setLazyInitEnabled(boolean lazyInitEnabled) {
+      this.lazyInitEnabled = lazyInitEnabled;
    }
 
    /**
-    * Gets information about all revisions for a specific hot bean module.
+    * Gets the grace period (in milliseconds) during which the previous revision of a module is kept loaded as a warm
+    * standby after a new revision has been made current. A revert to the standby revision reuses its loader and
+    * context, instead of loading the module again. A value of zero (the default) disables standby revisions.
+    * 
+    * @since 1.3
     */
-   public HotBeanModuleInfo[] getHotBeanModuleInfo(final String moduleName) {
-      ArrayList hotBeanModuleInfo = new ArrayList();
-
-      synchronized (this.lock) {
-         HotBeanModuleType moduleType = (HotBeanModuleType) this.moduleRegistry.get(moduleName);
-         if (moduleType != null) {
-            HotBeanModuleInfo[] moduleInfo = moduleType.getModuleInfo();
-            for (int i = 0; i < moduleInfo.length; i++) {
-               hotBeanModuleInfo.add(moduleInfo[i].getClone()); // Get clone of module info
-            }
-         }
-      }
-
-      return (HotBeanModuleInfo[]) hotBeanModuleInfo.toArray(new HotBeanModuleInfo[0]);
+   public long getStandbyGracePeriod() {
+      return standbyGracePeriod;
    }
 
    /**
-    * Gets information about the current revisions of a specific hot bean module.
+    * Sets the grace period (in milliseconds) during which the previous revision of a module is kept loaded as a warm
+    * standby.
+    * 
+    * @since 1.3
     */
-   public HotBeanModuleInfo getCurrentHotBeanModuleInfo(String moduleName) {
-      synchronized (this.lock) {
-         HotBeanModuleType hotBeanModuleType = (HotBeanModuleType) this.moduleRegistry.get(moduleName);
-         if (hotBeanModuleType != null) { return hotBeanModuleType.getCurrentModuleInfo(); }
-      }
-
-      return null;
+   public void setStandbyGracePeriod(long standbyGracePeriod) {
+      this.standbyGracePeriod = Math.max(0, standbyGracePeriod);
    }
 
    /**
-    * Checks if a module with the specified name exists.
+    * Gets the time (in milliseconds) after which the current revision of a module, whose beans haven't been invoked
+    * through a hot bean proxy during that time, is unloaded to reclaim the memory used by its classes and context. An
+    * idle revision is activated (loaded) again on the next invocation. A value of zero (the default) disables unloading
+    * of idle revisions. Note that not all repositories support activation of unloaded revisions (see
+    * {@link #unloadIdleModule(HotBeanModule)}).
+    * 
+    * @since 1.3
     */
-   public boolean hasHotBeanModule(final String moduleName) {
-      synchronized (this.lock) {
-         return this.moduleRegistry.containsKey(moduleName);
-      }
+   public long getIdleUnloadTimeout() {
+      return idleUnloadTimeout;
    }
 
    /**
-    * Checks if the specified module contains a bean with the specified name.
+    * Sets the time (in milliseconds) after which the current revision of a module, whose beans haven't been invoked,
+    * is unloaded.
     * 
-    * @since 1.0.1 (20070302)
+    * @since 1.3
     */
-   public boolean hasHotBean(final String moduleName, final String beanName) {
-      HotBeanModule hotBeanModule = getHotBeanModule(moduleName);
-      if ((hotBeanModule != null) && (hotBeanModule.getHotBeanContext() != null)) {
-         return hotBeanModule.getHotBeanContext().hasHotBean(beanName);
-      } else return false;
+   public void setIdleUnloadTimeout(long idleUnloadTimeout) {
+      this.idleUnloadTimeout = Math.max(0, idleUnloadTimeout);
    }
 
    /**
-    * Gets a reference to a the hot bean with the specified name in the specified module. This method will return an
-    * object even if the hot bean module doesn't exist (yet). When invoking methods on the proxy, exceptions of the
-    * types {@link ModuleNotFoundException} and {@link BeanNotFoundException} will be thrown to indicate that the module
-    * or bean wasn't found.
+    * Gets the {@link MemoryPressureMonitor} of this repository.
+    * 
+    * @since 1.3
     */
-   public Object getHotBean(final String moduleName, final String beanName, final Class interfaceClass) {
-      return getHotBeanProxyFactory(moduleName, beanName, new Class[] { interfaceClass }).getProxy();
+   public MemoryPressureMonitor getMemoryPressureMonitor() {
+      return memoryPressureMonitor;
    }
 
    /**
-    * Gets a reference to a the hot bean with the specified name in the specified module. This method will return an
-    * object even if the hot bean module doesn't exist (yet). When invoking methods on the proxy, exceptions of the
-    * types {@link ModuleNotFoundException} and {@link BeanNotFoundException} will be thrown to indicate that the module
-    * or bean wasn't found.
+    * Checks if memory pressure monitoring is enabled. When enabled, module revisions are reclaimed early when the usage
+    * of the heap or non-heap memory pools exceeds the configured thresholds (see {@link #reclaimModules(String)}).
+    * 
+    * @since 1.3
     */
-   public Object getHotBean(final String moduleName, final String beanName, final Class[] interfaceClasses) {
-      return getHotBeanProxyFactory(moduleName, beanName, interfaceClasses).getProxy();
+   public boolean isMemoryPressureMonitoringEnabled() {
+      return memoryPressureMonitoringEnabled;
    }
 
    /**
-    * Gets the class name of the bean with the specified name in the specified module.
+    * Sets if memory pressure monitoring is enabled.
     * 
-    * @since 1.0.1 (20070212)
+    * @since 1.3
     */
-   public String getHotBeanClassName(final String moduleName, final String beanName) {
-      HotBeanModule hotBeanModule = getHotBeanModule(moduleName);
-      if ((hotBeanModule != null) && (hotBeanModule.getHotBeanContext() != null)) {
-         return hotBeanModule.getHotBeanContext().getHotBeanClassName(beanName);
-      } else return null;
+   public void setMemoryPressureMonitoringEnabled(boolean memoryPressureMonitoringEnabled) {
+      this.memoryPressureMonitoringEnabled = memoryPressureMonitoringEnabled;
    }
 
    /**
-    * Gets the class of the bean with the specified name in the specified module.
+    * Sets the usage threshold (in percent of the maximum size) for heap memory pools. This method delegates to the
+    * corresponding method in {@link MemoryPressureMonitor}.
     * 
-    * @since 1.0.1 (20070212)
+    * @since 1.3
     */
-   public Class getHotBeanClass(final String moduleName, final String beanName) {
-      HotBeanModule hotBeanModule = getHotBeanModule(moduleName);
-      if ((hotBeanModule != null) && (hotBeanModule.getHotBeanContext() != null)) {
-         return hotBeanModule.getHotBeanContext().getHotBeanClass(beanName);
-      } else return null;
+   public void setHeapUsageThreshold(int heapUsageThreshold) {
+      this.memoryPressureMonitor.setHeapUsageThreshold(heapUsageThreshold);
+   }
+
+   /**
+    * Sets the usage threshold (in percent of the maximum size) for non-heap memory pools (i.e. permanent generation or
+    * metaspace). This method delegates to the corresponding method in {@link MemoryPressureMonitor}.
+    * 
+    * @since 1.3
+    */
+   public void setNonHeapUsageThreshold(int nonHeapUsageThreshold) {
+      this.memoryPressureMonitor.setNonHeapUsageThreshold(nonHeapUsageThreshold);
+   }
+
+   /**
+    * Gets the minimum time (in milliseconds) that the current revision of a module must have been idle to be
+    * reclaimed because of memory pressure.
+    * 
+    * @since 1.3
+    */
+   public long getMemoryPressureIdleTime() {
+      return memoryPressureIdleTime;
+   }
+
+   /**
+    * Sets the minimum time (in milliseconds) that the current revision of a module must have been idle to be
+    * reclaimed because of memory pressure.
+    * 
+    * @since 1.3
+    */
+   public void setMemoryPressureIdleTime(long memoryPressureIdleTime) {
+      this.memoryPressureIdleTime = Math.max(0, memoryPressureIdleTime);
+   }
+
+   /**
+    * Checks if canary deployments are enabled. When enabled, the previous revision of a module is kept active when a
+    * new revision is loaded, and the invocations made through hot bean proxies are split between the previous
+    * (baseline) and the new (canary) revision, until the canary revision is promoted or aborted (see
+    * {@link CanaryDeployment}).
+    * 
+    * @since 1.3
+    */
+   public boolean isCanaryEnabled() {
+      return canaryEnabled;
+   }
+
+   /**
+    * Sets if canary deployments are enabled.
+    * 
+    * @since 1.3
+    */
+   public void setCanaryEnabled(boolean canaryEnabled) {
+      this.canaryEnabled = canaryEnabled;
+   }
+
+   /**
+    * Gets the initial share (in percent) of the invocations that are routed to the canary revision of a canary
+    * deployment.
+    * 
+    * @since 1.3
+    */
+   public int getDefaultCanaryWeight() {
+      return defaultCanaryWeight;
+   }
+
+   /**
+    * Sets the initial share (in percent) of the invocations that are routed to the canary revision of a canary
+    * deployment.
+    * 
+    * @since 1.3
+    */
+   public void setDefaultCanaryWeight(int defaultCanaryWeight) {
+      this.defaultCanaryWeight = Math.max(0, Math.min(100, defaultCanaryWeight));
+   }
+
+   /**
+    * Gets the canary deployment in progress for the module with the specified name, or <code>null</code> if there is
+    * no canary deployment in progress for the module.
+    * 
+    * @since 1.3
+    */
+   public CanaryDeployment getCanaryDeployment(final String moduleName) {
+      return (CanaryDeployment) this.canaryDeployments.get(moduleName); // No lock needed, since copied on write
+   }
+
+   /**
+    * Sets the share (in percent) of the invocations that are routed to the canary revision of the canary deployment in
+    * progress for the module with the specified name.
+    * 
+    * @since 1.3
+    */
+   public void setCanaryWeight(final String moduleName, final int weight) {
+      CanaryDeployment canaryDeployment = this.getCanaryDeployment(moduleName);
+      if (canaryDeployment == null)
+         throw new HotBeansException("No canary deployment in progress for module '" + moduleName + "'!");
+
+      canaryDeployment.setWeight(weight);
+
+      Log logger = this.getLog();
+      if (logger.isInfoEnabled())
+         logger.info("Canary weight of module '" + moduleName + "' set to " + canaryDeployment.getWeight() + "%.");
+   }
+
+   /**
+    * Promotes the canary revision of the canary deployment in progress for the module with the specified name, i.e.
+    * routes all invocations to the canary revision and inactivates the baseline revision.
+    * 
+    * @since 1.3
+    */
+   public void promoteCanary(final String moduleName) {
+      Log logger = this.getLog();
+
+      synchronized (this.lock) {
+         CanaryDeployment canaryDeployment = this.getCanaryDeployment(moduleName);
+         if (canaryDeployment == null)
+            throw new HotBeansException("No canary deployment in progress for module '" + moduleName + "'!");
+
+         if (logger.isInfoEnabled()) logger.info("Promoting canary revision - " + canaryDeployment + ".");
+
+         this.putCanaryDeployment(moduleName, null);
+         this.checkForObsoleteModules(moduleName); // Inactivate baseline revision at once
+      }
+   }
+
+   /**
+    * Aborts the canary deployment in progress for the module with the specified name, by reverting the module to the
+    * baseline revision (see {@link #revertHotBeanModule(String, long)}), which becomes a new revision.
+    * 
+    * @since 1.3
+    */
+   public HotBeanModuleInfo abortCanary(final String moduleName) {
+      Log logger = this.getLog();
+      CanaryDeployment canaryDeployment;
+
+      synchronized (this.lock) {
+         canaryDeployment = this.getCanaryDeployment(moduleName);
+         if ((canaryDeployment == null) || canaryDeployment.isAborting())
+            throw new HotBeansException("No canary deployment in progress for module '" + moduleName + "'!");
+
+         if (logger.isInfoEnabled()) logger.info("Aborting canary revision - " + canaryDeployment + ".");
+
+         canaryDeployment.setAborting(true); // Prevents a new canary deployment from being started by the revert
+      }
+
+      try {
+         return this.revertHotBeanModule(moduleName, canaryDeployment.getBaselineRevision());
+      } finally {
+         synchronized (this.lock) {
+            canaryDeployment.setAborting(false);
+         }
+      }
+   }
+
+   /**
+    * Checks if automatic rollback is enabled. When enabled, invocation statistics are collected for the current and
+    * the previous revision of each module, and a new revision is watched for a period of time (see
+    * {@link #getAutoRollbackWindow()}) after it has been activated. If the invocation latency or error rate of the new
+    * revision regresses past the configured thresholds, compared with the previous revision, the module is
+    * automatically reverted to the previous revision (see {@link #checkForRegressions()}).
+    * 
+    * @since 1.3
+    */
+   public boolean isAutoRollbackEnabled() {
+      return autoRollbackEnabled;
+   }
+
+   /**
+    * Sets if automatic rollback is enabled.
+    * 
+    * @since 1.3
+    */
+   public void setAutoRollbackEnabled(boolean autoRollbackEnabled) {
+      this.autoRollbackEnabled = autoRollbackEnabled;
+   }
+
+   /**
+    * Gets the time (in milliseconds) during which a new revision is watched for regressions after it has been
+    * activated.
+    * 
+    * @since 1.3
+    */
+   public long getAutoRollbackWindow() {
+      return autoRollbackWindow;
+   }
+
+   /**
+    * Sets the time (in milliseconds) during which a new revision is watched for regressions after it has been
+    * activated.
+    * 
+    * @since 1.3
+    */
+   public void setAutoRollbackWindow(long autoRollbackWindow) {
+      this.autoRollbackWindow = Math.max(0, autoRollbackWindow);
+   }
+
+   /**
+    * Gets the minimum number of invocations that must have been recorded for both the new and the previous revision,
+    * before the new revision may be considered to have regressed.
+    * 
+    * @since 1.3
+    */
+   public int getAutoRollbackMinInvocations() {
+      return autoRollbackMinInvocations;
+   }
+
+   /**
+    * Sets the minimum number of invocations that must have been recorded for both the new and the previous revision,
+    * before the new revision may be considered to have regressed.
+    * 
+    * @since 1.3
+    */
+   public void setAutoRollbackMinInvocations(int autoRollbackMinInvocations) {
+      this.autoRollbackMinInvocations = Math.max(1, autoRollbackMinInvocations);
+   }
+
+   /**
+    * Gets the latency percentile (between 0 and 100) that is compared between the new and the previous revision.
+    * 
+    * @since 1.3
+    */
+   public double getAutoRollbackLatencyPercentile() {
+      return autoRollbackLatencyPercentile;
+   }
+
+   /**
+    * Sets the latency percentile (between 0 and 100) that is compared between the new and the previous revision.
+    * 
+    * @since 1.3
+    */
+   public void setAutoRollbackLatencyPercentile(double autoRollbackLatencyPercentile) {
+      this.autoRollbackLatencyPercentile = Math.max(0, Math.min(100, autoRollbackLatencyPercentile));
+   }
+
+   /**
+    * Gets the factor by which the latency percentile of the new revision must exceed the latency percentile of the
+    * previous revision for the new revision to be considered to have regressed.
+    * 
+    * @since 1.3
+    */
+   public double getAutoRollbackLatencyFactor() {
+      return autoRollbackLatencyFactor;
+   }
+
+   /**
+    * Sets the factor by which the latency percentile of the new revision must exceed the latency percentile of the
+    * previous revision for the new revision to be considered to have regressed.
+    * 
+    * @since 1.3
+    */
+   public void setAutoRollbackLatencyFactor(double autoRollbackLatencyFactor) {
+      this.autoRollbackLatencyFactor = Math.max(1, autoRollbackLatencyFactor);
+   }
+
+   /**
+    * Gets the minimum latency percentile (in milliseconds) of the new revision for a latency regression to be
+    * considered, so that very short invocations don't trigger rollbacks because of measurement noise.
+    * 
+    * @since 1.3
+    */
+   public long getAutoRollbackMinLatency() {
+      return autoRollbackMinLatency;
+   }
+
+   /**
+    * Sets the minimum latency percentile (in milliseconds) of the new revision for a latency regression to be
+    * considered.
+    * 
+    * @since 1.3
+    */
+   public void setAutoRollbackMinLatency(long autoRollbackMinLatency) {
+      this.autoRollbackMinLatency = Math.max(0, autoRollbackMinLatency);
+   }
+
+   /**
+    * Gets the increase of the error rate (between 0 and 1) of the new revision, compared with the error rate of the
+    * previous revision, for the new revision to be considered to have regressed.
+    * 
+    * @since 1.3
+    */
+   public double getAutoRollbackErrorRateIncrease() {
+      return autoRollbackErrorRateIncrease;
+   }
+
+   /**
+    * Sets the increase of the error rate (between 0 and 1) of the new revision, compared with the error rate of the
+    * previous revision, for the new revision to be considered to have regressed.
+    * 
+    * @since 1.3
+    */
+   public void setAutoRollbackErrorRateIncrease(double autoRollbackErrorRateIncrease) {
+      this.autoRollbackErrorRateIncrease = Math.max(0, autoRollbackErrorRateIncrease);
+   }
+
+   /**
+    * Gets the number of automatic rollbacks that have been performed because of regressions.
+    * 
+    * @since 1.3
+    */
+   public long getAutoRollbackCount() {
+      synchronized (this.lock) {
+         return autoRollbackCount;
+      }
+   }
+
+   /**
+    * Gets the invocation statistics of the specified revision of a module, or <code>null</code> if no statistics are
+    * available for the revision. Statistics are only collected for the current and the previous revision of a module,
+    * and only when automatic rollback is enabled.
+    * 
+    * @since 1.3
+    */
+   public InvocationStatistics getInvocationStatistics(final String moduleName, final long revision) {
+      InvocationStatistics[] statistics = (InvocationStatistics[]) this.revisionStatistics.get(moduleName);
+      if (statistics != null) {
+         for (int i = 0; i < statistics.length; i++) {
+            if ((statistics[i] != null) && (statistics[i].getRevision() == revision)) return statistics[i];
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Gets the initial share (in percent) of the invocations that are mirrored to the shadow revision of a shadow
+    * deployment.
+    * 
+    * @since 1.3
+    */
+   public int getDefaultShadowSampleRate() {
+      return defaultShadowSampleRate;
+   }
+
+   /**
+    * Sets the initial share (in percent) of the invocations that are mirrored to the shadow revision of a shadow
+    * deployment.
+    * 
+    * @since 1.3
+    */
+   public void setDefaultShadowSampleRate(int defaultShadowSampleRate) {
+      this.defaultShadowSampleRate = Math.max(0, Math.min(100, defaultShadowSampleRate));
+   }
+
+   /**
+    * Gets the {@link ShadowInvocationExecutor} used to perform the mirrored invocations of shadow deployments.
+    * 
+    * @since 1.3
+    */
+   public ShadowInvocationExecutor getShadowInvocationExecutor() {
+      return shadowInvocationExecutor;
+   }
+
+   /**
+    * Sets the {@link ShadowInvocationExecutor} used to perform the mirrored invocations of shadow deployments.
+    * 
+    * @since 1.3
+    */
+   public void setShadowInvocationExecutor(ShadowInvocationExecutor shadowInvocationExecutor) {
+      this.shadowInvocationExecutor = shadowInvocationExecutor;
+   }
+
+   /**
+    * Gets the shadow deployment in progress for the module with the specified name, or <code>null</code> if there is
+    * no shadow deployment in progress for the module. The shadow deployment contains a report of the differences
+    * between the current and the shadow revision.
+    * 
+    * @since 1.3
+    */
+   public ShadowDeployment getShadowDeployment(final String moduleName) {
+      return (ShadowDeployment) this.shadowDeployments.get(moduleName); // No lock needed, since copied on write
+   }
+
+   /**
+    * Sets the share (in percent) of the invocations that are mirrored to the shadow revision of the shadow deployment
+    * in progress for the module with the specified name.
+    * 
+    * @since 1.3
+    */
+   public void setShadowSampleRate(final String moduleName, final int sampleRate) {
+      ShadowDeployment shadowDeployment = this.getShadowDeployment(moduleName);
+      if (shadowDeployment == null)
+         throw new HotBeansException("No shadow deployment in progress for module '" + moduleName + "'!");
+
+      shadowDeployment.setSampleRate(sampleRate);
+
+      Log logger = this.getLog();
+      if (logger.isInfoEnabled())
+         logger.info("Shadow sample rate of module '" + moduleName + "' set to " + shadowDeployment.getSampleRate()
+                  + "%.");
+   }
+
+   /**
+    * Stops the shadow deployment in progress for the module with the specified name, and unloads the shadow revision.
+    * 
+    * @return the stopped shadow deployment, containing the final report of the differences between the current and
+    *         the shadow revision.
+    * @since 1.3
+    */
+   public ShadowDeployment stopShadowDeployment(final String moduleName) {
+      Log logger = this.getLog();
+
+      synchronized (this.lock) {
+         ShadowDeployment shadowDeployment = this.getShadowDeployment(moduleName);
+         if (shadowDeployment == null)
+            throw new HotBeansException("No shadow deployment in progress for module '" + moduleName + "'!");
+
+         if (logger.isInfoEnabled()) logger.info("Stopping shadow deployment - " + shadowDeployment + ".");
+
+         this.putShadowDeployment(moduleName, null);
+         this.unloadHotBeanModule(shadowDeployment.getShadowModule());
+
+         return shadowDeployment;
+      }
+   }
+
+   /**
+    * Checks if side by side versions are enabled. When enabled, the latest revision of each version of a module (as
+    * specified by the <code>Implementation-Version</code> attribute of the manifest of the module) is kept active when
+    * a revision of a new version is loaded, so that clients may keep using a previous version through hot beans
+    * obtained with a version range (see {@link #getHotBean(String, String, String, Class)}). Each version has its own
+    * usage count, and is unloaded when idle (see {@link #getIdleUnloadTimeout()}) and loaded again on demand, like
+    * the current revision.
+    * 
+    * @since 1.3
+    */
+   public boolean isSideBySideVersionsEnabled() {
+      return sideBySideVersionsEnabled;
+   }
+
+   /**
+    * Sets if side by side versions are enabled.
+    * 
+    * @since 1.3
+    */
+   public void setSideBySideVersionsEnabled(boolean sideBySideVersionsEnabled) {
+      this.sideBySideVersionsEnabled = sideBySideVersionsEnabled;
+   }
+
+   /**
+    * Gets the number of module revisions that have been unloaded because they were idle.
+    * 
+    * @since 1.3
+    */
+   public long getIdleUnloadedRevisionCount() {
+      synchronized (this.lock) {
+         return idleUnloadedRevisionCount;
+      }
+   }
+
+   /**
+    * Gets the total number of classes released by unloading idle module revisions.
+    * 
+    * @since 1.3
+    */
+   public long getIdleUnloadedClassCount() {
+      synchronized (this.lock) {
+         return idleUnloadedClassCount;
+      }
+   }
+
+   /**
+    * Gets the total size (in bytes) of the extracted module files released by unloading idle module revisions.
+    * 
+    * @since 1.3
+    */
+   public long getIdleUnloadedFileSize() {
+      synchronized (this.lock) {
+         return idleUnloadedFileSize;
+      }
+   }
+
+   /**
+    * Gets the {@link ModuleUnloadExecutor} used to destroy the loaders and contexts of unloaded module revisions. The
+    * executor may be used to obtain metrics about performed unloads.
+    * 
+    * @since 1.3
+    */
+   public ModuleUnloadExecutor getModuleUnloadExecutor() {
+      return moduleUnloadExecutor;
+   }
+
+   /**
+    * Sets the {@link ModuleUnloadExecutor} used to destroy the loaders and contexts of unloaded module revisions.
+    * 
+    * @since 1.3
+    */
+   public void setModuleUnloadExecutor(ModuleUnloadExecutor moduleUnloadExecutor) {
+      this.moduleUnloadExecutor = moduleUnloadExecutor;
+   }
+
+   /**
+    * Sets the maximum number of threads used to unload module revisions. This method delegates to the corresponding
+    * method in {@link ModuleUnloadExecutor}.
+    * 
+    * @since 1.3
+    */
+   public void setMaxUnloadThreads(int maxUnloadThreads) {
+      this.moduleUnloadExecutor.setMaxThreads(maxUnloadThreads);
+   }
+
+   /**
+    * Sets the maximum time (in milliseconds) to wait for in-flight calls to an unloaded module revision to complete
+    * before its context is destroyed. This method delegates to the corresponding method in {@link ModuleUnloadExecutor}.
+    * 
+    * @since 1.3
+    */
+   public void setUnloadDrainTimeout(long unloadDrainTimeout) {
+      this.moduleUnloadExecutor.setDrainTimeout(unloadDrainTimeout);
+   }
+
+   /**
+    * Checks if state handover between module revisions is enabled. When enabled, the state of the instantiated
+    * {@link StatefulHotBean}s of the current revision of a module is handed over to the corresponding beans in a new
+    * revision, before the new revision is made current.
+    * 
+    * @since 1.3
+    */
+   public boolean isStateHandoverEnabled() {
+      return stateHandoverEnabled;
+   }
+
+   /**
+    * Sets if state handover between module revisions is enabled.
+    * 
+    * @since 1.3
+    */
+   public void setStateHandoverEnabled(boolean stateHandoverEnabled) {
+      this.stateHandoverEnabled = stateHandoverEnabled;
+   }
+
+   /**
+    * Gets the maximum total size (in bytes) of the serialized state handed over to a new module revision.
+    * 
+    * @since 1.3
+    */
+   public long getStateHandoverMaxSize() {
+      return stateHandoverMaxSize;
+   }
+
+   /**
+    * Sets the maximum total size (in bytes) of the serialized state handed over to a new module revision.
+    * 
+    * @since 1.3
+    */
+   public void setStateHandoverMaxSize(long stateHandoverMaxSize) {
+      this.stateHandoverMaxSize = stateHandoverMaxSize;
+   }
+
+   /**
+    * Gets the maximum time (in milliseconds) to spend handing over state to a new module revision.
+    * 
+    * @since 1.3
+    */
+   public long getStateHandoverTimeout() {
+      return stateHandoverTimeout;
+   }
+
+   /**
+    * Sets the maximum time (in milliseconds) to spend handing over state to a new module revision.
+    * 
+    * @since 1.3
+    */
+   public void setStateHandoverTimeout(long stateHandoverTimeout) {
+      this.stateHandoverTimeout = stateHandoverTimeout;
+   }
+
+   /**
+    * Gets the result of the last state handover for the module with the specified name, or <code>null</code> if no
+    * state handover has been performed for the module.
+    * 
+    * @since 1.3
+    */
+   public StateHandover.Result getLastStateHandoverResult(final String moduleName) {
+      synchronized (this.lock) {
+         return (StateHandover.Result) this.stateHandoverResults.get(moduleName);
+      }
+   }
+
+   /**
+    * Checks if module caches are enabled. When enabled, a {@link ModuleCache} is made available to the beans of each
+    * module revision, as a bean with the name {@link ModuleCache#BEAN_NAME}.
+    * 
+    * @since 1.3
+    */
+   public boolean isModuleCacheEnabled() {
+      return moduleCacheEnabled;
+   }
+
+   /**
+    * Sets if module caches are enabled.
+    * 
+    * @since 1.3
+    */
+   public void setModuleCacheEnabled(boolean moduleCacheEnabled) {
+      this.moduleCacheEnabled = moduleCacheEnabled;
+   }
+
+   /**
+    * Gets the maximum total size (in bytes) of the serialized values in the cache of a module.
+    * 
+    * @since 1.3
+    */
+   public long getModuleCacheMaxSize() {
+      return moduleCacheMaxSize;
+   }
+
+   /**
+    * Sets the maximum total size (in bytes) of the serialized values in the cache of a module.
+    * 
+    * @since 1.3
+    */
+   public void setModuleCacheMaxSize(long moduleCacheMaxSize) {
+      this.moduleCacheMaxSize = moduleCacheMaxSize;
+   }
+
+   /**
+    * Gets the maximum number of entries in the cache of a module.
+    * 
+    * @since 1.3
+    */
+   public int getModuleCacheMaxEntries() {
+      return moduleCacheMaxEntries;
+   }
+
+   /**
+    * Sets the maximum number of entries in the cache of a module.
+    * 
+    * @since 1.3
+    */
+   public void setModuleCacheMaxEntries(int moduleCacheMaxEntries) {
+      this.moduleCacheMaxEntries = moduleCacheMaxEntries;
+   }
+
+   /**
+    * Gets the cache of the module with the specified name, or <code>null</code> if module caches are disabled. The
+    * cache is created if it doesn't exist, and is discarded when the module is removed.
+    * 
+    * @since 1.3
+    */
+   public ModuleCache getModuleCache(final String moduleName) {
+      if (!this.moduleCacheEnabled) return null;
+
+      synchronized (this.lock) {
+         ModuleCache moduleCache = (ModuleCache) this.moduleCaches.get(moduleName);
+         if (moduleCache == null) {
+            moduleCache = new ModuleCache(moduleName, this.moduleCacheMaxSize, this.moduleCacheMaxEntries);
+            this.moduleCaches.put(moduleName, moduleCache);
+         }
+         return moduleCache;
+      }
+   }
+
+   /**
+    * Checks if warm up of new module revisions is enabled. When enabled, a sample of the invocations made through hot
+    * bean proxies is recorded for each module, and replayed against a new revision of the module before it is made
+    * current. Note that warm up should only be enabled if the modules have operations that are free from side effects.
+    * 
+    * @since 1.3
+    */
+   public boolean isWarmUpEnabled() {
+      return warmUpEnabled;
+   }
+
+   /**
+    * Sets the flag indicating if warm up of new module revisions is enabled. When enabled, a sample of the invocations
+    * made through hot bean proxies is recorded for each module, and replayed against a new revision of the module
+    * before it is made current. Note that warm up should only be enabled if the modules have operations that are free
+    * from side effects.
+    * 
+    * @since 1.3
+    */
+   public void setWarmUpEnabled(boolean warmUpEnabled) {
+      this.warmUpEnabled = warmUpEnabled;
+   }
+
+   /**
+    * Gets the number of times the recorded invocations are replayed during warm up.
+    * 
+    * @since 1.3
+    */
+   public int getWarmUpIterations() {
+      return warmUpIterations;
+   }
+
+   /**
+    * Sets the number of times the recorded invocations are replayed during warm up.
+    * 
+    * @since 1.3
+    */
+   public void setWarmUpIterations(int warmUpIterations) {
+      this.warmUpIterations = warmUpIterations;
+   }
+
+   /**
+    * Gets the maximum duration (in milliseconds) of the warm up of a new module revision.
+    * 
+    * @since 1.3
+    */
+   public long getWarmUpDuration() {
+      return warmUpDuration;
+   }
+
+   /**
+    * Sets the maximum duration (in milliseconds) of the warm up of a new module revision.
+    * 
+    * @since 1.3
+    */
+   public void setWarmUpDuration(long warmUpDuration) {
+      this.warmUpDuration = warmUpDuration;
+   }
+
+   /**
+    * Gets the maximum number of invocations recorded for each module.
+    * 
+    * @since 1.3
+    */
+   public int getWarmUpSampleSize() {
+      return warmUpSampleSize;
+   }
+
+   /**
+    * Sets the maximum number of invocations recorded for each module.
+    * 
+    * @since 1.3
+    */
+   public void setWarmUpSampleSize(int warmUpSampleSize) {
+      this.warmUpSampleSize = warmUpSampleSize;
+   }
+
+   /**
+    * Gets the sample interval, i.e. the number of invocations for each recorded invocation.
+    * 
+    * @since 1.3
+    */
+   public int getWarmUpSampleInterval() {
+      return warmUpSampleInterval;
+   }
+
+   /**
+    * Sets the sample interval, i.e. the number of invocations for each recorded invocation.
+    * 
+    * @since 1.3
+    */
+   public void setWarmUpSampleInterval(int warmUpSampleInterval) {
+      this.warmUpSampleInterval = Math.max(1, warmUpSampleInterval);
+   }
+
+   /**
+    * Initializes this AbstractHotBeanModuleRepository. Subclasses may override this method, but should call the super
+    * class implementation.
+    */
+   public void init() throws Exception {
+      if (getLog().isInfoEnabled())
+         getLog().info(
+                  "Initializing " + this.getName() + " (version "
+                           + AbstractHotBeanModuleRepository.class.getPackage().getImplementationVersion() + ").");
+
+      if (this.hotBeanContextFactory == null) {
+         // this.hotBeanContextFactory = new DefaultHotBeanContextFactory();
+         this.hotBeanContextFactory = new HotBeanContextFactory() {
+
+            public HotBeanContext createHotBeanContext(final HotBeanModuleRepository hotBeanModuleRepository,
+                     final Manifest moduleManifest, final ClassLoader classLoader) throws Exception {
+               String contextType = ModuleManifestUtils.getContextType(moduleManifest);
+               if (ModuleManifestUtils.CONTEXT_TYPE_PROPERTIES.equalsIgnoreCase(contextType)) return new PropertiesHotBeanContext(
+                        classLoader);
+               else if (ModuleManifestUtils.CONTEXT_TYPE_SPRING.equalsIgnoreCase(contextType)) return new SpringHotBeanContext(
+                        classLoader);
+               else throw new HotBeansException("Unknown context type '" + contextType + "'!");
+            }
+         };
+      }
+
+      if (this.hotBeanModuleLoaderFactory == null) {
+         this.hotBeanModuleLoaderFactory = new HotBeanModuleLoaderFactory() {
+
+            public HotBeanModuleLoader createHotBeanModuleLoader(final File moduleJarFile, final File tempDir)
+                     throws Exception {
+               return new JarFileHotBeanModuleLoader(moduleJarFile, tempDir);
+            }
+         };
+      }
+
+      if (this.memoryPressureMonitoringEnabled) this.memoryPressureMonitor.start();
+   }
+
+   /**
+    * Destroys this AbstractHotBeanModuleRepository. Subclasses may override this method, but should call the super
+    * class implementation.
+    */
+   public void destroy() throws Exception {
+      Log logger = this.getLog();
+
+      this.memoryPressureMonitor.stop();
+
+      synchronized (this.lock) {
+         String[] moduleNames = this.getHotBeanModuleNames();
+         if (logger.isInfoEnabled())
+            logger.info("Destroying " + this.getName() + " (" + ((moduleNames != null) ? moduleNames.length : 0)
+                     + " modules).");
+         HotBeanModuleType moduleType;
+         HotBeanModule[] modules;
+         for (int i = 0; i < moduleNames.length; i++) {
+            if (logger.isDebugEnabled()) logger.debug("Unloading revisions of module " + moduleNames[i] + ".");
+
+            moduleType = this.getHotBeanModuleType(moduleNames[i]);
+            if (moduleType != null) {
+               modules = moduleType.getModules();
+               for (int j = 0; j < modules.length; j++) {
+                  if (logger.isDebugEnabled()) logger.debug("Checking" + modules[i] + ".");
+
+                  if (modules[j].isActive() || modules[j].isInactive()) {
+                     if (logger.isDebugEnabled()) logger.debug("Unloading " + modules[j] + ".");
+                     this.unloadHotBeanModule(modules[j]);
+                  }
+                  this.unregisterHotBeanModule(modules[j]);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Reinitializes this AbstractHotBeanModuleRepository.
+    */
+   public void reinitialize() {
+      try {
+         this.destroy();
+         this.init();
+      } catch (Exception e) {
+         throw new RuntimeException("Error reinitializing - " + e + "!", e);
+      }
+   }
+
+   /**
+    * Creates HotBeanContext, using the configured factory (see {@link #setHotBeanContextFactory(HotBeanContextFactory)}.
+    */
+   protected HotBeanContext createHotBeanContext(final HotBeanModuleRepository hotBeanModuleRepository,
+            final Manifest moduleManifest, final ClassLoader classLoader) throws Exception {
+      return this.hotBeanContextFactory.createHotBeanContext(hotBeanModuleRepository, moduleManifest, classLoader);
+   }
+
+   /**
+    * Creates HotBeanModuleLoader, using the configured factory (see
+    * {@link #setHotBeanModuleLoaderFactory(HotBeanModuleLoaderFactory)}.
+    */
+   protected HotBeanModuleLoader createHotBeanModuleLoader(final File moduleJarFile, final File tempDir)
+            throws Exception {
+      return this.hotBeanModuleLoaderFactory.createHotBeanModuleLoader(moduleJarFile, tempDir);
+   }
+
+   /* ### HotBeanModuleRepository METHODS BEGIN ### */
+
+   /**
+    * Gets the names of all existing hot bean modules.
+    */
+   public String[] getHotBeanModuleNames() {
+      synchronized (this.lock) {
+         Set moduleNames = (Set) this.moduleRegistry.keySet();
+         if (moduleNames != null) { return (String[]) moduleNames.toArray(new String[] {}); }
+      }
+
+      return new String[0];
+   }
+
+   /**
+    * Gets information about the latest revisions of all existing hot bean modules.
+    */
+   public HotBeanModuleInfo[] getHotBeanModuleInfo() {
+      ArrayList hotBeanModuleInfo = new ArrayList();
+
+      synchronized (this.lock) {
+         Set moduleNames = (Set) this.moduleRegistry.keySet();
+         if (moduleNames != null) {
+            Iterator it = moduleNames.iterator();
+            HotBeanModuleType moduleType;
+            HotBeanModuleInfo moduleInfo;
+
+            while (it.hasNext()) // Iterate over module names
+            {
+               moduleType = (HotBeanModuleType) this.moduleRegistry.get(it.next());
+               if (moduleType != null) {
+                  moduleInfo = moduleType.getCurrentModuleInfo();
+                  if (moduleInfo != null) hotBeanModuleInfo.add(moduleInfo.getClone()); // Get clone of module info
+               }
+            }
+         }
+      }
+
+      return (HotBeanModuleInfo[]) hotBeanModuleInfo.toArray(new HotBeanModuleInfo[0]);
+   }
+
+   /**
+    * Gets information about all revisions for a specific hot bean module.
+    */
+   public HotBeanModuleInfo[] getHotBeanModuleInfo(final String moduleName) {
+      ArrayList hotBeanModuleInfo = new ArrayList();
+
+      synchronized (this.lock) {
+         HotBeanModuleType moduleType = (HotBeanModuleType) this.moduleRegistry.get(moduleName);
+         if (moduleType != null) {
+            HotBeanModuleInfo[] moduleInfo = moduleType.getModuleInfo();
+            for (int i = 0; i < moduleInfo.length; i++) {
+               hotBeanModuleInfo.add(moduleInfo[i].getClone()); // Get clone of module info
+            }
+         }
+      }
+
+      return (HotBeanModuleInfo[]) hotBeanModuleInfo.toArray(new HotBeanModuleInfo[0]);
+   }
+
+   /**
+    * Gets information about the current revisions of a specific hot bean module.
+    */
+   public HotBeanModuleInfo getCurrentHotBeanModuleInfo(String moduleName) {
+      synchronized (this.lock) {
+         HotBeanModuleType hotBeanModuleType = (HotBeanModuleType) this.moduleRegistry.get(moduleName);
+         if (hotBeanModuleType != null) { return hotBeanModuleType.getCurrentModuleInfo(); }
+      }
+
+      return null;
+   }
+
+   /**
+    * Checks if a module with the specified name exists.
+    */
+   public boolean hasHotBeanModule(final String moduleName) {
+      synchronized (this.lock) {
+         return this.moduleRegistry.containsKey(moduleName);
+      }
+   }
+
+   /**
+    * Checks if the specified module contains a bean with the specified name.
+    * 
+    * @since 1.0.1 (20070302)
+    */
+   public boolean hasHotBean(final String moduleName, final String beanName) {
+      HotBeanModule hotBeanModule = getHotBeanModule(moduleName);
+      if ((hotBeanModule != null) && (hotBeanModule.getHotBeanContext() != null)) {
+         return hotBeanModule.getHotBeanContext().hasHotBean(beanName);
+      } else return false;
+   }
+
+   /**
+    * Gets a reference to a the hot bean with the specified name in the specified module. This method will return an
+    * object even if the hot bean module doesn't exist (yet). When invoking methods on the proxy, exceptions of the
+    * types {@link ModuleNotFoundException} and {@link BeanNotFoundException} will be thrown to indicate that the module
+    * or bean wasn't found.
+    */
+   public Object getHotBean(final String moduleName, final String beanName, final Class interfaceClass) {
+      return getHotBeanProxyFactory(moduleName, beanName, new Class[] { interfaceClass }).getProxy();
+   }
+
+   /**
+    * Gets a reference to a the hot bean with the specified name in the specified module. This method will return an
+    * object even if the hot bean module doesn't exist (yet). When invoking methods on the proxy, exceptions of the
+    * types {@link ModuleNotFoundException} and {@link BeanNotFoundException} will be thrown to indicate that the module
+    * or bean wasn't found.
+    */
+   public Object getHotBean(final String moduleName, final String beanName, final Class[] interfaceClasses) {
+      return getHotBeanProxyFactory(moduleName, beanName, interfaceClasses).getProxy();
+   }
+
+   /**
+    * Gets a reference to a the hot bean with the specified name in the newest active version of the specified module
+    * that is in the specified version range (see {@link VersionRange}).
+    * 
+    * @since 1.3
+    */
+   public Object getHotBean(final String moduleName, final String versionRange, final String beanName,
+            final Class interfaceClass) {
+      return getHotBeanProxyFactory(moduleName, versionRange, beanName, new Class[] { interfaceClass }).getProxy();
+   }
+
+   /**
+    * Gets a reference to a the hot bean with the specified name in the newest active version of the specified module
+    * that is in the specified version range (see {@link VersionRange}).
+    * 
+    * @since 1.3
+    */
+   public Object getHotBean(final String moduleName, final String versionRange, final String beanName,
+            final Class[] interfaceClasses) {
+      return getHotBeanProxyFactory(moduleName, versionRange, beanName, interfaceClasses).getProxy();
+   }
+
+   /**
+    * Gets the class name of the bean with the specified name in the specified module.
+    * 
+    * @since 1.0.1 (20070212)
+    */
+   public String getHotBeanClassName(final String moduleName, final String beanName) {
+      HotBeanModule hotBeanModule = getHotBeanModule(moduleName);
+      if ((hotBeanModule != null) && (hotBeanModule.getHotBeanContext() != null)) {
+         return hotBeanModule.getHotBeanContext().getHotBeanClassName(beanName);
+      } else return null;
+   }
+
+   /**
+    * Gets the class of the bean with the specified name in the specified module.
+    * 
+    * @since 1.0.1 (20070212)
+    */
+   public Class getHotBeanClass(final String moduleName, final String beanName) {
+      HotBeanModule hotBeanModule = getHotBeanModule(moduleName);
+      if ((hotBeanModule != null) && (hotBeanModule.getHotBeanContext() != null)) {
+         return hotBeanModule.getHotBeanContext().getHotBeanClass(beanName);
+      } else return null;
    }
 
    /**
@@ -400,109 +1515,760 @@ public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotB
    }
 
    /**
-    * Called to validate a HotBeanProxyFactory and module and bean references.
+    * Gets a HotBeanProxyFactory object used for creating proxies to a hot bean with the specified name in the newest
+    * active version of the specified module that is in the specified version range (see {@link VersionRange}).
+    * 
+    * @since 1.3
+    */
+   public HotBeanProxyFactory getHotBeanProxyFactory(final String moduleName, final String versionRange,
+            final String beanName, final Class[] interfaceClasses) {
+      return new HotBeanProxyFactory(this, moduleName, VersionRange.parse(versionRange), beanName, interfaceClasses);
+   }
+
+   /**
+    * Called to validate a HotBeanProxyFactory and module and bean references.
+    */
+   public void validateHotBeanProxyFactory(final HotBeanProxyFactory hotBeanProxyFactory) {
+      if (hotBeanProxyFactory.getVersionRange() != null) {
+         this.validateVersionedHotBeanProxyFactory(hotBeanProxyFactory);
+         return;
+      }
+
+      boolean hotModuleSwapped = false;
+      HotBeanModule currentModule = hotBeanProxyFactory.getCurrentModule();
+
+      Log logger = this.getLog();
+      if (logger.isDebugEnabled())
+         logger.debug("Validating " + hotBeanProxyFactory + " - current module: " + currentModule + ".");
+
+      if ((currentModule != null) && !currentModule.isActive()) currentModule = null; // If current module is
+                                                                                       // inactive...
+
+      if (currentModule == null) {
+         currentModule = this.getHotBeanModule(hotBeanProxyFactory.getModuleName());
+         hotModuleSwapped = true;
+
+         // Activate the current revision, if not loaded yet (or unloaded because it was idle)
+         if ((currentModule != null) && (currentModule.isUnloaded() || currentModule.isUnloading())
+                  && this.activateHotBeanModule(hotBeanProxyFactory.getModuleName())) {
+            currentModule = this.getHotBeanModule(hotBeanProxyFactory.getModuleName());
+         }
+      }
+
+      // Swap target
+      if (hotModuleSwapped) {
+         if (logger.isDebugEnabled())
+            logger.debug("Swapping module of " + hotBeanProxyFactory + " - new current module: " + currentModule + ".");
+
+         Object hotBean = null;
+
+         // Get bean from hot bean context
+         if (currentModule != null) hotBean = currentModule.getHotBean(hotBeanProxyFactory.getBeanName());
+         hotBeanProxyFactory.updateHotBeanModuleAndBean(currentModule, hotBean);
+      }
+
+      // Route invocations between the baseline and canary revisions, if a canary deployment is in progress
+      if (!this.canaryDeployments.isEmpty() || (hotBeanProxyFactory.getBaselineModule() != null))
+         this.validateCanaryRouting(hotBeanProxyFactory);
+
+      // Mirror invocations to the shadow revision, if a shadow deployment is in progress
+      if (!this.shadowDeployments.isEmpty() || (hotBeanProxyFactory.getShadowModule() != null))
+         this.validateShadowRouting(hotBeanProxyFactory);
+   }
+
+   /**
+    * Validates a HotBeanProxyFactory that resolves to the newest active version of a module in a version range. The
+    * module is resolved again if the current module of the proxy factory is no longer active, or if module revisions
+    * have been registered or unregistered since the module was last resolved.
+    */
+   private void validateVersionedHotBeanProxyFactory(final HotBeanProxyFactory hotBeanProxyFactory) {
+      HotBeanModule currentModule = hotBeanProxyFactory.getCurrentModule();
+      int registrationCount = this.registrationCount;
+      if ((currentModule != null) && currentModule.isActive()
+               && (hotBeanProxyFactory.getResolvedRegistrationCount() == registrationCount)) return;
+
+      HotBeanModule module = this.getHotBeanModule(hotBeanProxyFactory.getModuleName(), hotBeanProxyFactory
+               .getVersionRange());
+
+      Log logger = this.getLog();
+      if (logger.isDebugEnabled())
+         logger.debug("Resolved module of " + hotBeanProxyFactory + " (version range "
+                  + hotBeanProxyFactory.getVersionRange() + ") - new current module: " + module + ".");
+
+      Object hotBean = null;
+      if (module != null) hotBean = module.getHotBean(hotBeanProxyFactory.getBeanName());
+      if ((module != currentModule) || (hotBean == null))
+         hotBeanProxyFactory.updateHotBeanModuleAndBean(module, hotBean);
+      hotBeanProxyFactory.setResolvedRegistrationCount(registrationCount);
+   }
+
+   /**
+    * Validates the reference of a HotBeanProxyFactory to the shadow revision of a shadow deployment.
+    */
+   private void validateShadowRouting(final HotBeanProxyFactory hotBeanProxyFactory) {
+      ShadowDeployment shadowDeployment = this.getShadowDeployment(hotBeanProxyFactory.getModuleName());
+
+      if ((shadowDeployment != null) && shadowDeployment.getShadowModule().isActive()) {
+         HotBeanModule shadowModule = shadowDeployment.getShadowModule();
+         if (hotBeanProxyFactory.getShadowModule() != shadowModule) {
+            hotBeanProxyFactory.updateShadowModuleAndBean(shadowModule, shadowModule.getHotBean(hotBeanProxyFactory
+                     .getBeanName()));
+         }
+         hotBeanProxyFactory.setShadowSampleRate(shadowDeployment.getSampleRate());
+      } else if (hotBeanProxyFactory.getShadowModule() != null)
+         hotBeanProxyFactory.updateShadowModuleAndBean(null, null);
+   }
+
+   /**
+    * Validates the routing of a HotBeanProxyFactory between the baseline and canary revisions of a canary deployment.
+    */
+   private void validateCanaryRouting(final HotBeanProxyFactory hotBeanProxyFactory) {
+      CanaryDeployment canaryDeployment = this.getCanaryDeployment(hotBeanProxyFactory.getModuleName());
+
+      if ((canaryDeployment != null) && canaryDeployment.getBaselineModule().isActive()
+               && canaryDeployment.getCanaryModule().isActive()) {
+         HotBeanModule baselineModule = canaryDeployment.getBaselineModule();
+         HotBeanModule canaryModule = canaryDeployment.getCanaryModule();
+
+         // Proxies that were bound to the baseline revision before the canary deployment started are switched
+         if (hotBeanProxyFactory.getCurrentModule() == baselineModule) {
+            hotBeanProxyFactory.updateHotBeanModuleAndBean(canaryModule, canaryModule.getHotBean(hotBeanProxyFactory
+                     .getBeanName()));
+         }
+
+         if (hotBeanProxyFactory.getCurrentModule() == canaryModule) {
+            if (hotBeanProxyFactory.getBaselineModule() != baselineModule) {
+               hotBeanProxyFactory.updateBaselineModuleAndBean(baselineModule, baselineModule
+                        .getHotBean(hotBeanProxyFactory.getBeanName()));
+            }
+            hotBeanProxyFactory.setCanaryWeight(canaryDeployment.getWeight());
+            return;
+         }
+      }
+
+      if (hotBeanProxyFactory.getBaselineModule() != null) hotBeanProxyFactory.updateBaselineModuleAndBean(null, null);
+   }
+
+   /**
+    * Gets information about the class loaders of unloaded module revisions that are suspected to leak, i.e. class
+    * loaders that are still reachable a number of garbage collection cycles after the module revision was unloaded (see
+    * {@link #setLeakDetectionGcCycles(int)}).
+    * 
+    * @since 1.3
+    */
+   public ClassLoaderLeakInfo[] getClassLoaderLeaks() {
+      return this.classLoaderLeakDetector.getSuspectedLeaks();
+   }
+
+   /**
+    * Called by a HotBeanProxyFactory before a method is invoked on a bean in the specified module. This implementation
+    * records a sample of the invocations, if warm up is enabled.
+    * 
+    * @since 1.3
+    */
+   public void beforeHotBeanInvocation(final HotBeanProxyFactory hotBeanProxyFactory,
+            final HotBeanModule hotBeanModule, final Method method, final Object[] arguments) {
+      if (this.warmUpEnabled && ((++this.invocationSampleCounter % this.warmUpSampleInterval) == 0)) {
+         this.getInvocationRecorder(hotBeanModule.getName(), true).record(hotBeanProxyFactory.getBeanName(), method,
+                  arguments);
+      }
+   }
+
+   /**
+    * Called by a HotBeanProxyFactory after a method has been invoked on a bean in the specified module. This
+    * implementation records the invocation in the statistics of the canary deployment in progress for the module, if
+    * any, and in the statistics of the revision, if automatic rollback is enabled.
+    * 
+    * @since 1.3
+    */
+   public void afterHotBeanInvocation(final HotBeanProxyFactory hotBeanProxyFactory,
+            final HotBeanModule hotBeanModule, final Method method, final long invocationTime, final Throwable error) {
+      if (!this.canaryDeployments.isEmpty()) {
+         CanaryDeployment canaryDeployment = this.getCanaryDeployment(hotBeanModule.getName());
+         if (canaryDeployment != null) canaryDeployment.recordInvocation(hotBeanModule, invocationTime, error != null);
+      }
+      if (!this.revisionStatistics.isEmpty()) {
+         InvocationStatistics statistics = this.getInvocationStatistics(hotBeanModule.getName(), hotBeanModule
+                  .getRevision());
+         if (statistics != null) statistics.record(invocationTime, error != null);
+      }
+   }
+
+   /**
+    * Called by a HotBeanProxyFactory before a method is invoked on a bean in the current module, if the invocation is to
+    * be mirrored to the shadow module of a shadow deployment. This implementation serializes the arguments, so that the
+    * mirrored invocation never shares argument objects with the caller, and receives them as they were before the
+    * invocation of the current module. Invocations whose arguments aren't serializable are recorded as dropped.
+    * 
+    * @return the serialized arguments (<code>byte[]</code>), or <code>null</code> if the invocation isn't to be
+    *         mirrored.
+    * @since 1.3
+    */
+   public Object copyShadowInvocationArguments(final HotBeanProxyFactory hotBeanProxyFactory,
+            final HotBeanModule shadowModule, final Method method, final Object[] arguments) {
+      ShadowDeployment shadowDeployment = this.getShadowDeployment(shadowModule.getName());
+      if ((shadowDeployment == null) || (shadowDeployment.getShadowModule() != shadowModule)) return null;
+
+      try {
+         if (!SerializationUtils.isSerializable(arguments)) throw new NotSerializableException();
+         return SerializationUtils.serialize(arguments);
+      } catch (IOException ioe) {
+         Log logger = this.getLog();
+         if (logger.isDebugEnabled())
+            logger.debug("Not mirroring invocation of " + method + " to " + shadowModule.toString(false)
+                     + " - arguments not serializable (" + ioe + ").");
+         shadowDeployment.recordDroppedInvocation();
+         return null;
+      }
+   }
+
+   /**
+    * Called by a HotBeanProxyFactory after a method has been invoked on a bean in the current module, to mirror the
+    * invocation to the shadow module of a shadow deployment. This implementation queues the mirrored invocation in the
+    * {@link ShadowInvocationExecutor} of this repository, or records it as dropped if the executor is saturated. The
+    * arguments are deserialized, using the class loader of the shadow module, by the thread performing the mirrored
+    * invocation.
+    * 
+    * @param argumentsCopy the serialized arguments, returned by
+    *           {@link #copyShadowInvocationArguments(HotBeanProxyFactory, HotBeanModule, Method, Object[])}.
+    * @since 1.3
+    */
+   public void mirrorHotBeanInvocation(final HotBeanProxyFactory hotBeanProxyFactory, final HotBeanModule shadowModule,
+            final Object shadowBean, final Method method, final Object argumentsCopy, final Object result,
+            final Throwable error, final long invocationTime) {
+      final ShadowDeployment shadowDeployment = this.getShadowDeployment(shadowModule.getName());
+      if ((shadowDeployment == null) || (shadowDeployment.getShadowModule() != shadowModule)
+               || !(argumentsCopy instanceof byte[])) return;
+      final byte[] serializedArguments = (byte[]) argumentsCopy;
+
+      Runnable mirroredInvocation = new Runnable() {
+
+         public void run() {
+            HotBeanModuleLoader hotBeanModuleLoader = shadowModule.getHotBeanModuleLoader();
+            if (hotBeanModuleLoader == null) return; // Shadow deployment stopped
+
+            Object[] shadowArguments;
+            try {
+               shadowArguments = (Object[]) SerializationUtils.deserialize(serializedArguments, hotBeanModuleLoader
+                        .getClassLoader());
+            } catch (Exception e) {
+               getLog().warn("Unable to copy arguments of mirrored invocation of " + method + " - " + e + "!");
+               shadowDeployment.recordDroppedInvocation();
+               return;
+            }
+
+            shadowDeployment.invokeShadow(shadowBean, method, shadowArguments, result, error, invocationTime);
+         }
+      };
+      if (!this.shadowInvocationExecutor.execute(mirroredInvocation)) shadowDeployment.recordDroppedInvocation();
+   }
+
+   /* ### HotBeanModuleRepository METHODS END ### */
+
+   /* ### INTERNAL/SUBCLASS METHODS BEGIN ### */
+
+   /**
+    * Creates an unloaded {@link HotBeanModule}. This method is provided for use by sub classes to create a new
+    * HotBeanModule.
+    */
+   protected HotBeanModule createHotBeanModule(HotBeanModuleInfo hotBeanModuleInfo) {
+      return new HotBeanModule(hotBeanModuleInfo);
+   }
+
+   /**
+    * Creates a loaded and active {@link HotBeanModule}. This method is provided for use by sub classes to create a new
+    * HotBeanModule.
+    */
+   protected HotBeanModule createHotBeanModule(HotBeanModuleInfo hotBeanModuleInfo,
+            HotBeanModuleLoader hotBeanModuleLoader, HotBeanContext hotBeanContext) {
+      return new HotBeanModule(hotBeanModuleInfo, hotBeanModuleLoader, hotBeanContext);
+   }
+
+   /**
+    * Gets the {@link HotBeanModule} with the specified name.
+    */
+   protected HotBeanModule getHotBeanModule(final String moduleName) {
+      synchronized (this.lock) {
+         HotBeanModuleType hotBeanModuleType = (HotBeanModuleType) this.moduleRegistry.get(moduleName);
+         if (hotBeanModuleType != null) { return hotBeanModuleType.getCurrentModule(); }
+      }
+
+      return null;
+   }
+
+   /**
+    * Gets the newest active version of the module with the specified name that is in the specified version range. If
+    * side by side versions are enabled, and the latest revision of the newest version in the range has been unloaded,
+    * it is activated through {@link #activateHotBeanModuleRevision(HotBeanModule)}. Otherwise, the latest revision of
+    * the newest version in the range that is active is returned.
+    * 
+    * @return the module revision, or <code>null</code> if no active version of the module is in the version range.
+    * @since 1.3
+    */
+   protected HotBeanModule getHotBeanModule(final String moduleName, final VersionRange versionRange) {
+      return this.resolveHotBeanModule(moduleName, versionRange, this.sideBySideVersionsEnabled);
+   }
+
+   /**
+    * Resolves the newest active version of a module in a version range, optionally activating the latest revision of
+    * the newest version in the range.
+    */
+   private HotBeanModule resolveHotBeanModule(final String moduleName, final VersionRange versionRange,
+            final boolean activate) {
+      HotBeanModule[] modules = this.getHotBeanModules(moduleName);
+
+      // Find the latest revision of each version in the range, from the newest to the oldest version
+      ArrayList candidates = new ArrayList();
+      for (int r = modules.length - 1; r >= 0; r--) {
+         if (!versionRange.includes(modules[r].getVersion()) || !isLatestRevisionOfVersion(modules[r], modules))
+            continue;
+
+         int index = 0;
+         while ((index < candidates.size())
+                  && (VersionRange.compareVersions(((HotBeanModule) candidates.get(index)).getVersion(), modules[r]
+                           .getVersion()) > 0)) {
+            index++;
+         }
+         candidates.add(index, modules[r]);
+      }
+
+      HotBeanModule module;
+      for (int i = 0; i < candidates.size(); i++) {
+         module = (HotBeanModule) candidates.get(i);
+         if (module.isActive()) return module;
+         else if ((i == 0) && activate && (module.isUnloaded() || module.isUnloading())
+                  && this.activateHotBeanModuleRevision(module)) return this.resolveHotBeanModule(moduleName,
+                  versionRange, false);
+      }
+
+      return null;
+   }
+
+   /**
+    * Checks if the specified module revision is the latest of the specified revisions with the same version.
+    */
+   private static boolean isLatestRevisionOfVersion(final HotBeanModule module, final HotBeanModule[] modules) {
+      for (int r = 0; r < modules.length; r++) {
+         if ((modules[r] != null) && (modules[r].getRevision() > module.getRevision())
+                  && isSameVersion(modules[r], module)) return false;
+      }
+      return true;
+   }
+
+   /**
+    * Checks if two module revisions have the same version. Revisions without version only have the same version as
+    * other revisions without version.
+    */
+   private static boolean isSameVersion(final HotBeanModule module, final HotBeanModule otherModule) {
+      if (otherModule == null) return false;
+      else if ((module.getVersion() == null) || (otherModule.getVersion() == null))
+         return (module.getVersion() == null) && (otherModule.getVersion() == null);
+      else return VersionRange.compareVersions(module.getVersion(), otherModule.getVersion()) == 0;
+   }
+
+   /**
+    * Gets the HotBeanModuleType, containing information about all modules (revisions) associated with a specific module
+    * name. Note that the returned object must not be manipulated without holding a lock on {@link #lock}.
+    */
+   protected HotBeanModuleType getHotBeanModuleType(final String moduleName) {
+      synchronized (this.lock) {
+         return (HotBeanModuleType) this.moduleRegistry.get(moduleName);
+      }
+   }
+
+   /**
+    * Gets all revisions of a module with the specified name.
+    */
+   protected HotBeanModule[] getHotBeanModules(final String moduleName) {
+      synchronized (this.lock) {
+         HotBeanModuleType hotBeanModuleType = this.getHotBeanModuleType(moduleName);
+         if (hotBeanModuleType != null) return hotBeanModuleType.getModules();
+      }
+
+      return new HotBeanModule[0];
+   }
+
+   /**
+    * Registers a module revision.
+    */
+   protected void registerHotBeanModule(final HotBeanModule module) {
+      Log logger = this.getLog();
+      if (logger.isDebugEnabled()) logger.debug("Registering module " + module.toString(false) + ".");
+
+      synchronized (this.lock) {
+         final String moduleName = module.getName();
+         HotBeanModuleType hotBeanModuleType = this.getHotBeanModuleType(moduleName);
+         if (hotBeanModuleType == null) {
+            hotBeanModuleType = new HotBeanModuleType(moduleName);
+            this.moduleRegistry.put(moduleName, hotBeanModuleType);
+         }
+
+         // Replace a previous registration of the revision (i.e. an unloaded revision that is activated), or add as the
+         // last module revision
+         HotBeanModule previousModule = hotBeanModuleType.getCurrentModule();
+         this.registrationCount++;
+         if (!hotBeanModuleType.replaceModule(module)) {
+            hotBeanModuleType.addModule(module);
+            this.updateCanaryDeployment(previousModule, module);
+            this.updateRevisionStatistics(previousModule, module);
+         }
+      }
+   }
+
+   /**
+    * Starts collecting invocation statistics for a new revision of a module, if automatic rollback is enabled, and
+    * starts watching the new revision for regressions compared with the previous revision. No watch is started for a
+    * revision created by an automatic rollback.
+    */
+   private void updateRevisionStatistics(final HotBeanModule previousModule, final HotBeanModule module) {
+      final String moduleName = module.getName();
+      InvocationStatistics[] previousStatistics = (InvocationStatistics[]) this.revisionStatistics.get(moduleName);
+      if (!this.autoRollbackEnabled) {
+         if (previousStatistics != null) this.putRevisionStatistics(moduleName, null);
+         return;
+      }
+
+      InvocationStatistics baselineStatistics = null;
+      if ((previousStatistics != null) && (previousModule != null)
+               && (previousStatistics[0].getRevision() == previousModule.getRevision()))
+         baselineStatistics = previousStatistics[0];
+
+      InvocationStatistics statistics = new InvocationStatistics(module.getRevision());
+      this.putRevisionStatistics(moduleName, new InvocationStatistics[] { statistics, baselineStatistics });
+
+      this.regressionWatches.remove(moduleName);
+      if ((baselineStatistics != null) && module.isActive() && !this.autoRollbacksInProgress.contains(moduleName)) {
+         this.regressionWatches.put(moduleName, new RegressionWatch(moduleName, baselineStatistics, statistics));
+
+         Log logger = this.getLog();
+         if (logger.isInfoEnabled())
+            logger.info("Watching module " + module.toString(false) + " for regressions compared with rev. "
+                     + previousModule.getRevision() + ".");
+      }
+   }
+
+   /**
+    * Registers (or removes, if <code>null</code>) the invocation statistics of the current and the previous revision of
+    * a module. The map of statistics is copied on write, so that it may be read without holding the lock.
     */
-   public void validateHotBeanProxyFactory(final HotBeanProxyFactory hotBeanProxyFactory) {
-      boolean hotModuleSwapped = false;
-      HotBeanModule currentModule = hotBeanProxyFactory.getCurrentModule();
+   private void putRevisionStatistics(final String moduleName, final InvocationStatistics[] statistics) {
+      synchronized (this.lock) {
+         HashMap revisionStatistics = new HashMap(this.revisionStatistics);
+         if (statistics != null) revisionStatistics.put(moduleName, statistics);
+         else revisionStatistics.remove(moduleName);
+         this.revisionStatistics = revisionStatistics;
+      }
+   }
 
+   /**
+    * Starts a shadow deployment, in which a share of the invocations of the current revision of a module is mirrored to
+    * the specified loaded, but not registered, shadow revision. A shadow deployment already in progress for the module
+    * is stopped. This method is provided for use by sub classes, which are responsible for loading the shadow revision.
+    * 
+    * @since 1.3
+    */
+   protected ShadowDeployment startShadowDeployment(final HotBeanModule shadowModule) {
       Log logger = this.getLog();
-      if (logger.isDebugEnabled())
-         logger.debug("Validating " + hotBeanProxyFactory + " - current module: " + currentModule + ".");
+      final String moduleName = shadowModule.getName();
 
-      if ((currentModule != null) && !currentModule.isActive()) currentModule = null; // If current module is
-                                                                                       // inactive...
+      synchronized (this.lock) {
+         if (this.getShadowDeployment(moduleName) != null) this.stopShadowDeployment(moduleName);
 
-      if (currentModule == null) {
-         currentModule = this.getHotBeanModule(hotBeanProxyFactory.getModuleName());
-         hotModuleSwapped = true;
+         ShadowDeployment shadowDeployment = new ShadowDeployment(shadowModule, this.defaultShadowSampleRate);
+         this.putShadowDeployment(moduleName, shadowDeployment);
+
+         if (logger.isInfoEnabled()) logger.info("Starting shadow deployment - " + shadowDeployment + ".");
+
+         return shadowDeployment;
       }
+   }
 
-      // Swap target
-      if (hotModuleSwapped) {
-         if (logger.isDebugEnabled())
-            logger.debug("Swapping module of " + hotBeanProxyFactory + " - new current module: " + currentModule + ".");
+   /**
+    * Registers (or removes, if <code>null</code>) the shadow deployment of a module. The map of shadow deployments is
+    * copied on write, so that it may be read without holding the lock.
+    */
+   private void putShadowDeployment(final String moduleName, final ShadowDeployment shadowDeployment) {
+      synchronized (this.lock) {
+         HashMap shadowDeployments = new HashMap(this.shadowDeployments);
+         if (shadowDeployment != null) shadowDeployments.put(moduleName, shadowDeployment);
+         else shadowDeployments.remove(moduleName);
+         this.shadowDeployments = shadowDeployments;
+      }
+   }
 
-         Object hotBean = null;
+   /**
+    * Ends the canary deployment in progress for a module (if any) when a new revision is registered, and starts a new
+    * canary deployment, if enabled. The baseline of the new canary deployment is the baseline of the ended canary
+    * deployment, if still active, or else the previous current revision.
+    */
+   private void updateCanaryDeployment(final HotBeanModule previousModule, final HotBeanModule module) {
+      CanaryDeployment previousCanaryDeployment = this.getCanaryDeployment(module.getName());
+      HotBeanModule baselineModule = previousModule;
+      if ((previousCanaryDeployment != null) && previousCanaryDeployment.getBaselineModule().isActive())
+         baselineModule = previousCanaryDeployment.getBaselineModule();
+
+      CanaryDeployment canaryDeployment = null;
+      if (this.canaryEnabled && ((previousCanaryDeployment == null) || !previousCanaryDeployment.isAborting())
+               && (baselineModule != null) && baselineModule.isActive() && module.isActive()) {
+         canaryDeployment = new CanaryDeployment(baselineModule, module, this.defaultCanaryWeight);
+
+         Log logger = this.getLog();
+         if (logger.isInfoEnabled()) logger.info("Starting canary deployment - " + canaryDeployment + ".");
+      }
 
-         // Get bean from hot bean context
-         if (currentModule != null) hotBean = currentModule.getHotBean(hotBeanProxyFactory.getBeanName());
-         hotBeanProxyFactory.updateHotBeanModuleAndBean(currentModule, hotBean);
+      if ((previousCanaryDeployment != null) || (canaryDeployment != null))
+         this.putCanaryDeployment(module.getName(), canaryDeployment);
+   }
+
+   /**
+    * Registers (or removes, if <code>null</code>) the canary deployment of a module. The map of canary deployments is
+    * copied on write, so that it may be read without holding the lock.
+    */
+   private void putCanaryDeployment(final String moduleName, final CanaryDeployment canaryDeployment) {
+      synchronized (this.lock) {
+         HashMap canaryDeployments = new HashMap(this.canaryDeployments);
+         if (canaryDeployment != null) canaryDeployments.put(moduleName, canaryDeployment);
+         else canaryDeployments.remove(moduleName);
+         this.canaryDeployments = canaryDeployments;
       }
    }
 
-   /* ### HotBeanModuleRepository METHODS END ### */
+   /**
+    * Checks if the specified module revision is the baseline revision of a canary deployment in progress.
+    */
+   private boolean isCanaryBaseline(final HotBeanModule module) {
+      CanaryDeployment canaryDeployment = this.getCanaryDeployment(module.getName());
+      return (canaryDeployment != null) && (canaryDeployment.getBaselineModule() == module);
+   }
 
-   /* ### INTERNAL/SUBCLASS METHODS BEGIN ### */
+   /**
+    * Registers the {@link ModuleClassTransformer}s configured for this repository, as well as the transformers
+    * specified in the manifest of the module, with the specified loader. This method must be called before any classes
+    * are loaded through the loader, and does nothing if the loader isn't a {@link JarFileHotBeanModuleLoader}.
+    */
+   protected void configureClassTransformers(final String moduleName, final long revision,
+            final HotBeanModuleLoader hotBeanModuleLoader, final Manifest moduleManifest) throws Exception {
+      if (!(hotBeanModuleLoader instanceof JarFileHotBeanModuleLoader)) return;
+      JarFileHotBeanModuleLoader jarFileHotBeanModuleLoader = (JarFileHotBeanModuleLoader) hotBeanModuleLoader;
+
+      if (this.classTransformers != null) {
+         for (int i = 0; i < this.classTransformers.size(); i++) {
+            jarFileHotBeanModuleLoader.addClassTransformer((ModuleClassTransformer) this.classTransformers.get(i));
+         }
+      }
+
+      String[] classTransformerClassNames = ModuleManifestUtils.getClassTransformers(moduleManifest);
+      for (int i = 0; i < classTransformerClassNames.length; i++) {
+         Class classTransformerClass = ClassUtils.forName(classTransformerClassNames[i].trim());
+         if (!ModuleClassTransformer.class.isAssignableFrom(classTransformerClass)) {
+            throw new HotBeansException("Class transformer '" + classTransformerClassNames[i]
+                     + "' specified in manifest of module '" + moduleName + "' doesn't implement "
+                     + ModuleClassTransformer.class.getName() + "!");
+         }
+         jarFileHotBeanModuleLoader.addClassTransformer((ModuleClassTransformer) classTransformerClass.newInstance());
+      }
+
+      Log logger = this.getLog();
+      if (logger.isDebugEnabled() && (jarFileHotBeanModuleLoader.getClassTransformers().length > 0))
+         logger.debug("Using " + jarFileHotBeanModuleLoader.getClassTransformers().length
+                  + " class transformers for module '" + moduleName + "', revision " + revision + ".");
+   }
 
    /**
-    * Creates an unloaded {@link HotBeanModule}. This method is provided for use by sub classes to create a new
-    * HotBeanModule.
+    * Checks if lazy initialization is to be used for a module with the specified manifest. The manifest attribute
+    * {@link ModuleManifestUtils#LAZY_INIT_ATTRIBUTE} takes precedence over the repository setting
+    * {@link #isLazyInitEnabled()}.
     */
-   protected HotBeanModule createHotBeanModule(HotBeanModuleInfo hotBeanModuleInfo) {
-      return new HotBeanModule(hotBeanModuleInfo);
+   protected boolean isLazyInit(final Manifest moduleManifest) {
+      Boolean lazyInit = ModuleManifestUtils.getLazyInit(moduleManifest);
+      return (lazyInit != null) ? lazyInit.booleanValue() : this.lazyInitEnabled;
    }
 
    /**
-    * Creates a loaded and active {@link HotBeanModule}. This method is provided for use by sub classes to create a new
-    * HotBeanModule.
+    * Gets the {@link InvocationRecorder} used to record invocations for warm up of the module with the specified name.
     */
-   protected HotBeanModule createHotBeanModule(HotBeanModuleInfo hotBeanModuleInfo,
-            HotBeanModuleLoader hotBeanModuleLoader, HotBeanContext hotBeanContext) {
-      return new HotBeanModule(hotBeanModuleInfo, hotBeanModuleLoader, hotBeanContext);
+   protected InvocationRecorder getInvocationRecorder(final String moduleName, final boolean create) {
+      // No lock needed for lookup, since copied on write
+      InvocationRecorder invocationRecorder = (InvocationRecorder) this.invocationRecorders.get(moduleName);
+      if ((invocationRecorder == null) && create) {
+         // The repository lock isn't used here, since it may be held while a new revision is warmed up
+         synchronized (this.invocationRecordersLock) {
+            invocationRecorder = (InvocationRecorder) this.invocationRecorders.get(moduleName);
+            if (invocationRecorder == null) {
+               invocationRecorder = new InvocationRecorder(moduleName, this.warmUpSampleSize);
+               HashMap invocationRecorders = new HashMap(this.invocationRecorders);
+               invocationRecorders.put(moduleName, invocationRecorder);
+               this.invocationRecorders = invocationRecorders;
+            }
+         }
+      }
+      return invocationRecorder;
    }
 
    /**
-    * Gets the {@link HotBeanModule} with the specified name.
+    * Removes the {@link InvocationRecorder} of the module with the specified name, if any.
     */
-   protected HotBeanModule getHotBeanModule(final String moduleName) {
-      synchronized (this.lock) {
-         HotBeanModuleType hotBeanModuleType = (HotBeanModuleType) this.moduleRegistry.get(moduleName);
-         if (hotBeanModuleType != null) { return hotBeanModuleType.getCurrentModule(); }
+   private void removeInvocationRecorder(final String moduleName) {
+      synchronized (this.invocationRecordersLock) {
+         if (this.invocationRecorders.containsKey(moduleName)) {
+            HashMap invocationRecorders = new HashMap(this.invocationRecorders);
+            invocationRecorders.remove(moduleName);
+            this.invocationRecorders = invocationRecorders;
+         }
       }
+   }
 
-      return null;
+   /**
+    * Warms up a new, not yet current, module revision by replaying the invocations recorded for the module against the
+    * specified context. This method does nothing if warm up is disabled or if no invocations have been recorded.
+    */
+   protected void warmUpModule(final String moduleName, final long revision, final HotBeanContext hotBeanContext,
+            final ClassLoader classLoader) {
+      if (!this.warmUpEnabled) return;
+
+      InvocationRecorder invocationRecorder = this.getInvocationRecorder(moduleName, false);
+      if ((invocationRecorder == null) || (invocationRecorder.getRecordedInvocationCount() == 0)) return;
+
+      Log logger = this.getLog();
+      if (logger.isInfoEnabled())
+         logger.info("Warming up module '" + moduleName + "', revision " + revision + " by replaying "
+                  + invocationRecorder.getRecordedInvocationCount() + " recorded invocations.");
+
+      InvocationRecorder.ReplayResult replayResult = invocationRecorder.replay(hotBeanContext, classLoader,
+               this.warmUpIterations, this.warmUpDuration);
+
+      if (logger.isInfoEnabled())
+         logger.info("Warm up of module '" + moduleName + "', revision " + revision + " complete - "
+                  + replayResult.getInvocationCount() + " invocations (" + replayResult.getErrorCount() + " errors) in "
+                  + replayResult.getIterationCount() + " iterations, " + replayResult.getReplayTime() + " ms.");
    }
 
    /**
-    * Gets the HotBeanModuleType, containing information about all modules (revisions) associated with a specific module
-    * name. Note that the returned object must not be manipulated without holding a lock on {@link #lock}.
+    * Gets the shared context of the module with the specified name. The shared context holds revision independent
+    * beans (such as connection pools, thread pools and clients), that survive updates of the module. The context is
+    * created, when the first revision of the module is loaded, from the file {@link #SHARED_CONTEXT_FILE_NAME} in the
+    * module jar file, and is destroyed when the module is removed. Changes to the shared context file in later
+    * revisions of the module have no effect until the module is removed and added again.<br>
+    * <br>
+    * In order not to retain the class loader of the revision from which it was created, the bean classes of the shared
+    * context are loaded by the class loader of the repository, which means that they must be available on the class
+    * path of the host application.
+    * 
+    * @return the shared context, or <code>null</code> if the module doesn't have a shared context.
+    * @since 1.3
     */
-   protected HotBeanModuleType getHotBeanModuleType(final String moduleName) {
+   protected ApplicationContext getSharedContext(final String moduleName, final ClassLoader moduleClassLoader,
+            final ApplicationContext parentApplicationContext) {
       synchronized (this.lock) {
-         return (HotBeanModuleType) this.moduleRegistry.get(moduleName);
+         ConfigurableApplicationContext sharedContext = (ConfigurableApplicationContext) this.sharedContexts
+                  .get(moduleName);
+         if (sharedContext != null) return sharedContext;
+
+         // Only look for the shared context file in the module itself
+         URL sharedContextUrl = (moduleClassLoader instanceof URLClassLoader) ? ((URLClassLoader) moduleClassLoader)
+                  .findResource(SHARED_CONTEXT_FILE_NAME) : moduleClassLoader.getResource(SHARED_CONTEXT_FILE_NAME);
+         if (sharedContextUrl == null) return null;
+
+         Log logger = this.getLog();
+         if (logger.isInfoEnabled()) logger.info("Creating shared context for module '" + moduleName + "'.");
+
+         GenericApplicationContext genericApplicationContext = new GenericApplicationContext(parentApplicationContext);
+         XmlBeanDefinitionReader beanDefinitionReader = new XmlBeanDefinitionReader(genericApplicationContext);
+         beanDefinitionReader.setBeanClassLoader(this.getClass().getClassLoader());
+         beanDefinitionReader.loadBeanDefinitions(new UrlResource(sharedContextUrl));
+         genericApplicationContext.refresh();
+
+         this.sharedContexts.put(moduleName, genericApplicationContext);
+
+         return genericApplicationContext;
       }
    }
 
    /**
-    * Gets all revisions of a module with the specified name.
+    * Destroys the shared context of the module with the specified name, if any.
+    * 
+    * @since 1.3
     */
-   protected HotBeanModule[] getHotBeanModules(final String moduleName) {
+   protected void destroySharedContext(final String moduleName) {
+      ConfigurableApplicationContext sharedContext;
       synchronized (this.lock) {
-         HotBeanModuleType hotBeanModuleType = this.getHotBeanModuleType(moduleName);
-         if (hotBeanModuleType != null) return hotBeanModuleType.getModules();
+         sharedContext = (ConfigurableApplicationContext) this.sharedContexts.remove(moduleName);
       }
 
-      return new HotBeanModule[0];
+      if (sharedContext != null) {
+         Log logger = this.getLog();
+         if (logger.isInfoEnabled()) logger.info("Destroying shared context for module '" + moduleName + "'.");
+
+         try {
+            sharedContext.close();
+         } catch (Exception e) {
+            logger.warn("Error destroying shared context for module '" + moduleName + "' - " + e + "!", e);
+         }
+      }
    }
 
    /**
-    * Registers a module revision.
+    * Called to activate (load) the current revision of a module, that has been registered without being loaded, when
+    * it is first accessed through a hot bean proxy. Implementations must make sure that concurrent callers share a
+    * single load of the module. This implementation does nothing, and returns <code>false</code>.
+    * 
+    * @return <code>true</code> if the module was activated, otherwise <code>false</code>.
+    * @since 1.3
     */
-   protected void registerHotBeanModule(final HotBeanModule module) {
-      Log logger = this.getLog();
-      if (logger.isDebugEnabled()) logger.debug("Registering module " + module.toString(false) + ".");
+   protected boolean activateHotBeanModule(final String moduleName) {
+      return false;
+   }
 
-      synchronized (this.lock) {
-         final String moduleName = module.getName();
-         HotBeanModuleType hotBeanModuleType = this.getHotBeanModuleType(moduleName);
-         if (hotBeanModuleType == null) {
-            hotBeanModuleType = new HotBeanModuleType(moduleName);
-            this.moduleRegistry.put(moduleName, hotBeanModuleType);
-         }
+   /**
+    * Called to activate (load again) the specified unloaded revision of a module, which is the latest revision of a
+    * version that is kept active side by side with the current revision (see {@link #isSideBySideVersionsEnabled()}).
+    * This implementation does nothing, and returns <code>false</code>.
+    * 
+    * @return <code>true</code> if the revision was activated, otherwise <code>false</code>.
+    * @since 1.3
+    */
+   protected boolean activateHotBeanModuleRevision(final HotBeanModule module) {
+      return false;
+   }
+
+   /**
+    * Called to unload the current revision of a module that has been idle longer than {@link #getIdleUnloadTimeout()}
+    * milliseconds, or the latest revision of a version that is kept active side by side with the current revision.
+    * Implementations must make sure that the revision is activated again through {@link #activateHotBeanModule(String)}
+    * (or {@link #activateHotBeanModuleRevision(HotBeanModule)}, if it isn't the current revision) when it is next
+    * accessed. This method is invoked while holding the lock of this repository and of the module. This implementation
+    * does nothing, and returns <code>false</code>.
+    * 
+    * @return <code>true</code> if the module was unloaded, otherwise <code>false</code>.
+    * @since 1.3
+    */
+   protected boolean unloadIdleModule(final HotBeanModule module) {
+      return false;
+   }
+
+   /**
+    * Hands over the state of the {@link StatefulHotBean}s of the current revision of a module to the specified
+    * context of a new, not yet current, revision. This method does nothing if state handover is disabled or if there is
+    * no active current revision.
+    */
+   protected void handOverState(final String moduleName, final long revision, final HotBeanContext hotBeanContext) {
+      if (!this.stateHandoverEnabled) return;
 
-         hotBeanModuleType.addModule(module); // Add as the last module revision
+      HotBeanModule currentModule = this.getHotBeanModule(moduleName);
+      if ((currentModule == null) || !currentModule.isActive()) return;
+      HotBeanContext currentContext = currentModule.getHotBeanContext();
+      if (currentContext == null) return;
+
+      StateHandover.Result result = new StateHandover(moduleName, this.stateHandoverMaxSize, this.stateHandoverTimeout)
+               .transfer(currentModule.getRevision(), currentContext, revision, hotBeanContext);
+
+      synchronized (this.lock) {
+         this.stateHandoverResults.put(moduleName, result);
       }
+
+      Log logger = this.getLog();
+      if (result.isBudgetExceeded()) logger.warn("State handover budget exceeded - " + result + ".");
+      else if (logger.isInfoEnabled()) logger.info("State handover complete - " + result + ".");
    }
 
    /**
@@ -517,12 +2283,42 @@ public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotB
          HotBeanModuleType hotBeanModuleType = this.getHotBeanModuleType(moduleName);
          if (hotBeanModuleType != null) {
             hotBeanModuleType.removeModule(module);
-            if (hotBeanModuleType.moduleCount() == 0) this.moduleRegistry.remove(moduleName); // If no revisions left
-                                                                                                // - remove key
+            this.registrationCount++;
+
+            CanaryDeployment canaryDeployment = this.getCanaryDeployment(moduleName);
+            if ((canaryDeployment != null)
+                     && ((canaryDeployment.getBaselineModule() == module) || (canaryDeployment
+                              .getCanaryModule() == module)))
+               this.putCanaryDeployment(moduleName, null); // End canary deployment if any of its revisions is removed
+            if (hotBeanModuleType.moduleCount() == 0) // If no revisions left - remove key
+            {
+               this.moduleRegistry.remove(moduleName);
+               this.removeInvocationRecorder(moduleName);
+               this.stateHandoverResults.remove(moduleName);
+               this.moduleCaches.remove(moduleName);
+               this.regressionWatches.remove(moduleName);
+               if (this.revisionStatistics.containsKey(moduleName)) this.putRevisionStatistics(moduleName, null);
+               if (this.getShadowDeployment(moduleName) != null) this.stopShadowDeployment(moduleName);
+               this.destroySharedContext(moduleName);
+            }
          }
       }
    }
 
+   /**
+    * Unloads a module revision, using the {@link ModuleUnloadExecutor} of this repository, and starts tracking its
+    * class loader in the {@link ClassLoaderLeakDetector}.
+    */
+   protected void unloadHotBeanModule(final HotBeanModule module) {
+      HotBeanModuleLoader hotBeanModuleLoader = module.getHotBeanModuleLoader();
+      if (hotBeanModuleLoader != null) {
+         this.classLoaderLeakDetector.retire(module.getName(), module.getRevision(), hotBeanModuleLoader
+                  .getClassLoader());
+      }
+
+      module.unload(this.moduleUnloadExecutor);
+   }
+
    /**
     * Checks if the specified module revision is the current revision of the module type.
     */
@@ -544,6 +2340,47 @@ public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotB
       }
    }
 
+   /**
+    * Gets the standby revision of the module with the specified name, i.e. the most recent loaded revision that isn't
+    * current, provided that it was made inactive less than {@link #getStandbyGracePeriod()} milliseconds ago. Revisions
+    * kept active as the latest revision of another version (see {@link #isSideBySideVersionsEnabled()}) are never
+    * standby revisions. Returns <code>null</code> if standby revisions are disabled or if there is no standby revision.
+    * 
+    * @since 1.3
+    */
+   protected HotBeanModule getStandbyModule(final String moduleName) {
+      // The baseline revision of a canary deployment is always available as standby revision
+      CanaryDeployment canaryDeployment = this.getCanaryDeployment(moduleName);
+      if ((canaryDeployment != null) && canaryDeployment.getBaselineModule().isActive())
+         return canaryDeployment.getBaselineModule();
+
+      if (this.standbyGracePeriod <= 0) return null;
+
+      synchronized (this.lock) {
+         HotBeanModuleType moduleType = this.getHotBeanModuleType(moduleName);
+         if ((moduleType == null) || moduleType.isRemoveType()) return null;
+
+         HotBeanModule currentModule = moduleType.getCurrentModule();
+         HotBeanModule[] modules = moduleType.getModules();
+
+         for (int r = modules.length - 1; r >= 0; r--) {
+            if ((modules[r] != null) && !modules[r].equals(currentModule)) {
+               if (modules[r].isActive()) {
+                  if (this.sideBySideVersionsEnabled && isLatestRevisionOfVersion(modules[r], modules)
+                           && !isSameVersion(modules[r], currentModule)) continue; // Kept active side by side
+                  return modules[r]; // Obsolete, but not yet marked as inactive
+               }
+               else if (modules[r].isInactive()) {
+                  long inactiveTime = System.currentTimeMillis() - modules[r].getLastStateChange();
+                  return (inactiveTime < this.standbyGracePeriod) ? modules[r] : null;
+               }
+            }
+         }
+
+         return null;
+      }
+   }
+
    /**
     * Checks for obsolete modules.
     */
@@ -573,6 +2410,7 @@ public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotB
          HotBeanModule[] modules = this.getHotBeanModules(moduleName); // Get all revisions for module name
          HotBeanModuleType moduleType = this.getHotBeanModuleType(moduleName);
          boolean isRemoveType = moduleType.isRemoveType();
+         HotBeanModule standbyModule = this.getStandbyModule(moduleName);
 
          for (int r = 0; r < modules.length; r++) {
             if (modules[r] != null) {
@@ -590,18 +2428,31 @@ public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotB
                      if (isRemoveType) {
                         if (logger.isDebugEnabled())
                            logger.debug("Unloading removed module " + modules[r].toString(false) + ".");
-                        modules[r].unload();
+                        this.unloadHotBeanModule(modules[r]);
+                     } else if (obsolete && modules[r].isActive() && this.isCanaryBaseline(modules[r])) {
+                        if (logger.isDebugEnabled())
+                           logger.debug("Keeping module " + modules[r].toString(false)
+                                    + " active as baseline of canary deployment.");
+                     } else if (obsolete && modules[r].isActive() && this.sideBySideVersionsEnabled
+                              && isLatestRevisionOfVersion(modules[r], modules)) {
+                        if (logger.isDebugEnabled())
+                           logger.debug("Keeping module " + modules[r].toString(false)
+                                    + " active as latest revision of version " + modules[r].getVersion() + ".");
                      } else if (obsolete && modules[r].isActive()) // If module is obsolete...
                      {
                         if (logger.isDebugEnabled())
                            logger.debug("Marking obsolete module " + modules[r].toString(false) + " as inactive.");
                         modules[r].inactivate(); // ...mark as inactive....
+                     } else if (modules[r].isInactive() && modules[r].equals(standbyModule)) // ...keep standby...
+                     {
+                        if (logger.isDebugEnabled())
+                           logger.debug("Keeping inactive module " + modules[r].toString(false) + " as standby.");
                      } else if (modules[r].isInactive() && !modules[r].inUse()) // ...and unload it during the next
                                                                                  // check (and when no longer in use)
                      {
                         if (logger.isDebugEnabled())
                            logger.debug("Unloading inactive module " + modules[r].toString(false) + ".");
-                        modules[r].unload();
+                        this.unloadHotBeanModule(modules[r]);
                      }
                   }
 
@@ -615,5 +2466,248 @@ public abstract class AbstractHotBeanModuleRepository implements ProxyAccessHotB
       }
    }
 
+   /**
+    * Checks for current module revisions that have been idle longer than {@link #getIdleUnloadTimeout()}
+    * milliseconds, and unloads them through {@link #unloadIdleModule(HotBeanModule)}.
+    * 
+    * @since 1.3
+    */
+   protected void checkForIdleModules() {
+      if (this.idleUnloadTimeout <= 0) return;
+
+      Log logger = this.getLog();
+      if (logger.isDebugEnabled()) logger.debug("Checking for idle modules.");
+
+      this.unloadIdleModules(this.idleUnloadTimeout, "idle timeout exceeded");
+   }
+
+   /**
+    * Unloads the current module revisions that have been idle for at least the specified time (in milliseconds),
+    * through {@link #unloadIdleModule(HotBeanModule)}.
+    * 
+    * @return the number of unloaded revisions.
+    * @since 1.3
+    */
+   protected int unloadIdleModules(final long idleTimeout, final String reason) {
+      Log logger = this.getLog();
+      int unloadedCount = 0;
+
+      synchronized (this.lock) {
+         String[] moduleNames = this.getHotBeanModuleNames();
+         ArrayList modules = new ArrayList();
+         HotBeanModule[] revisions;
+         HotBeanModule module;
+
+         for (int n = 0; n < moduleNames.length; n++) {
+            module = this.getHotBeanModule(moduleNames[n]);
+            if ((module == null) || (this.getCanaryDeployment(moduleNames[n]) != null)) continue;
+            modules.add(module);
+
+            // Latest revisions of versions kept active side by side with the current revision
+            if (this.sideBySideVersionsEnabled) {
+               revisions = this.getHotBeanModules(moduleNames[n]);
+               for (int r = 0; r < revisions.length; r++) {
+                  if ((revisions[r] != module) && revisions[r].isActive()
+                           && isLatestRevisionOfVersion(revisions[r], revisions)) modules.add(revisions[r]);
+               }
+            }
+         }
+
+         for (int m = 0; m < modules.size(); m++) {
+            module = (HotBeanModule) modules.get(m);
+
+            synchronized (module) {
+               long idleTime = System.currentTimeMillis() - module.getLastInvocationTime();
+               if (!module.isActive() || module.inUse() || (idleTime < idleTimeout)) continue;
+
+               // Determine what is reclaimed before the loader is released
+               int classCount = 0;
+               long fileSize = 0;
+               if (module.getHotBeanModuleLoader() instanceof JarFileHotBeanModuleLoader) {
+                  JarFileHotBeanModuleLoader loader = (JarFileHotBeanModuleLoader) module.getHotBeanModuleLoader();
+                  classCount = loader.getLoadedClassNames().length;
+                  fileSize = loader.getExtractedFileSize();
+               }
+
+               if (this.unloadIdleModule(module)) {
+                  this.idleUnloadedRevisionCount++;
+                  this.idleUnloadedClassCount += classCount;
+                  this.idleUnloadedFileSize += fileSize;
+                  unloadedCount++;
+
+                  if (logger.isInfoEnabled())
+                     logger.info("Unloaded idle module " + module.toString(false) + " (idle for " + idleTime
+                              + " ms, " + reason + ") - released " + classCount + " classes and " + fileSize
+                              + " bytes of extracted files.");
+               }
+            }
+         }
+      }
+
+      return unloadedCount;
+   }
+
+   /**
+    * Reclaims module revisions early, because of memory pressure. This method is invoked by the
+    * {@link MemoryPressureMonitor} of this repository. Revisions are reclaimed in priority order: first inactive
+    * revisions that are no longer in use, and, if there are no such revisions, standby revisions (see
+    * {@link #getStandbyModule(String)}) and current revisions that have been idle for at least
+    * {@link #getMemoryPressureIdleTime()} milliseconds.
+    * 
+    * @param reason a description of the memory pressure, which is logged with each reclamation.
+    * @return the number of reclaimed revisions.
+    * @since 1.3
+    */
+   protected int reclaimModules(final String reason) {
+      Log logger = this.getLog();
+      if (logger.isInfoEnabled()) logger.info("Reclaiming module revisions - " + reason + ".");
+
+      int reclaimedCount = 0;
+
+      synchronized (this.lock) {
+         String[] moduleNames = this.getHotBeanModuleNames();
+         HotBeanModule[] modules;
+         HotBeanModule standbyModule;
+
+         // Reclaim drained inactive revisions
+         for (int n = 0; n < moduleNames.length; n++) {
+            modules = this.getHotBeanModules(moduleNames[n]);
+            standbyModule = this.getStandbyModule(moduleNames[n]);
+
+            for (int r = 0; r < modules.length; r++) {
+               if (modules[r] == null) continue;
+
+               synchronized (modules[r]) {
+                  if (modules[r].isInactive() && !modules[r].inUse() && !modules[r].equals(standbyModule)) {
+                     logger.info("Reclaiming inactive module " + modules[r].toString(false) + " - " + reason + ".");
+                     this.unloadHotBeanModule(modules[r]);
+                     reclaimedCount++;
+                  }
+               }
+            }
+         }
+
+         // Reclaim standby and idle revisions, if there were no inactive revisions to reclaim
+         if (reclaimedCount == 0) {
+            for (int n = 0; n < moduleNames.length; n++) {
+               standbyModule = this.getStandbyModule(moduleNames[n]);
+               if (standbyModule == null) continue;
+
+               synchronized (standbyModule) {
+                  if (standbyModule.isInactive() && !standbyModule.inUse()) {
+                     logger.info("Reclaiming standby module " + standbyModule.toString(false) + " - " + reason + ".");
+                     this.unloadHotBeanModule(standbyModule);
+                     reclaimedCount++;
+                  }
+               }
+            }
+
+            reclaimedCount += this.unloadIdleModules(this.memoryPressureIdleTime, reason);
+         }
+      }
+
+      if (reclaimedCount == 0) logger.warn("No module revisions to reclaim - " + reason + "!");
+
+      return reclaimedCount;
+   }
+
+   /**
+    * Checks the class loaders of unloaded module revisions for leaks.
+    */
+   protected void checkForClassLoaderLeaks() {
+      this.classLoaderLeakDetector.check();
+   }
+
+   /**
+    * Checks the new module revisions that are watched for regressions (see {@link #isAutoRollbackEnabled()}). A
+    * revision is considered to have regressed if both it and the previous revision have received at least
+    * {@link #getAutoRollbackMinInvocations()} invocations, and either its error rate exceeds the error rate of the
+    * previous revision by more than {@link #getAutoRollbackErrorRateIncrease()}, or its latency percentile
+    * ({@link #getAutoRollbackLatencyPercentile()}) exceeds the latency percentile of the previous revision by more than
+    * a factor of {@link #getAutoRollbackLatencyFactor()}. A regressed module is reverted to the previous revision (or,
+    * if a canary deployment is in progress, the canary deployment is aborted). A revision that hasn't regressed within
+    * {@link #getAutoRollbackWindow()} milliseconds after its activation is no longer watched.
+    * 
+    * @since 1.3
+    */
+   protected void checkForRegressions() {
+      Log logger = this.getLog();
+      ArrayList regressedWatches = new ArrayList();
+      ArrayList reasons = new ArrayList();
+
+      synchronized (this.lock) {
+         if (this.regressionWatches.isEmpty()) return;
+
+         if (logger.isDebugEnabled()) logger.debug("Checking for regressions.");
+
+         final long currentTime = System.currentTimeMillis();
+         RegressionWatch watch;
+         String reason;
+         for (Iterator it = this.regressionWatches.values().iterator(); it.hasNext();) {
+            watch = (RegressionWatch) it.next();
+            reason = this.getRegressionReason(watch);
+
+            if (reason != null) {
+               regressedWatches.add(watch);
+               reasons.add(reason);
+               this.autoRollbacksInProgress.add(watch.moduleName);
+               it.remove();
+            } else if ((currentTime - watch.startTime) >= this.autoRollbackWindow) {
+               if (logger.isInfoEnabled())
+                  logger.info("No regressions detected for module '" + watch.moduleName + "' rev."
+                           + watch.statistics.getRevision() + " - " + watch.statistics + ".");
+               it.remove();
+            }
+         }
+      }
+
+      RegressionWatch watch;
+      for (int i = 0; i < regressedWatches.size(); i++) {
+         watch = (RegressionWatch) regressedWatches.get(i);
+         try {
+            logger.warn("Regression detected for module '" + watch.moduleName + "' rev."
+                     + watch.statistics.getRevision() + " (" + reasons.get(i) + ") - rolling back to rev."
+                     + watch.baselineStatistics.getRevision() + ".");
+
+            if (this.getCanaryDeployment(watch.moduleName) != null) this.abortCanary(watch.moduleName);
+            else this.revertHotBeanModule(watch.moduleName, watch.baselineStatistics.getRevision());
+
+            synchronized (this.lock) {
+               this.autoRollbackCount++;
+            }
+         } catch (Exception e) {
+            logger.error("Error rolling back module '" + watch.moduleName + "' to rev."
+                     + watch.baselineStatistics.getRevision() + " - " + e + "!", e);
+         } finally {
+            synchronized (this.lock) {
+               this.autoRollbacksInProgress.remove(watch.moduleName);
+            }
+         }
+      }
+   }
+
+   /**
+    * Gets a description of the regression of a watched revision, or <code>null</code> if no regression is detected.
+    */
+   private String getRegressionReason(final RegressionWatch watch) {
+      InvocationStatistics statistics = watch.statistics;
+      InvocationStatistics baselineStatistics = watch.baselineStatistics;
+      if ((statistics.getInvocationCount() < this.autoRollbackMinInvocations)
+               || (baselineStatistics.getInvocationCount() < this.autoRollbackMinInvocations)) return null;
+
+      double errorRate = statistics.getErrorRate();
+      double baselineErrorRate = baselineStatistics.getErrorRate();
+      if ((errorRate - baselineErrorRate) > this.autoRollbackErrorRateIncrease)
+         return "error rate " + errorRate + ", previously " + baselineErrorRate;
+
+      long latency = statistics.getPercentile(this.autoRollbackLatencyPercentile);
+      long baselineLatency = baselineStatistics.getPercentile(this.autoRollbackLatencyPercentile);
+      if ((latency >= this.autoRollbackMinLatency) && (latency > (baselineLatency * this.autoRollbackLatencyFactor)))
+         return this.autoRollbackLatencyPercentile + "th percentile latency " + latency + " ms, previously "
+                  + baselineLatency + " ms";
+
+      return null;
+   }
+
    /* ### INTERNAL/SUBCLASS METHODS END ### */
 }
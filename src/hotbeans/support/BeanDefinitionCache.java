@@ -0,0 +1,251 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.w3c.dom.Document;
+
+/**
+ * Cache of parsed bean definition documents and module metadata, keyed by the content hash (SHA-1) of module jar
+ * files. This cache makes it possible to load a known module revision (for instance when reverting to a previous
+ * revision, or when a repository is restarted) without reading the manifest from the jar file and without parsing and
+ * validating the bean definition files again.<br>
+ * <br>
+ * Parsed bean definition documents are kept in memory (a bounded number of documents, least recently used documents
+ * are discarded first). Module metadata (the main attributes of the manifest, along with a marker indicating that the
+ * bean definitions of the module have been successfully validated) is persisted in the module directory, in a file
+ * named after the content hash with the suffix {@link #METADATA_FILE_SUFFIX}. When a module with persisted metadata is
+ * loaded after a restart, the bean definition files are parsed without validation.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class BeanDefinitionCache {
+
+   public static final String METADATA_FILE_SUFFIX = ".metadata";
+
+   public static final int DEFAULT_MAX_CACHED_DOCUMENTS = 16;
+
+   private static final String VALIDATED_PROPERTY = "validated";
+
+   private static final String MANIFEST_PROPERTY_PREFIX = "manifest.";
+
+   private final LinkedHashMap documents; // Content hash + resource description (String) -> Document
+
+   private final HashSet validatedContentHashes; // String
+
+   private int maxCachedDocuments;
+
+   /**
+    * Creates a new BeanDefinitionCache.
+    */
+   public BeanDefinitionCache() {
+      this.maxCachedDocuments = DEFAULT_MAX_CACHED_DOCUMENTS;
+      this.documents = new LinkedHashMap(16, 0.75f, true) {
+
+         private static final long serialVersionUID = 1L;
+
+         protected boolean removeEldestEntry(final Map.Entry eldest) {
+            return this.size() > maxCachedDocuments;
+         }
+      };
+      this.validatedContentHashes = new HashSet();
+   }
+
+   /**
+    * Computes the content hash (hex encoded SHA-1 digest) of the specified file.
+    */
+   public static String computeContentHash(final File file) throws IOException {
+      MessageDigest messageDigest = createContentDigest();
+
+      InputStream in = new FileInputStream(file);
+      try {
+         byte[] buffer = new byte[8192];
+         int read;
+         while ((read = in.read(buffer)) >= 0) {
+            messageDigest.update(buffer, 0, read);
+         }
+      } finally {
+         in.close();
+      }
+
+      return getContentHash(messageDigest);
+   }
+
+   /**
+    * Creates a message digest for computing a content hash, for instance while a module file is streamed.
+    */
+   public static MessageDigest createContentDigest() throws IOException {
+      try {
+         return MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException nsae) {
+         throw new IOException("SHA-1 not supported - " + nsae);
+      }
+   }
+
+   /**
+    * Completes the specified message digest (created by {@link #createContentDigest()}) and gets the content hash.
+    */
+   public static String getContentHash(final MessageDigest messageDigest) {
+      byte[] digest = messageDigest.digest();
+      StringBuffer contentHash = new StringBuffer(digest.length * 2);
+      for (int i = 0; i < digest.length; i++) {
+         contentHash.append(Character.forDigit((digest[i] >> 4) & 0x0f, 16));
+         contentHash.append(Character.forDigit(digest[i] & 0x0f, 16));
+      }
+
+      return contentHash.toString();
+   }
+
+   /**
+    * Gets the maximum number of parsed bean definition documents kept in memory.
+    */
+   public synchronized int getMaxCachedDocuments() {
+      return maxCachedDocuments;
+   }
+
+   /**
+    * Sets the maximum number of parsed bean definition documents kept in memory.
+    */
+   public synchronized void setMaxCachedDocuments(int maxCachedDocuments) {
+      this.maxCachedDocuments = Math.max(0, maxCachedDocuments);
+   }
+
+   /**
+    * Gets the number of parsed bean definition documents currently kept in memory.
+    */
+   public synchronized int getCachedDocumentCount() {
+      return this.documents.size();
+   }
+
+   /**
+    * Gets a cached parsed bean definition document, or <code>null</code> if no document is cached for the specified
+    * content hash and resource.
+    */
+   public synchronized Document getDocument(final String contentHash, final String resourceDescription) {
+      return (Document) this.documents.get(contentHash + "|" + resourceDescription);
+   }
+
+   /**
+    * Caches a parsed bean definition document.
+    */
+   public synchronized void putDocument(final String contentHash, final String resourceDescription,
+            final Document document) {
+      if (this.maxCachedDocuments > 0) this.documents.put(contentHash + "|" + resourceDescription, document);
+   }
+
+   /**
+    * Checks if the bean definitions of the module jar file with the specified content hash are known to be valid.
+    */
+   public synchronized boolean isValidated(final String contentHash) {
+      return this.validatedContentHashes.contains(contentHash);
+   }
+
+   /**
+    * Gets the metadata file for the specified content hash.
+    */
+   protected File getMetadataFile(final File moduleDirectory, final String contentHash) {
+      return new File(moduleDirectory, contentHash + METADATA_FILE_SUFFIX);
+   }
+
+   /**
+    * Loads the persisted manifest of the module jar file with the specified content hash. Returns <code>null</code>
+    * if no metadata has been persisted for the content hash, or if the metadata couldn't be read.
+    */
+   public Manifest loadManifest(final File moduleDirectory, final String contentHash) {
+      File metadataFile = this.getMetadataFile(moduleDirectory, contentHash);
+      if (!metadataFile.exists()) return null;
+
+      Properties metadata = new Properties();
+      try {
+         InputStream in = new FileInputStream(metadataFile);
+         try {
+            metadata.load(in);
+         } finally {
+            in.close();
+         }
+      } catch (IOException ioe) {
+         return null;
+      }
+
+      Manifest manifest = new Manifest();
+      Attributes mainAttributes = manifest.getMainAttributes();
+      String key;
+      for (Iterator it = metadata.keySet().iterator(); it.hasNext();) {
+         key = (String) it.next();
+         if (key.startsWith(MANIFEST_PROPERTY_PREFIX))
+            mainAttributes.putValue(key.substring(MANIFEST_PROPERTY_PREFIX.length()), metadata.getProperty(key));
+      }
+
+      if (Boolean.valueOf(metadata.getProperty(VALIDATED_PROPERTY)).booleanValue()) {
+         synchronized (this) {
+            this.validatedContentHashes.add(contentHash);
+         }
+      }
+
+      return manifest;
+   }
+
+   /**
+    * Persists the manifest of the module jar file with the specified content hash, and marks the bean definitions of
+    * the module jar file as validated.
+    */
+   public void storeValidated(final File moduleDirectory, final String contentHash, final Manifest manifest)
+            throws IOException {
+      Properties metadata = new Properties();
+      metadata.setProperty(VALIDATED_PROPERTY, "true");
+      if (manifest != null) {
+         Map.Entry entry;
+         for (Iterator it = manifest.getMainAttributes().entrySet().iterator(); it.hasNext();) {
+            entry = (Map.Entry) it.next();
+            metadata.setProperty(MANIFEST_PROPERTY_PREFIX + entry.getKey(), String.valueOf(entry.getValue()));
+         }
+      }
+
+      File metadataFile = this.getMetadataFile(moduleDirectory, contentHash);
+      File tempMetadataFile = new File(moduleDirectory, metadataFile.getName() + ".tmp");
+      OutputStream out = new FileOutputStream(tempMetadataFile);
+      try {
+         metadata.store(out, "Module metadata");
+      } finally {
+         out.close();
+      }
+      metadataFile.delete();
+      if (!tempMetadataFile.renameTo(metadataFile)) {
+         tempMetadataFile.delete();
+         throw new IOException("Unable to rename " + tempMetadataFile + " to " + metadataFile + "!");
+      }
+
+      synchronized (this) {
+         this.validatedContentHashes.add(contentHash);
+      }
+   }
+}
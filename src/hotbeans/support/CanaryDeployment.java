@@ -0,0 +1,165 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import hotbeans.HotBeanModule;
+
+/**
+ * A canary deployment of a module, in which a new (canary) revision receives a share of the invocations made through
+ * hot bean proxies, while the previous (baseline) revision is kept active and receives the rest of the invocations.
+ * The share of the canary revision is controlled by a weight (in percent), which may be adjusted at runtime through
+ * {@link AbstractHotBeanModuleRepository#setCanaryWeight(String, int)}. Invocation statistics are kept for both
+ * revisions, to make it possible to decide whether the canary revision should be promoted
+ * ({@link AbstractHotBeanModuleRepository#promoteCanary(String)}) or aborted
+ * ({@link AbstractHotBeanModuleRepository#abortCanary(String)}).
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class CanaryDeployment {
+
+   private final String moduleName;
+
+   private final HotBeanModule baselineModule;
+
+   private final HotBeanModule canaryModule;
+
+   private final long startTime;
+
+   private final InvocationStatistics baselineStatistics;
+
+   private final InvocationStatistics canaryStatistics;
+
+   private int weight;
+
+   private boolean aborting = false;
+
+   /**
+    * Creates a new CanaryDeployment.
+    * 
+    * @param weight the share (in percent) of the invocations that are routed to the canary revision.
+    */
+   public CanaryDeployment(HotBeanModule baselineModule, HotBeanModule canaryModule, int weight) {
+      this.moduleName = canaryModule.getName();
+      this.baselineModule = baselineModule;
+      this.canaryModule = canaryModule;
+      this.startTime = System.currentTimeMillis();
+      this.baselineStatistics = new InvocationStatistics();
+      this.canaryStatistics = new InvocationStatistics();
+      this.setWeight(weight);
+   }
+
+   /**
+    * Gets the module name.
+    */
+   public String getModuleName() {
+      return moduleName;
+   }
+
+   /**
+    * Gets the baseline (previous) revision.
+    */
+   public HotBeanModule getBaselineModule() {
+      return baselineModule;
+   }
+
+   /**
+    * Gets the canary (new) revision.
+    */
+   public HotBeanModule getCanaryModule() {
+      return canaryModule;
+   }
+
+   /**
+    * Gets the revision number of the baseline revision.
+    */
+   public long getBaselineRevision() {
+      return baselineModule.getRevision();
+   }
+
+   /**
+    * Gets the revision number of the canary revision.
+    */
+   public long getCanaryRevision() {
+      return canaryModule.getRevision();
+   }
+
+   /**
+    * Gets the time at which the canary deployment was started.
+    */
+   public long getStartTime() {
+      return startTime;
+   }
+
+   /**
+    * Gets the share (in percent) of the invocations that are routed to the canary revision.
+    */
+   public int getWeight() {
+      return weight;
+   }
+
+   /**
+    * Sets the share (in percent) of the invocations that are routed to the canary revision.
+    */
+   void setWeight(int weight) {
+      this.weight = Math.max(0, Math.min(100, weight));
+   }
+
+   /**
+    * Checks if the canary deployment is being aborted.
+    */
+   boolean isAborting() {
+      return aborting;
+   }
+
+   /**
+    * Sets if the canary deployment is being aborted.
+    */
+   void setAborting(boolean aborting) {
+      this.aborting = aborting;
+   }
+
+   /**
+    * Gets the invocation statistics of the baseline revision.
+    */
+   public InvocationStatistics getBaselineStatistics() {
+      return baselineStatistics;
+   }
+
+   /**
+    * Gets the invocation statistics of the canary revision.
+    */
+   public InvocationStatistics getCanaryStatistics() {
+      return canaryStatistics;
+   }
+
+   /**
+    * Records an invocation of a bean in the baseline or canary revision.
+    */
+   public void recordInvocation(final HotBeanModule hotBeanModule, final long invocationTime, final boolean error) {
+      if (hotBeanModule == this.canaryModule) this.canaryStatistics.record(invocationTime, error);
+      else if (hotBeanModule == this.baselineModule) this.baselineStatistics.record(invocationTime, error);
+   }
+
+   /**
+    * Gets a string representation of this canary deployment.
+    */
+   public String toString() {
+      return "CanaryDeployment(" + moduleName + " rev." + this.getBaselineRevision() + " -> rev."
+               + this.getCanaryRevision() + ", weight: " + weight + "%, baseline: " + baselineStatistics
+               + ", canary: " + canaryStatistics + ")";
+   }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import hotbeans.ClassLoaderLeakInfo;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Handler;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Detector for class loader leaks of unloaded hot bean module revisions. The class loaders of retired (unloaded)
+ * module revisions are tracked through weak references, and a class loader that is still reachable a configurable
+ * number of garbage collection cycles after the module revision was unloaded is flagged as a suspected leak. For each
+ * suspected leak, an attempt is made to find the likely retention roots, such as threads using the class loader as
+ * context class loader, thread locals, JDBC drivers and logging resources.<br>
+ * <br>
+ * Garbage collection cycles are observed by means of a weakly referenced sentinel object, which means that several
+ * collections occurring between two calls to {@link #check()} are counted as one cycle.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class ClassLoaderLeakDetector {
+
+   public static final int DEFAULT_GC_CYCLE_THRESHOLD = 3;
+
+   /**
+    * Weak reference to a retired class loader.
+    */
+   private static final class RetiredClassLoaderReference extends WeakReference {
+
+      private final String moduleName;
+
+      private final long revision;
+
+      private final long unloadedAt;
+
+      private final long unloadedAtGcCycle;
+
+      private ClassLoaderLeakInfo leakInfo;
+
+      public RetiredClassLoaderReference(ClassLoader classLoader, ReferenceQueue queue, String moduleName,
+               long revision, long unloadedAtGcCycle) {
+         super(classLoader, queue);
+         this.moduleName = moduleName;
+         this.revision = revision;
+         this.unloadedAt = System.currentTimeMillis();
+         this.unloadedAtGcCycle = unloadedAtGcCycle;
+      }
+   }
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private final ReferenceQueue referenceQueue = new ReferenceQueue();
+
+   private final ArrayList retiredClassLoaders = new ArrayList(); // RetiredClassLoaderReference
+
+   private WeakReference gcSentinel = new WeakReference(new Object());
+
+   private long gcCycles = 0;
+
+   private long collectedClassLoaderCount = 0;
+
+   private int gcCycleThreshold = DEFAULT_GC_CYCLE_THRESHOLD;
+
+   /**
+    * Creates a new ClassLoaderLeakDetector.
+    */
+   public ClassLoaderLeakDetector() {
+   }
+
+   /**
+    * Gets the number of garbage collection cycles after which a retired class loader that is still reachable is
+    * considered to be leaking.
+    */
+   public synchronized int getGcCycleThreshold() {
+      return gcCycleThreshold;
+   }
+
+   /**
+    * Sets the number of garbage collection cycles after which a retired class loader that is still reachable is
+    * considered to be leaking.
+    */
+   public synchronized void setGcCycleThreshold(int gcCycleThreshold) {
+      this.gcCycleThreshold = Math.max(1, gcCycleThreshold);
+   }
+
+   /**
+    * Starts tracking the class loader of a module revision that is being unloaded.
+    */
+   public synchronized void retire(final String moduleName, final long revision, final ClassLoader classLoader) {
+      if (classLoader == null) return;
+
+      // Never track the class loader of the framework itself, or any of its parents (may be the case for test loaders)
+      if (isSameOrAncestor(classLoader, ClassLoaderLeakDetector.class.getClassLoader())) return;
+
+      this.retiredClassLoaders.add(new RetiredClassLoaderReference(classLoader, this.referenceQueue, moduleName,
+               revision, this.gcCycles));
+
+      if (logger.isDebugEnabled())
+         logger.debug("Tracking class loader of unloaded module '" + moduleName + "', revision " + revision + ".");
+   }
+
+   /**
+    * Checks the tracked class loaders. Class loaders that have been garbage collected are removed and class loaders that
+    * are still reachable after the configured number of garbage collection cycles are flagged as suspected leaks.
+    */
+   public synchronized void check() {
+      // Check if a garbage collection has occurred since the last check
+      if (this.gcSentinel.get() == null) {
+         this.gcCycles++;
+         this.gcSentinel = new WeakReference(new Object());
+      }
+
+      // Remove collected class loaders
+      Reference reference;
+      while ((reference = this.referenceQueue.poll()) != null) {
+         RetiredClassLoaderReference retiredReference = (RetiredClassLoaderReference) reference;
+         this.retiredClassLoaders.remove(retiredReference);
+         this.collectedClassLoaderCount++;
+
+         if (retiredReference.leakInfo != null) {
+            if (logger.isInfoEnabled())
+               logger.info("Class loader of module '" + retiredReference.moduleName + "', revision "
+                        + retiredReference.revision + ", previously suspected to leak, has been garbage collected.");
+         } else if (logger.isDebugEnabled())
+            logger.debug("Class loader of module '" + retiredReference.moduleName + "', revision "
+                     + retiredReference.revision + " has been garbage collected.");
+      }
+
+      // Check remaining class loaders
+      RetiredClassLoaderReference retiredReference;
+      ClassLoader classLoader;
+      long cycles;
+      for (int i = 0; i < this.retiredClassLoaders.size(); i++) {
+         retiredReference = (RetiredClassLoaderReference) this.retiredClassLoaders.get(i);
+         cycles = this.gcCycles - retiredReference.unloadedAtGcCycle;
+
+         if (cycles >= this.gcCycleThreshold) {
+            classLoader = (ClassLoader) retiredReference.get();
+            if (classLoader != null) {
+               boolean newLeak = (retiredReference.leakInfo == null);
+
+               retiredReference.leakInfo = new ClassLoaderLeakInfo(retiredReference.moduleName,
+                        retiredReference.revision, retiredReference.unloadedAt, cycles,
+                        findRetentionRoots(classLoader));
+
+               if (newLeak) logger.warn("Possible class loader leak detected - " + retiredReference.leakInfo + ".");
+            }
+            classLoader = null;
+         }
+      }
+   }
+
+   /**
+    * Gets information about all retired class loaders that are suspected to leak.
+    */
+   public synchronized ClassLoaderLeakInfo[] getSuspectedLeaks() {
+      ArrayList leaks = new ArrayList();
+      RetiredClassLoaderReference retiredReference;
+
+      for (int i = 0; i < this.retiredClassLoaders.size(); i++) {
+         retiredReference = (RetiredClassLoaderReference) this.retiredClassLoaders.get(i);
+         if (retiredReference.leakInfo != null) leaks.add(retiredReference.leakInfo);
+      }
+
+      return (ClassLoaderLeakInfo[]) leaks.toArray(new ClassLoaderLeakInfo[0]);
+   }
+
+   /**
+    * Gets the number of retired class loaders that are currently tracked (i.e. not yet garbage collected).
+    */
+   public synchronized int getRetiredClassLoaderCount() {
+      return this.retiredClassLoaders.size();
+   }
+
+   /**
+    * Gets the number of retired class loaders that have been garbage collected.
+    */
+   public synchronized long getCollectedClassLoaderCount() {
+      return this.collectedClassLoaderCount;
+   }
+
+   /**
+    * Gets the number of garbage collection cycles observed by this detector.
+    */
+   public synchronized long getGcCycles() {
+      return this.gcCycles;
+   }
+
+   /* ### RETENTION ROOT ANALYSIS METHODS BEGIN ### */
+
+   /**
+    * Attempts to find the likely retention roots of the specified class loader.
+    */
+   protected String[] findRetentionRoots(final ClassLoader classLoader) {
+      ArrayList retentionRoots = new ArrayList();
+
+      findThreadRetentionRoots(classLoader, retentionRoots);
+      findJdbcDriverRetentionRoots(classLoader, retentionRoots);
+      findLoggingRetentionRoots(classLoader, retentionRoots);
+
+      return (String[]) retentionRoots.toArray(new String[0]);
+   }
+
+   /**
+    * Finds threads started by module code, threads using the class loader as context class loader and thread locals
+    * referencing objects loaded by the class loader.
+    */
+   private void findThreadRetentionRoots(final ClassLoader classLoader, final ArrayList retentionRoots) {
+      Thread[] threads = getAllThreads();
+
+      for (int i = 0; i < threads.length; i++) {
+         if (threads[i] == null) continue;
+
+         try {
+            if (isLoadedBy(threads[i].getClass(), classLoader)) {
+               retentionRoots.add("Thread '" + threads[i].getName() + "' of class " + threads[i].getClass().getName()
+                        + " (started by module code)");
+            } else if (isSameOrAncestor(classLoader, threads[i].getContextClassLoader())) {
+               retentionRoots.add("Context class loader of thread '" + threads[i].getName() + "'");
+            }
+         } catch (SecurityException se) {
+         }
+
+         findThreadLocalRetentionRoots(threads[i], classLoader, retentionRoots);
+      }
+   }
+
+   /**
+    * Finds thread locals of a thread referencing objects loaded by the specified class loader. Since there is no public
+    * API for accessing the thread locals of a thread, this method uses reflection, and will silently give up if the
+    * internals of the JVM don't match the expected structure.
+    */
+   private void findThreadLocalRetentionRoots(final Thread thread, final ClassLoader classLoader,
+            final ArrayList retentionRoots) {
+      try {
+         findThreadLocalRetentionRoots(thread, "threadLocals", classLoader, retentionRoots);
+         findThreadLocalRetentionRoots(thread, "inheritableThreadLocals", classLoader, retentionRoots);
+      } catch (Exception e) {
+         if (logger.isDebugEnabled()) logger.debug("Unable to inspect thread locals of thread '" + thread.getName()
+                  + "' - " + e + ".");
+      }
+   }
+
+   /**
+    * Finds thread locals in the thread local map in the field with the specified name.
+    */
+   private void findThreadLocalRetentionRoots(final Thread thread, final String mapFieldName,
+            final ClassLoader classLoader, final ArrayList retentionRoots) throws Exception {
+      Object threadLocalMap = getFieldValue(thread, Thread.class, mapFieldName);
+      if (threadLocalMap == null) return;
+
+      Object table = getFieldValue(threadLocalMap, threadLocalMap.getClass(), "table");
+      if ((table == null) || !table.getClass().isArray()) return;
+
+      Object entry;
+      Object key;
+      Object value;
+      for (int i = 0; i < Array.getLength(table); i++) {
+         entry = Array.get(table, i);
+         if (entry == null) continue;
+
+         key = ((Reference) entry).get();
+         value = getFieldValue(entry, entry.getClass(), "value");
+
+         if (((key != null) && isLoadedBy(key.getClass(), classLoader))
+                  || ((value != null) && (isLoadedBy(value.getClass(), classLoader) || (value == classLoader)))) {
+            retentionRoots.add("ThreadLocal " + ((key != null) ? key.getClass().getName() : "(stale)")
+                     + " in thread '" + thread.getName() + "' with value of type "
+                     + ((value != null) ? value.getClass().getName() : "null"));
+         }
+      }
+   }
+
+   /**
+    * Finds JDBC drivers loaded by the specified class loader, that are still registered in the DriverManager.
+    */
+   private void findJdbcDriverRetentionRoots(final ClassLoader classLoader, final ArrayList retentionRoots) {
+      ArrayList drivers = new ArrayList();
+
+      // Drivers visible to the framework
+      try {
+         Enumeration driverEnumeration = DriverManager.getDrivers();
+         while (driverEnumeration.hasMoreElements()) {
+            drivers.add(driverEnumeration.nextElement());
+         }
+      } catch (Exception e) {
+      }
+
+      // DriverManager.getDrivers() only returns the drivers visible to the caller - attempt to find all registered
+      // drivers through reflection
+      String[] driverListFieldNames = new String[] { "registeredDrivers", "drivers", "writeDrivers" };
+      for (int i = 0; i < driverListFieldNames.length; i++) {
+         try {
+            Object driverList = getFieldValue(null, DriverManager.class, driverListFieldNames[i]);
+            if (driverList instanceof Collection) {
+               Iterator it = ((Collection) driverList).iterator();
+               Object driverInfo;
+               while (it.hasNext()) {
+                  driverInfo = it.next();
+                  if (driverInfo instanceof Driver) drivers.add(driverInfo);
+                  else if (driverInfo != null) drivers.add(getFieldValue(driverInfo, driverInfo.getClass(), "driver"));
+               }
+            }
+         } catch (Exception e) {
+         }
+      }
+
+      ArrayList reportedDriverClasses = new ArrayList();
+      Object driver;
+      for (int i = 0; i < drivers.size(); i++) {
+         driver = drivers.get(i);
+         if ((driver != null) && isLoadedBy(driver.getClass(), classLoader)
+                  && !reportedDriverClasses.contains(driver.getClass().getName())) {
+            reportedDriverClasses.add(driver.getClass().getName());
+            retentionRoots.add("JDBC driver " + driver.getClass().getName() + " registered in DriverManager");
+         }
+      }
+   }
+
+   /**
+    * Finds logging resources (Commons Logging factories and java.util.logging handlers) referencing the specified class
+    * loader.
+    */
+   private void findLoggingRetentionRoots(final ClassLoader classLoader, final ArrayList retentionRoots) {
+      // Commons Logging caches LogFactory instances per (context) class loader
+      try {
+         Object factories = getFieldValue(null, LogFactory.class, "factories");
+         if ((factories instanceof Map) && ((Map) factories).containsKey(classLoader)) {
+            retentionRoots.add("Commons Logging LogFactory cache (LogFactory.release(ClassLoader) not called)");
+         }
+      } catch (Exception e) {
+      }
+
+      // Handlers of java.util.logging loggers, loaded by the module
+      try {
+         LogManager logManager = LogManager.getLogManager();
+         Enumeration loggerNames = logManager.getLoggerNames();
+         Logger jdkLogger;
+         Handler[] handlers;
+         String loggerName;
+         while (loggerNames.hasMoreElements()) {
+            loggerName = (String) loggerNames.nextElement();
+            jdkLogger = logManager.getLogger(loggerName);
+            if (jdkLogger == null) continue;
+
+            handlers = jdkLogger.getHandlers();
+            for (int i = 0; i < handlers.length; i++) {
+               if (isLoadedBy(handlers[i].getClass(), classLoader)) {
+                  retentionRoots.add("java.util.logging handler " + handlers[i].getClass().getName() + " on logger '"
+                           + loggerName + "'");
+               }
+            }
+         }
+      } catch (Exception e) {
+      }
+   }
+
+   /* ### RETENTION ROOT ANALYSIS METHODS END ### */
+
+   /* ### MISC UTILITY METHODS BEGIN ### */
+
+   /**
+    * Gets all live threads in the JVM.
+    */
+   private static Thread[] getAllThreads() {
+      ThreadGroup rootGroup = Thread.currentThread().getThreadGroup();
+      while (rootGroup.getParent() != null) {
+         rootGroup = rootGroup.getParent();
+      }
+
+      Thread[] threads = new Thread[rootGroup.activeCount() + 16];
+      int threadCount;
+      while ((threadCount = rootGroup.enumerate(threads, true)) == threads.length) {
+         threads = new Thread[threads.length * 2];
+      }
+
+      Thread[] result = new Thread[threadCount];
+      System.arraycopy(threads, 0, result, 0, threadCount);
+      return result;
+   }
+
+   /**
+    * Checks if the specified class was loaded by the specified class loader (or a class loader that has the specified
+    * class loader as ancestor).
+    */
+   private static boolean isLoadedBy(final Class clazz, final ClassLoader classLoader) {
+      return isSameOrAncestor(classLoader, clazz.getClassLoader());
+   }
+
+   /**
+    * Checks if <code>ancestor</code> is the same class loader as, or an ancestor of, <code>classLoader</code>.
+    */
+   static boolean isSameOrAncestor(final ClassLoader ancestor, ClassLoader classLoader) {
+      if (ancestor == null) return false;
+
+      while (classLoader != null) {
+         if (classLoader == ancestor) return true;
+         classLoader = classLoader.getParent();
+      }
+
+      return false;
+   }
+
+   /**
+    * Gets the value of a (possibly private) field through reflection.
+    */
+   private static Object getFieldValue(final Object object, final Class clazz, final String fieldName)
+            throws Exception {
+      Field field = clazz.getDeclaredField(fieldName);
+      field.setAccessible(true);
+      return field.get(object);
+   }
+
+   /* ### MISC UTILITY METHODS END ### */
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Thread class for preloading (loading and linking) classes in the {@link JarFileHotBeanModuleLoader} of a new module
+ * revision in the background, based on the classes that were actually loaded by the loader of the previous revision.
+ * The preloading runs in parallel with the creation and initialization of the context of the new module revision.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class ClassPreloader extends Thread {
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private final JarFileHotBeanModuleLoader hotBeanModuleLoader;
+
+   private final String[] classNames;
+
+   private volatile int preloadedClassCount = 0;
+
+   private volatile long preloadTime = 0;
+
+   /**
+    * Creates a new ClassPreloader. Note that the method <code>start()</code> must be called to initiate the
+    * preloading.
+    */
+   public ClassPreloader(final String moduleName, final long revision,
+            final JarFileHotBeanModuleLoader hotBeanModuleLoader, final String[] classNames) {
+      super("ClassPreloader(" + moduleName + " rev." + revision + ")");
+
+      super.setDaemon(true);
+
+      this.hotBeanModuleLoader = hotBeanModuleLoader;
+      this.classNames = classNames;
+   }
+
+   /**
+    * Gets the number of classes that were preloaded.
+    */
+   public int getPreloadedClassCount() {
+      return preloadedClassCount;
+   }
+
+   /**
+    * Gets the time (in milliseconds) it took to preload the classes.
+    */
+   public long getPreloadTime() {
+      return preloadTime;
+   }
+
+   /**
+    * Waits a maximum of <code>timeout</code> milliseconds for the preloading to complete. If the preloading isn't
+    * complete when the timeout expires, it is aborted.
+    */
+   public void waitForCompletion(final long timeout) {
+      try {
+         super.join(Math.max(1, timeout));
+      } catch (InterruptedException ie) {
+      }
+
+      if (super.isAlive()) {
+         if (logger.isInfoEnabled()) logger.info("Timeout while waiting for " + this.getName() + " - aborting.");
+         this.abort();
+      }
+   }
+
+   /**
+    * Aborts the preloading.
+    */
+   public void abort() {
+      super.interrupt();
+   }
+
+   /**
+    * The thread method of the ClassPreloader. Preloads the classes.
+    */
+   public void run() {
+      long beginPreload = System.currentTimeMillis();
+
+      this.preloadedClassCount = this.hotBeanModuleLoader.preloadClasses(this.classNames);
+      this.preloadTime = System.currentTimeMillis() - beginPreload;
+
+      if (logger.isDebugEnabled())
+         logger.debug(this.getName() + " preloaded " + this.preloadedClassCount + " of " + this.classNames.length
+                  + " classes in " + this.preloadTime + " ms.");
+   }
+}
@@ -26,21 +26,36 @@ import hotbeans.HotBeanModuleLoader;
 import hotbeans.HotBeansException;
 import hotbeans.InvalidModuleNameException;
 import hotbeans.ModuleAlreadyExistsException;
+import hotbeans.ModuleNotFoundException;
 import hotbeans.util.FileDeletor;
+import hotbeans.util.WorkerPool;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Properties;
+import java.util.Set;
+import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 
 import org.apache.commons.logging.Log;
@@ -85,16 +100,207 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
       }
    }
 
+   /**
+    * Class representing an activation of a module in progress.
+    */
+   private static class ModuleActivation {
+
+      private final long revision;
+
+      private boolean complete = false;
+
+      public ModuleActivation(final long revision) {
+         this.revision = revision;
+      }
+
+      public synchronized void complete() {
+         this.complete = true;
+         this.notifyAll();
+      }
+
+      public synchronized void await() {
+         while (!this.complete) {
+            try {
+               this.wait();
+            } catch (InterruptedException ie) {
+               Thread.currentThread().interrupt();
+               return;
+            }
+         }
+      }
+   }
+
+   /**
+    * A module file that has been streamed into a staging file, but not yet published as a module revision.
+    * 
+    * @since 1.3
+    */
+   protected static class StagedModuleFile {
+
+      private final File file;
+
+      private Manifest manifest;
+
+      private String contentHash; // Null if not computed during staging
+
+      private long baseRevision = -1; // Base revision, if the module file was created from a module delta
+
+      private Set affectedEntryNames; // Entries added, changed or removed by the module delta
+
+      public StagedModuleFile(final File file) {
+         this.file = file;
+      }
+
+      public File getFile() {
+         return file;
+      }
+
+      public Manifest getManifest() {
+         return manifest;
+      }
+
+      public String getContentHash() {
+         return contentHash;
+      }
+
+      public long getBaseRevision() {
+         return baseRevision;
+      }
+
+      public Set getAffectedEntryNames() {
+         return affectedEntryNames;
+      }
+   }
+
+   /**
+    * Task performing a part of a batch deployment (see {@link #updateHotBeanModules(String[], InputStream[])}).
+    */
+   private abstract static class BatchTask implements Runnable {
+
+      private Exception error;
+
+      private boolean done = false;
+
+      public final void run() {
+         try {
+            this.execute();
+         } catch (Exception e) {
+            this.error = e;
+         } finally {
+            synchronized (this) {
+               this.done = true;
+               this.notifyAll();
+            }
+         }
+      }
+
+      protected abstract void execute() throws Exception;
+
+      /**
+       * Performs the specified tasks in the specified worker pool and waits for all of them to complete.
+       * 
+       * @return the error of the first failed task, or <code>null</code> if all tasks completed successfully.
+       */
+      public static Exception executeAll(final WorkerPool workerPool, final BatchTask[] tasks) {
+         for (int i = 0; i < tasks.length; i++) {
+            workerPool.execute(tasks[i]);
+         }
+
+         // Wait for all tasks, even if interrupted, since the results of all tasks are needed to commit or roll back
+         boolean interrupted = false;
+         Exception error = null;
+         for (int i = 0; i < tasks.length; i++) {
+            synchronized (tasks[i]) {
+               while (!tasks[i].done) {
+                  try {
+                     tasks[i].wait();
+                  } catch (InterruptedException ie) {
+                     interrupted = true;
+                  }
+               }
+            }
+            if (error == null) error = tasks[i].error;
+         }
+         if (interrupted) Thread.currentThread().interrupt();
+
+         return error;
+      }
+   }
+
+   /**
+    * Input stream that writes all bytes read from the underlying stream to an output stream.
+    */
+   private static class TeeInputStream extends FilterInputStream {
+
+      private final OutputStream out;
+
+      public TeeInputStream(final InputStream in, final OutputStream out) {
+         super(in);
+         this.out = out;
+      }
+
+      public int read() throws IOException {
+         int b = super.in.read();
+         if (b >= 0) this.out.write(b);
+         return b;
+      }
+
+      public int read(byte[] b, int off, int len) throws IOException {
+         int read = super.in.read(b, off, len);
+         if (read > 0) this.out.write(b, off, read);
+         return read;
+      }
+
+      public long skip(long n) throws IOException {
+         // Read skipped bytes, so that they are written to the output stream
+         byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+         int read = this.read(buffer, 0, buffer.length);
+         return Math.max(0, read);
+      }
+
+      public boolean markSupported() {
+         return false;
+      }
+   }
+
    public static final String LOCK_FILE_NAME = "moduleRepository.lck";
 
+   public static final String STAGING_FILE_SUFFIX = ".staging";
+
+   public static final long STALE_STAGING_FILE_AGE = 10 * 60 * 1000;
+
+   private static final String SHADOW_SUFFIX = ".shadow";
+
+   public static final String CONTENT_INDEX_FILE_NAME = "contentIndex.properties";
+
+   private static final String REVISION_REFERENCE_FILE_SUFFIX = ".ref";
+
+   private static final String REVISION_REFERENCE_REVISION_PROPERTY = "revision";
+
+   private static final String REVISION_REFERENCE_CONTENT_HASH_PROPERTY = "contentHash";
+
+   public static final long DEFAULT_CLASS_PRELOADING_TIMEOUT = 10000;
+
+   private static final int MAX_BATCH_THREADS = 4;
+
    private static final String MODULE_FILE_SUFFIX = ".jar";
 
-   private static final int MODULE_FILE_SUFFIX_LENGTH = MODULE_FILE_SUFFIX.length();
+   private static final int BUFFER_SIZE = 8192;
+
+   private static long moduleTempDirCount = 0; // Number of temporary directories created for module loads (in this VM)
 
    private static final FileFilter ModuleFileFilter = new FileFilter() {
 
       public boolean accept(File pathname) {
-         return pathname.getName().toLowerCase().endsWith(MODULE_FILE_SUFFIX);
+         String name = pathname.getName().toLowerCase();
+         return name.endsWith(MODULE_FILE_SUFFIX) || name.endsWith(REVISION_REFERENCE_FILE_SUFFIX);
+      }
+   };
+
+   private static final FileFilter StagingFileFilter = new FileFilter() {
+
+      public boolean accept(File pathname) {
+         return pathname.isFile() && pathname.getName().endsWith(STAGING_FILE_SUFFIX);
       }
    };
 
@@ -102,6 +308,28 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
 
    private File temporaryDirectory = null;
 
+   private boolean classPreloadingEnabled = false;
+
+   private long classPreloadingTimeout = DEFAULT_CLASS_PRELOADING_TIMEOUT;
+
+   private boolean indexedModuleArchivesEnabled = false;
+
+   private final BeanDefinitionCache beanDefinitionCache = new BeanDefinitionCache();
+
+   private boolean beanDefinitionCacheEnabled = false;
+
+   private boolean lazyActivationEnabled = false;
+
+   private boolean contentDeduplicationEnabled = false;
+
+   private final HashSet pendingActivations = new HashSet(); // Names (String) of modules not yet activated
+
+   private final HashMap activations = new HashMap(); // Module name (String) -> ModuleActivation (in progress)
+
+   private long lastStagingFileCleanup = 0;
+
+   private final WorkerPool batchWorkerPool = new WorkerPool("HotBeans batch deployment", MAX_BATCH_THREADS);
+
    // max history revisions
 
    private ApplicationContext parentApplicationContext;
@@ -159,6 +387,145 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
       }
    }
 
+   /**
+    * Checks if preloading of classes is enabled. If enabled, the classes loaded by the current revision of a module are
+    * preloaded in the background when a new revision of the module is loaded, before the new revision is made current.
+    * Class preloading is disabled by default.
+    * 
+    * @since 1.3
+    */
+   public boolean isClassPreloadingEnabled() {
+      return classPreloadingEnabled;
+   }
+
+   /**
+    * Sets the flag indicating if preloading of classes is enabled. If enabled, the classes loaded by the current
+    * revision of a module are preloaded in the background when a new revision of the module is loaded, before the new
+    * revision is made current. Note that preloading runs the static initializers of the preloaded classes.
+    * 
+    * @since 1.3
+    */
+   public void setClassPreloadingEnabled(boolean classPreloadingEnabled) {
+      this.classPreloadingEnabled = classPreloadingEnabled;
+   }
+
+   /**
+    * Gets the maximum time (in milliseconds) to wait for class preloading to complete, before a new module revision is
+    * made current.
+    * 
+    * @since 1.3
+    */
+   public long getClassPreloadingTimeout() {
+      return classPreloadingTimeout;
+   }
+
+   /**
+    * Sets the maximum time (in milliseconds) to wait for class preloading to complete, before a new module revision is
+    * made current.
+    * 
+    * @since 1.3
+    */
+   public void setClassPreloadingTimeout(long classPreloadingTimeout) {
+      this.classPreloadingTimeout = classPreloadingTimeout;
+   }
+
+   /**
+    * Checks if an {@link IndexedModuleArchive} is created for each module revision when it is loaded. The archive is
+    * stored alongside the module jar file (which is kept for reverts), and is used by
+    * {@link JarFileHotBeanModuleLoader} to load classes and resources without extracting the jar file. Note that
+    * archives created earlier (or by another repository sharing the same repository directory) are used even if this
+    * property is disabled.
+    * 
+    * @since 1.3
+    */
+   public boolean isIndexedModuleArchivesEnabled() {
+      return indexedModuleArchivesEnabled;
+   }
+
+   /**
+    * Sets if an {@link IndexedModuleArchive} is to be created for each module revision when it is loaded.
+    * 
+    * @since 1.3
+    */
+   public void setIndexedModuleArchivesEnabled(boolean indexedModuleArchivesEnabled) {
+      this.indexedModuleArchivesEnabled = indexedModuleArchivesEnabled;
+   }
+
+   /**
+    * Gets the {@link BeanDefinitionCache} used by this repository.
+    * 
+    * @since 1.3
+    */
+   public BeanDefinitionCache getBeanDefinitionCache() {
+      return beanDefinitionCache;
+   }
+
+   /**
+    * Checks if caching of bean definitions and module metadata is enabled. When enabled, the parsed bean definitions
+    * and manifest of a module revision are cached, keyed by the content hash of the module jar file, which means that
+    * reverting to (or restarting with) a known revision doesn't require parsing and validation of the bean definitions.
+    * Caching is disabled by default.
+    * 
+    * @since 1.3
+    */
+   public boolean isBeanDefinitionCacheEnabled() {
+      return beanDefinitionCacheEnabled;
+   }
+
+   /**
+    * Sets if caching of bean definitions and module metadata is enabled. Note that when enabled, the content hash of
+    * each loaded module jar file is computed, and the module metadata is persisted in the module directory. Modules with
+    * persisted metadata are loaded without validation of the bean definitions after a restart.
+    * 
+    * @since 1.3
+    */
+   public void setBeanDefinitionCacheEnabled(boolean beanDefinitionCacheEnabled) {
+      this.beanDefinitionCacheEnabled = beanDefinitionCacheEnabled;
+   }
+
+   /**
+    * Checks if lazy activation of modules is enabled. When enabled, the modules found in the repository directory when
+    * the repository is started are only registered (from the file system metadata), and the current revision of a
+    * module is loaded the first time a bean in the module is accessed through a hot bean proxy. Modules that are added
+    * or updated through this repository are always loaded at once.
+    * 
+    * @since 1.3
+    */
+   public boolean isLazyActivationEnabled() {
+      return lazyActivationEnabled;
+   }
+
+   /**
+    * Sets if lazy activation of modules is enabled.
+    * 
+    * @since 1.3
+    */
+   public void setLazyActivationEnabled(boolean lazyActivationEnabled) {
+      this.lazyActivationEnabled = lazyActivationEnabled;
+   }
+
+   /**
+    * Checks if content deduplication is enabled. When enabled, the content hash of each module file added to the
+    * repository is recorded in an index in the module directory (see {@link #CONTENT_INDEX_FILE_NAME}). An update with
+    * content identical to the current revision of a module is ignored, an update with content identical to the standby
+    * revision activates the standby revision, and an update with content identical to any other revision creates a new
+    * revision that shares the module file of the existing revision.
+    * 
+    * @since 1.3
+    */
+   public boolean isContentDeduplicationEnabled() {
+      return contentDeduplicationEnabled;
+   }
+
+   /**
+    * Sets if content deduplication is enabled.
+    * 
+    * @since 1.3
+    */
+   public void setContentDeduplicationEnabled(boolean contentDeduplicationEnabled) {
+      this.contentDeduplicationEnabled = contentDeduplicationEnabled;
+   }
+
    /**
     * Invoked by a BeanFactory after it has set all bean properties. This method invokes {@link #init()} to initialize
     * the repository.
@@ -214,10 +581,11 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
                this.temporaryDirectory = new File(this.moduleRepositoryDirectory, "temp");
 
             this.moduleRepositoryDirectory.mkdirs();
-            this.temporaryDirectory.mkdirs();
 
-            // Delete temporary directory on start up
-            FileDeletor.delete(this.temporaryDirectory);
+            // Delete temporary directory on start up (at once, since modules may be extracted to it as soon as this
+            // method returns)
+            FileDeletor.deleteTreeImpl(this.temporaryDirectory.getAbsolutePath());
+            this.temporaryDirectory.mkdirs();
 
             if (logger.isDebugEnabled())
                logger.debug("Initializing FileSystemHotBeanModuleRepository - moduleRepositoryDirectory: "
@@ -226,6 +594,9 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
             RepositoryFileLock fileLock = null;
             try {
                fileLock = this.obtainRepositoryFileLock(false);
+
+               // Delete staging files left by uploads that never completed
+               this.deleteStaleStagingFiles();
             } catch (Exception e) {
                logger.error("Error obtaining repository file lock on init!", e);
             } finally {
@@ -252,6 +623,36 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
       }
    }
 
+   /**
+    * Deletes the staging files left in the repository directory and the module directories by uploads that never
+    * completed, for instance because the repository was stopped during an upload. Since the repository directory may
+    * be shared with other repositories, which stage module files before obtaining the repository file lock, only
+    * staging files that haven't been modified for {@link #STALE_STAGING_FILE_AGE} milliseconds are deleted.
+    */
+   private void deleteStaleStagingFiles() {
+      Log logger = this.getLog();
+      long now = System.currentTimeMillis();
+      this.lastStagingFileCleanup = now;
+
+      ArrayList directories = new ArrayList();
+      directories.add(this.moduleRepositoryDirectory);
+      File[] files = this.moduleRepositoryDirectory.listFiles();
+      for (int i = 0; (files != null) && (i < files.length); i++) {
+         if (files[i].isDirectory()) directories.add(files[i]);
+      }
+
+      File[] stagingFiles;
+      for (int i = 0; i < directories.size(); i++) {
+         stagingFiles = ((File) directories.get(i)).listFiles(StagingFileFilter);
+         for (int f = 0; (stagingFiles != null) && (f < stagingFiles.length); f++) {
+            if ((now - stagingFiles[f].lastModified()) > STALE_STAGING_FILE_AGE) {
+               if (logger.isInfoEnabled()) logger.info("Deleting stale staging file '" + stagingFiles[f] + "'.");
+               FileDeletor.deleteFileImpl(stagingFiles[f].getAbsolutePath());
+            }
+         }
+      }
+   }
+
    /**
     * Obtains a file lock on the repository lock file.
     */
@@ -370,6 +771,131 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
       else return hotBeanModuleInfo;
    }
 
+   /**
+    * Adds (installs) a new hot bean module, read from the specified channel. The channel is not closed by this method.
+    * 
+    * @since 1.3
+    */
+   public HotBeanModuleInfo addHotBeanModule(final ReadableByteChannel moduleFile) {
+      Log logger = this.getLog();
+
+      if (logger.isInfoEnabled()) logger.info("Attempting to add module.");
+
+      HotBeanModuleInfo hotBeanModuleInfo = this.updateModuleInternal(null, moduleFile, true);
+
+      if (logger.isInfoEnabled()) logger.info("Done adding module - " + hotBeanModuleInfo + ".");
+
+      if (hotBeanModuleInfo != null) return hotBeanModuleInfo.getClone();
+      else return hotBeanModuleInfo;
+   }
+
+   /**
+    * Adds (installs) a new hot bean module from the specified file. The file is copied using
+    * {@link FileChannel#transferTo}.
+    * 
+    * @since 1.3
+    */
+   public HotBeanModuleInfo addHotBeanModule(final File moduleFile) {
+      FileChannel moduleFileChannel = null;
+      try {
+         moduleFileChannel = new FileInputStream(moduleFile).getChannel();
+         return this.addHotBeanModule(moduleFileChannel);
+      } catch (IOException ioe) {
+         throw new HotBeansException("Error adding module from file '" + moduleFile + "' - " + ioe, ioe);
+      } finally {
+         closeChannel(moduleFileChannel);
+      }
+   }
+
+   /**
+    * Updates an existing hot beans module with a new revision, read from the specified channel. The channel is not
+    * closed by this method.
+    * 
+    * @since 1.3
+    */
+   public HotBeanModuleInfo updateHotBeanModule(final String moduleName, final ReadableByteChannel moduleFile) {
+      Log logger = this.getLog();
+
+      if (logger.isInfoEnabled()) logger.info("Attempting to update module '" + moduleName + "'.");
+
+      HotBeanModuleInfo hotBeanModuleInfo = this.updateModuleInternal(moduleName, moduleFile, false);
+
+      if (logger.isInfoEnabled()) logger.info("Done updating module - " + hotBeanModuleInfo + ".");
+
+      if (hotBeanModuleInfo != null) return hotBeanModuleInfo.getClone();
+      else return hotBeanModuleInfo;
+   }
+
+   /**
+    * Updates an existing hot beans module with a new revision from the specified file. The file is copied using
+    * {@link FileChannel#transferTo}.
+    * 
+    * @since 1.3
+    */
+   public HotBeanModuleInfo updateHotBeanModule(final String moduleName, final File moduleFile) {
+      FileChannel moduleFileChannel = null;
+      try {
+         moduleFileChannel = new FileInputStream(moduleFile).getChannel();
+         return this.updateHotBeanModule(moduleName, moduleFileChannel);
+      } catch (IOException ioe) {
+         throw new HotBeansException("Error updating module '" + moduleName + "' from file '" + moduleFile + "' - "
+                  + ioe, ioe);
+      } finally {
+         closeChannel(moduleFileChannel);
+      }
+   }
+
+   /**
+    * Updates an existing hot beans module with a new revision, created by applying the specified module delta (see
+    * {@link ModuleDelta}) to the specified base revision of the module. Only the entries that were affected by the
+    * delta need to be extracted when the new revision is loaded, provided that the base revision is loaded.
+    * 
+    * @since 1.3
+    */
+   public HotBeanModuleInfo updateHotBeanModule(final String moduleName, final long baseRevision,
+            final InputStream moduleDelta) {
+      Log logger = this.getLog();
+
+      if (logger.isInfoEnabled())
+         logger.info("Attempting to update module '" + moduleName + "' with delta against revision " + baseRevision
+                  + ".");
+
+      HotBeanModuleInfo hotBeanModuleInfo = this.updateModuleInternal(moduleName, baseRevision, moduleDelta);
+
+      if (logger.isInfoEnabled()) logger.info("Done updating module - " + hotBeanModuleInfo + ".");
+
+      if (hotBeanModuleInfo != null) return hotBeanModuleInfo.getClone();
+      else return hotBeanModuleInfo;
+   }
+
+   /**
+    * Adds and updates several modules in a single transaction. The module files are staged in parallel, after which
+    * the new revisions are loaded and all of them are made current at once, so that callers never see a mix of
+    * previous and new revisions. If any of the modules cannot be staged or loaded, none of the new revisions are made
+    * current, and the new revisions are removed. The repository file lock is held for the whole transaction.
+    * 
+    * @param moduleNames the names of the modules to update, where a <code>null</code> name means that the module is
+    *           to be added.
+    * @param moduleFiles the module files, in the same order as the module names. The streams are closed by this
+    *           method.
+    * @return information about the new revisions, in the same order as the module files.
+    * @since 1.3
+    */
+   public HotBeanModuleInfo[] updateHotBeanModules(final String[] moduleNames, final InputStream[] moduleFiles) {
+      Log logger = this.getLog();
+
+      if (logger.isInfoEnabled()) logger.info("Attempting to deploy " + moduleFiles.length + " modules.");
+
+      HotBeanModuleInfo[] hotBeanModuleInfos = this.updateModulesInternal(moduleNames, moduleFiles);
+
+      if (logger.isInfoEnabled()) logger.info("Done deploying modules - " + Arrays.asList(hotBeanModuleInfos) + ".");
+
+      for (int i = 0; i < hotBeanModuleInfos.length; i++) {
+         hotBeanModuleInfos[i] = hotBeanModuleInfos[i].getClone();
+      }
+      return hotBeanModuleInfos;
+   }
+
    /**
     * Reverts an hot beans module to a previous revision (which becomes a new revision).
     */
@@ -381,12 +907,21 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
          logger.info("Attempting to revert module '" + moduleName + "' to revision " + revision + ".");
 
       synchronized (super.getLock()) {
-         File moduleDirectory = new File(this.moduleRepositoryDirectory, moduleName);
-         File moduleFile = new File(moduleDirectory, revision + MODULE_FILE_SUFFIX);
+         File moduleFile = this.getModuleFile(moduleName, revision);
 
          if (moduleFile.exists()) {
             try {
-               hotBeanModuleInfo = this.updateModuleInternal(moduleName, new FileInputStream(moduleFile), false);
+               HotBeanModule standbyModule = super.getStandbyModule(moduleName);
+               if ((standbyModule != null) && (standbyModule.getRevision() == revision)) hotBeanModuleInfo = this
+                        .activateStandbyModule(standbyModule, moduleFile);
+               else {
+                  FileChannel moduleFileChannel = new FileInputStream(moduleFile).getChannel();
+                  try {
+                     hotBeanModuleInfo = this.updateModuleInternal(moduleName, moduleFileChannel, false);
+                  } finally {
+                     closeChannel(moduleFileChannel);
+                  }
+               }
 
                if (logger.isInfoEnabled()) logger.info("Done reverting module - " + hotBeanModuleInfo + ".");
             } catch (Exception e) {
@@ -400,6 +935,48 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
       else return hotBeanModuleInfo;
    }
 
+   /**
+    * Loads a shadow revision of an existing hot bean module from the specified module file, and starts a shadow
+    * deployment, in which a share of the invocations of the current revision is mirrored to the shadow revision (see
+    * {@link ShadowDeployment}). The shadow revision is never made current, and isn't published in the repository
+    * directory - the module file is kept in the temporary directory of this repository. When the shadow revision has
+    * been evaluated, the shadow deployment may be stopped through {@link #stopShadowDeployment(String)}, and the
+    * module file deployed as a new revision as usual.
+    * 
+    * @return the started shadow deployment.
+    * @since 1.3
+    */
+   public ShadowDeployment shadowHotBeanModule(final String moduleName, final InputStream moduleFile) {
+      Log logger = this.getLog();
+
+      if (logger.isInfoEnabled()) logger.info("Attempting to load shadow revision of module '" + moduleName + "'.");
+
+      synchronized (super.getLock()) {
+         if (super.getHotBeanModule(moduleName) == null)
+            throw new ModuleNotFoundException(moduleName, "Module '" + moduleName + "' doesn't exist!");
+         if (super.getShadowDeployment(moduleName) != null) super.stopShadowDeployment(moduleName);
+
+         try {
+            // Use a new temporary directory and module file for each shadow revision, since the directory of a
+            // previous shadow revision is deleted when its loader is finalized
+            File shadowTempDir = this.createUniqueTempDir(moduleName + SHADOW_SUFFIX);
+            File shadowFile = new File(this.temporaryDirectory, shadowTempDir.getName() + MODULE_FILE_SUFFIX);
+
+            StagedModuleFile stagedModuleFile = this.stageModuleFile(this.temporaryDirectory, moduleFile);
+            this.publishModuleFile(stagedModuleFile, shadowFile);
+
+            HotBeanModule shadowModule = this.createModule(moduleName, ShadowDeployment.SHADOW_REVISION, shadowFile,
+                     shadowTempDir, stagedModuleFile.getManifest(), stagedModuleFile.getContentHash(), false);
+            if (shadowModule.isError()) throw new HotBeansException(shadowModule.getErrorReason());
+
+            return super.startShadowDeployment(shadowModule);
+         } catch (Exception e) {
+            logger.error("Error loading shadow revision of module '" + moduleName + "' - " + e + "!", e);
+            throw new HotBeansException("Error loading shadow revision of module '" + moduleName + "' - " + e + "!");
+         }
+      }
+   }
+
    /**
     * Removes all revisions of a hot bean module.
     */
@@ -444,25 +1021,61 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
     */
    protected HotBeanModuleInfo updateModuleInternal(String moduleName, final InputStream moduleFileStream,
             final boolean add) {
-      long revisionNumber = -1;
-      HotBeanModuleInfo hotBeanModuleInfo = null;
-      Log logger = this.getLog();
+      return this.updateModuleInternal(moduleName, moduleFileStream, null, -1, add);
+   }
 
-      synchronized (super.getLock()) {
-         // If update - module name must be specified
-         if (!add && ((moduleName == null) || (moduleName.trim().length() == 0)))
-            throw new HotBeansException("Module name not specified!");
+   /**
+    * Internal method to update a module, using a channel to read the module file.
+    * 
+    * @since 1.3
+    */
+   protected HotBeanModuleInfo updateModuleInternal(String moduleName, final ReadableByteChannel moduleFileChannel,
+            final boolean add) {
+      return this.updateModuleInternal(moduleName, null, moduleFileChannel, -1, add);
+   }
+
+   /**
+    * Internal method to update a module, using a module delta against the specified base revision.
+    * 
+    * @since 1.3
+    */
+   protected HotBeanModuleInfo updateModuleInternal(String moduleName, final long baseRevision,
+            final InputStream moduleDeltaStream) {
+      return this.updateModuleInternal(moduleName, moduleDeltaStream, null, baseRevision, false);
+   }
+
+   /**
+    * Internal method to update a module. The module file is read once, from either the specified stream or channel,
+    * into a staging file, which is then published as the new revision by renaming it. If a base revision is specified,
+    * the stream contains a module delta, which is applied to the base revision while streaming into the staging file.
+    */
+   private HotBeanModuleInfo updateModuleInternal(String moduleName, final InputStream moduleFileStream,
+            final ReadableByteChannel moduleFileChannel, final long baseRevision, final boolean add) {
+      long revisionNumber = -1;
+      HotBeanModuleInfo hotBeanModuleInfo = null;
+      Log logger = this.getLog();
+
+      synchronized (super.getLock()) {
+         // If update - module name must be specified
+         if (!add && ((moduleName == null) || (moduleName.trim().length() == 0)))
+            throw new HotBeansException("Module name not specified!");
 
          RepositoryFileLock fileLock = null;
-         File moduleTempFile = null;
-         InputStream moduleTempFileStream = null;
+         StagedModuleFile stagedModuleFile = null;
          try {
-            // Save module file to temp file
-            moduleTempFile = File.createTempFile("hotBeanModule", ".jar");
-            FileCopyUtils.copy(moduleFileStream, new FileOutputStream(moduleTempFile));
+            // Stream module file to staging file
+            File stagingDirectory = this.moduleRepositoryDirectory;
+            if (!add && new File(this.moduleRepositoryDirectory, moduleName).isDirectory())
+               stagingDirectory = new File(this.moduleRepositoryDirectory, moduleName);
+
+            if (baseRevision >= 0) stagedModuleFile = this.stageModuleDelta(stagingDirectory, moduleName, baseRevision,
+                     moduleFileStream);
+            else if (moduleFileChannel != null) stagedModuleFile = this.stageModuleFile(stagingDirectory,
+                     moduleFileChannel);
+            else stagedModuleFile = this.stageModuleFile(stagingDirectory, moduleFileStream);
 
             // Get name from mainfest
-            Manifest manifest = ModuleManifestUtils.readManifest(moduleTempFile);
+            Manifest manifest = stagedModuleFile.manifest;
             String jarFileModuleName = ModuleManifestUtils.getName(manifest);
 
             if (logger.isDebugEnabled()) logger.debug("Module name in module manifest: '" + jarFileModuleName + "'.");
@@ -477,40 +1090,46 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
                throw new InvalidModuleNameException("Module name in jar file doesn't match specified module name!");
 
             moduleName = jarFileModuleName;
-            moduleTempFileStream = new FileInputStream(moduleTempFile);
 
             if (add & logger.isInfoEnabled()) logger.info("Adding module '" + moduleName + "'.");
 
             fileLock = this.obtainRepositoryFileLock(false); // Obtain lock
 
-            File moduleDirectory = new File(this.moduleRepositoryDirectory, moduleName);
-            if (!moduleDirectory.exists()) moduleDirectory.mkdirs();
-
-            // Get next revision number
-            revisionNumber = this.getLastRevisionOnFileSystem(moduleName);
-            if (logger.isDebugEnabled()) {
-               if (add) logger.debug("Adding module - last revision on file system: " + revisionNumber + ".");
-               else logger.debug("Updating module - last revision on file system: " + revisionNumber + ".");
-            }
-            if (revisionNumber < 0) revisionNumber = 0;
-            File moduleFile = new File(moduleDirectory, revisionNumber + MODULE_FILE_SUFFIX);
-
-            while (moduleFile.exists()) // This should't really be necessary, but still...
-            {
-               revisionNumber++;
-               moduleFile = new File(moduleDirectory, revisionNumber + MODULE_FILE_SUFFIX);
+            // Look up existing revision with identical content
+            String contentHash = stagedModuleFile.contentHash;
+            long contentRevision = -1;
+            if (this.contentDeduplicationEnabled) {
+               if (contentHash == null) contentHash = BeanDefinitionCache.computeContentHash(stagedModuleFile.file);
+               contentRevision = this.lookupContentRevision(moduleName, contentHash);
+
+               HotBeanModule currentModule = super.getHotBeanModule(moduleName);
+               HotBeanModule standbyModule = super.getStandbyModule(moduleName);
+               if ((contentRevision >= 0) && (currentModule != null) && !currentModule.isError()
+                        && (this.resolveContentRevision(moduleName, currentModule.getRevision()) == contentRevision)) {
+                  if (logger.isInfoEnabled())
+                     logger.info("Content of module '" + moduleName + "' identical to current revision "
+                              + currentModule.getRevision() + " - module not updated.");
+                  return currentModule.getHotBeanModuleInfo();
+               } else if ((contentRevision >= 0) && (standbyModule != null)
+                        && (this.resolveContentRevision(moduleName, standbyModule.getRevision()) == contentRevision)) {
+                  if (logger.isInfoEnabled())
+                     logger.info("Content of module '" + moduleName + "' identical to standby revision "
+                              + standbyModule.getRevision() + " - switching to standby revision.");
+                  return this.registerStandbyModule(standbyModule, this.getModuleFile(moduleName, standbyModule
+                           .getRevision()));
+               }
             }
 
-            if (logger.isDebugEnabled()) {
-               if (add) logger.debug("Adding module - revision of new module: " + revisionNumber + ".");
-               else logger.debug("Updating module - revision of new module: " + revisionNumber + ".");
-            }
+            revisionNumber = this.publishRevision(moduleName, stagedModuleFile, contentRevision, contentHash, add);
 
-            // Save module file
-            FileCopyUtils.copy(moduleTempFileStream, new FileOutputStream(moduleFile));
+            // Reuse the extracted files of the base revision that weren't affected by the module delta
+            File tempDir = this.createModuleTempDir(moduleName, revisionNumber);
+            if (stagedModuleFile.baseRevision >= 0)
+               this.prepareModuleExtraction(moduleName, stagedModuleFile.baseRevision, tempDir,
+                        stagedModuleFile.affectedEntryNames);
 
             // Deploy at once
-            hotBeanModuleInfo = this.loadModule(moduleName, revisionNumber);
+            hotBeanModuleInfo = this.loadModule(moduleName, revisionNumber, tempDir, manifest, contentHash);
          } catch (Exception e) {
             String moduleNameString = "";
             if (moduleName != null) moduleNameString = "'" + moduleName + "' ";
@@ -528,70 +1147,670 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
             this.releaseRepositoryFileLock(fileLock);
             fileLock = null;
 
-            if (moduleTempFileStream != null) {
-               // Delete temp file
-               try {
-                  moduleTempFileStream.close();
-               } catch (Exception e) {
+            // Delete staging file, if not published
+            if ((stagedModuleFile != null) && stagedModuleFile.file.exists()) FileDeletor.delete(stagedModuleFile.file);
+         }
+      }
+
+      return hotBeanModuleInfo;
+   }
+
+   /**
+    * Internal method to add and update several modules in a single transaction.
+    * 
+    * @since 1.3
+    */
+   protected HotBeanModuleInfo[] updateModulesInternal(final String[] moduleNames,
+            final InputStream[] moduleFileStreams) {
+      if (moduleNames.length != moduleFileStreams.length)
+         throw new HotBeansException("Number of module names doesn't match number of module files!");
+
+      Log logger = this.getLog();
+      final int moduleCount = moduleFileStreams.length;
+      final StagedModuleFile[] stagedModuleFiles = new StagedModuleFile[moduleCount];
+      final String[] jarFileModuleNames = new String[moduleCount];
+      final long[] revisionNumbers = new long[moduleCount];
+      final HotBeanModule[] hotBeanModules = new HotBeanModule[moduleCount];
+      Arrays.fill(revisionNumbers, -1);
+
+      try {
+         // Stream module files to staging files in parallel
+         BatchTask[] tasks = new BatchTask[moduleCount];
+         for (int i = 0; i < moduleCount; i++) {
+            final int index = i;
+            tasks[i] = new BatchTask() {
+
+               protected void execute() throws Exception {
+                  stagedModuleFiles[index] = stageModuleFile(moduleRepositoryDirectory, moduleFileStreams[index]);
+               }
+            };
+         }
+         Exception error = BatchTask.executeAll(this.batchWorkerPool, tasks);
+         if (error != null) throw error;
+
+         // The repository lock is held for the rest of the transaction, and the file lock is obtained while holding
+         // it (as when deploying a single module). The new revisions are loaded in this thread, since loading a
+         // module requires the repository lock.
+         synchronized (super.getLock()) {
+            RepositoryFileLock fileLock = null;
+            boolean committed = false;
+            try {
+               // Validate names
+               HashSet batchModuleNames = new HashSet();
+               for (int i = 0; i < moduleCount; i++) {
+                  jarFileModuleNames[i] = ModuleManifestUtils.getName(stagedModuleFiles[i].manifest);
+
+                  if ((jarFileModuleNames[i] == null) || (jarFileModuleNames[i].trim().length() == 0))
+                     throw new InvalidModuleNameException("Module name not specified!");
+                  else if ((moduleNames[i] == null) && (super.getHotBeanModule(jarFileModuleNames[i]) != null))
+                     throw new ModuleAlreadyExistsException("Module name '" + jarFileModuleNames[i]
+                              + "' already exists!");
+                  else if ((moduleNames[i] != null) && !moduleNames[i].equals(jarFileModuleNames[i]))
+                     throw new InvalidModuleNameException(
+                              "Module name in jar file doesn't match specified module name '" + moduleNames[i] + "'!");
+                  else if (!batchModuleNames.add(jarFileModuleNames[i]))
+                     throw new HotBeansException("Module '" + jarFileModuleNames[i] + "' specified more than once!");
+               }
+
+               // Obtain lock, which is held until all new revisions have been made current or rolled back
+               fileLock = this.obtainRepositoryFileLock(false);
+
+               // Publish new revisions
+               long contentRevision;
+               for (int i = 0; i < moduleCount; i++) {
+                  contentRevision = -1;
+                  if (this.contentDeduplicationEnabled)
+                     contentRevision = this.lookupContentRevision(jarFileModuleNames[i],
+                              stagedModuleFiles[i].contentHash);
+
+                  revisionNumbers[i] = this.publishRevision(jarFileModuleNames[i], stagedModuleFiles[i],
+                           contentRevision, stagedModuleFiles[i].contentHash, moduleNames[i] == null);
+               }
+
+               // Load new revisions
+               for (int i = 0; i < moduleCount; i++) {
+                  hotBeanModules[i] = this.createModule(jarFileModuleNames[i], revisionNumbers[i],
+                           stagedModuleFiles[i].manifest, stagedModuleFiles[i].contentHash);
+
+                  if (hotBeanModules[i].isError())
+                     throw new HotBeansException("Error loading module '" + jarFileModuleNames[i] + "', revision "
+                              + revisionNumbers[i] + " - " + hotBeanModules[i].getErrorReason() + "!");
+               }
+
+               // Make all new revisions current at once
+               HotBeanModuleInfo[] hotBeanModuleInfos = new HotBeanModuleInfo[moduleCount];
+               for (int i = 0; i < moduleCount; i++) {
+                  super.registerHotBeanModule(hotBeanModules[i]);
+                  this.pendingActivations.remove(jarFileModuleNames[i]);
+                  hotBeanModuleInfos[i] = hotBeanModules[i].getHotBeanModuleInfo();
                }
+               committed = true;
+
+               return hotBeanModuleInfos;
+            } finally {
+               if (!committed) this.rollBackRevisions(moduleNames, jarFileModuleNames, revisionNumbers, hotBeanModules);
+
+               this.releaseRepositoryFileLock(fileLock);
+               fileLock = null;
             }
-            if (moduleTempFile != null) FileDeletor.delete(moduleTempFile);
+         }
+      } catch (Exception e) {
+         logger.error("Error deploying modules - " + e, e);
+         if (e instanceof HotBeansException) throw (HotBeansException) e;
+         else throw new HotBeansException("Error deploying modules - " + e, e);
+      } finally {
+         // Delete staging files, if not published
+         for (int i = 0; i < moduleCount; i++) {
+            if ((stagedModuleFiles[i] != null) && stagedModuleFiles[i].file.exists())
+               FileDeletor.delete(stagedModuleFiles[i].file);
          }
       }
+   }
 
-      return hotBeanModuleInfo;
+   /**
+    * Rolls back the new revisions of a failed transaction, by unloading the loaded revisions and removing the published
+    * revisions and their content index entries. The module directories of added modules are removed, if no other
+    * revisions exist.
+    */
+   private void rollBackRevisions(final String[] moduleNames, final String[] jarFileModuleNames,
+            final long[] revisionNumbers, final HotBeanModule[] hotBeanModules) {
+      Log logger = this.getLog();
+
+      for (int i = 0; i < revisionNumbers.length; i++) {
+         if ((hotBeanModules[i] != null) && !hotBeanModules[i].isError()) super.unloadHotBeanModule(hotBeanModules[i]);
+
+         if (revisionNumbers[i] >= 0) {
+            if (logger.isInfoEnabled())
+               logger.info("Rolling back revision " + revisionNumbers[i] + " of module '" + jarFileModuleNames[i]
+                        + "'.");
+
+            // Delete at once, since the revision number may be reused as soon as the file lock is released
+            FileDeletor.deleteFileImpl(this.getRevisionFile(jarFileModuleNames[i], revisionNumbers[i])
+                     .getAbsolutePath());
+            try {
+               this.removeFromContentIndex(jarFileModuleNames[i], revisionNumbers[i]);
+            } catch (Exception e) {
+               logger.warn("Unable to remove revision " + revisionNumbers[i] + " of module '" + jarFileModuleNames[i]
+                        + "' from content index - " + e + "!", e);
+            }
+
+            long[] revisions = this.getRevisionsOnFileSystem(jarFileModuleNames[i]);
+            if ((moduleNames[i] == null) && ((revisions == null) || (revisions.length == 0)))
+               FileDeletor.deleteTreeImpl(new File(this.moduleRepositoryDirectory, jarFileModuleNames[i])
+                        .getAbsolutePath());
+         }
+      }
+   }
+
+   /**
+    * Publishes a staged module file as the next revision of a module, or, if a revision with identical content is
+    * specified, a reference to that revision. The repository file lock must be held when this method is invoked.
+    * 
+    * @return the new revision number.
+    */
+   private long publishRevision(final String moduleName, final StagedModuleFile stagedModuleFile,
+            final long contentRevision, final String contentHash, final boolean add) throws Exception {
+      Log logger = this.getLog();
+
+      File moduleDirectory = new File(this.moduleRepositoryDirectory, moduleName);
+      if (!moduleDirectory.exists()) moduleDirectory.mkdirs();
+
+      // Get next revision number
+      long revisionNumber = this.getLastRevisionOnFileSystem(moduleName);
+      if (logger.isDebugEnabled()) {
+         if (add) logger.debug("Adding module - last revision on file system: " + revisionNumber + ".");
+         else logger.debug("Updating module - last revision on file system: " + revisionNumber + ".");
+      }
+      if (revisionNumber < 0) revisionNumber = 0;
+
+      while (this.revisionExists(moduleName, revisionNumber)) // This should't really be necessary, but still...
+      {
+         revisionNumber++;
+      }
+
+      if (logger.isDebugEnabled()) {
+         if (add) logger.debug("Adding module - revision of new module: " + revisionNumber + ".");
+         else logger.debug("Updating module - revision of new module: " + revisionNumber + ".");
+      }
+
+      // Publish module file, or a reference to the revision with identical content
+      if (contentRevision >= 0) {
+         if (logger.isInfoEnabled())
+            logger.info("Content of module '" + moduleName + "' identical to revision " + contentRevision
+                     + " - revision " + revisionNumber + " will share the module file of revision " + contentRevision
+                     + ".");
+         this.storeRevisionReference(moduleName, revisionNumber, contentRevision, contentHash);
+      } else {
+         this.publishModuleFile(stagedModuleFile, new File(moduleDirectory, revisionNumber + MODULE_FILE_SUFFIX));
+         if (this.contentDeduplicationEnabled) this.addToContentIndex(moduleName, contentHash, revisionNumber);
+      }
+
+      return revisionNumber;
+   }
+
+   /**
+    * Streams a module file into a staging file in the specified directory. The manifest is parsed and the content hash
+    * is computed while the module file is streamed, so that the module file is only read once.
+    * 
+    * @since 1.3
+    */
+   protected StagedModuleFile stageModuleFile(final File stagingDirectory, final InputStream moduleFileStream)
+            throws Exception {
+      StagedModuleFile stagedModuleFile = new StagedModuleFile(File.createTempFile("hotBeanModule",
+               STAGING_FILE_SUFFIX, stagingDirectory));
+      OutputStream stagingFileStream = null;
+      try {
+         stagingFileStream = new BufferedOutputStream(new FileOutputStream(stagedModuleFile.file), BUFFER_SIZE);
+         MessageDigest messageDigest = BeanDefinitionCache.createContentDigest();
+         InputStream in = new DigestInputStream(new TeeInputStream(moduleFileStream, stagingFileStream),
+                  messageDigest);
+
+         // Parse manifest from the beginning of the stream...
+         stagedModuleFile.manifest = new JarInputStream(in, false).getManifest();
+
+         // ...and stream the rest of the module file
+         byte[] buffer = new byte[BUFFER_SIZE];
+         while (in.read(buffer) >= 0) {
+         }
+
+         stagedModuleFile.contentHash = BeanDefinitionCache.getContentHash(messageDigest);
+      } catch (Exception e) {
+         if (stagingFileStream != null) stagingFileStream.close();
+         stagingFileStream = null;
+         FileDeletor.delete(stagedModuleFile.file);
+         throw e;
+      } finally {
+         if (stagingFileStream != null) stagingFileStream.close();
+         moduleFileStream.close();
+      }
+
+      // The manifest isn't necessarily the first entry of the jar file
+      if (stagedModuleFile.manifest == null)
+         stagedModuleFile.manifest = ModuleManifestUtils.readManifest(stagedModuleFile.file);
+
+      return stagedModuleFile;
+   }
+
+   /**
+    * Transfers a module file from the specified channel into a staging file in the specified directory. If the channel
+    * is a {@link FileChannel}, the module file is transferred using {@link FileChannel#transferTo}, which allows the
+    * operating system to copy the file without passing the contents through the JVM, and the content hash is then
+    * computed from the (cached) source file. Other channels are read until end of stream, computing the content hash
+    * while the module file is written. A read that returns no bytes (as a non-blocking channel may) doesn't end the
+    * transfer.
+    * 
+    * @since 1.3
+    */
+   protected StagedModuleFile stageModuleFile(final File stagingDirectory, final ReadableByteChannel moduleFileChannel)
+            throws Exception {
+      StagedModuleFile stagedModuleFile = new StagedModuleFile(File.createTempFile("hotBeanModule",
+               STAGING_FILE_SUFFIX, stagingDirectory));
+      FileChannel stagingFileChannel = null;
+      try {
+         stagingFileChannel = new FileOutputStream(stagedModuleFile.file).getChannel();
+         MessageDigest messageDigest = BeanDefinitionCache.createContentDigest();
+         ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE * 8);
+
+         int read;
+         if (moduleFileChannel instanceof FileChannel) {
+            FileChannel sourceChannel = (FileChannel) moduleFileChannel;
+            long start = sourceChannel.position();
+            long size = sourceChannel.size();
+            long position = start;
+            long transferred;
+            while ((position < size)
+                     && ((transferred = sourceChannel.transferTo(position, size - position, stagingFileChannel)) > 0)) {
+               position += transferred;
+            }
+
+            // Compute the content hash from the transferred part of the source file
+            for (long hashPosition = start; hashPosition < position; hashPosition += read) {
+               buffer.clear();
+               if (buffer.remaining() > position - hashPosition) buffer.limit((int) (position - hashPosition));
+               if ((read = sourceChannel.read(buffer, hashPosition)) < 0) break;
+               messageDigest.update(buffer.array(), 0, read);
+            }
+         } else {
+            while ((read = moduleFileChannel.read(buffer)) >= 0) {
+               if (read == 0) {
+                  Thread.yield(); // No data available yet from a non-blocking channel
+                  continue;
+               }
+               buffer.flip();
+               messageDigest.update(buffer.array(), 0, buffer.limit());
+               while (buffer.hasRemaining()) {
+                  stagingFileChannel.write(buffer);
+               }
+               buffer.clear();
+            }
+         }
+
+         stagedModuleFile.contentHash = BeanDefinitionCache.getContentHash(messageDigest);
+
+         stagingFileChannel.close();
+         stagingFileChannel = null;
+
+         stagedModuleFile.manifest = ModuleManifestUtils.readManifest(stagedModuleFile.file);
+      } catch (Exception e) {
+         if (stagingFileChannel != null) stagingFileChannel.close();
+         FileDeletor.delete(stagedModuleFile.file);
+         throw e;
+      }
+
+      return stagedModuleFile;
+   }
+
+   /**
+    * Applies a module delta to the specified base revision of a module, and streams the resulting module file into a
+    * staging file in the specified directory. The content hash is computed while the module file is written.
+    * 
+    * @since 1.3
+    */
+   protected StagedModuleFile stageModuleDelta(final File stagingDirectory, final String moduleName,
+            final long baseRevision, final InputStream moduleDeltaStream) throws Exception {
+      File baseModuleFile = this.getModuleFile(moduleName, baseRevision);
+      if (!baseModuleFile.exists()) {
+         moduleDeltaStream.close();
+         throw new HotBeansException("Base revision " + baseRevision + " of module '" + moduleName + "' not found!");
+      }
+
+      StagedModuleFile stagedModuleFile = new StagedModuleFile(File.createTempFile("hotBeanModule",
+               STAGING_FILE_SUFFIX, stagingDirectory));
+      stagedModuleFile.baseRevision = baseRevision;
+      OutputStream stagingFileStream = null;
+      try {
+         stagingFileStream = new BufferedOutputStream(new FileOutputStream(stagedModuleFile.file), BUFFER_SIZE);
+         MessageDigest messageDigest = BeanDefinitionCache.createContentDigest();
+
+         stagedModuleFile.affectedEntryNames = ModuleDelta.apply(baseModuleFile, moduleDeltaStream,
+                  new DigestOutputStream(stagingFileStream, messageDigest));
+
+         stagedModuleFile.contentHash = BeanDefinitionCache.getContentHash(messageDigest);
+      } catch (Exception e) {
+         if (stagingFileStream != null) stagingFileStream.close();
+         stagingFileStream = null;
+         FileDeletor.delete(stagedModuleFile.file);
+         throw e;
+      } finally {
+         if (stagingFileStream != null) stagingFileStream.close();
+         moduleDeltaStream.close();
+      }
+
+      stagedModuleFile.manifest = ModuleManifestUtils.readManifest(stagedModuleFile.file);
+
+      return stagedModuleFile;
+   }
+
+   /**
+    * Prepares the extraction of a module revision created from a module delta, by copying the files extracted for the
+    * base revision that weren't affected by the delta to the specified temporary directory of the new revision. The
+    * module loader then only has to extract the affected entries. Nothing is copied if the base revision isn't loaded
+    * from extracted files, or if indexed module archives are enabled (in which case module files aren't extracted at
+    * all).
+    * 
+    * @since 1.3
+    */
+   protected void prepareModuleExtraction(final String moduleName, final long baseRevision, final File tempDir,
+            final Set affectedEntryNames) {
+      if (this.indexedModuleArchivesEnabled) return;
+
+      // Get the temporary directory of the loader of the base revision, if loaded
+      File baseTempDir = null;
+      HotBeanModule[] modules = super.getHotBeanModules(moduleName);
+      HotBeanModuleLoader baseModuleLoader;
+      for (int i = 0; (modules != null) && (i < modules.length); i++) {
+         baseModuleLoader = modules[i].getHotBeanModuleLoader();
+         if ((modules[i].getRevision() == baseRevision) && (baseModuleLoader instanceof JarFileHotBeanModuleLoader))
+            baseTempDir = ((JarFileHotBeanModuleLoader) baseModuleLoader).getTempDir();
+      }
+      if ((baseTempDir == null) || !baseTempDir.isDirectory()) return;
+
+      Log logger = this.getLog();
+      try {
+         int copiedFileCount = copyExtractedFiles(baseTempDir, tempDir, "", affectedEntryNames);
+
+         if (logger.isDebugEnabled())
+            logger.debug("Reusing " + copiedFileCount + " extracted files of revision " + baseRevision + " of module '"
+                     + moduleName + "' in '" + tempDir + "'.");
+      } catch (IOException ioe) {
+         logger.warn("Unable to reuse extracted files of revision " + baseRevision + " of module '" + moduleName
+                  + "' - " + ioe + "!");
+         FileDeletor.delete(tempDir);
+      }
+   }
+
+   /**
+    * Recursively copies extracted files, except the ones with the specified entry names.
+    */
+   private static int copyExtractedFiles(final File sourceDirectory, final File targetDirectory, final String path,
+            final Set excludedEntryNames) throws IOException {
+      File[] files = sourceDirectory.listFiles();
+      if (files == null) return 0;
+
+      int copiedFileCount = 0;
+      String entryName;
+      for (int i = 0; i < files.length; i++) {
+         entryName = path + files[i].getName();
+         if (files[i].isDirectory()) {
+            copiedFileCount += copyExtractedFiles(files[i], new File(targetDirectory, files[i].getName()), entryName
+                     + "/", excludedEntryNames);
+         } else if (!excludedEntryNames.contains(entryName)) {
+            targetDirectory.mkdirs();
+            FileCopyUtils.copy(files[i], new File(targetDirectory, files[i].getName()));
+            copiedFileCount++;
+         }
+      }
+
+      return copiedFileCount;
+   }
+
+   /**
+    * Closes a channel, ignoring any errors.
+    */
+   private static void closeChannel(final ReadableByteChannel channel) {
+      if (channel != null) {
+         try {
+            channel.close();
+         } catch (IOException ioe) {
+         }
+      }
+   }
+
+   /**
+    * Publishes a staged module file as a module revision, by renaming it. If the file cannot be renamed (for instance
+    * if the staging directory is on another file system), it is copied.
+    * 
+    * @since 1.3
+    */
+   protected void publishModuleFile(final StagedModuleFile stagedModuleFile, final File moduleFile) throws IOException {
+      if (!stagedModuleFile.file.renameTo(moduleFile)) {
+         this.getLog().warn(
+                  "Unable to rename staging file '" + stagedModuleFile.file + "' to '" + moduleFile
+                           + "' - copying file.");
+         FileCopyUtils.copy(stagedModuleFile.file, moduleFile);
+      }
    }
 
    /**
     * Loads a module.
     */
    protected HotBeanModuleInfo loadModule(final String moduleName, final long revision) throws Exception {
+      return this.loadModule(moduleName, revision, null, null);
+   }
+
+   /**
+    * Loads a module, using the specified manifest and content hash of the module file, if not <code>null</code>,
+    * instead of reading the module file again.
+    * 
+    * @since 1.3
+    */
+   protected HotBeanModuleInfo loadModule(final String moduleName, final long revision, final Manifest moduleManifest,
+            final String moduleContentHash) throws Exception {
+      return this.loadModule(moduleName, revision, this.createModuleTempDir(moduleName, revision), moduleManifest,
+               moduleContentHash);
+   }
+
+   /**
+    * Loads a module, using the specified temporary directory.
+    */
+   private HotBeanModuleInfo loadModule(final String moduleName, final long revision, final File tempDir,
+            final Manifest moduleManifest, final String moduleContentHash) throws Exception {
+      Log logger = this.getLog();
+
+      HotBeanModule hotBeanModule = this.createModule(moduleName, revision, this.getModuleFile(moduleName, revision),
+               tempDir, moduleManifest, moduleContentHash, true);
+
+      // Register HotBeanModule
+      super.registerHotBeanModule(hotBeanModule);
+      synchronized (super.getLock()) {
+         this.pendingActivations.remove(moduleName);
+      }
+
+      if (!hotBeanModule.isError() && logger.isInfoEnabled())
+         logger.info("Module '" + moduleName + "', revision " + revision + " loaded.");
+
+      return hotBeanModule.getHotBeanModuleInfo();
+   }
+
+   /**
+    * Creates and initializes a module revision, without registering it. If the module revision cannot be loaded, a
+    * module revision in the error state is returned.
+    * 
+    * @since 1.3
+    */
+   protected HotBeanModule createModule(final String moduleName, final long revision, final Manifest moduleManifest,
+            final String moduleContentHash) throws Exception {
+      return this.createModule(moduleName, revision, this.getModuleFile(moduleName, revision), this
+               .createModuleTempDir(moduleName, revision), moduleManifest, moduleContentHash, true);
+   }
+
+   /**
+    * Gets a new temporary directory for a load of the specified module revision. Each load of a revision uses its own
+    * directory, since the directory of an earlier load of the same revision (for instance a load that was unloaded
+    * because the revision was idle) is deleted when the loader of that load is finalized. The directory names are
+    * unique within the VM, since loaders of a previous repository using the same temporary directory may not have been
+    * finalized yet.
+    * 
+    * @since 1.3
+    */
+   protected File createModuleTempDir(final String moduleName, final long revision) {
+      return this.createUniqueTempDir(moduleName + "." + revision);
+   }
+
+   /**
+    * Gets a new temporary directory, whose name consists of the specified prefix and a sequence number that is unique
+    * within the VM.
+    */
+   private File createUniqueTempDir(final String prefix) {
+      synchronized (FileSystemHotBeanModuleRepository.class) {
+         File tempDir;
+         do {
+            moduleTempDirCount++;
+            tempDir = new File(this.temporaryDirectory, prefix + "." + moduleTempDirCount);
+         } while (tempDir.exists());
+
+         return tempDir;
+      }
+   }
+
+   /**
+    * Creates and initializes a module revision from the specified module file, without registering it.
+    * 
+    * @param handOverState <code>true</code> if the state of the current revision should be handed over to the new
+    *           revision (which isn't the case for shadow revisions and revisions of side by side versions).
+    */
+   private HotBeanModule createModule(final String moduleName, final long revision, final File moduleFile,
+            final File tempDir, final Manifest moduleManifest, final String moduleContentHash,
+            final boolean handOverState) throws Exception {
+      final boolean shadow = revision == ShadowDeployment.SHADOW_REVISION;
       Log logger = this.getLog();
-      if (logger.isInfoEnabled()) logger.info("Loading module '" + moduleName + "', revision " + revision + ".");
+      if (logger.isInfoEnabled())
+         logger.info("Loading module '" + moduleName + "', " + (shadow ? "shadow revision" : ("revision " + revision))
+                  + ".");
 
       File moduleDirectory = new File(this.moduleRepositoryDirectory, moduleName);
-      File moduleFile = new File(moduleDirectory, revision + MODULE_FILE_SUFFIX);
-      File tempDir = new File(this.temporaryDirectory, moduleName + "." + revision);
 
-      Manifest manifest = ModuleManifestUtils.readManifest(moduleFile);
+      // Get manifest from bean definition cache, if available
+      String contentHash = null;
+      Manifest manifest = null;
+      if (this.beanDefinitionCacheEnabled) {
+         try {
+            contentHash = moduleContentHash;
+            if (contentHash == null) contentHash = BeanDefinitionCache.computeContentHash(moduleFile);
+            manifest = this.beanDefinitionCache.loadManifest(moduleDirectory, contentHash);
+            if ((manifest != null) && logger.isDebugEnabled())
+               logger.debug("Using cached metadata for module '" + moduleName + "', revision " + revision
+                        + " (content hash " + contentHash + ").");
+         } catch (Exception e) {
+            logger.warn("Unable to compute content hash of module '" + moduleName + "', revision " + revision + " - "
+                     + e + "!");
+         }
+      }
+      if (manifest == null) manifest = moduleManifest;
+      if (manifest == null) manifest = ModuleManifestUtils.readManifest(moduleFile);
+
       // Get version from mainfest
       String version = ModuleManifestUtils.getVersion(manifest);
       if ((version == null) || (version.trim().length() == 0)) version = "n/a";
       // Get description from mainfest
       String description = ModuleManifestUtils.getDescription(manifest);
 
+      long lastModified = shadow ? moduleFile.lastModified() : this.getRevisionFile(moduleName, revision)
+               .lastModified();
       HotBeanModuleInfo hotBeanModuleInfo = new HotBeanModuleInfo(moduleName, description, revision, version,
-               moduleFile.lastModified());
+               lastModified);
 
       HotBeanModuleLoader hotBeanModuleLoader = null;
       HotBeanContext hotBeanContext = null;
       String errorReason = null;
 
       HotBeanModule hotBeanModule = null;
+      ClassPreloader classPreloader = null;
 
       try {
+         // Create indexed module archive
+         this.prepareIndexedModuleArchive(moduleName, revision, moduleFile);
+
          // Create loader
          hotBeanModuleLoader = super.createHotBeanModuleLoader(moduleFile, tempDir);
+         super.configureClassTransformers(moduleName, revision, hotBeanModuleLoader, manifest);
+
+         // Start preloading the classes used by the current revision (if any)
+         classPreloader = this.startClassPreloading(moduleName, revision, hotBeanModuleLoader);
 
          // Create context
          hotBeanContext = super.createHotBeanContext(this, manifest, hotBeanModuleLoader.getClassLoader());
 
-         if ((hotBeanContext instanceof ConfigurableApplicationContext) && (this.parentApplicationContext != null)) {
-            if (logger.isInfoEnabled())
-               logger.info("Setting parent Spring ApplicationContext for HotBeanContext(" + hotBeanContext
-                        + ") of module '" + moduleName + "', revision " + revision + ".");
-            ((ConfigurableApplicationContext) hotBeanContext).setParent(this.parentApplicationContext);
+         if (hotBeanContext instanceof ConfigurableApplicationContext) {
+            // Use the shared context of the module as parent, if any
+            ApplicationContext parentContext = super.getSharedContext(moduleName,
+                     hotBeanModuleLoader.getClassLoader(), this.parentApplicationContext);
+            if (parentContext == null) parentContext = this.parentApplicationContext;
+
+            if (parentContext != null) {
+               if (logger.isInfoEnabled())
+                  logger.info("Setting parent Spring ApplicationContext for HotBeanContext(" + hotBeanContext
+                           + ") of module '" + moduleName + "', revision " + revision + ".");
+               ((ConfigurableApplicationContext) hotBeanContext).setParent(parentContext);
+            }
+         }
+
+         if (hotBeanContext instanceof SpringHotBeanContext) {
+            ((SpringHotBeanContext) hotBeanContext).setLazyInit(super.isLazyInit(manifest));
+            if (contentHash != null)
+               ((SpringHotBeanContext) hotBeanContext).setBeanDefinitionCache(this.beanDefinitionCache, contentHash);
+         }
+
+         // Make the module cache available to the beans of the context
+         ModuleCache moduleCache = super.getModuleCache(moduleName);
+         if (moduleCache != null) {
+            moduleCache = moduleCache.withClassLoader(hotBeanModuleLoader.getClassLoader());
+            if (hotBeanContext instanceof SpringHotBeanContext) ((SpringHotBeanContext) hotBeanContext)
+                     .setModuleCache(moduleCache);
+            else if (hotBeanContext instanceof PropertiesHotBeanContext) ((PropertiesHotBeanContext) hotBeanContext)
+                     .setModuleCache(moduleCache);
          }
 
          // Initialize context
          hotBeanContext.init();
 
+         // Persist module metadata and mark bean definitions as valid
+         if ((contentHash != null) && !this.beanDefinitionCache.isValidated(contentHash)) {
+            try {
+               this.beanDefinitionCache.storeValidated(moduleDirectory, contentHash, manifest);
+            } catch (Exception e) {
+               logger.warn("Unable to store metadata for module '" + moduleName + "', revision " + revision + " - "
+                        + e + "!");
+            }
+         }
+
+         if ((hotBeanContext instanceof SpringHotBeanContext) && ((SpringHotBeanContext) hotBeanContext).isLazyInit()
+                  && logger.isInfoEnabled())
+            logger.info("Lazy initialization enabled for module '" + moduleName + "', revision " + revision + " - "
+                     + ((SpringHotBeanContext) hotBeanContext).getUninstantiatedBeanCount()
+                     + " beans not instantiated.");
+
+         // Make sure preloading is complete before the new revision is made current
+         if (classPreloader != null) {
+            classPreloader.waitForCompletion(this.classPreloadingTimeout);
+            if (logger.isInfoEnabled())
+               logger.info("Preloaded " + classPreloader.getPreloadedClassCount() + " classes for module '"
+                        + moduleName + "', revision " + revision + " in " + classPreloader.getPreloadTime() + " ms.");
+         }
+
+         // Hand over state from the current revision
+         if (handOverState) super.handOverState(moduleName, revision, hotBeanContext);
+
+         // Warm up the new revision before it is made current
+         super.warmUpModule(moduleName, revision, hotBeanContext, hotBeanModuleLoader.getClassLoader());
+
          // Create module
          hotBeanModule = super.createHotBeanModule(hotBeanModuleInfo, hotBeanModuleLoader, hotBeanContext);
 
          // Init loader
          hotBeanModuleLoader.init(hotBeanModule);
       } catch (Exception e) {
+         if (classPreloader != null) classPreloader.abort();
          hotBeanModuleLoader = null;
          hotBeanContext = null;
          hotBeanModule = null;
@@ -604,13 +1823,266 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
          hotBeanModule.setError(errorReason);
       }
 
-      // Register HotBeanModule
-      super.registerHotBeanModule(hotBeanModule);
+      return hotBeanModule;
+   }
 
-      if ((hotBeanContext != null) && logger.isInfoEnabled())
-         logger.info("Module '" + moduleName + "', revision " + revision + " loaded.");
+   /**
+    * Reverts a module to its standby revision, by registering a new revision that reuses the loader and context of the
+    * standby revision. The new revision is made current at once, and the hot bean proxies are retargeted on their next
+    * invocation.
+    */
+   protected HotBeanModuleInfo activateStandbyModule(final HotBeanModule standbyModule, final File standbyModuleFile)
+            throws Exception {
+      RepositoryFileLock fileLock = null;
 
-      return hotBeanModuleInfo;
+      synchronized (super.getLock()) {
+         try {
+            fileLock = this.obtainRepositoryFileLock(false); // Obtain lock
+
+            return this.registerStandbyModule(standbyModule, standbyModuleFile);
+         } finally {
+            this.releaseRepositoryFileLock(fileLock);
+         }
+      }
+   }
+
+   /**
+    * Registers a new revision that reuses the loader and context of the standby revision (see
+    * {@link #activateStandbyModule(HotBeanModule, File)}). The repository file lock must be held when this method is
+    * invoked.
+    */
+   private HotBeanModuleInfo registerStandbyModule(final HotBeanModule standbyModule, final File standbyModuleFile)
+            throws Exception {
+      Log logger = this.getLog();
+      String moduleName = standbyModule.getName();
+
+      synchronized (super.getLock()) {
+         // Get next revision number
+         long revisionNumber = Math.max(this.getLastRevisionOnFileSystem(moduleName), 0);
+         while (this.revisionExists(moduleName, revisionNumber)) {
+            revisionNumber++;
+         }
+
+         if (logger.isInfoEnabled())
+            logger.info("Activating standby module " + standbyModule.toString(false) + " as revision "
+                     + revisionNumber + ".");
+
+         // Save module file, or a reference to the module file of the standby revision
+         if (this.contentDeduplicationEnabled) this.storeRevisionReference(moduleName, revisionNumber, this
+                  .resolveContentRevision(moduleName, standbyModule.getRevision()), null);
+         else FileCopyUtils.copy(standbyModuleFile, new File(new File(this.moduleRepositoryDirectory, moduleName),
+                  revisionNumber + MODULE_FILE_SUFFIX));
+
+         HotBeanModuleInfo hotBeanModuleInfo = new HotBeanModuleInfo(moduleName, standbyModule.getDescription(),
+                  revisionNumber, standbyModule.getVersion(), this.getRevisionFile(moduleName, revisionNumber)
+                           .lastModified());
+
+         // Hand over loader and context to new revision
+         HotBeanModuleLoader hotBeanModuleLoader;
+         HotBeanContext hotBeanContext;
+         synchronized (standbyModule) {
+            hotBeanModuleLoader = standbyModule.getHotBeanModuleLoader();
+            hotBeanContext = standbyModule.getHotBeanContext();
+            standbyModule.detach();
+         }
+
+         HotBeanModule hotBeanModule = super.createHotBeanModule(hotBeanModuleInfo, hotBeanModuleLoader,
+                  hotBeanContext);
+         hotBeanModuleLoader.init(hotBeanModule);
+
+         // Register HotBeanModule and inactivate the previous revision at once
+         super.registerHotBeanModule(hotBeanModule);
+         super.checkForObsoleteModules(moduleName);
+
+         return hotBeanModuleInfo;
+      }
+   }
+
+   /**
+    * Activates (loads) the current revision of a module that was registered without being loaded, because lazy
+    * activation is enabled, or that was unloaded because it was idle. Concurrent callers wait for, and share, a single
+    * load of the module. The module is loaded without holding the repository lock, so if a new revision of the module
+    * is registered while the module is being loaded, the loaded revision is discarded.
+    */
+   protected boolean activateHotBeanModule(final String moduleName) {
+      ModuleActivation activation;
+      boolean activate = false;
+
+      synchronized (super.getLock()) {
+         if (!this.pendingActivations.contains(moduleName)) return false;
+
+         activation = (ModuleActivation) this.activations.get(moduleName);
+         if (activation == null) {
+            HotBeanModule currentModule = super.getHotBeanModule(moduleName);
+            if ((currentModule == null) || !(currentModule.isUnloaded() || currentModule.isUnloading())) return false;
+
+            activation = new ModuleActivation(currentModule.getRevision());
+            this.activations.put(moduleName, activation);
+            activate = true;
+         }
+      }
+
+      if (activate) {
+         Log logger = this.getLog();
+         try {
+            if (logger.isInfoEnabled())
+               logger.info("Activating module '" + moduleName + "', revision " + activation.revision
+                        + " on first access.");
+
+            HotBeanModule hotBeanModule = null;
+            if (this.isUnloadedCurrentRevision(moduleName, activation.revision))
+               hotBeanModule = this.createModule(moduleName, activation.revision, null, null);
+
+            boolean registered = false;
+            if (hotBeanModule != null) {
+               synchronized (super.getLock()) {
+                  // Only register the loaded revision if it is still the current revision
+                  if (this.isUnloadedCurrentRevision(moduleName, activation.revision)) {
+                     super.registerHotBeanModule(hotBeanModule);
+                     registered = true;
+                  }
+               }
+            }
+
+            if (registered) {
+               if (!hotBeanModule.isError() && logger.isInfoEnabled())
+                  logger.info("Module '" + moduleName + "', revision " + activation.revision + " activated.");
+            } else {
+               if (logger.isInfoEnabled())
+                  logger.info("Revision " + activation.revision + " of module '" + moduleName
+                           + "' is no longer the current revision - discarding activation.");
+               if ((hotBeanModule != null) && !hotBeanModule.isError()) super.unloadHotBeanModule(hotBeanModule);
+            }
+         } catch (Exception e) {
+            logger.error("Error activating module '" + moduleName + "', revision " + activation.revision + " - " + e
+                     + "!", e);
+         } finally {
+            synchronized (super.getLock()) {
+               this.pendingActivations.remove(moduleName);
+               this.activations.remove(moduleName);
+            }
+            activation.complete();
+         }
+      } else activation.await();
+
+      return true;
+   }
+
+   /**
+    * Checks if the specified revision is the current revision of a module, and if it is unloaded (or being unloaded).
+    */
+   private boolean isUnloadedCurrentRevision(final String moduleName, final long revision) {
+      synchronized (super.getLock()) {
+         HotBeanModule currentModule = super.getHotBeanModule(moduleName);
+         return (currentModule != null) && (currentModule.getRevision() == revision)
+                  && (currentModule.isUnloaded() || currentModule.isUnloading());
+      }
+   }
+
+   /**
+    * Activates (loads again) an unloaded revision of a side by side version of a module. The state of the current
+    * revision isn't handed over to the activated revision.
+    * 
+    * @since 1.3
+    */
+   protected boolean activateHotBeanModuleRevision(final HotBeanModule module) {
+      Log logger = this.getLog();
+      final String moduleName = module.getName();
+      final long revision = module.getRevision();
+
+      synchronized (super.getLock()) {
+         // Make sure the revision is still registered, and hasn't been activated by another thread
+         HotBeanModule[] modules = super.getHotBeanModules(moduleName);
+         HotBeanModule registeredModule = null;
+         for (int r = 0; r < modules.length; r++) {
+            if (modules[r].getRevision() == revision) registeredModule = modules[r];
+         }
+         if (registeredModule == null) return false;
+         else if (registeredModule.isActive()) return true;
+         else if (!(registeredModule.isUnloaded() || registeredModule.isUnloading())) return false;
+
+         try {
+            if (logger.isInfoEnabled())
+               logger.info("Activating module '" + moduleName + "', revision " + revision + " (version "
+                        + module.getVersion() + ") on access.");
+
+            HotBeanModule hotBeanModule = this.createModule(moduleName, revision, this.getModuleFile(moduleName,
+                     revision), this.createModuleTempDir(moduleName, revision), null, null, false);
+            if (hotBeanModule.isError()) return false;
+
+            super.registerHotBeanModule(hotBeanModule);
+            return true;
+         } catch (Exception e) {
+            logger.error("Error activating module '" + moduleName + "', revision " + revision + " - " + e + "!", e);
+            return false;
+         }
+      }
+   }
+
+   /**
+    * Unloads an idle revision of a module. If the revision is the current revision, the module is marked as pending
+    * activation, so that the revision is loaded again when it is next accessed through a hot bean proxy. Other
+    * revisions (i.e. side by side versions) are activated again through
+    * {@link #activateHotBeanModuleRevision(HotBeanModule)}.
+    */
+   protected boolean unloadIdleModule(final HotBeanModule module) {
+      synchronized (super.getLock()) {
+         if (super.isCurrentRevision(module)) this.pendingActivations.add(module.getName());
+         super.unloadHotBeanModule(module);
+      }
+      return true;
+   }
+
+   /**
+    * Creates an {@link IndexedModuleArchive} for the specified module file, if enabled and if no up to date archive
+    * exists. If the archive cannot be created, the module will be loaded from the jar file.
+    */
+   protected void prepareIndexedModuleArchive(final String moduleName, final long revision, final File moduleFile) {
+      Log logger = this.getLog();
+      File archiveFile = IndexedModuleArchive.getArchiveFile(moduleFile);
+
+      if (this.indexedModuleArchivesEnabled
+               && (!archiveFile.exists() || (archiveFile.lastModified() < moduleFile.lastModified()))) {
+         try {
+            long beginCreate = System.currentTimeMillis();
+            IndexedModuleArchive.create(moduleFile, archiveFile);
+            if (logger.isInfoEnabled())
+               logger.info("Created indexed module archive for module '" + moduleName + "', revision " + revision
+                        + " in " + (System.currentTimeMillis() - beginCreate) + " ms.");
+         } catch (Exception e) {
+            logger.warn("Unable to create indexed module archive for module '" + moduleName + "', revision "
+                     + revision + " - " + e + "!");
+            archiveFile.delete();
+         }
+      }
+   }
+
+   /**
+    * Starts preloading, in the specified loader of a new module revision, of the classes that were loaded by the loader
+    * of the current revision of the module. Returns <code>null</code> if preloading is disabled or not supported by the
+    * loaders, or if there is no current revision.
+    */
+   protected ClassPreloader startClassPreloading(final String moduleName, final long revision,
+            final HotBeanModuleLoader hotBeanModuleLoader) {
+      if (!this.classPreloadingEnabled || !(hotBeanModuleLoader instanceof JarFileHotBeanModuleLoader)) return null;
+
+      HotBeanModule currentModule = super.getHotBeanModule(moduleName);
+      HotBeanModuleLoader currentModuleLoader = (currentModule != null) ? currentModule.getHotBeanModuleLoader() : null;
+      if (!(currentModuleLoader instanceof JarFileHotBeanModuleLoader)) return null;
+
+      String[] classNames = ((JarFileHotBeanModuleLoader) currentModuleLoader).getLoadedClassNames();
+      if (classNames.length == 0) return null;
+
+      Log logger = this.getLog();
+      if (logger.isDebugEnabled())
+         logger.debug("Preloading " + classNames.length + " classes loaded by " + currentModule.toString(false)
+                  + " for module '" + moduleName + "', revision " + revision + ".");
+
+      ClassPreloader classPreloader = new ClassPreloader(moduleName, revision,
+               (JarFileHotBeanModuleLoader) hotBeanModuleLoader, classNames);
+      classPreloader.start();
+
+      return classPreloader;
    }
 
    /**
@@ -622,8 +2094,7 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
       if (logger.isInfoEnabled())
          logger.info("Registering unloaded module '" + moduleName + "', revision " + revision + ".");
 
-      File moduleDirectory = new File(this.moduleRepositoryDirectory, moduleName);
-      File moduleFile = new File(moduleDirectory, revision + MODULE_FILE_SUFFIX);
+      File moduleFile = this.getModuleFile(moduleName, revision);
 
       Manifest manifest = ModuleManifestUtils.readManifest(moduleFile);
       // Get version from mainfest
@@ -632,8 +2103,8 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
       // Get description from mainfest
       String description = ModuleManifestUtils.getDescription(manifest);
 
-      HotBeanModuleInfo hotBeanModuleInfo = new HotBeanModuleInfo(moduleName, description, revision, version,
-               moduleFile.lastModified());
+      HotBeanModuleInfo hotBeanModuleInfo = new HotBeanModuleInfo(moduleName, description, revision, version, this
+               .getRevisionFile(moduleName, revision).lastModified());
       HotBeanModule hotBeanModue = super.createHotBeanModule(hotBeanModuleInfo);
 
       // Register HotBeanModule
@@ -643,6 +2114,164 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
          logger.info("Unloaded module '" + moduleName + "', revision " + revision + " registered.");
    }
 
+   /**
+    * Gets the file representing the specified revision on the file system, i.e. the module file or, if the revision
+    * shares the module file of another revision, the revision reference file.
+    * 
+    * @since 1.3
+    */
+   protected File getRevisionFile(final String moduleName, final long revision) {
+      File moduleDirectory = new File(this.moduleRepositoryDirectory, moduleName);
+      File referenceFile = new File(moduleDirectory, revision + REVISION_REFERENCE_FILE_SUFFIX);
+      if (referenceFile.exists()) return referenceFile;
+      else return new File(moduleDirectory, revision + MODULE_FILE_SUFFIX);
+   }
+
+   /**
+    * Gets the module file of the specified revision. If the revision shares the module file of another revision, the
+    * module file of that revision is returned.
+    * 
+    * @since 1.3
+    */
+   protected File getModuleFile(final String moduleName, final long revision) {
+      long contentRevision = this.resolveContentRevision(moduleName, revision);
+      return new File(new File(this.moduleRepositoryDirectory, moduleName), contentRevision + MODULE_FILE_SUFFIX);
+   }
+
+   /**
+    * Checks if the specified revision exists on the file system.
+    */
+   private boolean revisionExists(final String moduleName, final long revision) {
+      return this.getRevisionFile(moduleName, revision).exists();
+   }
+
+   /**
+    * Gets the revision whose module file contains the content of the specified revision, i.e. the revision itself or,
+    * if the revision shares the module file of another revision, that revision.
+    */
+   private long resolveContentRevision(final String moduleName, final long revision) {
+      File referenceFile = new File(new File(this.moduleRepositoryDirectory, moduleName), revision
+               + REVISION_REFERENCE_FILE_SUFFIX);
+      if (!referenceFile.exists()) return revision;
+
+      try {
+         Properties reference = loadProperties(referenceFile);
+         return Long.parseLong(reference.getProperty(REVISION_REFERENCE_REVISION_PROPERTY));
+      } catch (Exception e) {
+         this.getLog().warn(
+                  "Error reading revision reference file '" + referenceFile + "' of module '" + moduleName + "' - " + e
+                           + "!");
+         return revision;
+      }
+   }
+
+   /**
+    * Stores a reference file for the specified revision, that makes it share the module file of another revision.
+    */
+   private void storeRevisionReference(final String moduleName, final long revision, final long contentRevision,
+            final String contentHash) throws IOException {
+      Properties reference = new Properties();
+      reference.setProperty(REVISION_REFERENCE_REVISION_PROPERTY, String.valueOf(contentRevision));
+      if (contentHash != null) reference.setProperty(REVISION_REFERENCE_CONTENT_HASH_PROPERTY, contentHash);
+
+      storeProperties(new File(new File(this.moduleRepositoryDirectory, moduleName), revision
+               + REVISION_REFERENCE_FILE_SUFFIX), reference, "Revision " + revision + " of module " + moduleName);
+   }
+
+   /**
+    * Looks up the revision whose module file has the specified content hash in the content index of the module.
+    * 
+    * @return the revision, or -1 if there is no revision with the specified content hash.
+    */
+   private long lookupContentRevision(final String moduleName, final String contentHash) throws IOException {
+      String revision = this.getContentIndex(moduleName).getProperty(contentHash);
+      if ((revision == null) || !new File(new File(this.moduleRepositoryDirectory, moduleName), revision
+               + MODULE_FILE_SUFFIX).exists()) return -1;
+      else return Long.parseLong(revision);
+   }
+
+   /**
+    * Adds the content hash of the module file of the specified revision to the content index of the module.
+    */
+   private void addToContentIndex(final String moduleName, final String contentHash, final long revision)
+            throws IOException {
+      Properties contentIndex = this.getContentIndex(moduleName);
+      contentIndex.setProperty(contentHash, String.valueOf(revision));
+      storeProperties(new File(new File(this.moduleRepositoryDirectory, moduleName), CONTENT_INDEX_FILE_NAME),
+               contentIndex, "Content index of module " + moduleName);
+   }
+
+   /**
+    * Removes the content hash of the module file of the specified revision from the content index of the module, if
+    * the module has a content index.
+    */
+   private void removeFromContentIndex(final String moduleName, final long revision) throws IOException {
+      File contentIndexFile = new File(new File(this.moduleRepositoryDirectory, moduleName), CONTENT_INDEX_FILE_NAME);
+      if (!contentIndexFile.exists()) return;
+
+      Properties contentIndex = loadProperties(contentIndexFile);
+      if (contentIndex.values().remove(String.valueOf(revision)))
+         storeProperties(contentIndexFile, contentIndex, "Content index of module " + moduleName);
+   }
+
+   /**
+    * Gets the content index (content hash -> revision) of a module. The index is read from the module directory, or,
+    * if it doesn't exist, built by computing the content hashes of the existing module files.
+    */
+   private Properties getContentIndex(final String moduleName) throws IOException {
+      File moduleDirectory = new File(this.moduleRepositoryDirectory, moduleName);
+      File contentIndexFile = new File(moduleDirectory, CONTENT_INDEX_FILE_NAME);
+      if (contentIndexFile.exists()) return loadProperties(contentIndexFile);
+
+      Properties contentIndex = new Properties();
+      if (!moduleDirectory.isDirectory()) return contentIndex;
+
+      long[] revisions = this.getRevisionsOnFileSystem(moduleName);
+      File moduleFile;
+      for (int i = 0; (revisions != null) && (i < revisions.length); i++) {
+         moduleFile = new File(moduleDirectory, revisions[i] + MODULE_FILE_SUFFIX);
+         if (moduleFile.exists()) {
+            contentIndex.setProperty(BeanDefinitionCache.computeContentHash(moduleFile), String.valueOf(revisions[i]));
+         }
+      }
+
+      if (!contentIndex.isEmpty()) {
+         if (this.getLog().isInfoEnabled())
+            this.getLog().info(
+                     "Built content index of module '" + moduleName + "' (" + contentIndex.size() + " entries).");
+         storeProperties(contentIndexFile, contentIndex, "Content index of module " + moduleName);
+      }
+
+      return contentIndex;
+   }
+
+   /**
+    * Loads a properties file.
+    */
+   private static Properties loadProperties(final File file) throws IOException {
+      Properties properties = new Properties();
+      InputStream in = new FileInputStream(file);
+      try {
+         properties.load(in);
+      } finally {
+         in.close();
+      }
+      return properties;
+   }
+
+   /**
+    * Stores a properties file.
+    */
+   private static void storeProperties(final File file, final Properties properties, final String comment)
+            throws IOException {
+      OutputStream out = new FileOutputStream(file);
+      try {
+         properties.store(out, comment);
+      } finally {
+         out.close();
+      }
+   }
+
    /**
     * Gets the last revision on the file system.
     */
@@ -672,8 +2301,7 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
          for (int i = 0; i < moduleFiles.length; i++) {
             fileName = moduleFiles[i].getName();
             try {
-               revisionNumbers[i] = Long
-                        .parseLong(fileName.substring(0, fileName.length() - MODULE_FILE_SUFFIX_LENGTH));
+               revisionNumbers[i] = Long.parseLong(fileName.substring(0, fileName.lastIndexOf('.')));
             } catch (Exception e) {
                revisionNumbers[i] = -1;
             }
@@ -716,6 +2344,10 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
                                                                      // will be executed again in the
             // near future...
 
+            // Delete staging files left by uploads that never completed (for instance in other repositories)
+            if ((System.currentTimeMillis() - this.lastStagingFileCleanup) > STALE_STAGING_FILE_AGE)
+               this.deleteStaleStagingFiles();
+
             File[] moduleDirectories = this.moduleRepositoryDirectory.listFiles();
             ArrayList activeModuleNames = new ArrayList(Arrays.asList(super.getHotBeanModuleNames()));
 
@@ -787,7 +2419,18 @@ public class FileSystemHotBeanModuleRepository extends PeriodicCheckHotBeanModul
          }
 
          if (!lastRevisionAlreadyRegistered) {
-            this.loadModule(moduleName, lastRevision);
+            boolean pendingActivation;
+            synchronized (super.getLock()) {
+               pendingActivation = this.pendingActivations.contains(moduleName);
+            }
+
+            if (this.lazyActivationEnabled && (newModule || pendingActivation)) {
+               // Register current revision without loading it
+               this.registerHistoryModule(moduleName, lastRevision);
+               synchronized (super.getLock()) {
+                  this.pendingActivations.add(moduleName);
+               }
+            } else this.loadModule(moduleName, lastRevision);
          }
       }
    }
@@ -75,6 +75,22 @@ public class HotBeanModuleType {
       if (!this.modules.contains(module)) this.modules.add(module);
    }
 
+   /**
+    * Replaces the registered module with the same revision as the specified module.
+    * 
+    * @return <code>true</code> if a module was replaced, otherwise <code>false</code>.
+    * @since 1.3
+    */
+   public boolean replaceModule(HotBeanModule module) {
+      for (int i = 0; i < this.modules.size(); i++) {
+         if (((HotBeanModule) this.modules.get(i)).getRevision() == module.getRevision()) {
+            this.modules.set(i, module);
+            return true;
+         }
+      }
+      return false;
+   }
+
    /**
     * Removes a module from this type.
     */
@@ -48,10 +48,30 @@ public class HotBeanProxyFactory extends ProxyFactory implements MethodIntercept
 
    private final String beanName;
 
+   private final VersionRange versionRange; // Range of module versions to resolve to, or null for the current revision
+
+   private int resolvedRegistrationCount = -1;
+
    private HotBeanModule currentModule;
 
    private Object currentBean;
 
+   private HotBeanModule baselineModule; // Baseline revision of a canary deployment in progress
+
+   private Object baselineBean;
+
+   private int canaryWeight = 100;
+
+   private int routingCounter = 0; // Not synchronized, since exact routing isn't required
+
+   private HotBeanModule shadowModule; // Shadow revision of a shadow deployment in progress
+
+   private Object shadowBean;
+
+   private int shadowSampleRate = 0;
+
+   private int shadowCounter = 0; // Not synchronized, since exact sampling isn't required
+
    private final Log logger = LogFactory.getLog(this.getClass());
 
    /**
@@ -67,8 +87,29 @@ public class HotBeanProxyFactory extends ProxyFactory implements MethodIntercept
     */
    public HotBeanProxyFactory(ProxyAccessHotBeanModuleRepository repository, String moduleName, String beanName,
             HotBeanModule currentModule, Object initalBean, Class[] interfaces) {
+      this(repository, moduleName, null, beanName, currentModule, initalBean, interfaces);
+   }
+
+   /**
+    * Creates a new HotBeanProxyFactory, that resolves to the newest active version of the module in the specified
+    * version range.
+    * 
+    * @since 1.3
+    */
+   public HotBeanProxyFactory(ProxyAccessHotBeanModuleRepository repository, String moduleName,
+            VersionRange versionRange, String beanName, Class[] interfaces) {
+      this(repository, moduleName, versionRange, beanName, null, null, interfaces);
+   }
+
+   /**
+    * Creates a new HotBeanProxyFactory.
+    */
+   private HotBeanProxyFactory(ProxyAccessHotBeanModuleRepository repository, String moduleName,
+            VersionRange versionRange, String beanName, HotBeanModule currentModule, Object initalBean,
+            Class[] interfaces) {
       this.repository = repository;
       this.moduleName = moduleName;
+      this.versionRange = versionRange;
       this.beanName = beanName;
       this.currentModule = currentModule;
 
@@ -94,6 +135,32 @@ public class HotBeanProxyFactory extends ProxyFactory implements MethodIntercept
       return beanName;
    }
 
+   /**
+    * Gets the range of module versions that this proxy factory resolves to, or <code>null</code> if this proxy factory
+    * resolves to the current revision of the module.
+    * 
+    * @since 1.3
+    */
+   public VersionRange getVersionRange() {
+      return versionRange;
+   }
+
+   /**
+    * Gets the registration count of the repository when the module of this proxy factory was last resolved from the
+    * version range.
+    */
+   int getResolvedRegistrationCount() {
+      return resolvedRegistrationCount;
+   }
+
+   /**
+    * Sets the registration count of the repository when the module of this proxy factory was last resolved from the
+    * version range.
+    */
+   void setResolvedRegistrationCount(final int resolvedRegistrationCount) {
+      this.resolvedRegistrationCount = resolvedRegistrationCount;
+   }
+
    /**
     * Gets the current hot bean module that this proxy factory is associated with.
     */
@@ -101,6 +168,76 @@ public class HotBeanProxyFactory extends ProxyFactory implements MethodIntercept
       return currentModule;
    }
 
+   /**
+    * Gets the baseline revision of the canary deployment in progress, if any, to which a share of the invocations is
+    * routed.
+    * 
+    * @since 1.3
+    */
+   public HotBeanModule getBaselineModule() {
+      return baselineModule;
+   }
+
+   /**
+    * Call-back method invoked by the HotBeanModuleRepository implementation to update the baseline module/target bean
+    * of a canary deployment. A <code>null</code> baseline module means that no canary deployment is in progress.
+    * 
+    * @since 1.3
+    */
+   public void updateBaselineModuleAndBean(final HotBeanModule hotBeanModule, final Object hotBean) {
+      this.baselineModule = hotBeanModule;
+      this.baselineBean = hotBean;
+
+      if (logger.isDebugEnabled())
+         logger.debug("Updated baseline module and bean reference in proxy - bean name: '" + this.beanName
+                  + "', module: " + this.baselineModule + ".");
+   }
+
+   /**
+    * Sets the share (in percent) of the invocations that are routed to the current (canary) module, when a canary
+    * deployment is in progress.
+    * 
+    * @since 1.3
+    */
+   public void setCanaryWeight(final int canaryWeight) {
+      this.canaryWeight = canaryWeight;
+   }
+
+   /**
+    * Gets the shadow revision of the shadow deployment in progress, if any, to which a share of the invocations is
+    * mirrored.
+    * 
+    * @since 1.3
+    */
+   public HotBeanModule getShadowModule() {
+      return shadowModule;
+   }
+
+   /**
+    * Call-back method invoked by the HotBeanModuleRepository implementation to update the shadow module/target bean of
+    * a shadow deployment. A <code>null</code> shadow module means that no shadow deployment is in progress.
+    * 
+    * @since 1.3
+    */
+   public void updateShadowModuleAndBean(final HotBeanModule hotBeanModule, final Object hotBean) {
+      this.shadowModule = hotBeanModule;
+      this.shadowBean = hotBean;
+
+      if (logger.isDebugEnabled())
+         logger.debug("Updated shadow module and bean reference in proxy - bean name: '" + this.beanName
+                  + "', module: " + this.shadowModule + ".");
+   }
+
+   /**
+    * Sets the share (in percent) of the invocations that are mirrored to the shadow module, when a shadow deployment is
+    * in progress.
+    * 
+    * @since 1.3
+    */
+   public void setShadowSampleRate(final int shadowSampleRate) {
+      this.shadowSampleRate = shadowSampleRate;
+   }
+
    /**
     * Call-back method invoked by the HotBeanModuleRepository implementation to update the current module/target bean
     * when {@link AbstractHotBeanModuleRepository#validateHotBeanProxyFactory(HotBeanProxyFactory)} is invoked.
@@ -129,18 +266,70 @@ public class HotBeanProxyFactory extends ProxyFactory implements MethodIntercept
          logger.debug("Invoking method " + methodInvocation.getMethod().getName() + " on bean '" + this.beanName
                   + "' in module " + this.currentModule + ". Current bean: " + this.currentBean + ".");
 
-      if (this.currentBean != null) {
+      HotBeanModule module = this.currentModule;
+      Object bean = this.currentBean;
+
+      // Route the invocation to the baseline revision, if a canary deployment is in progress
+      HotBeanModule baselineModule = this.baselineModule;
+      Object baselineBean = this.baselineBean;
+      if ((baselineModule != null) && (baselineBean != null)) {
+         this.routingCounter = (this.routingCounter + 1) % 100;
+         if (this.routingCounter >= this.canaryWeight) {
+            module = baselineModule;
+            bean = baselineBean;
+         }
+      }
+
+      // Mirror the invocation to the shadow revision, if a shadow deployment is in progress and it's sampled
+      HotBeanModule shadowModule = this.shadowModule;
+      Object shadowBean = this.shadowBean;
+      if ((shadowModule != null) && (shadowBean != null)) {
+         this.shadowCounter = (this.shadowCounter + 1) % 100;
+         if (this.shadowCounter >= this.shadowSampleRate) shadowModule = null;
+      }
+
+      if ((module != null) && (bean != null)) {
+         long beginInvocation = System.currentTimeMillis();
+         Object result = null;
+         Throwable error = null;
+
+         // Copy the arguments of a mirrored invocation before they may be modified by the invocation
+         Object shadowArguments = null;
+         if ((shadowModule != null) && (shadowBean != null)) {
+            shadowArguments = this.repository.copyShadowInvocationArguments(this, shadowModule, methodInvocation
+                     .getMethod(), methodInvocation.getArguments());
+            if (shadowArguments == null) shadowModule = null;
+         }
+
          try {
-            this.currentModule.incrementUsageCount();
+            module.incrementUsageCount();
+
+            this.repository.beforeHotBeanInvocation(this, module, methodInvocation.getMethod(), methodInvocation
+                     .getArguments());
 
-            return AopUtils.invokeJoinpointUsingReflection(this.currentBean, methodInvocation.getMethod(),
-                     methodInvocation.getArguments());
+            result = AopUtils.invokeJoinpointUsingReflection(bean, methodInvocation.getMethod(), methodInvocation
+                     .getArguments());
+            return result;
+         } catch (Throwable t) {
+            error = t;
+            throw t;
          } finally {
-            this.currentModule.decrementUsageCount();
+            module.decrementUsageCount();
+
+            long invocationTime = System.currentTimeMillis() - beginInvocation;
+            this.repository.afterHotBeanInvocation(this, module, methodInvocation.getMethod(), invocationTime, error);
+
+            if ((shadowModule != null) && (shadowBean != null)) {
+               this.repository.mirrorHotBeanInvocation(this, shadowModule, shadowBean, methodInvocation.getMethod(),
+                        shadowArguments, result, error, invocationTime);
+            }
          }
       } else {
-         if (this.currentModule == null) throw new ModuleNotFoundException(this.moduleName, "Unable to find module '"
-                  + this.moduleName + "'!");
+         if ((this.currentModule == null) && (this.versionRange != null))
+            throw new ModuleNotFoundException(this.moduleName, "Unable to find module '" + this.moduleName
+                     + "' with a version in range " + this.versionRange + "!");
+         else if (this.currentModule == null) throw new ModuleNotFoundException(this.moduleName,
+                  "Unable to find module '" + this.moduleName + "'!");
          else throw new BeanNotFoundException(this.moduleName, this.beanName, "Unable to find bean '" + this.beanName
                   + "' in module '" + this.moduleName + "'!");
       }
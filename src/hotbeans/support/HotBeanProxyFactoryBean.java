@@ -33,6 +33,8 @@ public class HotBeanProxyFactoryBean implements InitializingBean, FactoryBean {
 
    private String moduleName;
 
+   private String versionRange;
+
    private String beanName;
 
    private Class[] interfaces;
@@ -45,7 +47,9 @@ public class HotBeanProxyFactoryBean implements InitializingBean, FactoryBean {
     * Invoked by a BeanFactory after it has set all bean properties.
     */
    public final void afterPropertiesSet() throws Exception {
-      this.proxyFactory = this.hotBeanModuleRepository.getHotBeanProxyFactory(this.moduleName, this.beanName,
+      if (this.versionRange != null) this.proxyFactory = this.hotBeanModuleRepository.getHotBeanProxyFactory(
+               this.moduleName, this.versionRange, this.beanName, this.interfaces);
+      else this.proxyFactory = this.hotBeanModuleRepository.getHotBeanProxyFactory(this.moduleName, this.beanName,
                this.interfaces);
    }
 
@@ -113,6 +117,26 @@ public class HotBeanProxyFactoryBean implements InitializingBean, FactoryBean {
       this.moduleName = moduleName;
    }
 
+   /**
+    * Gets the range of versions of the target hot bean module (see {@link VersionRange}), or <code>null</code> if the
+    * current revision of the module is used.
+    * 
+    * @since 1.3
+    */
+   public String getVersionRange() {
+      return versionRange;
+   }
+
+   /**
+    * Sets the range of versions of the target hot bean module (see {@link VersionRange}). If not set, the current
+    * revision of the module is used.
+    * 
+    * @since 1.3
+    */
+   public void setVersionRange(String versionRange) {
+      this.versionRange = versionRange;
+   }
+
    /**
     * Gets the interfaces to be implemented by a proxy.
     */
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+
+/**
+ * Indexed module archive, an alternative storage format for module jar files that is optimized for loading. An indexed
+ * module archive is created from a module jar file, and contains all the classes and resources of the module,
+ * including the contents of the nested jar files in the lib directory (flattened in class path order, i.e. nested jar
+ * files first, in the order in which they appear in the module jar file, followed by the contents of the module jar
+ * file itself). All entries are stored uncompressed, and aligned so that entries smaller than a page never span a page
+ * boundary, and larger entries begin on a page boundary.<br>
+ * <br>
+ * The archive is accessed through a read only memory mapping of the archive file. The format of the file is:
+ * <ul>
+ * <li>Header (one page) - magic number (int), format version (int), entry count (int) and index offset (long).</li>
+ * <li>Entry data.</li>
+ * <li>Index - for each entry, the length of the UTF-8 encoded name (unsigned short), the name, the offset of the entry
+ * data (long) and the length of the entry data (int).</li>
+ * </ul>
+ * If an indexed module archive (see {@link #getArchiveFile(File)}) that is newer than the module jar file exists,
+ * {@link JarFileHotBeanModuleLoader} will load classes and resources from the archive instead of extracting the jar
+ * file.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class IndexedModuleArchive {
+
+   public static final String ARCHIVE_FILE_SUFFIX = ".hba";
+
+   public static final String URL_PROTOCOL = "hba";
+
+   public static final int PAGE_SIZE = 4096;
+
+   private static final int MAGIC = 0x48424d41; // "HBMA"
+
+   private static final int FORMAT_VERSION = 1;
+
+   /**
+    * URLStreamHandler for URLs to entries in an archive.
+    */
+   private final class ArchiveURLStreamHandler extends URLStreamHandler {
+
+      protected URLConnection openConnection(final URL url) throws IOException {
+         final String entryName = getEntryName(url);
+         final byte[] bytes = getEntryBytes(entryName);
+         if (bytes == null) throw new IOException("Entry '" + entryName + "' not found in " + archiveFile + "!");
+
+         return new URLConnection(url) {
+
+            public void connect() {
+               super.connected = true;
+            }
+
+            public int getContentLength() {
+               return bytes.length;
+            }
+
+            public InputStream getInputStream() {
+               return new ByteArrayInputStream(bytes);
+            }
+         };
+      }
+   }
+
+   private final File archiveFile;
+
+   private final MappedByteBuffer buffer;
+
+   private final HashMap index; // Entry name (String) -> long[] { offset, length }
+
+   private final ArrayList entryNames; // String, in archive order
+
+   private final String urlPrefix;
+
+   private final URLStreamHandler urlStreamHandler;
+
+   /**
+    * Opens an existing indexed module archive.
+    */
+   public IndexedModuleArchive(final File archiveFile) throws IOException {
+      this.archiveFile = archiveFile;
+
+      RandomAccessFile randomAccessFile = new RandomAccessFile(archiveFile, "r");
+      try {
+         FileChannel channel = randomAccessFile.getChannel();
+         this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // Mapping remains valid after
+                                                                                      // the file is closed
+      } finally {
+         randomAccessFile.close();
+      }
+
+      if (this.buffer.getInt(0) != MAGIC) throw new IOException(archiveFile + " is not an indexed module archive!");
+      if (this.buffer.getInt(4) != FORMAT_VERSION)
+         throw new IOException("Unsupported indexed module archive version in " + archiveFile + "!");
+      final int entryCount = this.buffer.getInt(8);
+      final long indexOffset = this.buffer.getLong(12);
+
+      this.index = new HashMap(entryCount * 2);
+      this.entryNames = new ArrayList(entryCount);
+      ByteBuffer indexBuffer = this.buffer.duplicate();
+      indexBuffer.position((int) indexOffset);
+      byte[] nameBytes;
+      String name;
+      for (int i = 0; i < entryCount; i++) {
+         nameBytes = new byte[indexBuffer.getShort() & 0xffff];
+         indexBuffer.get(nameBytes);
+         name = new String(nameBytes, "UTF-8");
+         this.index.put(name, new long[] { indexBuffer.getLong(), indexBuffer.getInt() });
+         this.entryNames.add(name);
+      }
+
+      this.urlPrefix = archiveFile.getAbsolutePath().replace(File.separatorChar, '/') + "!/";
+      this.urlStreamHandler = new ArchiveURLStreamHandler();
+   }
+
+   /**
+    * Gets the indexed module archive file corresponding to the specified module jar file, i.e. a file in the same
+    * directory with the suffix ".jar" replaced by {@link #ARCHIVE_FILE_SUFFIX}.
+    */
+   public static File getArchiveFile(final File moduleJarFile) {
+      String name = moduleJarFile.getName();
+      if (name.toLowerCase().endsWith(".jar")) name = name.substring(0, name.length() - 4);
+      return new File(moduleJarFile.getParentFile(), name + ARCHIVE_FILE_SUFFIX);
+   }
+
+   /**
+    * Creates an indexed module archive from the specified module jar file. The archive is first written to a temporary
+    * file, which is then renamed to the archive file.
+    */
+   public static void create(final File moduleJarFile, final File archiveFile) throws IOException {
+      File tempArchiveFile = new File(archiveFile.getParentFile(), archiveFile.getName() + ".tmp");
+      HashMap writtenEntries = new HashMap(); // Entry name (String) -> long[] { offset, length }
+      ArrayList writtenEntryNames = new ArrayList(); // String
+
+      JarFile jarFile = new JarFile(moduleJarFile);
+      RandomAccessFile out = new RandomAccessFile(tempArchiveFile, "rw");
+      try {
+         out.setLength(0);
+         out.seek(PAGE_SIZE); // Header is written last
+
+         ArrayList libEntries = new ArrayList(); // JarEntry
+         ArrayList moduleEntries = new ArrayList(); // JarEntry
+         Enumeration entries = jarFile.entries();
+         JarEntry entry;
+         while (entries.hasMoreElements()) {
+            entry = (JarEntry) entries.nextElement();
+            if (entry.isDirectory()) continue;
+            if (entry.getName().startsWith(JarFileHotBeanModuleLoader.LIB_PATH)
+                     && entry.getName().toLowerCase().endsWith(".jar")) libEntries.add(entry);
+            else moduleEntries.add(entry);
+         }
+
+         // Contents of nested jar files
+         JarInputStream nestedJarStream;
+         JarEntry nestedEntry;
+         for (int i = 0; i < libEntries.size(); i++) {
+            nestedJarStream = new JarInputStream(jarFile.getInputStream((JarEntry) libEntries.get(i)));
+            try {
+               while ((nestedEntry = nestedJarStream.getNextJarEntry()) != null) {
+                  if (!nestedEntry.isDirectory() && !writtenEntries.containsKey(nestedEntry.getName())) {
+                     writeEntry(out, nestedEntry.getName(), readFully(nestedJarStream), writtenEntries,
+                              writtenEntryNames);
+                  }
+               }
+            } finally {
+               nestedJarStream.close();
+            }
+         }
+
+         // Contents of module jar file
+         for (int i = 0; i < moduleEntries.size(); i++) {
+            entry = (JarEntry) moduleEntries.get(i);
+            if (!writtenEntries.containsKey(entry.getName())) {
+               InputStream entryStream = jarFile.getInputStream(entry);
+               try {
+                  writeEntry(out, entry.getName(), readFully(entryStream), writtenEntries, writtenEntryNames);
+               } finally {
+                  entryStream.close();
+               }
+            }
+         }
+
+         // Index
+         final long indexOffset = out.getFilePointer();
+         String name;
+         byte[] nameBytes;
+         long[] location;
+         for (int i = 0; i < writtenEntryNames.size(); i++) {
+            name = (String) writtenEntryNames.get(i);
+            nameBytes = name.getBytes("UTF-8");
+            location = (long[]) writtenEntries.get(name);
+            out.writeShort(nameBytes.length);
+            out.write(nameBytes);
+            out.writeLong(location[0]);
+            out.writeInt((int) location[1]);
+         }
+
+         // Header
+         out.seek(0);
+         out.writeInt(MAGIC);
+         out.writeInt(FORMAT_VERSION);
+         out.writeInt(writtenEntryNames.size());
+         out.writeLong(indexOffset);
+      } finally {
+         out.close();
+         jarFile.close();
+      }
+
+      archiveFile.delete();
+      if (!tempArchiveFile.renameTo(archiveFile)) {
+         tempArchiveFile.delete();
+         throw new IOException("Unable to rename " + tempArchiveFile + " to " + archiveFile + "!");
+      }
+   }
+
+   private static byte[] readFully(final InputStream in) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+         bytes.write(buffer, 0, read);
+      }
+      return bytes.toByteArray();
+   }
+
+   private static void writeEntry(final RandomAccessFile out, final String name, final byte[] data,
+            final HashMap writtenEntries, final ArrayList writtenEntryNames) throws IOException {
+      long offset = out.getFilePointer();
+      long pageOffset = offset % PAGE_SIZE;
+      if ((pageOffset != 0) && ((data.length > PAGE_SIZE) || ((pageOffset + data.length) > PAGE_SIZE))) {
+         offset += PAGE_SIZE - pageOffset; // Align to next page
+         out.seek(offset);
+      }
+      out.write(data);
+
+      writtenEntries.put(name, new long[] { offset, data.length });
+      writtenEntryNames.add(name);
+   }
+
+   /**
+    * Gets the archive file.
+    */
+   public File getArchiveFile() {
+      return archiveFile;
+   }
+
+   /**
+    * Gets the number of entries in the archive.
+    */
+   public int getEntryCount() {
+      return this.entryNames.size();
+   }
+
+   /**
+    * Gets the names of the entries in the archive.
+    */
+   public String[] getEntryNames() {
+      return (String[]) this.entryNames.toArray(new String[this.entryNames.size()]);
+   }
+
+   /**
+    * Checks if the archive contains an entry with the specified name.
+    */
+   public boolean containsEntry(final String name) {
+      return this.index.containsKey(name);
+   }
+
+   /**
+    * Gets a read only buffer containing the data of the entry with the specified name, or <code>null</code> if no such
+    * entry exists. The buffer is a view of the memory mapped archive file.
+    */
+   public ByteBuffer getEntryBuffer(final String name) {
+      long[] location = (long[]) this.index.get(name);
+      if (location == null) return null;
+
+      ByteBuffer entryBuffer = this.buffer.asReadOnlyBuffer();
+      entryBuffer.position((int) location[0]);
+      entryBuffer.limit((int) (location[0] + location[1]));
+      return entryBuffer.slice();
+   }
+
+   /**
+    * Gets the data of the entry with the specified name, or <code>null</code> if no such entry exists.
+    */
+   public byte[] getEntryBytes(final String name) {
+      ByteBuffer entryBuffer = this.getEntryBuffer(name);
+      if (entryBuffer == null) return null;
+
+      byte[] bytes = new byte[entryBuffer.remaining()];
+      entryBuffer.get(bytes);
+      return bytes;
+   }
+
+   /**
+    * Gets an URL for the entry with the specified name, or <code>null</code> if no such entry exists.
+    */
+   public URL getEntryURL(final String name) {
+      if (!this.index.containsKey(name)) return null;
+
+      try {
+         return new URL(URL_PROTOCOL, "", -1, this.urlPrefix + name, this.urlStreamHandler);
+      } catch (MalformedURLException mue) {
+         return null;
+      }
+   }
+
+   /**
+    * Gets the name of the entry referenced by the specified URL.
+    */
+   private String getEntryName(final URL url) {
+      String file = url.getFile();
+      int separatorIndex = file.indexOf("!/");
+      return (separatorIndex >= 0) ? file.substring(separatorIndex + 2) : file;
+   }
+
+   /**
+    * Gets a string representation of this IndexedModuleArchive.
+    */
+   public String toString() {
+      return "IndexedModuleArchive(" + this.archiveFile + ", " + this.entryNames.size() + " entries)";
+   }
+}
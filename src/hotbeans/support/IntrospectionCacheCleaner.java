@@ -0,0 +1,155 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import java.beans.Introspector;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Vector;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Utility class for evicting the bean introspection cache entries of the classes of a specific class loader, i.e. the
+ * class loader of an unloaded module revision. Unlike {@link Introspector#flushCaches()}, which clears the JVM-wide
+ * BeanInfo cache and forces the host application and all other modules to introspect their classes again, only the
+ * entries belonging to the module class loader (or one of its descendants) are evicted.<br>
+ * <br>
+ * The following caches are cleaned:
+ * <ul>
+ * <li>The class cache of Spring's <code>CachedIntrospectionResults</code> (accessed through reflection).</li>
+ * <li>The JDK {@link Introspector} cache, by means of {@link Introspector#flushFromCaches(Class)} for each class of
+ * the class loader. The classes are obtained from {@link JarFileHotBeanModuleLoader#getLoadedClasses()}, if possible,
+ * and from the Spring class cache.</li>
+ * </ul>
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public final class IntrospectionCacheCleaner {
+
+   private static final String SPRING_INTROSPECTION_RESULTS_CLASS_NAME =
+            "org.springframework.beans.CachedIntrospectionResults";
+
+   private static final Log logger = LogFactory.getLog(IntrospectionCacheCleaner.class);
+
+   private IntrospectionCacheCleaner() {
+   }
+
+   /**
+    * Evicts the introspection cache entries of all classes defined by the specified class loader, or by one of its
+    * descendants.
+    * 
+    * @return the number of classes for which cache entries were evicted.
+    */
+   public static int clearClassLoader(final ClassLoader classLoader) {
+      if (classLoader == null) return 0;
+
+      HashSet classes = new HashSet();
+
+      // Get classes of class loader
+      if (classLoader instanceof JarFileHotBeanModuleLoader) {
+         Class[] loadedClasses = ((JarFileHotBeanModuleLoader) classLoader).getLoadedClasses();
+         for (int i = 0; i < loadedClasses.length; i++) {
+            classes.add(loadedClasses[i]);
+         }
+      } else addClassesDefinedBy(classLoader, classes);
+
+      // Clean Spring cache
+      removeFromSpringClassCache(classLoader, classes);
+
+      // Clean JDK cache
+      for (Iterator it = classes.iterator(); it.hasNext();) {
+         Introspector.flushFromCaches((Class) it.next());
+      }
+
+      if (logger.isDebugEnabled())
+         logger.debug("Evicted introspection cache entries of " + classes.size() + " classes of class loader "
+                  + classLoader + ".");
+
+      return classes.size();
+   }
+
+   /**
+    * Checks if the specified class is defined by the specified class loader, or by one of its descendants.
+    */
+   private static boolean isDefinedBy(final Class clazz, final ClassLoader classLoader) {
+      for (ClassLoader cl = clazz.getClassLoader(); cl != null; cl = cl.getParent()) {
+         if (cl == classLoader) return true;
+      }
+      return false;
+   }
+
+   /**
+    * Adds the classes defined by a generic class loader, by reading the private class list of
+    * {@link java.lang.ClassLoader} through reflection. Does nothing if the field isn't available.
+    */
+   private static void addClassesDefinedBy(final ClassLoader classLoader, final Collection classes) {
+      try {
+         Field classesField = ClassLoader.class.getDeclaredField("classes");
+         classesField.setAccessible(true);
+         Object classList = classesField.get(classLoader);
+
+         if (classList instanceof Vector) {
+            synchronized (classList) {
+               classes.addAll((Vector) classList);
+            }
+         }
+      } catch (Throwable t) {
+         if (logger.isDebugEnabled()) logger.debug("Unable to get classes of class loader " + classLoader + " - " + t);
+      }
+   }
+
+   /**
+    * Removes the entries of the classes of the specified class loader from the class cache of Spring's
+    * CachedIntrospectionResults. The removed classes are added to the specified collection.
+    */
+   private static void removeFromSpringClassCache(final ClassLoader classLoader, final Collection classes) {
+      try {
+         Class cachedIntrospectionResultsClass = Class.forName(SPRING_INTROSPECTION_RESULTS_CLASS_NAME);
+
+         // Use clearClassLoader, if available (later versions of Spring)
+         try {
+            Method clearClassLoaderMethod = cachedIntrospectionResultsClass.getMethod("clearClassLoader",
+                     new Class[] { ClassLoader.class });
+            clearClassLoaderMethod.invoke(null, new Object[] { classLoader });
+         } catch (NoSuchMethodException nsme) {
+         }
+
+         Field classCacheField = cachedIntrospectionResultsClass.getDeclaredField("classCache");
+         classCacheField.setAccessible(true);
+         Map classCache = (Map) classCacheField.get(null);
+
+         synchronized (classCache) {
+            Object key;
+            for (Iterator it = classCache.keySet().iterator(); it.hasNext();) {
+               key = it.next();
+               if ((key instanceof Class) && isDefinedBy((Class) key, classLoader)) {
+                  classes.add(key);
+                  it.remove();
+               }
+            }
+         }
+      } catch (Throwable t) {
+         if (logger.isDebugEnabled()) logger.debug("Unable to clean Spring introspection cache - " + t);
+      }
+   }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import hotbeans.HotBeanContext;
+import hotbeans.util.SerializationUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * InvocationRecorder keeps a bounded sample of invocations (method and serialized arguments) made through hot bean
+ * proxies on the beans of a module, and is capable of replaying those invocations against the context of a new,
+ * not yet current, revision of the module. This is used to warm up a new module revision before it is made current.
+ * Only invocations where all arguments are serializable are recorded. When the sample is full, the oldest recorded
+ * invocation is replaced.<br>
+ * <br>
+ * Note that replaying invocations means that the methods of the new module revision will be invoked with real
+ * arguments, so warm up should only be used for modules with operations that are free from side effects.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class InvocationRecorder {
+
+   public static final int MAX_SAMPLE_ARGUMENT_SIZE = 64 * 1024;
+
+   /**
+    * Class representing a recorded invocation.
+    */
+   private static final class RecordedInvocation {
+
+      private final String beanName;
+
+      private final Method method;
+
+      private final byte[] serializedArguments;
+
+      public RecordedInvocation(String beanName, Method method, byte[] serializedArguments) {
+         this.beanName = beanName;
+         this.method = method;
+         this.serializedArguments = serializedArguments;
+      }
+   }
+
+   /**
+    * Class containing the result of a replay.
+    */
+   public static final class ReplayResult {
+
+      private int invocationCount = 0;
+
+      private int errorCount = 0;
+
+      private int iterationCount = 0;
+
+      private long replayTime = 0;
+
+      /**
+       * Gets the number of replayed invocations.
+       */
+      public int getInvocationCount() {
+         return invocationCount;
+      }
+
+      /**
+       * Gets the number of replayed invocations that resulted in an exception.
+       */
+      public int getErrorCount() {
+         return errorCount;
+      }
+
+      /**
+       * Gets the number of completed iterations over the recorded invocations.
+       */
+      public int getIterationCount() {
+         return iterationCount;
+      }
+
+      /**
+       * Gets the time (in milliseconds) the replay took.
+       */
+      public long getReplayTime() {
+         return replayTime;
+      }
+   }
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private final String moduleName;
+
+   private final RecordedInvocation[] recordedInvocations;
+
+   private int recordedInvocationCount = 0;
+
+   private int nextIndex = 0;
+
+   /**
+    * Creates a new InvocationRecorder.
+    */
+   public InvocationRecorder(final String moduleName, final int maxSampleSize) {
+      this.moduleName = moduleName;
+      this.recordedInvocations = new RecordedInvocation[Math.max(1, maxSampleSize)];
+   }
+
+   /**
+    * Gets the name of the module, for which invocations are recorded.
+    */
+   public String getModuleName() {
+      return moduleName;
+   }
+
+   /**
+    * Gets the number of invocations currently in the sample.
+    */
+   public synchronized int getRecordedInvocationCount() {
+      return this.recordedInvocationCount;
+   }
+
+   /**
+    * Records an invocation. The invocation is ignored if any of the arguments isn't serializable or if the total
+    * size of the serialized arguments exceeds {@link #MAX_SAMPLE_ARGUMENT_SIZE}.
+    */
+   public void record(final String beanName, final Method method, final Object[] arguments) {
+      if (!SerializationUtils.isSerializable(arguments)) return;
+
+      byte[] serializedArguments;
+      try {
+         serializedArguments = SerializationUtils.serialize((arguments != null) ? arguments : new Object[0]);
+      } catch (Exception e) {
+         return; // Ignore arguments that fail to serialize (serializable objects may contain non-serializable fields)
+      }
+      if (serializedArguments.length > MAX_SAMPLE_ARGUMENT_SIZE) return;
+
+      synchronized (this) {
+         this.recordedInvocations[this.nextIndex] = new RecordedInvocation(beanName, method, serializedArguments);
+         this.nextIndex = (this.nextIndex + 1) % this.recordedInvocations.length;
+         if (this.recordedInvocationCount < this.recordedInvocations.length) this.recordedInvocationCount++;
+      }
+   }
+
+   /**
+    * Clears the recorded invocations.
+    */
+   public synchronized void clear() {
+      for (int i = 0; i < this.recordedInvocations.length; i++) {
+         this.recordedInvocations[i] = null;
+      }
+      this.recordedInvocationCount = 0;
+      this.nextIndex = 0;
+   }
+
+   /**
+    * Replays the recorded invocations against the beans in the specified context. The recorded invocations are
+    * replayed <code>iterations</code> times, or until <code>maxDuration</code> milliseconds have passed, whichever
+    * comes first. Arguments are deserialized using the specified class loader.
+    */
+   public ReplayResult replay(final HotBeanContext hotBeanContext, final ClassLoader classLoader,
+            final int iterations, final long maxDuration) {
+      RecordedInvocation[] invocations;
+      synchronized (this) {
+         invocations = new RecordedInvocation[this.recordedInvocationCount];
+         System.arraycopy(this.recordedInvocations, 0, invocations, 0, this.recordedInvocationCount);
+      }
+
+      ReplayResult replayResult = new ReplayResult();
+      final long beginReplay = System.currentTimeMillis();
+      final long endTime = beginReplay + maxDuration;
+      Object bean;
+      Thread currentThread = Thread.currentThread();
+      ClassLoader originalContextClassLoader = currentThread.getContextClassLoader();
+
+      try {
+         currentThread.setContextClassLoader(classLoader);
+
+         iterationLoop: for (int i = 0; i < iterations; i++) {
+            for (int n = 0; n < invocations.length; n++) {
+               if (System.currentTimeMillis() > endTime) break iterationLoop;
+
+               replayResult.invocationCount++;
+               try {
+                  bean = hotBeanContext.getHotBean(invocations[n].beanName);
+
+                  if ((bean != null) && invocations[n].method.getDeclaringClass().isInstance(bean)) {
+                     invocations[n].method.invoke(bean, (Object[]) SerializationUtils.deserialize(
+                              invocations[n].serializedArguments, classLoader));
+                  } else replayResult.errorCount++;
+               } catch (InvocationTargetException ite) {
+                  replayResult.errorCount++;
+               } catch (Throwable t) {
+                  replayResult.errorCount++;
+                  if (logger.isDebugEnabled())
+                     logger.debug("Error replaying invocation of " + invocations[n].method + " on bean '"
+                              + invocations[n].beanName + "' in module '" + this.moduleName + "' - " + t + ".");
+               }
+            }
+            replayResult.iterationCount++;
+         }
+      } finally {
+         currentThread.setContextClassLoader(originalContextClassLoader);
+      }
+
+      replayResult.replayTime = System.currentTimeMillis() - beginReplay;
+
+      return replayResult;
+   }
+}
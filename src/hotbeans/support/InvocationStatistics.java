@@ -0,0 +1,147 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+/**
+ * Statistics about the invocations of the beans of a module revision, made through hot bean proxies. Invocations that
+ * throw an exception are counted as errors. The durations of the invocations are kept in a histogram with buckets of
+ * exponentially increasing size (powers of two milliseconds), from which latency percentiles are estimated.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class InvocationStatistics {
+
+   private static final int HISTOGRAM_BUCKETS = 32;
+
+   private final long revision;
+
+   private final long[] histogram = new long[HISTOGRAM_BUCKETS]; // Bucket n: durations in [2^(n-1), 2^n) ms
+
+   private long invocationCount = 0;
+
+   private long errorCount = 0;
+
+   private long totalInvocationTime = 0;
+
+   private long maxInvocationTime = 0;
+
+   /**
+    * Creates a new InvocationStatistics.
+    */
+   public InvocationStatistics() {
+      this(-1);
+   }
+
+   /**
+    * Creates a new InvocationStatistics for the specified module revision.
+    */
+   public InvocationStatistics(long revision) {
+      this.revision = revision;
+   }
+
+   /**
+    * Gets the module revision of these statistics, or -1 if not specified.
+    */
+   public long getRevision() {
+      return revision;
+   }
+
+   /**
+    * Records an invocation.
+    * 
+    * @param invocationTime the duration (in milliseconds) of the invocation.
+    * @param error <code>true</code> if the invocation threw an exception.
+    */
+   public synchronized void record(final long invocationTime, final boolean error) {
+      this.invocationCount++;
+      if (error) this.errorCount++;
+      this.totalInvocationTime += invocationTime;
+      if (invocationTime > this.maxInvocationTime) this.maxInvocationTime = invocationTime;
+
+      int bucket = 0;
+      for (long time = invocationTime; (time > 0) && (bucket < (HISTOGRAM_BUCKETS - 1)); time >>= 1) {
+         bucket++;
+      }
+      this.histogram[bucket]++;
+   }
+
+   /**
+    * Gets the number of invocations.
+    */
+   public synchronized long getInvocationCount() {
+      return invocationCount;
+   }
+
+   /**
+    * Gets the number of invocations that threw an exception.
+    */
+   public synchronized long getErrorCount() {
+      return errorCount;
+   }
+
+   /**
+    * Gets the ratio (between 0 and 1) of invocations that threw an exception.
+    */
+   public synchronized double getErrorRate() {
+      return (this.invocationCount > 0) ? ((double) this.errorCount / this.invocationCount) : 0;
+   }
+
+   /**
+    * Gets the total duration (in milliseconds) of all invocations.
+    */
+   public synchronized long getTotalInvocationTime() {
+      return totalInvocationTime;
+   }
+
+   /**
+    * Gets the average duration (in milliseconds) of an invocation.
+    */
+   public synchronized double getAverageInvocationTime() {
+      return (this.invocationCount > 0) ? ((double) this.totalInvocationTime / this.invocationCount) : 0;
+   }
+
+   /**
+    * Gets the maximum duration (in milliseconds) of an invocation.
+    */
+   public synchronized long getMaxInvocationTime() {
+      return maxInvocationTime;
+   }
+
+   /**
+    * Gets an estimate of the specified percentile (between 0 and 100) of the invocation durations (in milliseconds),
+    * i.e. the upper bound of the histogram bucket containing the percentile, but no more than the maximum duration.
+    */
+   public synchronized long getPercentile(final double percentile) {
+      if (this.invocationCount == 0) return 0;
+
+      long rank = (long) Math.ceil((percentile / 100.0) * this.invocationCount);
+      long count = 0;
+      for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+         count += this.histogram[bucket];
+         if (count >= rank) return Math.min((1L << bucket) - 1, this.maxInvocationTime);
+      }
+      return this.maxInvocationTime;
+   }
+
+   /**
+    * Gets a string representation of these statistics.
+    */
+   public synchronized String toString() {
+      return "InvocationStatistics(" + this.invocationCount + " invocations, " + this.errorCount + " errors, "
+               + this.getAverageInvocationTime() + " ms average, " + this.maxInvocationTime + " ms max)";
+   }
+}
@@ -19,12 +19,18 @@ import hotbeans.HotBeanModule;
 import hotbeans.HotBeanModuleLoader;
 import hotbeans.util.FileDeletor;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Vector;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -33,7 +39,9 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.util.FileCopyUtils;
 
 /**
- * HotBeanModuleLoader implementation, providing loading of classes and resources from a jar file.
+ * HotBeanModuleLoader implementation, providing loading of classes and resources from a jar file. If an
+ * {@link IndexedModuleArchive} newer than the jar file exists, classes and resources are loaded from the archive
+ * instead of from the extracted contents of the jar file.
  * 
  * @author Tobias Lfstrand
  */
@@ -47,6 +55,12 @@ public class JarFileHotBeanModuleLoader extends URLClassLoader implements HotBea
 
    private HotBeanModule hotBeanModule;
 
+   private final ArrayList loadedClassNames = new ArrayList(); // Names of classes loaded by this loader, in load order
+
+   private final ArrayList classTransformers = new ArrayList(); // ModuleClassTransformer
+
+   private final IndexedModuleArchive moduleArchive;
+
    final Log logger = LogFactory.getLog(getClass());
 
    /**
@@ -64,7 +78,8 @@ public class JarFileHotBeanModuleLoader extends URLClassLoader implements HotBea
       super(new URL[] {}, parentClassLoader);
       this.moduleJarFile = moduleJarFile;
       this.tempDir = tempDir;
-      extractLibs();
+      this.moduleArchive = openModuleArchive();
+      if (this.moduleArchive == null) extractLibs();
 
       if (logger.isDebugEnabled()) {
          String classPath = "";
@@ -77,15 +92,33 @@ public class JarFileHotBeanModuleLoader extends URLClassLoader implements HotBea
          } catch (Exception e) {
          } // We don't want a debug log to ruin the day
 
+         if (this.moduleArchive != null) classPath = this.moduleArchive.toString();
+
          logger.debug("Loader for '" + moduleJarFile + "' initialized. Temp dir: '" + tempDir + "'. Class path: "
                   + classPath + ".");
       }
    }
 
+   /**
+    * Opens the indexed module archive corresponding to the module jar file, if it exists and is up to date.
+    */
+   private IndexedModuleArchive openModuleArchive() {
+      File archiveFile = IndexedModuleArchive.getArchiveFile(this.moduleJarFile);
+      if (!archiveFile.exists() || (archiveFile.lastModified() < this.moduleJarFile.lastModified())) return null;
+
+      try {
+         return new IndexedModuleArchive(archiveFile);
+      } catch (IOException ioe) {
+         logger.warn("Unable to open indexed module archive '" + archiveFile + "' - " + ioe + "!");
+         return null;
+      }
+   }
+
    /**
     * Extracts all the files in the module jar file, including nested jar files. The reason for extracting the complete
     * contents of the jar file (and not just the nested jar files) is to make sure the module jar file isn't locked, and
-    * thus may be deleted.
+    * thus may be deleted. Files that already exist in the temporary directory with the size of the corresponding entry
+    * (for instance files reused from a previous revision of the module) aren't extracted again.
     */
    private void extractLibs() throws IOException {
       if (logger.isDebugEnabled()) logger.debug("Extracting module jar file '" + moduleJarFile + "'.");
@@ -108,9 +141,11 @@ public class JarFileHotBeanModuleLoader extends URLClassLoader implements HotBea
                extractedFile = new File(this.tempDir, entryName);
                extractedFile.getParentFile().mkdirs();
 
-               extractedFileOutputStream = new FileOutputStream(extractedFile);
-               FileCopyUtils.copy(jarFile.getInputStream(entry), extractedFileOutputStream);
-               extractedFileOutputStream = null;
+               if (!extractedFile.isFile() || (entry.getSize() < 0) || (extractedFile.length() != entry.getSize())) {
+                  extractedFileOutputStream = new FileOutputStream(extractedFile);
+                  FileCopyUtils.copy(jarFile.getInputStream(entry), extractedFileOutputStream);
+                  extractedFileOutputStream = null;
+               }
 
                if ((entryName.startsWith(LIB_PATH)) && (entryName.toLowerCase().endsWith(".jar"))) {
                   // Register nested jar file in "class path"
@@ -157,7 +192,11 @@ public class JarFileHotBeanModuleLoader extends URLClassLoader implements HotBea
                            // path...
       {
          try {
-            clazz = super.findClass(name); // Call the super class (URLClassLoader) implementation of findClass
+            if ((this.moduleArchive == null) && this.classTransformers.isEmpty()) {
+               clazz = super.findClass(name); // Call the super class (URLClassLoader) implementation of findClass
+            } else clazz = this.findModuleClass(name);
+
+            if (clazz != null) this.loadedClassNames.add(name);
 
             if ((clazz != null) && resolve) {
                resolveClass(clazz);
@@ -173,6 +212,198 @@ public class JarFileHotBeanModuleLoader extends URLClassLoader implements HotBea
       return clazz;
    }
 
+   /**
+    * Finds the class with the specified name in the indexed module archive or on the class path of this loader, and
+    * defines it after the class bytes have been passed through the registered {@link ModuleClassTransformer}s.
+    * 
+    * @since 1.3
+    */
+   protected Class findModuleClass(final String name) throws ClassNotFoundException {
+      String classPath = name.replace('.', '/') + ".class";
+      URL classUrl;
+      byte[] classBytes;
+
+      if (this.moduleArchive != null) {
+         classBytes = this.moduleArchive.getEntryBytes(classPath);
+         if (classBytes == null) throw new ClassNotFoundException(name);
+         classUrl = null;
+      } else {
+         classUrl = super.findResource(classPath);
+         if (classUrl == null) throw new ClassNotFoundException(name);
+
+         try {
+            InputStream classStream = classUrl.openStream();
+            ByteArrayOutputStream classByteStream = new ByteArrayOutputStream();
+            FileCopyUtils.copy(classStream, classByteStream); // Closes both streams
+            classBytes = classByteStream.toByteArray();
+         } catch (IOException ioe) {
+            throw new ClassNotFoundException(name, ioe);
+         }
+      }
+
+      byte[] transformedBytes;
+      ModuleClassTransformer classTransformer;
+      for (int i = 0; i < this.classTransformers.size(); i++) {
+         classTransformer = (ModuleClassTransformer) this.classTransformers.get(i);
+         try {
+            transformedBytes = classTransformer.transform(this, name, classBytes);
+            if (transformedBytes != null) classBytes = transformedBytes;
+         } catch (Exception e) {
+            logger.warn("Error transforming class '" + name + "' using " + classTransformer + " - " + e + "!");
+         }
+      }
+
+      int packageIndex = name.lastIndexOf('.');
+      if (packageIndex > 0) {
+         String packageName = name.substring(0, packageIndex);
+         if (super.getPackage(packageName) == null)
+            super.definePackage(packageName, null, null, null, null, null, null, null);
+      }
+
+      // Use the archive file, the jar file (nested jar) or the temp dir as code source
+      URL codeSourceUrl = null;
+      try {
+         if (classUrl == null) codeSourceUrl = this.moduleArchive.getArchiveFile().toURI().toURL();
+         else if (classUrl.toString().startsWith("jar:") && (classUrl.toString().indexOf("!/") > 0)) {
+            codeSourceUrl = new URL(classUrl.toString().substring(4, classUrl.toString().indexOf("!/")));
+         } else codeSourceUrl = this.tempDir.toURI().toURL();
+      } catch (IOException ioe) {
+      }
+
+      return super.defineClass(name, classBytes, 0, classBytes.length, new CodeSource(codeSourceUrl,
+               (Certificate[]) null));
+   }
+
+   /**
+    * Adds a {@link ModuleClassTransformer} that will be used to transform the classes loaded by this loader.
+    * Transformers must be added before any classes are loaded.
+    * 
+    * @since 1.3
+    */
+   public synchronized void addClassTransformer(final ModuleClassTransformer classTransformer) {
+      this.classTransformers.add(classTransformer);
+   }
+
+   /**
+    * Gets the {@link ModuleClassTransformer}s used by this loader.
+    * 
+    * @since 1.3
+    */
+   public synchronized ModuleClassTransformer[] getClassTransformers() {
+      return (ModuleClassTransformer[]) this.classTransformers.toArray(new ModuleClassTransformer[this.classTransformers
+               .size()]);
+   }
+
+   /**
+    * Gets the names of the classes loaded (defined) by this loader, in the order in which they were loaded.
+    * 
+    * @since 1.3
+    */
+   public synchronized String[] getLoadedClassNames() {
+      return (String[]) this.loadedClassNames.toArray(new String[this.loadedClassNames.size()]);
+   }
+
+   /**
+    * Gets the classes loaded (defined) by this loader, in the order in which they were loaded.
+    * 
+    * @since 1.3
+    */
+   public synchronized Class[] getLoadedClasses() {
+      ArrayList loadedClasses = new ArrayList(this.loadedClassNames.size());
+      Class clazz;
+      for (int i = 0; i < this.loadedClassNames.size(); i++) {
+         clazz = super.findLoadedClass((String) this.loadedClassNames.get(i));
+         if (clazz != null) loadedClasses.add(clazz);
+      }
+      return (Class[]) loadedClasses.toArray(new Class[loadedClasses.size()]);
+   }
+
+   /**
+    * Gets the total size (in bytes) of the files (i.e. libraries) extracted to the temporary directory of this loader.
+    * 
+    * @since 1.3
+    */
+   public long getExtractedFileSize() {
+      return getFileSize(this.tempDir);
+   }
+
+   /**
+    * Gets the temporary directory of this loader, into which the module jar file is extracted.
+    * 
+    * @since 1.3
+    */
+   public File getTempDir() {
+      return tempDir;
+   }
+
+   /**
+    * Gets the size of a file, or the total size of the files in a directory.
+    */
+   private static long getFileSize(final File file) {
+      if (file.isDirectory()) {
+         long size = 0;
+         File[] files = file.listFiles();
+         for (int i = 0; (files != null) && (i < files.length); i++) {
+            size += getFileSize(files[i]);
+         }
+         return size;
+      } else return file.length();
+   }
+
+   /**
+    * Loads and links the classes with the specified names, without initializing them. Classes that cannot be loaded
+    * are ignored. The loading may be aborted by interrupting the calling thread.
+    * 
+    * @return the number of classes that were loaded.
+    * @since 1.3
+    */
+   public int preloadClasses(final String[] classNames) {
+      int preloadedClassCount = 0;
+
+      for (int i = 0; (i < classNames.length) && !Thread.currentThread().isInterrupted(); i++) {
+         try {
+            if (this.loadClass(classNames[i], true) != null) preloadedClassCount++;
+         } catch (Throwable t) {
+            if (logger.isDebugEnabled())
+               logger.debug("Unable to preload class '" + classNames[i] + "' from '" + moduleJarFile + "' - " + t + ".");
+         }
+      }
+
+      return preloadedClassCount;
+   }
+
+   /**
+    * Finds the resource with the given name in the indexed module archive, if used, or on the class path of this
+    * loader.
+    */
+   public URL findResource(String name) {
+      if (this.moduleArchive != null) return this.moduleArchive.getEntryURL(name);
+      else return super.findResource(name);
+   }
+
+   /**
+    * Finds all the resources with the given name in the indexed module archive, if used, or on the class path of this
+    * loader.
+    */
+   public Enumeration findResources(String name) throws IOException {
+      if (this.moduleArchive != null) {
+         Vector resources = new Vector();
+         URL url = this.moduleArchive.getEntryURL(name);
+         if (url != null) resources.add(url);
+         return resources.elements();
+      } else return super.findResources(name);
+   }
+
+   /**
+    * Gets the indexed module archive used by this loader, or <code>null</code> if this loader loads classes from the
+    * extracted contents of the module jar file.
+    * 
+    * @since 1.3
+    */
+   public IndexedModuleArchive getModuleArchive() {
+      return moduleArchive;
+   }
+
    /**
     * Finds the resource with the given name.
     */
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Monitor that detects when the usage of the heap or non-heap (i.e. the permanent generation or metaspace) memory pools
+ * of the JVM exceeds configurable thresholds, and then asks the associated repository to reclaim module revisions (see
+ * {@link AbstractHotBeanModuleRepository#reclaimModules(String)}).<br>
+ * <br>
+ * The monitor sets the usage thresholds of the memory pools and listens for the usage threshold notifications emitted
+ * by the memory MXBean. Since notifications are only emitted when a threshold is crossed, the usage of the pools is
+ * also polled at a regular interval as long as the pressure remains. The monitor uses the
+ * <code>java.lang.management</code> API through reflection, and is disabled if the API isn't available (i.e. on JVMs
+ * before 1.5). Note that the usage thresholds of memory pools are global to the JVM.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class MemoryPressureMonitor {
+
+   public static final int DEFAULT_HEAP_USAGE_THRESHOLD = 85;
+
+   public static final int DEFAULT_NON_HEAP_USAGE_THRESHOLD = 90;
+
+   public static final long DEFAULT_POLL_INTERVAL = 5000;
+
+   private static final String MANAGEMENT_FACTORY_CLASS_NAME = "java.lang.management.ManagementFactory";
+
+   private static final String MEMORY_POOL_CLASS_NAME = "java.lang.management.MemoryPoolMXBean";
+
+   private static final String MEMORY_USAGE_CLASS_NAME = "java.lang.management.MemoryUsage";
+
+   private static final String MEMORY_TYPE_CLASS_NAME = "java.lang.management.MemoryType";
+
+   private static final String NOTIFICATION_BROADCASTER_CLASS_NAME = "javax.management.NotificationBroadcaster";
+
+   private static final String NOTIFICATION_LISTENER_CLASS_NAME = "javax.management.NotificationListener";
+
+   private static final String NOTIFICATION_FILTER_CLASS_NAME = "javax.management.NotificationFilter";
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private final AbstractHotBeanModuleRepository repository;
+
+   private int heapUsageThreshold = DEFAULT_HEAP_USAGE_THRESHOLD;
+
+   private int nonHeapUsageThreshold = DEFAULT_NON_HEAP_USAGE_THRESHOLD;
+
+   private long pollInterval = DEFAULT_POLL_INTERVAL;
+
+   private List memoryPools; // MemoryPool
+
+   private Object memoryMXBean;
+
+   private Object notificationListener;
+
+   private MonitorThread monitorThread;
+
+   private boolean notified = false;
+
+   private long notificationCount = 0;
+
+   private long reclamationCount = 0;
+
+   /**
+    * A memory pool of the JVM.
+    */
+   private static final class MemoryPool {
+
+      private final Object memoryPoolMXBean;
+
+      private final String name;
+
+      private final boolean heap;
+
+      public MemoryPool(Object memoryPoolMXBean, String name, boolean heap) {
+         this.memoryPoolMXBean = memoryPoolMXBean;
+         this.name = name;
+         this.heap = heap;
+      }
+   }
+
+   /**
+    * Thread performing the memory pool checks.
+    */
+   private final class MonitorThread extends Thread {
+
+      private volatile boolean running = true;
+
+      public MonitorThread() {
+         super("MemoryPressureMonitor");
+         super.setDaemon(true);
+      }
+
+      public void run() {
+         while (this.running) {
+            synchronized (MemoryPressureMonitor.this) {
+               try {
+                  if (!notified) MemoryPressureMonitor.this.wait(pollInterval);
+               } catch (InterruptedException ie) {
+                  break;
+               }
+               notified = false;
+            }
+
+            if (!this.running) break;
+
+            try {
+               String reason = checkMemoryPressure();
+               if (reason != null) {
+                  synchronized (MemoryPressureMonitor.this) {
+                     reclamationCount++;
+                  }
+                  repository.reclaimModules(reason);
+               }
+            } catch (Exception e) {
+               logger.error("Error checking memory pressure - " + e + "!", e);
+            }
+         }
+      }
+
+      public void terminate() {
+         this.running = false;
+         super.interrupt();
+      }
+   }
+
+   /**
+    * Creates a new MemoryPressureMonitor.
+    */
+   public MemoryPressureMonitor(AbstractHotBeanModuleRepository repository) {
+      this.repository = repository;
+   }
+
+   /**
+    * Gets the usage threshold (in percent of the maximum size) for heap memory pools. A value of zero disables
+    * monitoring of heap memory pools.
+    */
+   public synchronized int getHeapUsageThreshold() {
+      return heapUsageThreshold;
+   }
+
+   /**
+    * Sets the usage threshold (in percent of the maximum size) for heap memory pools.
+    */
+   public synchronized void setHeapUsageThreshold(int heapUsageThreshold) {
+      this.heapUsageThreshold = Math.max(0, Math.min(100, heapUsageThreshold));
+   }
+
+   /**
+    * Gets the usage threshold (in percent of the maximum size) for non-heap memory pools, such as the permanent
+    * generation or metaspace. A value of zero disables monitoring of non-heap memory pools.
+    */
+   public synchronized int getNonHeapUsageThreshold() {
+      return nonHeapUsageThreshold;
+   }
+
+   /**
+    * Sets the usage threshold (in percent of the maximum size) for non-heap memory pools.
+    */
+   public synchronized void setNonHeapUsageThreshold(int nonHeapUsageThreshold) {
+      this.nonHeapUsageThreshold = Math.max(0, Math.min(100, nonHeapUsageThreshold));
+   }
+
+   /**
+    * Gets the interval (in milliseconds) at which the usage of the memory pools is polled.
+    */
+   public synchronized long getPollInterval() {
+      return pollInterval;
+   }
+
+   /**
+    * Sets the interval (in milliseconds) at which the usage of the memory pools is polled.
+    */
+   public synchronized void setPollInterval(long pollInterval) {
+      this.pollInterval = Math.max(100, pollInterval);
+   }
+
+   /**
+    * Gets the number of usage threshold notifications received.
+    */
+   public synchronized long getNotificationCount() {
+      return notificationCount;
+   }
+
+   /**
+    * Gets the number of times the repository has been asked to reclaim module revisions.
+    */
+   public synchronized long getReclamationCount() {
+      return reclamationCount;
+   }
+
+   /**
+    * Checks if this monitor is running.
+    */
+   public synchronized boolean isRunning() {
+      return this.monitorThread != null;
+   }
+
+   /**
+    * Starts this monitor. If the <code>java.lang.management</code> API isn't available, a warning is logged and the
+    * monitor isn't started.
+    */
+   public synchronized void start() {
+      if (this.monitorThread != null) return;
+
+      try {
+         this.memoryPools = getMemoryPools();
+         this.setUsageThresholds();
+         this.addNotificationListener();
+      } catch (Throwable t) {
+         logger.warn("Memory pressure monitoring not available - " + t + ".");
+         this.memoryPools = null;
+         return;
+      }
+
+      this.monitorThread = new MonitorThread();
+      this.monitorThread.start();
+
+      if (logger.isInfoEnabled())
+         logger.info("Memory pressure monitoring started (heap threshold: " + this.heapUsageThreshold
+                  + "%, non-heap threshold: " + this.nonHeapUsageThreshold + "%, " + this.memoryPools.size()
+                  + " memory pools).");
+   }
+
+   /**
+    * Stops this monitor.
+    */
+   public synchronized void stop() {
+      if (this.monitorThread == null) return;
+
+      this.monitorThread.terminate();
+      this.monitorThread = null;
+
+      try {
+         this.removeNotificationListener();
+      } catch (Throwable t) {
+         if (logger.isDebugEnabled()) logger.debug("Unable to remove memory notification listener - " + t);
+      }
+      this.memoryPools = null;
+   }
+
+   /**
+    * Called when a usage threshold notification is received.
+    */
+   private synchronized void notifyMemoryPressure() {
+      this.notificationCount++;
+      this.notified = true;
+      this.notifyAll();
+   }
+
+   /**
+    * Checks the usage of the memory pools against the thresholds.
+    * 
+    * @return a description of the memory pressure, or <code>null</code> if no threshold is exceeded.
+    */
+   public String checkMemoryPressure() throws Exception {
+      List memoryPools;
+      int heapThreshold;
+      int nonHeapThreshold;
+      synchronized (this) {
+         memoryPools = this.memoryPools;
+         heapThreshold = this.heapUsageThreshold;
+         nonHeapThreshold = this.nonHeapUsageThreshold;
+      }
+      if (memoryPools == null) return null;
+
+      MemoryPool memoryPool;
+      Object usage;
+      long used;
+      long max;
+      int threshold;
+      for (Iterator it = memoryPools.iterator(); it.hasNext();) {
+         memoryPool = (MemoryPool) it.next();
+         threshold = memoryPool.heap ? heapThreshold : nonHeapThreshold;
+         if (threshold <= 0) continue;
+
+         usage = invoke(MEMORY_POOL_CLASS_NAME, memoryPool.memoryPoolMXBean, "getUsage");
+         if (usage == null) continue; // Pool no longer valid
+         used = ((Long) invoke(MEMORY_USAGE_CLASS_NAME, usage, "getUsed")).longValue();
+         max = ((Long) invoke(MEMORY_USAGE_CLASS_NAME, usage, "getMax")).longValue();
+
+         if ((max > 0) && ((used * 100 / max) >= threshold)) {
+            return (memoryPool.heap ? "heap" : "non-heap") + " memory pool '" + memoryPool.name + "' at "
+                     + (used * 100 / max) + "% of maximum size (threshold " + threshold + "%)";
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Gets the memory pools of the JVM that support usage thresholds.
+    */
+   private static List getMemoryPools() throws Exception {
+      Class managementFactoryClass = Class.forName(MANAGEMENT_FACTORY_CLASS_NAME);
+      Object heapType = Class.forName(MEMORY_TYPE_CLASS_NAME).getField("HEAP").get(null);
+      List memoryPoolMXBeans = (List) managementFactoryClass.getMethod("getMemoryPoolMXBeans", (Class[]) null).invoke(
+               null, (Object[]) null);
+
+      ArrayList memoryPools = new ArrayList();
+      Object memoryPoolMXBean;
+      for (Iterator it = memoryPoolMXBeans.iterator(); it.hasNext();) {
+         memoryPoolMXBean = it.next();
+         if (((Boolean) invoke(MEMORY_POOL_CLASS_NAME, memoryPoolMXBean, "isUsageThresholdSupported")).booleanValue()) {
+            memoryPools.add(new MemoryPool(memoryPoolMXBean, (String) invoke(MEMORY_POOL_CLASS_NAME, memoryPoolMXBean,
+                     "getName"), heapType.equals(invoke(MEMORY_POOL_CLASS_NAME, memoryPoolMXBean, "getType"))));
+         }
+      }
+      return memoryPools;
+   }
+
+   /**
+    * Sets the usage thresholds of the memory pools that have a defined maximum size.
+    */
+   private void setUsageThresholds() throws Exception {
+      Method setUsageThresholdMethod = Class.forName(MEMORY_POOL_CLASS_NAME).getMethod("setUsageThreshold",
+               new Class[] { long.class });
+
+      MemoryPool memoryPool;
+      long max;
+      int threshold;
+      for (Iterator it = this.memoryPools.iterator(); it.hasNext();) {
+         memoryPool = (MemoryPool) it.next();
+         threshold = memoryPool.heap ? this.heapUsageThreshold : this.nonHeapUsageThreshold;
+         max = ((Long) invoke(MEMORY_USAGE_CLASS_NAME, invoke(MEMORY_POOL_CLASS_NAME, memoryPool.memoryPoolMXBean,
+                  "getUsage"), "getMax")).longValue();
+
+         if ((threshold > 0) && (max > 0)) {
+            setUsageThresholdMethod.invoke(memoryPool.memoryPoolMXBean,
+                     new Object[] { new Long(max * threshold / 100) });
+         }
+      }
+   }
+
+   /**
+    * Registers a listener for the usage threshold notifications of the memory MXBean.
+    */
+   private void addNotificationListener() throws Exception {
+      Class listenerClass = Class.forName(NOTIFICATION_LISTENER_CLASS_NAME);
+
+      this.memoryMXBean = Class.forName(MANAGEMENT_FACTORY_CLASS_NAME).getMethod("getMemoryMXBean", (Class[]) null)
+               .invoke(null, (Object[]) null);
+      this.notificationListener = Proxy.newProxyInstance(listenerClass.getClassLoader(), new Class[] { listenerClass },
+               new InvocationHandler() {
+
+                  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                     if ("handleNotification".equals(method.getName())) notifyMemoryPressure();
+                     else if ("equals".equals(method.getName())) return new Boolean(proxy == args[0]);
+                     else if ("hashCode".equals(method.getName())) return new Integer(System.identityHashCode(proxy));
+                     else if ("toString".equals(method.getName())) return "MemoryPressureMonitor listener";
+                     return null;
+                  }
+               });
+
+      Class.forName(NOTIFICATION_BROADCASTER_CLASS_NAME).getMethod("addNotificationListener",
+               new Class[] { listenerClass, Class.forName(NOTIFICATION_FILTER_CLASS_NAME), Object.class }).invoke(
+               this.memoryMXBean, new Object[] { this.notificationListener, null, null });
+   }
+
+   /**
+    * Removes the listener for usage threshold notifications.
+    */
+   private void removeNotificationListener() throws Exception {
+      if ((this.memoryMXBean == null) || (this.notificationListener == null)) return;
+
+      Class.forName(NOTIFICATION_BROADCASTER_CLASS_NAME).getMethod("removeNotificationListener",
+               new Class[] { Class.forName(NOTIFICATION_LISTENER_CLASS_NAME) }).invoke(this.memoryMXBean,
+               new Object[] { this.notificationListener });
+
+      this.memoryMXBean = null;
+      this.notificationListener = null;
+   }
+
+   /**
+    * Invokes a method without arguments on an object, through the specified (public) interface.
+    */
+   private static Object invoke(final String interfaceName, final Object target, final String methodName)
+            throws Exception {
+      return Class.forName(interfaceName).getMethod(methodName, (Class[]) null).invoke(target, (Object[]) null);
+   }
+}
@@ -0,0 +1,789 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link ModuleClassTransformer} implementation that measures the latency of the methods of module classes. Each
+ * concrete method (except constructors, static initializers, bridge methods and synthetic methods) is renamed and made
+ * private, and a method with the original name, signature and access flags is added, which invokes the renamed method
+ * and reports the time spent in it to this class. Classes are only transformed if their names begin with one of the
+ * configured prefixes (see {@link #setIncludedClassNamePrefixes(String[])}), or if no prefixes are configured.<br>
+ * <br>
+ * The timings are collected per method (class name, method name and descriptor), for all module revisions, and may be
+ * obtained through the method {@link #getMethodTimings()}. Times are measured using <code>System.nanoTime()</code>
+ * if available, otherwise <code>System.currentTimeMillis()</code>.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class MethodTimingTransformer implements ModuleClassTransformer {
+
+   public static final String RENAMED_METHOD_SUFFIX = "$hotbeans$timed";
+
+   private static final String THIS_CLASS_NAME = "hotbeans/support/MethodTimingTransformer";
+
+   private static final String CLOCK_METHOD_NAME;
+
+   private static final long CLOCK_UNIT_NANOS;
+
+   static {
+      String clockMethodName = "currentTimeMillis";
+      long clockUnitNanos = 1000000;
+      try {
+         System.class.getMethod("nanoTime", new Class[0]);
+         clockMethodName = "nanoTime";
+         clockUnitNanos = 1;
+      } catch (Exception e) {
+      }
+      CLOCK_METHOD_NAME = clockMethodName;
+      CLOCK_UNIT_NANOS = clockUnitNanos;
+   }
+
+   /**
+    * Class containing timing information for a method.
+    */
+   public static final class MethodTiming {
+
+      private final String className;
+
+      private final String methodName;
+
+      private final String methodDescriptor;
+
+      private long invocationCount = 0;
+
+      private long totalTime = 0;
+
+      private long maxTime = 0;
+
+      MethodTiming(String className, String methodName, String methodDescriptor) {
+         this.className = className;
+         this.methodName = methodName;
+         this.methodDescriptor = methodDescriptor;
+      }
+
+      synchronized void record(final long time) {
+         this.invocationCount++;
+         this.totalTime += time;
+         if (time > this.maxTime) this.maxTime = time;
+      }
+
+      synchronized MethodTiming getCopy() {
+         MethodTiming copy = new MethodTiming(this.className, this.methodName, this.methodDescriptor);
+         copy.invocationCount = this.invocationCount;
+         copy.totalTime = this.totalTime;
+         copy.maxTime = this.maxTime;
+         return copy;
+      }
+
+      synchronized void reset() {
+         this.invocationCount = 0;
+         this.totalTime = 0;
+         this.maxTime = 0;
+      }
+
+      /**
+       * Gets the name of the class.
+       */
+      public String getClassName() {
+         return className;
+      }
+
+      /**
+       * Gets the name of the method.
+       */
+      public String getMethodName() {
+         return methodName;
+      }
+
+      /**
+       * Gets the descriptor (signature in class file format) of the method.
+       */
+      public String getMethodDescriptor() {
+         return methodDescriptor;
+      }
+
+      /**
+       * Gets the number of invocations of the method.
+       */
+      public long getInvocationCount() {
+         return invocationCount;
+      }
+
+      /**
+       * Gets the total time (in nanoseconds) spent in the method.
+       */
+      public long getTotalTimeNanos() {
+         return totalTime * CLOCK_UNIT_NANOS;
+      }
+
+      /**
+       * Gets the average time (in nanoseconds) per invocation of the method.
+       */
+      public long getAverageTimeNanos() {
+         return (this.invocationCount > 0) ? (this.getTotalTimeNanos() / this.invocationCount) : 0;
+      }
+
+      /**
+       * Gets the maximum time (in nanoseconds) of an invocation of the method.
+       */
+      public long getMaxTimeNanos() {
+         return maxTime * CLOCK_UNIT_NANOS;
+      }
+
+      /**
+       * Gets a string representation of this MethodTiming.
+       */
+      public String toString() {
+         return "MethodTiming[" + this.className + "." + this.methodName + this.methodDescriptor + " - invocations: "
+                  + this.invocationCount + ", avg: " + (this.getAverageTimeNanos() / 1000) + " us, max: "
+                  + (this.getMaxTimeNanos() / 1000) + " us]";
+      }
+   }
+
+   private static final HashMap methodIds = new HashMap(); // Method key (String) -> method id (Integer)
+
+   private static volatile MethodTiming[] methodTimings = new MethodTiming[0]; // Indexed by method id
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private String[] includedClassNamePrefixes;
+
+   /**
+    * Creates a new MethodTimingTransformer.
+    */
+   public MethodTimingTransformer() {
+   }
+
+   /**
+    * Gets the prefixes of the names of the classes that are to be transformed.
+    */
+   public String[] getIncludedClassNamePrefixes() {
+      return includedClassNamePrefixes;
+   }
+
+   /**
+    * Sets the prefixes of the names of the classes that are to be transformed. If not set, all module classes are
+    * transformed.
+    */
+   public void setIncludedClassNamePrefixes(String[] includedClassNamePrefixes) {
+      this.includedClassNamePrefixes = includedClassNamePrefixes;
+   }
+
+   /**
+    * Gets the timings of all methods that have been instrumented by this class, sorted by class and method name.
+    */
+   public static MethodTiming[] getMethodTimings() {
+      MethodTiming[] currentMethodTimings = methodTimings;
+      MethodTiming[] copies = new MethodTiming[currentMethodTimings.length];
+
+      for (int i = 0; i < copies.length; i++) {
+         copies[i] = currentMethodTimings[i].getCopy();
+      }
+
+      return copies;
+   }
+
+   /**
+    * Resets the timings of all methods.
+    */
+   public static void resetMethodTimings() {
+      MethodTiming[] currentMethodTimings = methodTimings;
+      for (int i = 0; i < currentMethodTimings.length; i++) {
+         currentMethodTimings[i].reset();
+      }
+   }
+
+   /**
+    * Called by instrumented methods to report the time spent in a method. This method is not intended to be called
+    * directly.
+    */
+   public static void methodExited(final int methodId, final long time) {
+      MethodTiming[] currentMethodTimings = methodTimings;
+      if ((methodId >= 0) && (methodId < currentMethodTimings.length)) currentMethodTimings[methodId].record(time);
+   }
+
+   /**
+    * Registers a method and returns its id.
+    */
+   private static int registerMethod(final String className, final String methodName, final String methodDescriptor) {
+      String methodKey = className + "." + methodName + methodDescriptor;
+
+      synchronized (methodIds) {
+         Integer methodId = (Integer) methodIds.get(methodKey);
+         if (methodId == null) {
+            methodId = new Integer(methodTimings.length);
+            methodIds.put(methodKey, methodId);
+
+            MethodTiming[] newMethodTimings = new MethodTiming[methodTimings.length + 1];
+            System.arraycopy(methodTimings, 0, newMethodTimings, 0, methodTimings.length);
+            newMethodTimings[methodTimings.length] = new MethodTiming(className, methodName, methodDescriptor);
+            methodTimings = newMethodTimings;
+         }
+         return methodId.intValue();
+      }
+   }
+
+   /**
+    * Transforms the bytes of the class with the specified name, by adding timing of all methods.
+    */
+   public byte[] transform(final ClassLoader moduleClassLoader, final String className, final byte[] classBytes)
+            throws Exception {
+      if (this.includedClassNamePrefixes != null) {
+         boolean included = false;
+         for (int i = 0; (i < this.includedClassNamePrefixes.length) && !included; i++) {
+            included = className.startsWith(this.includedClassNamePrefixes[i]);
+         }
+         if (!included) return null;
+      }
+
+      try {
+         return new ClassFileRewriter(classBytes).rewrite();
+      } catch (Exception e) {
+         if (logger.isDebugEnabled()) logger.debug("Unable to add method timing to class '" + className + "' - " + e);
+         return null;
+      }
+   }
+
+   /* ### CLASS FILE REWRITING BEGIN ### */
+
+   private static final int ACC_PUBLIC = 0x0001;
+
+   private static final int ACC_PRIVATE = 0x0002;
+
+   private static final int ACC_PROTECTED = 0x0004;
+
+   private static final int ACC_STATIC = 0x0008;
+
+   private static final int ACC_SYNCHRONIZED = 0x0020;
+
+   private static final int ACC_BRIDGE = 0x0040;
+
+   private static final int ACC_NATIVE = 0x0100;
+
+   private static final int ACC_INTERFACE = 0x0200;
+
+   private static final int ACC_ABSTRACT = 0x0400;
+
+   private static final int ACC_SYNTHETIC = 0x1000;
+
+   /**
+    * Attributes of the original method that are copied to the added (timing) method.
+    */
+   private static final String[] COPIED_METHOD_ATTRIBUTES = new String[] { "Exceptions", "Signature", "Deprecated",
+            "RuntimeVisibleAnnotations", "RuntimeVisibleParameterAnnotations" };
+
+   /**
+    * Class containing information about a method in a class file.
+    */
+   private static final class MethodInfo {
+
+      private int accessFlags;
+
+      private int nameIndex;
+
+      private int descriptorIndex;
+
+      private int start; // Offset of method_info structure
+
+      private int attributesStart; // Offset of attributes_count
+
+      private int end;
+
+      private final ArrayList attributeNames = new ArrayList(); // String
+
+      private final ArrayList attributeOffsets = new ArrayList(); // int[] { start, end }
+   }
+
+   /**
+    * Simple class file rewriter, adding method timing.
+    */
+   private static final class ClassFileRewriter {
+
+      private final byte[] bytes;
+
+      private int pos = 0;
+
+      private int majorVersion;
+
+      private String[] utf8Constants;
+
+      private int[] classNameIndices;
+
+      private int thisClassIndex;
+
+      private String thisClassName;
+
+      private final ByteArrayOutputStream addedConstantsBytes = new ByteArrayOutputStream();
+
+      private final DataOutputStream addedConstants = new DataOutputStream(addedConstantsBytes);
+
+      private final HashMap addedConstantIndices = new HashMap(); // Constant key (String) -> index (Integer)
+
+      private int nextConstantIndex;
+
+      public ClassFileRewriter(byte[] bytes) {
+         this.bytes = bytes;
+      }
+
+      private int u1() {
+         return this.bytes[this.pos++] & 0xff;
+      }
+
+      private int u2() {
+         return (u1() << 8) | u1();
+      }
+
+      private int u4() {
+         return (u2() << 16) | u2();
+      }
+
+      /**
+       * Rewrites the class file. Returns null if no method was instrumented.
+       */
+      public byte[] rewrite() throws IOException {
+         if (u4() != 0xCAFEBABE) throw new IOException("Invalid class file magic");
+         u2(); // Minor version
+         this.majorVersion = u2();
+
+         // Parse constant pool
+         final int constantPoolCount = u2();
+         this.utf8Constants = new String[constantPoolCount];
+         this.classNameIndices = new int[constantPoolCount];
+         final int constantPoolStart = this.pos;
+
+         for (int i = 1; i < constantPoolCount; i++) {
+            int tag = u1();
+            switch (tag) {
+               case 1: // Utf8
+                  int length = u2();
+                  this.utf8Constants[i] = new DataInputStream(new ByteArrayInputStream(this.bytes, this.pos - 2,
+                           length + 2)).readUTF();
+                  this.pos += length;
+                  break;
+               case 7: // Class
+                  this.classNameIndices[i] = u2();
+                  break;
+               case 8: // String
+               case 16: // MethodType
+               case 19: // Module
+               case 20: // Package
+                  this.pos += 2;
+                  break;
+               case 15: // MethodHandle
+                  this.pos += 3;
+                  break;
+               case 3: // Integer
+               case 4: // Float
+               case 9: // Fieldref
+               case 10: // Methodref
+               case 11: // InterfaceMethodref
+               case 12: // NameAndType
+               case 17: // Dynamic
+               case 18: // InvokeDynamic
+                  this.pos += 4;
+                  break;
+               case 5: // Long
+               case 6: // Double
+                  this.pos += 8;
+                  i++; // Takes two entries
+                  break;
+               default:
+                  throw new IOException("Unknown constant pool tag " + tag);
+            }
+         }
+         final int constantPoolEnd = this.pos;
+         this.nextConstantIndex = constantPoolCount;
+
+         // Class info
+         final int classAccessFlags = u2();
+         if ((classAccessFlags & ACC_INTERFACE) != 0) return null;
+         this.thisClassIndex = u2();
+         this.thisClassName = this.utf8Constants[this.classNameIndices[this.thisClassIndex]];
+         u2(); // Super class
+         int interfaceCount = u2();
+         this.pos += 2 * interfaceCount;
+
+         // Fields
+         int fieldCount = u2();
+         for (int i = 0; i < fieldCount; i++) {
+            this.pos += 6;
+            skipAttributes();
+         }
+         final int methodsStart = this.pos;
+
+         // Methods
+         int methodCount = u2();
+         MethodInfo[] methods = new MethodInfo[methodCount];
+         for (int i = 0; i < methodCount; i++) {
+            methods[i] = new MethodInfo();
+            methods[i].start = this.pos;
+            methods[i].accessFlags = u2();
+            methods[i].nameIndex = u2();
+            methods[i].descriptorIndex = u2();
+            methods[i].attributesStart = this.pos;
+            int attributeCount = u2();
+            for (int a = 0; a < attributeCount; a++) {
+               int attributeStart = this.pos;
+               methods[i].attributeNames.add(this.utf8Constants[u2()]);
+               int attributeLength = u4();
+               this.pos += attributeLength;
+               methods[i].attributeOffsets.add(new int[] { attributeStart, this.pos });
+            }
+            methods[i].end = this.pos;
+         }
+         final int methodsEnd = this.pos;
+
+         // Rewrite methods
+         ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+         DataOutputStream methodOutput = new DataOutputStream(methodBytes);
+         int newMethodCount = methodCount;
+
+         for (int i = 0; i < methodCount; i++) {
+            if (isInstrumentable(methods[i])) {
+               writeRenamedMethod(methods[i], methodOutput);
+               writeTimingMethod(methods[i], methodOutput);
+               newMethodCount++;
+            } else methodOutput.write(this.bytes, methods[i].start, methods[i].end - methods[i].start);
+         }
+
+         if (newMethodCount == methodCount) return null;
+         if (this.nextConstantIndex > 0xffff) throw new IOException("Too many constants");
+
+         // Assemble class file
+         ByteArrayOutputStream classBytes = new ByteArrayOutputStream(this.bytes.length + methodBytes.size());
+         DataOutputStream classOutput = new DataOutputStream(classBytes);
+         classOutput.write(this.bytes, 0, 8); // Magic and version
+         classOutput.writeShort(this.nextConstantIndex);
+         classOutput.write(this.bytes, constantPoolStart, constantPoolEnd - constantPoolStart);
+         this.addedConstants.flush();
+         this.addedConstantsBytes.writeTo(classOutput);
+         classOutput.write(this.bytes, constantPoolEnd, methodsStart - constantPoolEnd); // Class info and fields
+         classOutput.writeShort(newMethodCount);
+         methodOutput.flush();
+         methodBytes.writeTo(classOutput);
+         classOutput.write(this.bytes, methodsEnd, this.bytes.length - methodsEnd); // Class attributes
+         classOutput.flush();
+
+         return classBytes.toByteArray();
+      }
+
+      private void skipAttributes() {
+         int attributeCount = u2();
+         int attributeLength;
+         for (int i = 0; i < attributeCount; i++) {
+            u2();
+            attributeLength = u4();
+            this.pos += attributeLength;
+         }
+      }
+
+      private boolean isInstrumentable(final MethodInfo method) {
+         String name = this.utf8Constants[method.nameIndex];
+         return !name.startsWith("<") && !name.endsWith(RENAMED_METHOD_SUFFIX)
+                  && ((method.accessFlags & (ACC_ABSTRACT | ACC_NATIVE | ACC_BRIDGE | ACC_SYNTHETIC)) == 0)
+                  && method.attributeNames.contains("Code");
+      }
+
+      /**
+       * Writes the original method, renamed and made private.
+       */
+      private void writeRenamedMethod(final MethodInfo method, final DataOutputStream out) throws IOException {
+         int accessFlags = (method.accessFlags & ~(ACC_PUBLIC | ACC_PROTECTED)) | ACC_PRIVATE | ACC_SYNTHETIC;
+         out.writeShort(accessFlags);
+         out.writeShort(addUtf8(this.utf8Constants[method.nameIndex] + RENAMED_METHOD_SUFFIX));
+         out.writeShort(method.descriptorIndex);
+         out.write(this.bytes, method.attributesStart, method.end - method.attributesStart);
+      }
+
+      /**
+       * Writes a method with the original name, descriptor and access flags, which invokes the renamed method and
+       * reports the time spent in it.
+       */
+      private void writeTimingMethod(final MethodInfo method, final DataOutputStream out) throws IOException {
+         final String methodName = this.utf8Constants[method.nameIndex];
+         final String descriptor = this.utf8Constants[method.descriptorIndex];
+         final boolean isStatic = (method.accessFlags & ACC_STATIC) != 0;
+
+         final int methodIdIndex = addInteger(registerMethod(this.thisClassName.replace('/', '.'), methodName,
+                  descriptor));
+         final int clockMethodIndex = addMethodref("java/lang/System", CLOCK_METHOD_NAME, "()J");
+         final int exitMethodIndex = addMethodref(THIS_CLASS_NAME, "methodExited", "(IJ)V");
+         final int targetMethodIndex = addMethodref(this.thisClassName, methodName + RENAMED_METHOD_SUFFIX, descriptor);
+
+         // Parse parameter types
+         ArrayList parameterTypes = new ArrayList(); // String (descriptor)
+         int index = 1;
+         while (descriptor.charAt(index) != ')') {
+            int typeStart = index;
+            while (descriptor.charAt(index) == '[')
+               index++;
+            if (descriptor.charAt(index) == 'L') index = descriptor.indexOf(';', index);
+            index++;
+            parameterTypes.add(descriptor.substring(typeStart, index));
+         }
+         final char returnType = descriptor.charAt(index + 1);
+
+         // Generate code
+         ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+         DataOutputStream code = new DataOutputStream(codeBytes);
+         int slot = isStatic ? 0 : 1;
+         for (int i = 0; i < parameterTypes.size(); i++) {
+            slot += getSlotSize((String) parameterTypes.get(i));
+         }
+         final int parameterSlots = slot;
+         final int timeSlot = slot;
+
+         code.writeByte(0xb8); // invokestatic (clock)
+         code.writeShort(clockMethodIndex);
+         writeLocalVariableInstruction(code, 0x37, timeSlot); // lstore
+
+         final int startPc = codeBytes.size();
+         slot = 0;
+         if (!isStatic) writeLocalVariableInstruction(code, 0x19, slot++); // aload (this)
+         String parameterType;
+         for (int i = 0; i < parameterTypes.size(); i++) {
+            parameterType = (String) parameterTypes.get(i);
+            writeLocalVariableInstruction(code, getLoadOpcode(parameterType.charAt(0)), slot);
+            slot += getSlotSize(parameterType);
+         }
+         code.writeByte(isStatic ? 0xb8 : 0xb7); // invokestatic/invokespecial (renamed method)
+         code.writeShort(targetMethodIndex);
+         final int endPc = codeBytes.size();
+
+         writeMethodExited(code, methodIdIndex, clockMethodIndex, exitMethodIndex, timeSlot);
+         code.writeByte(getReturnOpcode(returnType));
+
+         final int handlerPc = codeBytes.size();
+         writeMethodExited(code, methodIdIndex, clockMethodIndex, exitMethodIndex, timeSlot);
+         code.writeByte(0xbf); // athrow
+         code.flush();
+
+         // Generate stack map frame for the exception handler
+         byte[] stackMapTable = null;
+         if (this.majorVersion >= 50) {
+            ByteArrayOutputStream frameBytes = new ByteArrayOutputStream();
+            DataOutputStream frame = new DataOutputStream(frameBytes);
+            frame.writeShort(1); // Number of entries
+            frame.writeByte(255); // full_frame
+            frame.writeShort(handlerPc);
+            frame.writeShort((isStatic ? 0 : 1) + parameterTypes.size() + 1);
+            if (!isStatic) {
+               frame.writeByte(7); // Object
+               frame.writeShort(this.thisClassIndex);
+            }
+            for (int i = 0; i < parameterTypes.size(); i++) {
+               writeVerificationType(frame, (String) parameterTypes.get(i));
+            }
+            frame.writeByte(4); // Long (time)
+            frame.writeShort(1); // Stack size
+            frame.writeByte(7); // Object
+            frame.writeShort(addClass("java/lang/Throwable"));
+            frame.flush();
+            stackMapTable = frameBytes.toByteArray();
+         }
+
+         int returnSlots = (returnType == 'V') ? 0 : (((returnType == 'J') || (returnType == 'D')) ? 2 : 1);
+         int maxStack = Math.max(Math.max(2, parameterSlots), returnSlots + 5);
+         maxStack = Math.max(maxStack, 6); // Throwable + id + two longs in exception handler
+
+         // Write method
+         out.writeShort(method.accessFlags & ~(ACC_SYNCHRONIZED | ACC_NATIVE | ACC_ABSTRACT));
+         out.writeShort(method.nameIndex);
+         out.writeShort(method.descriptorIndex);
+
+         ArrayList copiedAttributes = new ArrayList(); // int[] { start, end }
+         for (int i = 0; i < method.attributeNames.size(); i++) {
+            for (int n = 0; n < COPIED_METHOD_ATTRIBUTES.length; n++) {
+               if (COPIED_METHOD_ATTRIBUTES[n].equals(method.attributeNames.get(i)))
+                  copiedAttributes.add(method.attributeOffsets.get(i));
+            }
+         }
+         out.writeShort(1 + copiedAttributes.size());
+
+         // Code attribute
+         out.writeShort(addUtf8("Code"));
+         int codeAttributeLength = 2 + 2 + 4 + codeBytes.size() + 2 + 8 + 2;
+         if (stackMapTable != null) codeAttributeLength += 6 + stackMapTable.length;
+         out.writeInt(codeAttributeLength);
+         out.writeShort(maxStack);
+         out.writeShort(timeSlot + 2); // Max locals
+         out.writeInt(codeBytes.size());
+         codeBytes.writeTo(out);
+         out.writeShort(1); // Exception table length
+         out.writeShort(startPc);
+         out.writeShort(endPc);
+         out.writeShort(handlerPc);
+         out.writeShort(0); // Any exception
+         if (stackMapTable != null) {
+            out.writeShort(1);
+            out.writeShort(addUtf8("StackMapTable"));
+            out.writeInt(stackMapTable.length);
+            out.write(stackMapTable);
+         } else out.writeShort(0);
+
+         // Copied attributes
+         int[] offsets;
+         for (int i = 0; i < copiedAttributes.size(); i++) {
+            offsets = (int[]) copiedAttributes.get(i);
+            out.write(this.bytes, offsets[0], offsets[1] - offsets[0]);
+         }
+      }
+
+      private void writeMethodExited(final DataOutputStream code, final int methodIdIndex, final int clockMethodIndex,
+               final int exitMethodIndex, final int timeSlot) throws IOException {
+         code.writeByte(0x13); // ldc_w (method id)
+         code.writeShort(methodIdIndex);
+         code.writeByte(0xb8); // invokestatic (clock)
+         code.writeShort(clockMethodIndex);
+         writeLocalVariableInstruction(code, 0x16, timeSlot); // lload
+         code.writeByte(0x65); // lsub
+         code.writeByte(0xb8); // invokestatic (methodExited)
+         code.writeShort(exitMethodIndex);
+      }
+
+      private void writeLocalVariableInstruction(final DataOutputStream code, final int opcode, final int slot)
+               throws IOException {
+         if (slot > 255) {
+            code.writeByte(0xc4); // wide
+            code.writeByte(opcode);
+            code.writeShort(slot);
+         } else {
+            code.writeByte(opcode);
+            code.writeByte(slot);
+         }
+      }
+
+      private void writeVerificationType(final DataOutputStream frame, final String type) throws IOException {
+         switch (type.charAt(0)) {
+            case 'F':
+               frame.writeByte(2);
+               break;
+            case 'D':
+               frame.writeByte(3);
+               break;
+            case 'J':
+               frame.writeByte(4);
+               break;
+            case 'L':
+               frame.writeByte(7);
+               frame.writeShort(addClass(type.substring(1, type.length() - 1)));
+               break;
+            case '[':
+               frame.writeByte(7);
+               frame.writeShort(addClass(type));
+               break;
+            default: // B, C, I, S, Z
+               frame.writeByte(1);
+         }
+      }
+
+      private int getSlotSize(final String type) {
+         return ((type.charAt(0) == 'J') || (type.charAt(0) == 'D')) ? 2 : 1;
+      }
+
+      private int getLoadOpcode(final char type) {
+         switch (type) {
+            case 'J':
+               return 0x16; // lload
+            case 'F':
+               return 0x17; // fload
+            case 'D':
+               return 0x18; // dload
+            case 'L':
+            case '[':
+               return 0x19; // aload
+            default:
+               return 0x15; // iload
+         }
+      }
+
+      private int getReturnOpcode(final char type) {
+         switch (type) {
+            case 'V':
+               return 0xb1; // return
+            case 'J':
+               return 0xad; // lreturn
+            case 'F':
+               return 0xae; // freturn
+            case 'D':
+               return 0xaf; // dreturn
+            case 'L':
+            case '[':
+               return 0xb0; // areturn
+            default:
+               return 0xac; // ireturn
+         }
+      }
+
+      /* ### Constant pool methods ### */
+
+      private int addConstant(final String key, final byte[] constant) throws IOException {
+         Integer index = (Integer) this.addedConstantIndices.get(key);
+         if (index == null) {
+            index = new Integer(this.nextConstantIndex++);
+            this.addedConstants.write(constant);
+            this.addedConstantIndices.put(key, index);
+         }
+         return index.intValue();
+      }
+
+      private int addUtf8(final String value) throws IOException {
+         ByteArrayOutputStream constantBytes = new ByteArrayOutputStream();
+         DataOutputStream constant = new DataOutputStream(constantBytes);
+         constant.writeByte(1);
+         constant.writeUTF(value);
+         constant.flush();
+         return addConstant("Utf8:" + value, constantBytes.toByteArray());
+      }
+
+      private int addInteger(final int value) throws IOException {
+         return addConstant("Integer:" + value, new byte[] { 3, (byte) (value >>> 24), (byte) (value >>> 16),
+                  (byte) (value >>> 8), (byte) value });
+      }
+
+      private int addClass(final String className) throws IOException {
+         if (className.equals(this.thisClassName)) return this.thisClassIndex;
+         int nameIndex = addUtf8(className);
+         return addConstant("Class:" + className, new byte[] { 7, (byte) (nameIndex >>> 8), (byte) nameIndex });
+      }
+
+      private int addMethodref(final String className, final String methodName, final String descriptor)
+               throws IOException {
+         int classIndex = addClass(className);
+         int nameIndex = addUtf8(methodName);
+         int descriptorIndex = addUtf8(descriptor);
+         int nameAndTypeIndex = addConstant("NameAndType:" + methodName + descriptor, new byte[] { 12,
+                  (byte) (nameIndex >>> 8), (byte) nameIndex, (byte) (descriptorIndex >>> 8), (byte) descriptorIndex });
+         return addConstant("Methodref:" + className + "." + methodName + descriptor, new byte[] { 10,
+                  (byte) (classIndex >>> 8), (byte) classIndex, (byte) (nameAndTypeIndex >>> 8),
+                  (byte) nameAndTypeIndex });
+      }
+   }
+
+   /* ### CLASS FILE REWRITING END ### */
+}
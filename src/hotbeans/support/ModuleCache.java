@@ -0,0 +1,298 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import hotbeans.util.SerializationUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Module scoped cache, provided by the repository, that stores serialized values off-heap (in direct byte buffers). The
+ * contents of the cache is kept per module name, and survives updates of the module. Since the values are stored in
+ * serialized form, the cache doesn't retain the class loaders of module revisions.<br>
+ * <br>
+ * The cache is made available to the beans of a module revision as a bean named {@link #BEAN_NAME} in the
+ * {@link hotbeans.HotBeanContext} of the revision ({@link SpringHotBeanContext} and {@link PropertiesHotBeanContext}).
+ * Each revision gets its own view of the cache, which deserializes values using the class loader of the revision.<br>
+ * <br>
+ * The cache is bounded by a maximum total size (in bytes) of the serialized values and a maximum number of entries.
+ * When any of the limits is exceeded, the least recently used entries are evicted.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class ModuleCache {
+
+   public static final String BEAN_NAME = "hotBeanModuleCache";
+
+   private final Storage storage;
+
+   private final ClassLoader classLoader;
+
+   /**
+    * Shared off-heap storage of the values of a module cache.
+    */
+   private static final class Storage {
+
+      private final String moduleName;
+
+      private final LinkedHashMap entries; // Key (String) -> ByteBuffer
+
+      private long maxSize;
+
+      private int maxEntries;
+
+      private long size = 0;
+
+      private long hitCount = 0;
+
+      private long missCount = 0;
+
+      private long evictionCount = 0;
+
+      public Storage(String moduleName, long maxSize, int maxEntries) {
+         this.moduleName = moduleName;
+         this.entries = new LinkedHashMap(16, 0.75f, true);
+         this.maxSize = maxSize;
+         this.maxEntries = maxEntries;
+      }
+
+      public synchronized void put(final String key, final byte[] bytes) {
+         this.remove(key);
+         if (bytes.length > this.maxSize) return;
+
+         ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+         buffer.put(bytes);
+         buffer.flip();
+
+         this.entries.put(key, buffer);
+         this.size += bytes.length;
+         this.evict();
+      }
+
+      public synchronized byte[] get(final String key) {
+         ByteBuffer buffer = (ByteBuffer) this.entries.get(key);
+         if (buffer == null) {
+            this.missCount++;
+            return null;
+         }
+
+         this.hitCount++;
+         byte[] bytes = new byte[buffer.remaining()];
+         buffer.duplicate().get(bytes);
+         return bytes;
+      }
+
+      public synchronized boolean remove(final String key) {
+         ByteBuffer buffer = (ByteBuffer) this.entries.remove(key);
+         if (buffer != null) this.size -= buffer.capacity();
+         return buffer != null;
+      }
+
+      /**
+       * Evicts least recently used entries until the limits are met.
+       */
+      private void evict() {
+         Map.Entry eldest;
+         for (Iterator it = this.entries.entrySet().iterator(); it.hasNext()
+                  && ((this.size > this.maxSize) || (this.entries.size() > this.maxEntries));) {
+            eldest = (Map.Entry) it.next();
+            this.size -= ((ByteBuffer) eldest.getValue()).capacity();
+            it.remove();
+            this.evictionCount++;
+         }
+      }
+   }
+
+   /**
+    * Creates a new ModuleCache.
+    * 
+    * @param maxSize the maximum total size (in bytes) of the serialized values in the cache.
+    * @param maxEntries the maximum number of entries in the cache.
+    */
+   public ModuleCache(String moduleName, long maxSize, int maxEntries) {
+      this(new Storage(moduleName, maxSize, maxEntries), null);
+   }
+
+   /**
+    * Creates a new ModuleCache view.
+    */
+   private ModuleCache(Storage storage, ClassLoader classLoader) {
+      this.storage = storage;
+      this.classLoader = classLoader;
+   }
+
+   /**
+    * Gets a view of this cache, that shares the contents of this cache, but deserializes values using the specified
+    * class loader.
+    */
+   public ModuleCache withClassLoader(final ClassLoader classLoader) {
+      return new ModuleCache(this.storage, classLoader);
+   }
+
+   /**
+    * Gets the name of the module to which this cache belongs.
+    */
+   public String getModuleName() {
+      return this.storage.moduleName;
+   }
+
+   /**
+    * Puts a value in the cache. The value must be serializable. Putting a <code>null</code> value removes the entry.
+    */
+   public void put(final String key, final Object value) throws IOException {
+      if (value == null) this.storage.remove(key);
+      else this.storage.put(key, SerializationUtils.serialize(value));
+   }
+
+   /**
+    * Gets a value from the cache, or <code>null</code> if there is no value for the specified key.
+    */
+   public Object get(final String key) throws IOException, ClassNotFoundException {
+      byte[] bytes = this.storage.get(key);
+      return (bytes != null) ? SerializationUtils.deserialize(bytes, this.classLoader) : null;
+   }
+
+   /**
+    * Puts a raw byte array in the cache.
+    */
+   public void putBytes(final String key, final byte[] bytes) {
+      if (bytes == null) this.storage.remove(key);
+      else this.storage.put(key, bytes);
+   }
+
+   /**
+    * Gets a raw byte array from the cache, or <code>null</code> if there is no value for the specified key.
+    */
+   public byte[] getBytes(final String key) {
+      return this.storage.get(key);
+   }
+
+   /**
+    * Checks if the cache contains a value for the specified key.
+    */
+   public boolean containsKey(final String key) {
+      synchronized (this.storage) {
+         return this.storage.entries.containsKey(key);
+      }
+   }
+
+   /**
+    * Removes the value with the specified key from the cache.
+    * 
+    * @return <code>true</code> if a value was removed.
+    */
+   public boolean remove(final String key) {
+      return this.storage.remove(key);
+   }
+
+   /**
+    * Removes all values from the cache.
+    */
+   public void clear() {
+      synchronized (this.storage) {
+         this.storage.entries.clear();
+         this.storage.size = 0;
+      }
+   }
+
+   /**
+    * Gets the number of entries in the cache.
+    */
+   public int getEntryCount() {
+      synchronized (this.storage) {
+         return this.storage.entries.size();
+      }
+   }
+
+   /**
+    * Gets the total size (in bytes) of the serialized values in the cache.
+    */
+   public long getSize() {
+      synchronized (this.storage) {
+         return this.storage.size;
+      }
+   }
+
+   /**
+    * Gets the maximum total size (in bytes) of the serialized values in the cache.
+    */
+   public long getMaxSize() {
+      synchronized (this.storage) {
+         return this.storage.maxSize;
+      }
+   }
+
+   /**
+    * Sets the maximum total size (in bytes) of the serialized values in the cache.
+    */
+   public void setMaxSize(long maxSize) {
+      synchronized (this.storage) {
+         this.storage.maxSize = maxSize;
+         this.storage.evict();
+      }
+   }
+
+   /**
+    * Gets the maximum number of entries in the cache.
+    */
+   public int getMaxEntries() {
+      synchronized (this.storage) {
+         return this.storage.maxEntries;
+      }
+   }
+
+   /**
+    * Sets the maximum number of entries in the cache.
+    */
+   public void setMaxEntries(int maxEntries) {
+      synchronized (this.storage) {
+         this.storage.maxEntries = maxEntries;
+         this.storage.evict();
+      }
+   }
+
+   /**
+    * Gets the number of successful lookups.
+    */
+   public long getHitCount() {
+      synchronized (this.storage) {
+         return this.storage.hitCount;
+      }
+   }
+
+   /**
+    * Gets the number of unsuccessful lookups.
+    */
+   public long getMissCount() {
+      synchronized (this.storage) {
+         return this.storage.missCount;
+      }
+   }
+
+   /**
+    * Gets the number of evicted entries.
+    */
+   public long getEvictionCount() {
+      synchronized (this.storage) {
+         return this.storage.evictionCount;
+      }
+   }
+}
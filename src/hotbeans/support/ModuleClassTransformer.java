@@ -0,0 +1,38 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+/**
+ * Interface for classes capable of transforming (rewriting) the bytes of classes loaded by a
+ * {@link JarFileHotBeanModuleLoader}, before the classes are defined. Transformers may be configured for all modules
+ * in the repository (see {@link AbstractHotBeanModuleRepository#setClassTransformers(java.util.List)}), or for a
+ * specific module through the manifest attribute {@link ModuleManifestUtils#CLASS_TRANSFORMERS_ATTRIBUTE}.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public interface ModuleClassTransformer {
+
+   /**
+    * Transforms the bytes of the class with the specified name. Implementations should return <code>null</code> if
+    * the class isn't transformed.
+    * 
+    * @param moduleClassLoader the class loader of the module in which the class is being defined.
+    * @param className the fully qualified name of the class (i.e. with '.' as package separator).
+    * @param classBytes the bytes of the class, in class file format.
+    */
+   public byte[] transform(ClassLoader moduleClassLoader, String className, byte[] classBytes) throws Exception;
+}
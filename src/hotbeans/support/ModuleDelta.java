@@ -0,0 +1,297 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Utility class for creating and applying module deltas. A module delta describes the differences between a base
+ * revision of a module jar file and a new revision, and makes it possible to deploy a new revision of a module by
+ * transferring only the entries that have been added or changed. A module delta is a zip file containing:
+ * <ul>
+ * <li>The added and changed entries, with their complete contents.</li>
+ * <li>For changed nested jar files (such as the jar files in the <code>lib</code> directory), a nested module delta
+ * named after the nested jar file with the suffix {@link #NESTED_DELTA_SUFFIX}, as an alternative to the complete
+ * nested jar file.</li>
+ * <li>An entry named {@link #REMOVED_ENTRIES_ENTRY_NAME}, listing the names of the removed entries (one per line).</li>
+ * </ul>
+ * When a delta is applied, the entries of the base revision are streamed in their original order, so that the
+ * manifest remains the first entry of the new revision. Added entries are appended at the end.<br>
+ * <br>
+ * Note that only the base revision jar file is streamed. The complete delta is read into memory before it is applied,
+ * as is the complete content of each nested jar file that is changed by a nested delta. The memory needed to apply a
+ * delta is therefore bounded by the size of the delta plus the size of the largest changed nested jar file (and its
+ * nested delta), rather than by the size of the module. Creating a delta reads both the base and target jar files into
+ * memory.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public final class ModuleDelta {
+
+   public static final String REMOVED_ENTRIES_ENTRY_NAME = "META-INF/HotBeanModule-Delta-Removed.txt";
+
+   public static final String NESTED_DELTA_SUFFIX = ".delta";
+
+   private static final int BUFFER_SIZE = 8192;
+
+   /**
+    * Entry of a module delta or jar file.
+    */
+   private static final class Entry {
+
+      private final byte[] content;
+
+      private final long time;
+
+      public Entry(byte[] content, long time) {
+         this.content = content;
+         this.time = time;
+      }
+   }
+
+   private ModuleDelta() {
+   }
+
+   /**
+    * Applies a module delta to the specified base revision jar file, and writes the resulting jar file to the specified
+    * output stream. The output stream is not closed by this method.
+    * 
+    * @return the names of the top level entries that were added, changed or removed by the delta.
+    */
+   public static Set apply(final File baseFile, final InputStream delta, final OutputStream target)
+            throws IOException {
+      LinkedHashMap deltaEntries = readEntries(delta);
+      Set removedEntryNames = getRemovedEntryNames(deltaEntries);
+
+      InputStream base = new BufferedInputStream(new FileInputStream(baseFile), BUFFER_SIZE);
+      try {
+         ZipOutputStream out = new ZipOutputStream(target);
+         apply(new ZipInputStream(base), deltaEntries, removedEntryNames, out);
+         out.finish();
+      } finally {
+         base.close();
+      }
+
+      HashSet affectedEntryNames = new HashSet(removedEntryNames);
+      String name;
+      for (Iterator it = deltaEntries.keySet().iterator(); it.hasNext();) {
+         name = (String) it.next();
+         if (name.endsWith(NESTED_DELTA_SUFFIX)) affectedEntryNames.add(name.substring(0, name.length()
+                  - NESTED_DELTA_SUFFIX.length()));
+         affectedEntryNames.add(name);
+      }
+
+      return affectedEntryNames;
+   }
+
+   /**
+    * Creates a module delta describing the differences between the specified base and target revision jar files, and
+    * writes it to the specified output stream. Changed nested jar files are described by a nested delta, if it is
+    * smaller than the nested jar file. The output stream is not closed by this method.
+    */
+   public static void create(final File baseFile, final File targetFile, final OutputStream delta) throws IOException {
+      LinkedHashMap baseEntries;
+      LinkedHashMap targetEntries;
+
+      InputStream in = new FileInputStream(baseFile);
+      try {
+         baseEntries = readEntries(in);
+      } finally {
+         in.close();
+      }
+      in = new FileInputStream(targetFile);
+      try {
+         targetEntries = readEntries(in);
+      } finally {
+         in.close();
+      }
+
+      ZipOutputStream out = new ZipOutputStream(delta);
+      create(baseEntries, targetEntries, out);
+      out.finish();
+   }
+
+   /**
+    * Applies a delta to the entries of a base jar file.
+    */
+   private static void apply(final ZipInputStream base, final Map deltaEntries, final Set removedEntryNames,
+            final ZipOutputStream out) throws IOException {
+      HashSet writtenEntryNames = new HashSet();
+      ZipEntry baseEntry;
+      String name;
+      Entry deltaEntry;
+      Entry nestedDeltaEntry;
+
+      while ((baseEntry = base.getNextEntry()) != null) {
+         name = baseEntry.getName();
+         writtenEntryNames.add(name);
+         if (removedEntryNames.contains(name)) continue;
+
+         deltaEntry = (Entry) deltaEntries.get(name);
+         nestedDeltaEntry = (Entry) deltaEntries.get(name + NESTED_DELTA_SUFFIX);
+
+         if (deltaEntry != null) writeEntry(out, name, deltaEntry);
+         else if (nestedDeltaEntry != null) {
+            // Apply nested delta to nested jar file
+            ByteArrayOutputStream nested = new ByteArrayOutputStream();
+            ZipOutputStream nestedOut = new ZipOutputStream(nested);
+            LinkedHashMap nestedDeltaEntries = readEntries(new ByteArrayInputStream(nestedDeltaEntry.content));
+            apply(new ZipInputStream(new ByteArrayInputStream(readContent(base))), nestedDeltaEntries,
+                     getRemovedEntryNames(nestedDeltaEntries), nestedOut);
+            nestedOut.finish();
+
+            writeEntry(out, name, new Entry(nested.toByteArray(), nestedDeltaEntry.time));
+         } else writeEntry(out, name, new Entry(readContent(base), baseEntry.getTime()));
+      }
+
+      // Append added entries
+      Map.Entry mapEntry;
+      for (Iterator it = deltaEntries.entrySet().iterator(); it.hasNext();) {
+         mapEntry = (Map.Entry) it.next();
+         name = (String) mapEntry.getKey();
+         if (writtenEntryNames.contains(name)) continue;
+         if (name.endsWith(NESTED_DELTA_SUFFIX)
+                  && writtenEntryNames.contains(name.substring(0, name.length() - NESTED_DELTA_SUFFIX.length())))
+            continue;
+
+         writeEntry(out, name, (Entry) mapEntry.getValue());
+      }
+   }
+
+   /**
+    * Creates a delta from the entries of a base and a target jar file.
+    */
+   private static void create(final Map baseEntries, final Map targetEntries, final ZipOutputStream out)
+            throws IOException {
+      StringBuffer removedEntryNames = new StringBuffer();
+      String name;
+      for (Iterator it = baseEntries.keySet().iterator(); it.hasNext();) {
+         name = (String) it.next();
+         if (!targetEntries.containsKey(name)) removedEntryNames.append(name).append('\n');
+      }
+
+      Map.Entry mapEntry;
+      Entry baseEntry;
+      Entry targetEntry;
+      for (Iterator it = targetEntries.entrySet().iterator(); it.hasNext();) {
+         mapEntry = (Map.Entry) it.next();
+         name = (String) mapEntry.getKey();
+         targetEntry = (Entry) mapEntry.getValue();
+         baseEntry = (Entry) baseEntries.get(name);
+
+         if ((baseEntry != null) && Arrays.equals(baseEntry.content, targetEntry.content)) continue;
+
+         if ((baseEntry != null) && name.toLowerCase().endsWith(".jar")) {
+            // Create nested delta for nested jar file, and use it if it is smaller than the nested jar file
+            ByteArrayOutputStream nested = new ByteArrayOutputStream();
+            ZipOutputStream nestedOut = new ZipOutputStream(nested);
+            create(readEntries(new ByteArrayInputStream(baseEntry.content)), readEntries(new ByteArrayInputStream(
+                     targetEntry.content)), nestedOut);
+            nestedOut.finish();
+
+            if (nested.size() < targetEntry.content.length) {
+               writeEntry(out, name + NESTED_DELTA_SUFFIX, new Entry(nested.toByteArray(), targetEntry.time));
+               continue;
+            }
+         }
+
+         writeEntry(out, name, targetEntry);
+      }
+
+      if (removedEntryNames.length() > 0) {
+         writeEntry(out, REMOVED_ENTRIES_ENTRY_NAME, new Entry(removedEntryNames.toString().getBytes("UTF-8"), System
+                  .currentTimeMillis()));
+      }
+   }
+
+   /**
+    * Reads all entries of a zip file into memory.
+    * 
+    * @return a map of entry names (String) to Entry objects, in the order of the zip file.
+    */
+   private static LinkedHashMap readEntries(final InputStream in) throws IOException {
+      LinkedHashMap entries = new LinkedHashMap();
+      ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+      ZipEntry zipEntry;
+      while ((zipEntry = zipIn.getNextEntry()) != null) {
+         entries.put(zipEntry.getName(), new Entry(readContent(zipIn), zipEntry.getTime()));
+      }
+      return entries;
+   }
+
+   /**
+    * Removes the list of removed entries from the specified delta entries, and returns the names of the removed entries.
+    */
+   private static Set getRemovedEntryNames(final Map deltaEntries) throws IOException {
+      HashSet removedEntryNames = new HashSet();
+      Entry removedEntriesEntry = (Entry) deltaEntries.remove(REMOVED_ENTRIES_ENTRY_NAME);
+
+      if (removedEntriesEntry != null) {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(
+                  removedEntriesEntry.content), "UTF-8"));
+         String name;
+         while ((name = reader.readLine()) != null) {
+            if (name.trim().length() > 0) removedEntryNames.add(name.trim());
+         }
+      }
+
+      return removedEntryNames;
+   }
+
+   /**
+    * Reads the content of the current entry of a zip input stream.
+    */
+   private static byte[] readContent(final ZipInputStream zipIn) throws IOException {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = zipIn.read(buffer)) >= 0) {
+         content.write(buffer, 0, read);
+      }
+      return content.toByteArray();
+   }
+
+   /**
+    * Writes an entry to a zip output stream.
+    */
+   private static void writeEntry(final ZipOutputStream out, final String name, final Entry entry)
+            throws IOException {
+      ZipEntry zipEntry = new ZipEntry(name);
+      if (entry.time >= 0) zipEntry.setTime(entry.time);
+      out.putNextEntry(zipEntry);
+      out.write(entry.content);
+      out.closeEntry();
+   }
+}
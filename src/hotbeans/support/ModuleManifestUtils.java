@@ -19,6 +19,8 @@ import java.io.File;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
+import org.springframework.util.StringUtils;
+
 /**
  * Module manifest utilities.
  * 
@@ -32,6 +34,21 @@ public class ModuleManifestUtils {
 
    public static final String VERSION_ATTRIBUTE = "Implementation-Version";
 
+   /** @since 1.3 */
+   public static final String CLASS_TRANSFORMERS_ATTRIBUTE = "HotBeanModule-ClassTransformers";
+
+   /** @since 1.3 */
+   public static final String LAZY_INIT_ATTRIBUTE = "HotBeanModule-LazyInit";
+
+   /** @since 1.3 */
+   public static final String CONTEXT_TYPE_ATTRIBUTE = "HotBeanModule-ContextType";
+
+   /** @since 1.3 */
+   public static final String CONTEXT_TYPE_SPRING = "spring";
+
+   /** @since 1.3 */
+   public static final String CONTEXT_TYPE_PROPERTIES = "properties";
+
    /**
     * Reads the manifest from the specified jar file.
     */
@@ -69,4 +86,47 @@ public class ModuleManifestUtils {
                DESCRIPTION_ATTRIBUTE); }
       return null;
    }
+
+   /**
+    * Reads the context type ({@link #CONTEXT_TYPE_ATTRIBUTE}) from the manifest. Returns {@link #CONTEXT_TYPE_SPRING}
+    * if the attribute isn't set.
+    * 
+    * @since 1.3
+    */
+   public static String getContextType(final Manifest manifest) {
+      if ((manifest != null) && (manifest.getMainAttributes() != null)) {
+         String contextType = manifest.getMainAttributes().getValue(CONTEXT_TYPE_ATTRIBUTE);
+         if ((contextType != null) && (contextType.trim().length() > 0)) return contextType.trim();
+      }
+      return CONTEXT_TYPE_SPRING;
+   }
+
+   /**
+    * Reads the lazy initialization flag ({@link #LAZY_INIT_ATTRIBUTE}) from the manifest. Returns <code>null</code> if
+    * the attribute isn't set.
+    * 
+    * @since 1.3
+    */
+   public static Boolean getLazyInit(final Manifest manifest) {
+      if ((manifest != null) && (manifest.getMainAttributes() != null)) {
+         String lazyInit = manifest.getMainAttributes().getValue(LAZY_INIT_ATTRIBUTE);
+         if ((lazyInit != null) && (lazyInit.trim().length() > 0)) return Boolean.valueOf(lazyInit.trim());
+      }
+      return null;
+   }
+
+   /**
+    * Reads the class names of the {@link ModuleClassTransformer}s to use for the module ({@link #CLASS_TRANSFORMERS_ATTRIBUTE})
+    * from the manifest. The attribute value is a comma separated list of class names.
+    * 
+    * @since 1.3
+    */
+   public static String[] getClassTransformers(final Manifest manifest) {
+      String classTransformers = null;
+      if ((manifest != null) && (manifest.getMainAttributes() != null)) {
+         classTransformers = manifest.getMainAttributes().getValue(CLASS_TRANSFORMERS_ATTRIBUTE);
+      }
+      if (classTransformers == null) return new String[0];
+      else return StringUtils.tokenizeToStringArray(classTransformers, ",");
+   }
 }
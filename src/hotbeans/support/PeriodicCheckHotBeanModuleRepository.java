@@ -89,12 +89,18 @@ public abstract class PeriodicCheckHotBeanModuleRepository extends AbstractHotBe
    }
 
    /**
-    * Performs a repository check by invoking {@link AbstractHotBeanModuleRepository#checkForObsoleteModules()}. This
-    * method is invoked by the timer used by this class.
+    * Performs a repository check by invoking {@link AbstractHotBeanModuleRepository#checkForRegressions()},
+    * {@link AbstractHotBeanModuleRepository#checkForIdleModules()},
+    * {@link AbstractHotBeanModuleRepository#checkForObsoleteModules()} and
+    * {@link AbstractHotBeanModuleRepository#checkForClassLoaderLeaks()}. This method is invoked by the timer used by
+    * this class.
     */
    protected void performRepositoryCheck() {
       synchronized (super.getLock()) {
+         super.checkForRegressions();
+         super.checkForIdleModules();
          super.checkForObsoleteModules();
+         super.checkForClassLoaderLeaks();
       }
    }
 
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import hotbeans.BeanNotFoundException;
+import hotbeans.HotBeanContext;
+import hotbeans.HotBeansException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Lightweight HotBeanContext implementation, for modules that only need a few simple beans. The beans are defined in
+ * a properties file ({@link #DESCRIPTOR_FILE_NAME}) in the module jar file, using the following keys:
+ * <ul>
+ * <li><code>&lt;bean name&gt;.class</code> - the class of the bean (required). The class must have a public no-arg
+ * constructor.</li>
+ * <li><code>&lt;bean name&gt;.property.&lt;property name&gt;</code> - a property value. Values are converted to the
+ * type of the setter method (String, primitive types and their wrappers, and Class are supported).</li>
+ * <li><code>&lt;bean name&gt;.ref.&lt;property name&gt;</code> - a reference to another bean in the context.</li>
+ * <li><code>&lt;bean name&gt;.initMethod</code> - the name of a no-arg method to invoke after the properties have
+ * been set.</li>
+ * <li><code>&lt;bean name&gt;.destroyMethod</code> - the name of a no-arg method to invoke when the context is
+ * destroyed.</li>
+ * </ul>
+ * All beans are singletons, and are created when the context is initialized. Beans are destroyed in the reverse order
+ * of creation.<br>
+ * <br>
+ * The default {@link hotbeans.HotBeanContextFactory} of {@link AbstractHotBeanModuleRepository} creates a
+ * PropertiesHotBeanContext for modules with the manifest attribute {@link ModuleManifestUtils#CONTEXT_TYPE_ATTRIBUTE}
+ * set to {@link ModuleManifestUtils#CONTEXT_TYPE_PROPERTIES}.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class PropertiesHotBeanContext implements HotBeanContext {
+
+   public static final String DESCRIPTOR_FILE_NAME = "hotBeanContext.properties";
+
+   private static final String CLASS_SUFFIX = ".class";
+
+   private static final String PROPERTY_INFIX = ".property.";
+
+   private static final String REF_INFIX = ".ref.";
+
+   private static final String INIT_METHOD_SUFFIX = ".initMethod";
+
+   private static final String DESTROY_METHOD_SUFFIX = ".destroyMethod";
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private ClassLoader classLoader;
+
+   private Properties descriptor;
+
+   private final HashMap beanClassNames; // Bean name (String) -> class name (String)
+
+   private final HashMap beans; // Bean name (String) -> bean
+
+   private final ArrayList beanCreationOrder; // Bean name (String)
+
+   private volatile boolean initialized = false;
+
+   private ModuleCache moduleCache;
+
+   /**
+    * Creates a new PropertiesHotBeanContext.
+    */
+   public PropertiesHotBeanContext(ClassLoader classLoader) {
+      this.classLoader = classLoader;
+      this.beanClassNames = new HashMap();
+      this.beans = new HashMap();
+      this.beanCreationOrder = new ArrayList();
+   }
+
+   /**
+    * Gets the classloader used by this PropertiesHotBeanContext.
+    */
+   public ClassLoader getClassLoader() {
+      return this.classLoader;
+   }
+
+   /**
+    * Sets the {@link ModuleCache} to make available to the beans of this context, as a bean with the name
+    * {@link ModuleCache#BEAN_NAME} (which may be referenced by other beans). This property must be set before the
+    * context is initialized.
+    * 
+    * @since 1.3
+    */
+   public synchronized void setModuleCache(final ModuleCache moduleCache) {
+      this.moduleCache = moduleCache;
+   }
+
+   /**
+    * Initializes this context, by reading the descriptor and creating all the beans.
+    */
+   public synchronized void init() throws Exception {
+      if (this.initialized) return;
+
+      InputStream descriptorStream = this.classLoader.getResourceAsStream(DESCRIPTOR_FILE_NAME);
+      if (descriptorStream == null) throw new IOException(DESCRIPTOR_FILE_NAME + " not found!");
+      this.descriptor = new Properties();
+      try {
+         this.descriptor.load(descriptorStream);
+      } finally {
+         descriptorStream.close();
+      }
+
+      if (this.moduleCache != null) {
+         this.beanClassNames.put(ModuleCache.BEAN_NAME, ModuleCache.class.getName());
+         this.beans.put(ModuleCache.BEAN_NAME, this.moduleCache);
+      }
+
+      String key;
+      for (Iterator it = this.descriptor.keySet().iterator(); it.hasNext();) {
+         key = (String) it.next();
+         if (key.endsWith(CLASS_SUFFIX) && (key.indexOf('.') == (key.length() - CLASS_SUFFIX.length()))) {
+            this.beanClassNames.put(key.substring(0, key.length() - CLASS_SUFFIX.length()), this.descriptor
+                     .getProperty(key).trim());
+         }
+      }
+
+      try {
+         for (Iterator it = new TreeSet(this.beanClassNames.keySet()).iterator(); it.hasNext();) {
+            this.getOrCreateBean((String) it.next(), new HashSet());
+         }
+      } catch (Exception e) {
+         this.destroyBeans();
+         throw e;
+      }
+
+      this.initialized = true;
+
+      if (logger.isDebugEnabled())
+         logger.debug("Initialized PropertiesHotBeanContext with " + this.beans.size() + " beans.");
+   }
+
+   /**
+    * Gets a bean, creating it if necessary.
+    */
+   private Object getOrCreateBean(final String beanName, final HashSet beansInCreation) throws Exception {
+      Object bean = this.beans.get(beanName);
+      if (bean != null) return bean;
+
+      String className = (String) this.beanClassNames.get(beanName);
+      if (className == null) throw new BeanNotFoundException(null, beanName, "Bean '" + beanName + "' not defined!");
+      if (!beansInCreation.add(beanName))
+         throw new HotBeansException("Circular reference detected while creating bean '" + beanName + "'!");
+
+      Class beanClass = Class.forName(className, true, this.classLoader);
+      bean = beanClass.newInstance();
+
+      // Set properties and references
+      String key;
+      String propertyName;
+      Object value;
+      String beanPrefix = beanName + ".";
+      for (Iterator it = new TreeSet(this.descriptor.keySet()).iterator(); it.hasNext();) {
+         key = (String) it.next();
+         if (!key.startsWith(beanPrefix)) continue;
+
+         if (key.startsWith(beanName + PROPERTY_INFIX)) {
+            propertyName = key.substring(beanName.length() + PROPERTY_INFIX.length());
+            value = this.descriptor.getProperty(key);
+         } else if (key.startsWith(beanName + REF_INFIX)) {
+            propertyName = key.substring(beanName.length() + REF_INFIX.length());
+            value = this.getOrCreateBean(this.descriptor.getProperty(key).trim(), beansInCreation);
+         } else continue;
+
+         this.setProperty(beanName, bean, propertyName, value);
+      }
+
+      // Invoke init method
+      String initMethod = this.descriptor.getProperty(beanName + INIT_METHOD_SUFFIX);
+      if ((initMethod != null) && (initMethod.trim().length() > 0)) this.invokeMethod(bean, initMethod.trim());
+
+      beansInCreation.remove(beanName);
+      this.beans.put(beanName, bean);
+      this.beanCreationOrder.add(beanName);
+
+      return bean;
+   }
+
+   /**
+    * Sets a property on a bean, using the setter method for the property.
+    */
+   private void setProperty(final String beanName, final Object bean, final String propertyName, final Object value)
+            throws Exception {
+      String setterName = "set" + Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
+      Method[] methods = bean.getClass().getMethods();
+
+      for (int i = 0; i < methods.length; i++) {
+         if (methods[i].getName().equals(setterName) && (methods[i].getParameterTypes().length == 1)) {
+            Class type = methods[i].getParameterTypes()[0];
+            Object convertedValue = (value instanceof String) ? this.convertValue((String) value, type) : value;
+            if ((convertedValue != null) && (type.isPrimitive() || type.isInstance(convertedValue))) {
+               methods[i].invoke(bean, new Object[] { convertedValue });
+               return;
+            }
+         }
+      }
+
+      throw new HotBeansException("No suitable setter found for property '" + propertyName + "' of bean '" + beanName
+               + "' (" + bean.getClass().getName() + ")!");
+   }
+
+   /**
+    * Converts a string value to the specified type. Returns <code>null</code> if the type isn't supported.
+    */
+   private Object convertValue(final String value, final Class type) throws ClassNotFoundException {
+      String trimmedValue = value.trim();
+
+      if (type == String.class) return value;
+      else if ((type == Integer.TYPE) || (type == Integer.class)) return Integer.valueOf(trimmedValue);
+      else if ((type == Long.TYPE) || (type == Long.class)) return Long.valueOf(trimmedValue);
+      else if ((type == Boolean.TYPE) || (type == Boolean.class)) return Boolean.valueOf(trimmedValue);
+      else if ((type == Double.TYPE) || (type == Double.class)) return Double.valueOf(trimmedValue);
+      else if ((type == Float.TYPE) || (type == Float.class)) return Float.valueOf(trimmedValue);
+      else if ((type == Short.TYPE) || (type == Short.class)) return Short.valueOf(trimmedValue);
+      else if ((type == Byte.TYPE) || (type == Byte.class)) return Byte.valueOf(trimmedValue);
+      else if (((type == Character.TYPE) || (type == Character.class)) && (value.length() == 1)) return new Character(
+               value.charAt(0));
+      else if (type == Class.class) return Class.forName(trimmedValue, true, this.classLoader);
+      else if (type == Object.class) return value;
+      else return null;
+   }
+
+   /**
+    * Invokes a no-arg method on a bean.
+    */
+   private void invokeMethod(final Object bean, final String methodName) throws Exception {
+      Method method = bean.getClass().getMethod(methodName, new Class[0]);
+      try {
+         method.invoke(bean, new Object[0]);
+      } catch (InvocationTargetException ite) {
+         Throwable targetException = ite.getTargetException();
+         if (targetException instanceof Exception) throw (Exception) targetException;
+         else throw ite;
+      }
+   }
+
+   /**
+    * Destroys the created beans, in the reverse order of creation.
+    */
+   private void destroyBeans() {
+      String beanName;
+      Object bean;
+      String destroyMethod;
+
+      for (int i = this.beanCreationOrder.size() - 1; i >= 0; i--) {
+         beanName = (String) this.beanCreationOrder.get(i);
+         bean = this.beans.get(beanName);
+         destroyMethod = this.descriptor.getProperty(beanName + DESTROY_METHOD_SUFFIX);
+
+         if ((bean != null) && (destroyMethod != null) && (destroyMethod.trim().length() > 0)) {
+            try {
+               this.invokeMethod(bean, destroyMethod.trim());
+            } catch (Exception e) {
+               logger.warn("Error invoking destroy method of bean '" + beanName + "' - " + e + "!");
+            }
+         }
+      }
+
+      this.beans.clear();
+      this.beanCreationOrder.clear();
+   }
+
+   /**
+    * Destroys this context.
+    */
+   public synchronized void destroy() {
+      if (this.initialized) {
+         this.destroyBeans();
+         IntrospectionCacheCleaner.clearClassLoader(this.classLoader);
+         LogFactory.release(this.classLoader);
+         this.initialized = false;
+      }
+
+      this.beanClassNames.clear();
+      this.descriptor = null;
+      this.moduleCache = null;
+      this.classLoader = null;
+   }
+
+   /**
+    * Checks if this context contains the bean with the specified name.
+    */
+   public synchronized boolean hasHotBean(final String beanName) {
+      return this.beanClassNames.containsKey(beanName);
+   }
+
+   /**
+    * Gets the bean with the specified name.
+    */
+   public synchronized Object getHotBean(final String beanName) {
+      Object bean = this.beans.get(beanName);
+      if (bean == null) throw new BeanNotFoundException(null, beanName, "Bean '" + beanName + "' not found!");
+      return bean;
+   }
+
+   /**
+    * Gets the names of the beans in this context, in the order of creation.
+    */
+   public synchronized String[] getHotBeanNames() {
+      return (String[]) this.beanCreationOrder.toArray(new String[this.beanCreationOrder.size()]);
+   }
+
+   /**
+    * Gets the class name of the bean with the specified name from this context.
+    */
+   public synchronized String getHotBeanClassName(final String beanName) {
+      return (String) this.beanClassNames.get(beanName);
+   }
+
+   /**
+    * Gets the class of the bean with the specified name from this context.
+    */
+   public synchronized Class getHotBeanClass(final String beanName) {
+      Object bean = this.beans.get(beanName);
+      return (bean != null) ? bean.getClass() : null;
+   }
+}
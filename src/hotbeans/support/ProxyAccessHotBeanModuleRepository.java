@@ -16,9 +16,12 @@
 package hotbeans.support;
 
 import hotbeans.BeanNotFoundException;
+import hotbeans.HotBeanModule;
 import hotbeans.HotBeanModuleRepository;
 import hotbeans.ModuleNotFoundException;
 
+import java.lang.reflect.Method;
+
 /**
  * Base interface for HotBeanModuleRepository implementation that use {@link HotBeanProxyFactory} to create bean
  * proxies.
@@ -36,8 +39,64 @@ public interface ProxyAccessHotBeanModuleRepository extends HotBeanModuleReposit
     */
    public HotBeanProxyFactory getHotBeanProxyFactory(String moduleName, String beanName, Class[] interfaceClasses);
 
+   /**
+    * Gets a HotBeanProxyFactory object used for creating proxies to a hot bean with the specified name in the newest
+    * active version of the specified module that is in the specified version range (see {@link VersionRange}).
+    * 
+    * @since 1.3
+    */
+   public HotBeanProxyFactory getHotBeanProxyFactory(String moduleName, String versionRange, String beanName,
+            Class[] interfaceClasses);
+
    /**
     * Called to validate a HotBeanProxyFactory and module and bean references.
     */
    public void validateHotBeanProxyFactory(HotBeanProxyFactory hotBeanProxyFactory);
+
+   /**
+    * Called by a HotBeanProxyFactory before a method is invoked on a bean in the specified module.
+    * 
+    * @since 1.3
+    */
+   public void beforeHotBeanInvocation(HotBeanProxyFactory hotBeanProxyFactory, HotBeanModule hotBeanModule,
+            Method method, Object[] arguments);
+
+   /**
+    * Called by a HotBeanProxyFactory after a method has been invoked on a bean in the specified module.
+    * 
+    * @param invocationTime the duration (in milliseconds) of the invocation.
+    * @param error the exception thrown by the invocation, or <code>null</code> if the invocation was successful.
+    * @since 1.3
+    */
+   public void afterHotBeanInvocation(HotBeanProxyFactory hotBeanProxyFactory, HotBeanModule hotBeanModule,
+            Method method, long invocationTime, Throwable error);
+
+   /**
+    * Called by a HotBeanProxyFactory before a method is invoked on a bean in the current module, if the invocation is to
+    * be mirrored to the shadow module of a shadow deployment. Implementations copy the arguments, so that the mirrored
+    * invocation receives the arguments as passed by the caller, even if the invocation of the current module modifies
+    * them.
+    * 
+    * @return the copy of the arguments, to be passed to {@link #mirrorHotBeanInvocation}, or <code>null</code> if the
+    *         invocation isn't to be mirrored.
+    * @since 1.3
+    */
+   public Object copyShadowInvocationArguments(HotBeanProxyFactory hotBeanProxyFactory, HotBeanModule shadowModule,
+            Method method, Object[] arguments);
+
+   /**
+    * Called by a HotBeanProxyFactory after a method has been invoked on a bean in the current module, to mirror the
+    * invocation to the corresponding bean in the shadow module of a shadow deployment. Implementations must not block
+    * the caller, and must not let the mirrored invocation affect the result of the invocation.
+    * 
+    * @param argumentsCopy the copy of the arguments, returned by
+    *           {@link #copyShadowInvocationArguments(HotBeanProxyFactory, HotBeanModule, Method, Object[])}.
+    * @param result the value returned by the invocation of the current module.
+    * @param error the exception thrown by the invocation of the current module, or <code>null</code> if the invocation
+    *           was successful.
+    * @param invocationTime the duration (in milliseconds) of the invocation of the current module.
+    * @since 1.3
+    */
+   public void mirrorHotBeanInvocation(HotBeanProxyFactory hotBeanProxyFactory, HotBeanModule shadowModule,
+            Object shadowBean, Method method, Object argumentsCopy, Object result, Throwable error, long invocationTime);
 }
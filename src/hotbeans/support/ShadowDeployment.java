@@ -0,0 +1,244 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import hotbeans.HotBeanModule;
+
+import java.lang.reflect.Method;
+import java.util.LinkedList;
+
+import org.springframework.aop.support.AopUtils;
+
+/**
+ * A shadow deployment of a module, in which a loaded, but not yet current, revision of the module (the shadow revision)
+ * receives a mirrored copy of a sampled share of the invocations made through hot bean proxies. Mirrored invocations
+ * are performed asynchronously by a {@link ShadowInvocationExecutor}, after the invocation of the current (live)
+ * revision has completed, and the callers only ever see the results of the live revision. The share of mirrored
+ * invocations is controlled by a sample rate (in percent), which may be adjusted at runtime through
+ * {@link AbstractHotBeanModuleRepository#setShadowSampleRate(String, int)}.<br>
+ * <br>
+ * A shadow deployment also serves as a report of the differences between the live and the shadow revision. Invocation
+ * statistics are kept for the sampled invocations of both revisions, and the results of the invocations are compared.
+ * Return values are compared using <code>equals</code>, or, for values of classes with the same name loaded by
+ * different class loaders, using their string representations. Exceptions are compared by class name. The most recent
+ * differences are kept in the report.<br>
+ * <br>
+ * Note that mirrored invocations are real invocations of the beans of the shadow revision, with copies (made through
+ * serialization before the live invocation is made) of the arguments of the live invocations, so shadow deployments
+ * are only suitable for beans whose methods don't have side effects that must not be repeated. Invocations with
+ * arguments that aren't serializable aren't mirrored.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class ShadowDeployment {
+
+   public static final long SHADOW_REVISION = -1;
+
+   private static final int MAX_RECORDED_DIFFERENCES = 20;
+
+   private static final int MAX_DESCRIPTION_LENGTH = 100;
+
+   private final String moduleName;
+
+   private final HotBeanModule shadowModule;
+
+   private final long startTime;
+
+   private final InvocationStatistics liveStatistics;
+
+   private final InvocationStatistics shadowStatistics;
+
+   private final LinkedList differences; // String
+
+   private int sampleRate;
+
+   private long matchCount = 0;
+
+   private long differenceCount = 0;
+
+   private long droppedCount = 0;
+
+   /**
+    * Creates a new ShadowDeployment.
+    * 
+    * @param sampleRate the share (in percent) of the invocations that are mirrored to the shadow revision.
+    */
+   public ShadowDeployment(HotBeanModule shadowModule, int sampleRate) {
+      this.moduleName = shadowModule.getName();
+      this.shadowModule = shadowModule;
+      this.startTime = System.currentTimeMillis();
+      this.liveStatistics = new InvocationStatistics();
+      this.shadowStatistics = new InvocationStatistics(SHADOW_REVISION);
+      this.differences = new LinkedList();
+      this.setSampleRate(sampleRate);
+   }
+
+   /**
+    * Gets the module name.
+    */
+   public String getModuleName() {
+      return moduleName;
+   }
+
+   /**
+    * Gets the shadow revision.
+    */
+   public HotBeanModule getShadowModule() {
+      return shadowModule;
+   }
+
+   /**
+    * Gets the time at which the shadow deployment was started.
+    */
+   public long getStartTime() {
+      return startTime;
+   }
+
+   /**
+    * Gets the share (in percent) of the invocations that are mirrored to the shadow revision.
+    */
+   public int getSampleRate() {
+      return sampleRate;
+   }
+
+   /**
+    * Sets the share (in percent) of the invocations that are mirrored to the shadow revision.
+    */
+   void setSampleRate(int sampleRate) {
+      this.sampleRate = Math.max(0, Math.min(100, sampleRate));
+   }
+
+   /**
+    * Gets the invocation statistics of the sampled invocations of the live revision.
+    */
+   public InvocationStatistics getLiveStatistics() {
+      return liveStatistics;
+   }
+
+   /**
+    * Gets the invocation statistics of the mirrored invocations of the shadow revision.
+    */
+   public InvocationStatistics getShadowStatistics() {
+      return shadowStatistics;
+   }
+
+   /**
+    * Gets the number of mirrored invocations with the same result as the live invocation.
+    */
+   public synchronized long getMatchCount() {
+      return matchCount;
+   }
+
+   /**
+    * Gets the number of mirrored invocations with a different result than the live invocation.
+    */
+   public synchronized long getDifferenceCount() {
+      return differenceCount;
+   }
+
+   /**
+    * Gets the number of sampled invocations that weren't mirrored, because the {@link ShadowInvocationExecutor} was
+    * saturated or because the arguments couldn't be copied.
+    */
+   public synchronized long getDroppedCount() {
+      return droppedCount;
+   }
+
+   /**
+    * Gets descriptions of the most recent differences between the results of the live and the shadow revision.
+    */
+   public synchronized String[] getDifferences() {
+      return (String[]) this.differences.toArray(new String[0]);
+   }
+
+   /**
+    * Records a sampled invocation that wasn't mirrored because the {@link ShadowInvocationExecutor} was saturated or
+    * because the arguments couldn't be copied.
+    */
+   synchronized void recordDroppedInvocation() {
+      this.droppedCount++;
+   }
+
+   /**
+    * Performs a mirrored invocation on a bean in the shadow revision, and compares the result with the result of the
+    * live invocation. This method is invoked by a worker thread of the {@link ShadowInvocationExecutor}.
+    */
+   void invokeShadow(final Object shadowBean, final Method method, final Object[] arguments, final Object liveResult,
+            final Throwable liveError, final long liveInvocationTime) {
+      if (!this.shadowModule.isActive()) return; // Shadow deployment stopped
+
+      Object shadowResult = null;
+      Throwable shadowError = null;
+      long beginInvocation = System.currentTimeMillis();
+      try {
+         this.shadowModule.incrementUsageCount();
+         shadowResult = AopUtils.invokeJoinpointUsingReflection(shadowBean, method, arguments);
+      } catch (Throwable t) {
+         shadowError = t;
+      } finally {
+         this.shadowModule.decrementUsageCount();
+      }
+      long shadowInvocationTime = System.currentTimeMillis() - beginInvocation;
+
+      this.liveStatistics.record(liveInvocationTime, liveError != null);
+      this.shadowStatistics.record(shadowInvocationTime, shadowError != null);
+
+      boolean different;
+      if ((liveError != null) || (shadowError != null)) different = (liveError == null) || (shadowError == null)
+               || !liveError.getClass().getName().equals(shadowError.getClass().getName());
+      else different = !resultsEqual(liveResult, shadowResult);
+
+      synchronized (this) {
+         if (different) {
+            this.differenceCount++;
+            this.differences.addLast(method.getDeclaringClass().getName() + "." + method.getName() + "() - live "
+                     + describe(liveResult, liveError) + ", shadow " + describe(shadowResult, shadowError));
+            if (this.differences.size() > MAX_RECORDED_DIFFERENCES) this.differences.removeFirst();
+         } else this.matchCount++;
+      }
+   }
+
+   /**
+    * Checks if the results of a live and a mirrored invocation are equal.
+    */
+   private static boolean resultsEqual(final Object liveResult, final Object shadowResult) {
+      if ((liveResult == null) || (shadowResult == null)) return liveResult == shadowResult;
+      else if ((liveResult.getClass() != shadowResult.getClass())
+               && liveResult.getClass().getName().equals(shadowResult.getClass().getName()))
+         return liveResult.toString().equals(shadowResult.toString()); // Classes loaded by different class loaders
+      else return liveResult.equals(shadowResult);
+   }
+
+   /**
+    * Gets a short description of the result of an invocation.
+    */
+   private static String describe(final Object result, final Throwable error) {
+      String description = (error != null) ? ("threw " + error) : ("returned " + result);
+      if (description.length() > MAX_DESCRIPTION_LENGTH)
+         description = description.substring(0, MAX_DESCRIPTION_LENGTH) + "...";
+      return description;
+   }
+
+   /**
+    * Gets a string representation (summary report) of this shadow deployment.
+    */
+   public String toString() {
+      return "ShadowDeployment(" + moduleName + ", sample rate: " + sampleRate + "%, matches: "
+               + this.getMatchCount() + ", differences: " + this.getDifferenceCount() + ", dropped: "
+               + this.getDroppedCount() + ", live: " + liveStatistics + ", shadow: " + shadowStatistics + ")";
+   }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import hotbeans.util.WorkerPool;
+
+/**
+ * Executor for mirrored invocations of shadow deployments (see {@link ShadowDeployment}). Invocations are queued and
+ * performed by a bounded number of worker threads, which are started on demand and stopped when idle. The queue is
+ * bounded as well, and invocations that don't fit in the queue are rejected rather than blocking the caller, so that
+ * mirroring never slows down the invocations of the current revision.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class ShadowInvocationExecutor extends WorkerPool {
+
+   public static final int DEFAULT_MAX_THREADS = 2;
+
+   public static final int DEFAULT_MAX_QUEUE_SIZE = 1000;
+
+   /**
+    * Creates a new ShadowInvocationExecutor.
+    */
+   public ShadowInvocationExecutor() {
+      super("ShadowInvocationExecutor", DEFAULT_MAX_THREADS, DEFAULT_MAX_QUEUE_SIZE);
+   }
+}
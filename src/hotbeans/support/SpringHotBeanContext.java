@@ -17,25 +17,97 @@ package hotbeans.support;
 
 import hotbeans.HotBeanContext;
 
-import java.beans.Introspector;
+import java.io.IOException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.ResourceEntityResolver;
 import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.Resource;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
 /**
- * HotBeanContext implementation that uses a Spring application context for definition of beans.
+ * HotBeanContext implementation that uses a Spring application context for definition of beans.<br>
+ * <br>
+ * If lazy initialization is enabled (see {@link #setLazyInit(boolean)}), all singleton bean definitions are marked as
+ * lazy when the context is initialized. The bean definitions are still parsed and validated (including loading of the
+ * bean classes) during initialization, but the singletons are created only when first accessed.<br>
+ * <br>
+ * If a {@link BeanDefinitionCache} is set (see {@link #setBeanDefinitionCache(BeanDefinitionCache, String)}), parsed
+ * bean definition documents are fetched from (and stored in) the cache, and validation is skipped for module jar files
+ * that are known to have valid bean definitions.
  * 
  * @author Tobias Lfstrand
  */
 public class SpringHotBeanContext extends ClassPathXmlApplicationContext implements HotBeanContext {
 
+   /**
+    * XmlBeanDefinitionReader subclass that uses a {@link BeanDefinitionCache}.
+    */
+   private static final class CachingXmlBeanDefinitionReader extends XmlBeanDefinitionReader {
+
+      private final BeanDefinitionCache beanDefinitionCache;
+
+      private final String contentHash;
+
+      public CachingXmlBeanDefinitionReader(final BeanDefinitionRegistry beanFactory,
+               final BeanDefinitionCache beanDefinitionCache, final String contentHash) {
+         super(beanFactory);
+         this.beanDefinitionCache = beanDefinitionCache;
+         this.contentHash = contentHash;
+      }
+
+      protected int doLoadBeanDefinitions(final InputSource inputSource, final Resource resource)
+               throws BeansException {
+         Document document = this.beanDefinitionCache.getDocument(this.contentHash, resource.getDescription());
+
+         if (document == null) {
+            try {
+               DocumentBuilder documentBuilder = super.createDocumentBuilder(super.createDocumentBuilderFactory());
+               document = documentBuilder.parse(inputSource);
+            } catch (ParserConfigurationException pce) {
+               throw new BeanDefinitionStoreException("Parser configuration exception parsing XML from "
+                        + resource.getDescription(), pce);
+            } catch (SAXException se) {
+               throw new BeanDefinitionStoreException("XML document from " + resource.getDescription()
+                        + " is invalid", se);
+            } catch (IOException ioe) {
+               throw new BeanDefinitionStoreException("IOException parsing XML document from "
+                        + resource.getDescription(), ioe);
+            }
+            this.beanDefinitionCache.putDocument(this.contentHash, resource.getDescription(), document);
+         }
+
+         synchronized (document) { // DOM implementations aren't necessarily thread safe, even for reading
+            return super.registerBeanDefinitions(document, resource);
+         }
+      }
+   }
+
    private ClassLoader classLoader;
 
    private volatile boolean initialized = false;
 
+   private boolean lazyInit = false;
+
+   private BeanDefinitionCache beanDefinitionCache;
+
+   private String contentHash;
+
+   private ModuleCache moduleCache;
+
    /**
     * Creates a new SpringHotBeanContext.
     */
@@ -44,6 +116,26 @@ public class SpringHotBeanContext extends ClassPathXmlApplicationContext impleme
       this.classLoader = classLoader;
    }
 
+   /**
+    * Overridden to use a caching XmlBeanDefinitionReader, if a {@link BeanDefinitionCache} is set.
+    */
+   protected void loadBeanDefinitions(final DefaultListableBeanFactory beanFactory) throws IOException {
+      if (this.beanDefinitionCache == null) {
+         super.loadBeanDefinitions(beanFactory);
+      } else {
+         XmlBeanDefinitionReader beanDefinitionReader = new CachingXmlBeanDefinitionReader(beanFactory,
+                  this.beanDefinitionCache, this.contentHash);
+         beanDefinitionReader.setResourceLoader(this);
+         beanDefinitionReader.setEntityResolver(new ResourceEntityResolver(this));
+         this.initBeanDefinitionReader(beanDefinitionReader);
+
+         // Skip validation of bean definitions known to be valid
+         if (this.beanDefinitionCache.isValidated(this.contentHash)) beanDefinitionReader.setValidating(false);
+
+         this.loadBeanDefinitions(beanDefinitionReader);
+      }
+   }
+
    /**
     * Overriden to set the class loader on the XmlBeanDefinitionReader.
     */
@@ -68,6 +160,85 @@ public class SpringHotBeanContext extends ClassPathXmlApplicationContext impleme
       this.classLoader = classLoader;
    }
 
+   /**
+    * Checks if lazy initialization of singleton beans is enabled.
+    * 
+    * @since 1.3
+    */
+   public boolean isLazyInit() {
+      return lazyInit;
+   }
+
+   /**
+    * Sets if lazy initialization of singleton beans is enabled. This property must be set before the context is
+    * initialized.
+    * 
+    * @since 1.3
+    */
+   public void setLazyInit(boolean lazyInit) {
+      this.lazyInit = lazyInit;
+   }
+
+   /**
+    * Sets the {@link BeanDefinitionCache} to use, along with the content hash of the module jar file. This property
+    * must be set before the context is initialized.
+    * 
+    * @since 1.3
+    */
+   public void setBeanDefinitionCache(final BeanDefinitionCache beanDefinitionCache, final String contentHash) {
+      this.beanDefinitionCache = beanDefinitionCache;
+      this.contentHash = contentHash;
+   }
+
+   /**
+    * Sets the {@link ModuleCache} to make available to the beans of this context, as a bean with the name
+    * {@link ModuleCache#BEAN_NAME}. This property must be set before the context is initialized.
+    * 
+    * @since 1.3
+    */
+   public void setModuleCache(final ModuleCache moduleCache) {
+      this.moduleCache = moduleCache;
+   }
+
+   /**
+    * Overridden to mark all singleton bean definitions as lazy, if lazy initialization is enabled, and to register the
+    * {@link ModuleCache}, if set.
+    */
+   protected void postProcessBeanFactory(final ConfigurableListableBeanFactory beanFactory) throws BeansException {
+      super.postProcessBeanFactory(beanFactory);
+
+      if (this.moduleCache != null) beanFactory.registerSingleton(ModuleCache.BEAN_NAME, this.moduleCache);
+
+      if (this.lazyInit) {
+         String[] beanNames = beanFactory.getBeanDefinitionNames();
+         BeanDefinition beanDefinition;
+         for (int i = 0; i < beanNames.length; i++) {
+            beanDefinition = beanFactory.getBeanDefinition(beanNames[i]);
+            if ((beanDefinition instanceof AbstractBeanDefinition) && beanDefinition.isSingleton())
+               ((AbstractBeanDefinition) beanDefinition).setLazyInit(true);
+         }
+      }
+   }
+
+   /**
+    * Gets the number of singleton beans defined in this context that haven't been instantiated yet.
+    * 
+    * @since 1.3
+    */
+   public int getUninstantiatedBeanCount() {
+      if (!this.initialized) return 0;
+
+      ConfigurableListableBeanFactory beanFactory = super.getBeanFactory();
+      String[] beanNames = beanFactory.getBeanDefinitionNames();
+      int uninstantiatedBeanCount = 0;
+      for (int i = 0; i < beanNames.length; i++) {
+         if (beanFactory.getBeanDefinition(beanNames[i]).isSingleton() && !beanFactory.containsSingleton(beanNames[i]))
+            uninstantiatedBeanCount++;
+      }
+
+      return uninstantiatedBeanCount;
+   }
+
    /**
     * Initializes this context.
     */
@@ -87,7 +258,7 @@ public class SpringHotBeanContext extends ClassPathXmlApplicationContext impleme
 
          LogFactory.release(this.classLoader);
 
-         Introspector.flushCaches();
+         IntrospectionCacheCleaner.clearClassLoader(this.classLoader);
 
          this.initialized = false;
       }
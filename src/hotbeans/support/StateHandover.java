@@ -0,0 +1,253 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import hotbeans.HotBeanContext;
+import hotbeans.StatefulHotBean;
+import hotbeans.util.SerializationUtils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Class handling the transfer of state from the {@link StatefulHotBean}s of the outgoing revision of a module to the
+ * corresponding beans in the incoming revision. The transfer is limited by a size budget (the total size of the
+ * serialized state) and a time budget. Beans are handled in bean name order, and beans that would exceed the budgets
+ * are skipped.<br>
+ * <br>
+ * The state is serialized in the outgoing revision and deserialized using the class loader of this class, which
+ * ensures that state containing types of the outgoing revision is rejected.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class StateHandover {
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private final String moduleName;
+
+   private final long maxSize;
+
+   private final long timeout;
+
+   /**
+    * Result of a state handover.
+    */
+   public static final class Result implements Serializable {
+
+      static final long serialVersionUID = 5046313283425208874L;
+
+      private final String moduleName;
+
+      private final long fromRevision;
+
+      private final long toRevision;
+
+      private final int transferredBeanCount;
+
+      private final int skippedBeanCount;
+
+      private final int failedBeanCount;
+
+      private final long transferredBytes;
+
+      private final long transferTime;
+
+      private final boolean budgetExceeded;
+
+      Result(String moduleName, long fromRevision, long toRevision, int transferredBeanCount, int skippedBeanCount,
+               int failedBeanCount, long transferredBytes, long transferTime, boolean budgetExceeded) {
+         this.moduleName = moduleName;
+         this.fromRevision = fromRevision;
+         this.toRevision = toRevision;
+         this.transferredBeanCount = transferredBeanCount;
+         this.skippedBeanCount = skippedBeanCount;
+         this.failedBeanCount = failedBeanCount;
+         this.transferredBytes = transferredBytes;
+         this.transferTime = transferTime;
+         this.budgetExceeded = budgetExceeded;
+      }
+
+      /**
+       * Gets the module name.
+       */
+      public String getModuleName() {
+         return moduleName;
+      }
+
+      /**
+       * Gets the revision from which the state was exported.
+       */
+      public long getFromRevision() {
+         return fromRevision;
+      }
+
+      /**
+       * Gets the revision into which the state was imported.
+       */
+      public long getToRevision() {
+         return toRevision;
+      }
+
+      /**
+       * Gets the number of beans for which the state was transferred.
+       */
+      public int getTransferredBeanCount() {
+         return transferredBeanCount;
+      }
+
+      /**
+       * Gets the number of beans that were skipped because the size or time budget was exceeded.
+       */
+      public int getSkippedBeanCount() {
+         return skippedBeanCount;
+      }
+
+      /**
+       * Gets the number of beans for which the export or import of the state failed.
+       */
+      public int getFailedBeanCount() {
+         return failedBeanCount;
+      }
+
+      /**
+       * Gets the total size (in bytes) of the transferred serialized state.
+       */
+      public long getTransferredBytes() {
+         return transferredBytes;
+      }
+
+      /**
+       * Gets the total time (in milliseconds) of the transfer.
+       */
+      public long getTransferTime() {
+         return transferTime;
+      }
+
+      /**
+       * Checks if the size or time budget was exceeded.
+       */
+      public boolean isBudgetExceeded() {
+         return budgetExceeded;
+      }
+
+      /**
+       * Gets a string representation of this result.
+       */
+      public String toString() {
+         return "StateHandover.Result(" + moduleName + " rev." + fromRevision + " -> rev." + toRevision + ": "
+                  + transferredBeanCount + " beans, " + transferredBytes + " bytes, " + transferTime + " ms, "
+                  + skippedBeanCount + " skipped, " + failedBeanCount + " failed)";
+      }
+   }
+
+   /**
+    * Creates a new StateHandover.
+    * 
+    * @param maxSize the maximum total size (in bytes) of the serialized state.
+    * @param timeout the maximum time (in milliseconds) to spend on the transfer.
+    */
+   public StateHandover(String moduleName, long maxSize, long timeout) {
+      this.moduleName = moduleName;
+      this.maxSize = maxSize;
+      this.timeout = timeout;
+   }
+
+   /**
+    * Transfers the state of the stateful beans in the outgoing context to the beans with the same names in the
+    * incoming context.
+    */
+   public Result transfer(final long fromRevision, final HotBeanContext outgoingContext, final long toRevision,
+            final HotBeanContext incomingContext) {
+      long beginTransfer = System.currentTimeMillis();
+      int transferredBeanCount = 0;
+      int skippedBeanCount = 0;
+      int failedBeanCount = 0;
+      long transferredBytes = 0;
+      boolean budgetExceeded = false;
+
+      String[] beanNames = getInstantiatedBeanNames(outgoingContext);
+      Arrays.sort(beanNames);
+
+      Object outgoingBean;
+      Object incomingBean;
+      byte[] state;
+      for (int i = 0; i < beanNames.length; i++) {
+         try {
+            outgoingBean = outgoingContext.getHotBean(beanNames[i]);
+            if (!(outgoingBean instanceof StatefulHotBean) || !incomingContext.hasHotBean(beanNames[i])) continue;
+            incomingBean = incomingContext.getHotBean(beanNames[i]);
+            if (!(incomingBean instanceof StatefulHotBean)) continue;
+
+            if (budgetExceeded || ((System.currentTimeMillis() - beginTransfer) > this.timeout)) {
+               budgetExceeded = true;
+               skippedBeanCount++;
+               continue;
+            }
+
+            state = SerializationUtils.serialize(((StatefulHotBean) outgoingBean).exportState());
+            if ((transferredBytes + state.length) > this.maxSize) {
+               if (logger.isDebugEnabled())
+                  logger.debug("Skipping state handover of bean '" + beanNames[i] + "' in module '" + this.moduleName
+                           + "' - size budget exceeded (" + state.length + " bytes).");
+               skippedBeanCount++;
+               continue;
+            }
+
+            ((StatefulHotBean) incomingBean).importState(SerializationUtils.deserialize(state, StateHandover.class
+                     .getClassLoader()));
+
+            transferredBytes += state.length;
+            transferredBeanCount++;
+         } catch (Exception e) {
+            logger.warn("Error handing over state of bean '" + beanNames[i] + "' in module '" + this.moduleName
+                     + "' from revision " + fromRevision + " to revision " + toRevision + " - " + e + "!");
+            failedBeanCount++;
+         }
+      }
+
+      return new Result(this.moduleName, fromRevision, toRevision, transferredBeanCount, skippedBeanCount,
+               failedBeanCount, transferredBytes, System.currentTimeMillis() - beginTransfer, budgetExceeded
+                        || (skippedBeanCount > 0));
+   }
+
+   /**
+    * Gets the names of the beans in the specified context that have been instantiated, to avoid creating beans only
+    * to export their (empty) state.
+    */
+   private static String[] getInstantiatedBeanNames(final HotBeanContext hotBeanContext) {
+      if (hotBeanContext instanceof PropertiesHotBeanContext) {
+         return ((PropertiesHotBeanContext) hotBeanContext).getHotBeanNames();
+      } else if ((hotBeanContext instanceof ListableBeanFactory)
+               && (hotBeanContext instanceof ConfigurableApplicationContext)) {
+         String[] beanNames = ((ListableBeanFactory) hotBeanContext).getBeanDefinitionNames();
+         int count = 0;
+         for (int i = 0; i < beanNames.length; i++) {
+            if (((ConfigurableApplicationContext) hotBeanContext).getBeanFactory().containsSingleton(beanNames[i]))
+               beanNames[count++] = beanNames[i];
+         }
+         String[] instantiatedBeanNames = new String[count];
+         System.arraycopy(beanNames, 0, instantiatedBeanNames, 0, count);
+         return instantiatedBeanNames;
+      } else return new String[0];
+   }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.support;
+
+import hotbeans.HotBeansException;
+
+import java.util.StringTokenizer;
+
+/**
+ * A range of module versions (as specified by the <code>Implementation-Version</code> attribute of the manifest of a
+ * module), used to look up hot beans in one of several versions of a module that are active side by side. A version
+ * range is specified either as a single version, meaning that version or any later version, or as an interval, in
+ * which square brackets denote inclusive bounds and parentheses denote exclusive bounds, for instance
+ * <code>[1.0,2.0)</code>. The upper bound of an interval may be omitted (<code>[1.0,)</code>).<br>
+ * <br>
+ * Versions are compared segment by segment (segments are separated by <code>.</code> or <code>-</code>). Numeric
+ * segments are compared numerically, and other segments lexically. A non-numeric segment is considered lower than a
+ * numeric segment, and missing segments are considered to be zero, so that for instance <code>1.0</code> equals
+ * <code>1.0.0</code>, and <code>1.0.beta</code> is lower than <code>1.0.1</code>. Anything following the first
+ * whitespace of a version, such as the build time stamp in <code>1.0 (200710101200)</code>, is ignored.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public final class VersionRange {
+
+   private final String minVersion;
+
+   private final boolean minInclusive;
+
+   private final String maxVersion; // null if unbounded
+
+   private final boolean maxInclusive;
+
+   /**
+    * Creates a new VersionRange.
+    * 
+    * @param maxVersion the upper bound, or <code>null</code> if the range is unbounded.
+    */
+   public VersionRange(String minVersion, boolean minInclusive, String maxVersion, boolean maxInclusive) {
+      this.minVersion = minVersion;
+      this.minInclusive = minInclusive;
+      this.maxVersion = maxVersion;
+      this.maxInclusive = maxInclusive;
+   }
+
+   /**
+    * Parses a version range.
+    * 
+    * @throws HotBeansException if the version range is invalid.
+    */
+   public static VersionRange parse(final String versionRange) {
+      String range = (versionRange != null) ? versionRange.trim() : "";
+      if (range.length() == 0) throw new HotBeansException("Empty version range!");
+
+      char first = range.charAt(0);
+      if ((first != '[') && (first != '(')) return new VersionRange(range, true, null, false);
+
+      char last = range.charAt(range.length() - 1);
+      int separator = range.indexOf(',');
+      if (((last != ']') && (last != ')')) || (separator < 0))
+         throw new HotBeansException("Invalid version range '" + versionRange + "'!");
+
+      String minVersion = range.substring(1, separator).trim();
+      String maxVersion = range.substring(separator + 1, range.length() - 1).trim();
+      if (minVersion.length() == 0) throw new HotBeansException("Invalid version range '" + versionRange + "'!");
+
+      return new VersionRange(minVersion, first == '[', (maxVersion.length() > 0) ? maxVersion : null, last == ']');
+   }
+
+   /**
+    * Gets the lower bound of this range.
+    */
+   public String getMinVersion() {
+      return minVersion;
+   }
+
+   /**
+    * Gets the upper bound of this range, or <code>null</code> if this range is unbounded.
+    */
+   public String getMaxVersion() {
+      return maxVersion;
+   }
+
+   /**
+    * Checks if this range includes the specified version.
+    */
+   public boolean includes(final String version) {
+      if (version == null) return false;
+
+      int compareMin = compareVersions(version, this.minVersion);
+      if ((compareMin < 0) || ((compareMin == 0) && !this.minInclusive)) return false;
+
+      if (this.maxVersion != null) {
+         int compareMax = compareVersions(version, this.maxVersion);
+         if ((compareMax > 0) || ((compareMax == 0) && !this.maxInclusive)) return false;
+      }
+
+      return true;
+   }
+
+   /**
+    * Compares two versions.
+    * 
+    * @return a negative integer, zero, or a positive integer as the first version is lower than, equal to, or higher
+    *         than the second version.
+    */
+   public static int compareVersions(final String version1, final String version2) {
+      StringTokenizer tokenizer1 = new StringTokenizer(stripQualifier(version1), ".-");
+      StringTokenizer tokenizer2 = new StringTokenizer(stripQualifier(version2), ".-");
+      int result;
+
+      while (tokenizer1.hasMoreTokens() || tokenizer2.hasMoreTokens()) {
+         result = compareSegments(tokenizer1.hasMoreTokens() ? tokenizer1.nextToken() : "0", tokenizer2
+                  .hasMoreTokens() ? tokenizer2.nextToken() : "0");
+         if (result != 0) return result;
+      }
+
+      return 0;
+   }
+
+   /**
+    * Removes anything following the first whitespace of a version.
+    */
+   private static String stripQualifier(final String version) {
+      String trimmed = version.trim();
+      for (int i = 0; i < trimmed.length(); i++) {
+         if (Character.isWhitespace(trimmed.charAt(i))) return trimmed.substring(0, i);
+      }
+      return trimmed;
+   }
+
+   /**
+    * Compares two version segments.
+    */
+   private static int compareSegments(final String segment1, final String segment2) {
+      long number1 = parseSegment(segment1);
+      long number2 = parseSegment(segment2);
+
+      if ((number1 >= 0) && (number2 >= 0)) return (number1 < number2) ? -1 : ((number1 == number2) ? 0 : 1);
+      else if (number1 >= 0) return 1; // Numeric segments are higher than non-numeric segments
+      else if (number2 >= 0) return -1;
+      else return segment1.compareTo(segment2);
+   }
+
+   /**
+    * Parses a numeric version segment, or returns -1 if the segment isn't numeric.
+    */
+   private static long parseSegment(final String segment) {
+      for (int i = 0; i < segment.length(); i++) {
+         if (!Character.isDigit(segment.charAt(i))) return -1;
+      }
+
+      try {
+         return Long.parseLong(segment);
+      } catch (NumberFormatException nfe) {
+         return -1;
+      }
+   }
+
+   /**
+    * Gets a string representation of this range.
+    */
+   public String toString() {
+      return (this.minInclusive ? "[" : "(") + this.minVersion + ","
+               + ((this.maxVersion != null) ? this.maxVersion : "") + (this.maxInclusive ? "]" : ")");
+   }
+}
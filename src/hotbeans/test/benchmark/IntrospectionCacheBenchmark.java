@@ -0,0 +1,153 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.test.benchmark;
+
+import hotbeans.support.JarFileHotBeanModuleLoader;
+import hotbeans.support.SpringHotBeanContext;
+import hotbeans.util.FileDeletor;
+
+import java.beans.Introspector;
+import java.io.File;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Benchmark measuring the throughput of bean introspection in the host application while a module is repeatedly
+ * loaded and unloaded. The benchmark is run twice: once with a JVM-wide flush of the Introspector cache after each
+ * unload (the behaviour of earlier versions of SpringHotBeanContext) and once with the targeted eviction performed by
+ * {@link hotbeans.support.IntrospectionCacheCleaner}.<br>
+ * <br>
+ * Usage: <code>IntrospectionCacheBenchmark [module jar file] [duration (ms)]</code>. The default module jar file is
+ * the test module built by the test target of the build file.
+ * 
+ * @author Tobias Lfstrand
+ */
+public class IntrospectionCacheBenchmark {
+
+   private static final Class[] HOST_CLASSES = new Class[] { DefaultListableBeanFactory.class,
+            RootBeanDefinition.class, ClassPathXmlApplicationContext.class, Thread.class, File.class };
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private final File moduleJarFile;
+
+   private final File tempDir;
+
+   private final long duration;
+
+   private volatile boolean running;
+
+   private long hostOperations;
+
+   private long unloads;
+
+   /**
+    * Creates a new IntrospectionCacheBenchmark.
+    */
+   public IntrospectionCacheBenchmark(File moduleJarFile, long duration) {
+      this.moduleJarFile = moduleJarFile;
+      this.tempDir = new File(System.getProperty("java.io.tmpdir"), "introspectionCacheBenchmark");
+      this.duration = duration;
+   }
+
+   /**
+    * Runs the benchmark.
+    */
+   public static void main(String[] args) throws Exception {
+      File moduleJarFile = new File((args.length > 0) ? args[0] : "samples/simple/testmodule/testModule.jar");
+      long duration = (args.length > 1) ? Long.parseLong(args[1]) : 5000;
+
+      IntrospectionCacheBenchmark benchmark = new IntrospectionCacheBenchmark(moduleJarFile, duration);
+
+      benchmark.run(true); // Warm up
+      benchmark.run(false);
+
+      benchmark.report("JVM-wide flush", benchmark.run(true));
+      benchmark.report("Targeted eviction", benchmark.run(false));
+   }
+
+   /**
+    * Prints the result of a benchmark run.
+    */
+   private void report(String mode, long[] result) {
+      System.out.println(mode + ": " + (result[0] * 1000 / this.duration) + " host introspections/s, "
+               + (result[1] * 1000 / this.duration) + " module unloads/s.");
+   }
+
+   /**
+    * Performs a benchmark run, and returns the number of host operations and module unloads.
+    */
+   private long[] run(final boolean globalFlush) throws Exception {
+      this.running = true;
+      this.hostOperations = 0;
+      this.unloads = 0;
+
+      Thread hostThread = new Thread("Host") {
+
+         public void run() {
+            long operations = 0;
+            try {
+               while (running) {
+                  Introspector.getBeanInfo(HOST_CLASSES[(int) (operations % HOST_CLASSES.length)]);
+                  operations++;
+               }
+            } catch (Exception e) {
+               logger.error("Error introspecting host classes - " + e + "!", e);
+            }
+            hostOperations = operations;
+         }
+      };
+
+      Thread unloadThread = new Thread("Unload") {
+
+         public void run() {
+            long count = 0;
+            try {
+               while (running) {
+                  JarFileHotBeanModuleLoader loader = new JarFileHotBeanModuleLoader(moduleJarFile, tempDir);
+                  SpringHotBeanContext context = new SpringHotBeanContext(loader);
+                  context.init();
+                  Introspector.getBeanInfo(context.getHotBeanClass("MyLittleTestBean"));
+
+                  context.destroy();
+                  if (globalFlush) Introspector.flushCaches();
+                  loader.destroy();
+                  count++;
+               }
+            } catch (Exception e) {
+               logger.error("Error loading and unloading module - " + e + "!", e);
+            }
+            unloads = count;
+         }
+      };
+
+      hostThread.start();
+      unloadThread.start();
+
+      Thread.sleep(this.duration);
+      this.running = false;
+
+      hostThread.join();
+      unloadThread.join();
+      FileDeletor.deleteTreeImpl(this.tempDir.getPath());
+
+      return new long[] { this.hostOperations, this.unloads };
+   }
+}
@@ -48,6 +48,14 @@ public class AllTests {
       suite.addTestSuite(HotBeanModuleTest.class);
       suite.addTestSuite(HotBeanProxyFactoryTest.class);
       suite.addTestSuite(HotBeanModuleRepositoryTest.class);
+      suite.addTestSuite(HotBeanModuleRepositoryModesTest.class);
+      suite.addTestSuite(FileSystemHotBeanModuleRepositoryTest.class);
+      suite.addTestSuite(ClassLoaderLeakDetectorTest.class);
+      suite.addTestSuite(MethodTimingTransformerTest.class);
+      suite.addTestSuite(PropertiesHotBeanContextTest.class);
+      suite.addTestSuite(ModuleCacheTest.class);
+      suite.addTestSuite(VersionRangeTest.class);
+      suite.addTestSuite(ModuleDeltaTest.class);
 
       // $JUnit-END$
 
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.test.junit;
+
+import hotbeans.ClassLoaderLeakInfo;
+import hotbeans.support.ClassLoaderLeakDetector;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Test for ClassLoaderLeakDetector.
+ * 
+ * @author Tobias Lfstrand
+ */
+public class ClassLoaderLeakDetectorTest extends TestCase {
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private ClassLoaderLeakDetector classLoaderLeakDetector;
+
+   /**
+    */
+   protected void setUp() {
+      this.classLoaderLeakDetector = new ClassLoaderLeakDetector();
+      this.classLoaderLeakDetector.setGcCycleThreshold(2);
+   }
+
+   /**
+    */
+   protected void tearDown() {
+   }
+
+   /**
+    * Forces a number of garbage collection cycles, checking the detector after each cycle.
+    */
+   private void forceGcCycles(int cycles) {
+      long targetGcCycles = this.classLoaderLeakDetector.getGcCycles() + cycles;
+
+      for (int i = 0; (i < 100) && (this.classLoaderLeakDetector.getGcCycles() < targetGcCycles); i++) {
+         System.gc();
+         try {
+            Thread.sleep(10);
+         } catch (InterruptedException e) {
+         }
+         this.classLoaderLeakDetector.check();
+      }
+   }
+
+   /* ### TESTS ### */
+
+   public void testLeakDetection() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testLeakDetection ***");
+
+      ClassLoader leakingClassLoader = new URLClassLoader(new URL[0]);
+      Thread thread = Thread.currentThread();
+      ClassLoader originalContextClassLoader = thread.getContextClassLoader();
+
+      try {
+         thread.setContextClassLoader(leakingClassLoader);
+
+         this.classLoaderLeakDetector.retire("leakTest", 1, leakingClassLoader);
+         leakingClassLoader = null;
+
+         this.forceGcCycles(3);
+
+         ClassLoaderLeakInfo[] leaks = this.classLoaderLeakDetector.getSuspectedLeaks();
+         if (leaks.length != 1) super.fail("Expected one suspected leak, but got " + leaks.length + "!");
+         if (!"leakTest".equals(leaks[0].getModuleName()) || (leaks[0].getRevision() != 1))
+            super.fail("Wrong module in leak info - " + leaks[0] + "!");
+
+         boolean contextClassLoaderFound = false;
+         String[] retentionRoots = leaks[0].getRetentionRoots();
+         for (int i = 0; i < retentionRoots.length; i++) {
+            if (retentionRoots[i].indexOf(thread.getName()) >= 0) contextClassLoaderFound = true;
+         }
+         if (!contextClassLoaderFound) super.fail("Context class loader not reported as retention root - " + leaks[0]);
+      } finally {
+         thread.setContextClassLoader(originalContextClassLoader);
+      }
+
+      this.forceGcCycles(3);
+
+      if (this.classLoaderLeakDetector.getSuspectedLeaks().length != 0)
+         super.fail("Released class loader still reported as leaking!");
+      if (this.classLoaderLeakDetector.getCollectedClassLoaderCount() != 1)
+         super.fail("Released class loader not collected!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testLeakDetection ***");
+   }
+}
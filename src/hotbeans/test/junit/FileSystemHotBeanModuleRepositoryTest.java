@@ -0,0 +1,1000 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.test.junit;
+
+import hotbeans.HotBeanModule;
+import hotbeans.HotBeanModuleInfo;
+import hotbeans.HotBeansException;
+import hotbeans.StatefulHotBean;
+import hotbeans.support.BeanDefinitionCache;
+import hotbeans.support.FileSystemHotBeanModuleRepository;
+import hotbeans.support.HotBeanProxyFactory;
+import hotbeans.support.JarFileHotBeanModuleLoader;
+import hotbeans.support.ModuleDelta;
+import hotbeans.support.ModuleManifestUtils;
+import hotbeans.support.StateHandover;
+import hotbeans.test.TestBeanInterface;
+import hotbeans.util.FileDeletor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Test for FileSystemHotBeanModuleRepository.
+ * 
+ * @author Tobias Lfstrand
+ */
+public class FileSystemHotBeanModuleRepositoryTest extends TestCase {
+
+   private static final String MODULE_NAME = "TestModule";
+
+   private static final String BEAN_NAME = "MyLittleTestBean";
+
+   private static final File TEST_DIRECTORY = new File("test/junit/hotModules");
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   /**
+    * Repository exposing the periodic checks, so that they can be performed at once.
+    */
+   public static class TestRepository extends FileSystemHotBeanModuleRepository {
+
+      private String stagedContentHash; // Content hash of the last module file staged from a channel
+
+      protected StagedModuleFile stageModuleFile(final File stagingDirectory,
+               final ReadableByteChannel moduleFileChannel) throws Exception {
+         StagedModuleFile stagedModuleFile = super.stageModuleFile(stagingDirectory, moduleFileChannel);
+         this.stagedContentHash = stagedModuleFile.getContentHash();
+         return stagedModuleFile;
+      }
+
+      public void checkForObsoleteModules() {
+         super.checkForObsoleteModules();
+      }
+
+      public void checkForIdleModules() {
+         super.checkForIdleModules();
+      }
+
+      public void checkForModuleUpdates() {
+         super.checkForModuleUpdates();
+      }
+
+      public HotBeanModule getHotBeanModule(final String moduleName) {
+         return super.getHotBeanModule(moduleName);
+      }
+
+      public HotBeanModule getStandbyModule(final String moduleName) {
+         return super.getStandbyModule(moduleName);
+      }
+
+      public int reclaimModules(final String reason) {
+         return super.reclaimModules(reason);
+      }
+   }
+
+   /**
+    * Channel that delivers its data in small chunks, and returns no data every other read (like a non-blocking
+    * channel that is waiting for data).
+    */
+   private static class TricklingChannel implements ReadableByteChannel {
+
+      private final ReadableByteChannel channel;
+
+      private boolean empty;
+
+      public TricklingChannel(final ReadableByteChannel channel) {
+         this.channel = channel;
+      }
+
+      public int read(final ByteBuffer buffer) throws IOException {
+         this.empty = !this.empty;
+         if (this.empty) return 0;
+
+         int limit = buffer.limit();
+         buffer.limit(Math.min(limit, buffer.position() + 100));
+         try {
+            return this.channel.read(buffer);
+         } finally {
+            buffer.limit(limit);
+         }
+      }
+
+      public boolean isOpen() {
+         return this.channel.isOpen();
+      }
+
+      public void close() throws IOException {
+         this.channel.close();
+      }
+   }
+
+   /**
+    * Stateful bean used in module files created by the state handover tests. The class is loaded by the parent class
+    * loader, and so is shared by all revisions.
+    */
+   public static class StatefulBean implements StatefulHotBean {
+
+      private Object state;
+
+      private Object importedState;
+
+      private long exportDelay;
+
+      public void setState(final Object state) {
+         this.state = state;
+      }
+
+      public void setExportDelay(final long exportDelay) {
+         this.exportDelay = exportDelay;
+      }
+
+      public Object getImportedState() {
+         return importedState;
+      }
+
+      public Object exportState() throws Exception {
+         if (this.exportDelay > 0) Thread.sleep(this.exportDelay);
+         return this.state;
+      }
+
+      public void importState(final Object state) {
+         this.importedState = state;
+      }
+   }
+
+   /**
+    * Bean of the shared context of module files created by the shared context test.
+    */
+   public static class SharedBean implements DisposableBean {
+
+      private static int createdCount;
+
+      private boolean destroyed;
+
+      public SharedBean() {
+         createdCount++;
+      }
+
+      public boolean isDestroyed() {
+         return destroyed;
+      }
+
+      public void destroy() {
+         this.destroyed = true;
+      }
+   }
+
+   /**
+    * Class added to the test module, which isn't loaded until explicitly requested by a test.
+    */
+   public static class ModuleClass {
+   }
+
+   private TestRepository repository;
+
+   /**
+    */
+   protected void setUp() throws Exception {
+      FileDeletor.deleteTreeImpl(TEST_DIRECTORY.getPath());
+      TEST_DIRECTORY.mkdirs();
+
+      this.repository = new TestRepository();
+      this.repository.setModuleRepositoryDirectory(new File(TEST_DIRECTORY, "repository"));
+      this.repository.setTemporaryDirectory(new File(TEST_DIRECTORY, "temp"));
+      this.repository.setCheckInterval(1000000);
+      this.repository.init();
+   }
+
+   /**
+    */
+   protected void tearDown() throws Exception {
+      this.repository.destroy();
+   }
+
+   /**
+    * Creates a copy of the test module, with the class {@link ModuleClass} added as a plain (i.e. not nested) entry.
+    */
+   private File createModuleFile() throws Exception {
+      File moduleFile = new File(TEST_DIRECTORY, "testModuleWithModuleClass.jar");
+      JarInputStream in = new JarInputStream(new FileInputStream("samples/simple/testmodule/testModule.jar"));
+      JarOutputStream out = new JarOutputStream(new FileOutputStream(moduleFile), in.getManifest());
+      try {
+         JarEntry entry;
+         while ((entry = in.getNextJarEntry()) != null) {
+            out.putNextEntry(new JarEntry(entry.getName()));
+            if (!entry.isDirectory()) copy(in, out);
+            out.closeEntry();
+         }
+
+         String classEntryName = ModuleClass.class.getName().replace('.', '/') + ".class";
+         InputStream classStream = this.getClass().getClassLoader().getResourceAsStream(classEntryName);
+         out.putNextEntry(new JarEntry(classEntryName));
+         copy(classStream, out);
+         out.closeEntry();
+         classStream.close();
+      } finally {
+         in.close();
+         out.close();
+      }
+      return moduleFile;
+   }
+
+   /**
+    * Creates a copy of the test module, with the specified bean definitions in place of the bean definitions of the
+    * test module.
+    */
+   private File createModuleFile(final String fileName, final String beanDefinitions) throws Exception {
+      return this.createModuleFile(fileName, beanDefinitions, null);
+   }
+
+   /**
+    * Creates a copy of the test module, with the specified bean definitions in place of the bean definitions of the
+    * test module, and the specified shared context bean definitions (if not <code>null</code>).
+    */
+   private File createModuleFile(final String fileName, final String beanDefinitions,
+            final String sharedContextDefinitions) throws Exception {
+      File moduleFile = new File(TEST_DIRECTORY, fileName);
+      JarInputStream in = new JarInputStream(new FileInputStream("samples/simple/testmodule/testModule.jar"));
+      JarOutputStream out = new JarOutputStream(new FileOutputStream(moduleFile), in.getManifest());
+      try {
+         JarEntry entry;
+         while ((entry = in.getNextJarEntry()) != null) {
+            out.putNextEntry(new JarEntry(entry.getName()));
+            if (entry.getName().equals("hotBeanContext.xml")) out.write(beanDefinitions.getBytes("UTF-8"));
+            else if (!entry.isDirectory()) copy(in, out);
+            out.closeEntry();
+         }
+
+         if (sharedContextDefinitions != null) {
+            out.putNextEntry(new JarEntry(FileSystemHotBeanModuleRepository.SHARED_CONTEXT_FILE_NAME));
+            out.write(sharedContextDefinitions.getBytes("UTF-8"));
+            out.closeEntry();
+         }
+      } finally {
+         in.close();
+         out.close();
+      }
+      return moduleFile;
+   }
+
+   /**
+    * Creates a copy of the test module, with the specified version in the manifest.
+    */
+   private File createVersionedModuleFile(final String fileName, final String version) throws Exception {
+      File moduleFile = new File(TEST_DIRECTORY, fileName);
+      JarInputStream in = new JarInputStream(new FileInputStream("samples/simple/testmodule/testModule.jar"));
+      Manifest manifest = in.getManifest();
+      manifest.getMainAttributes().putValue(ModuleManifestUtils.VERSION_ATTRIBUTE, version);
+      JarOutputStream out = new JarOutputStream(new FileOutputStream(moduleFile), manifest);
+      try {
+         JarEntry entry;
+         while ((entry = in.getNextJarEntry()) != null) {
+            out.putNextEntry(new JarEntry(entry.getName()));
+            if (!entry.isDirectory()) copy(in, out);
+            out.closeEntry();
+         }
+      } finally {
+         in.close();
+         out.close();
+      }
+      return moduleFile;
+   }
+
+   /**
+    * Creates a copy of the test module, with bean definitions consisting of the specified bean elements.
+    */
+   private File createModuleFileWithBeans(final String fileName, final String beans) throws Exception {
+      return this.createModuleFile(fileName, beanDefinitions(beans));
+   }
+
+   /**
+    * Gets bean definitions consisting of the specified bean elements.
+    */
+   private static String beanDefinitions(final String beans) {
+      return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><!DOCTYPE beans PUBLIC \"-//SPRING//DTD BEAN//EN\" "
+               + "\"http://www.springframework.org/dtd/spring-beans.dtd\"><beans>" + beans + "</beans>";
+   }
+
+   /**
+    * Gets the bean element of a {@link StatefulBean} with the specified state.
+    */
+   private static String statefulBean(final String beanName, final String state, final long exportDelay) {
+      return "<bean id=\"" + beanName + "\" class=\"" + StatefulBean.class.getName() + "\"><property name=\"state\">"
+               + state + "</property><property name=\"exportDelay\"><value>" + exportDelay
+               + "</value></property></bean>";
+   }
+
+   /**
+    * Copies the contents of a stream, without closing the streams.
+    */
+   private static void copy(final InputStream in, final OutputStream out) throws IOException {
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+         out.write(buffer, 0, read);
+      }
+   }
+
+   /**
+    * Reads the file (i.e. not directory) entries of a jar file.
+    * 
+    * @return a map of entry names (String) to contents (String, decoded as ISO-8859-1).
+    */
+   private static Map readFileEntries(final File jarFile) throws IOException {
+      TreeMap entries = new TreeMap();
+      ZipInputStream in = new ZipInputStream(new FileInputStream(jarFile));
+      try {
+         ZipEntry entry;
+         ByteArrayOutputStream content;
+         while ((entry = in.getNextEntry()) != null) {
+            if (entry.isDirectory()) continue;
+            content = new ByteArrayOutputStream();
+            copy(in, content);
+            entries.put(entry.getName(), content.toString("ISO-8859-1"));
+         }
+      } finally {
+         in.close();
+      }
+      return entries;
+   }
+
+   /**
+    * Gets the temporary directory of the loader of the current revision of a hot bean proxy.
+    */
+   private static File getTempDir(final HotBeanProxyFactory hotBeanProxyFactory) {
+      return ((JarFileHotBeanModuleLoader) hotBeanProxyFactory.getCurrentModule().getHotBeanModuleLoader())
+               .getTempDir();
+   }
+
+   /**
+    * Checks that a revision file exists in the module directory of the test module.
+    */
+   private void assertRevisionFileExists(final String revisionFileName) {
+      File moduleDirectory = new File(this.repository.getModuleRepositoryDirectory(), MODULE_NAME);
+      if (!new File(moduleDirectory, revisionFileName).exists())
+         super.fail("Revision file " + revisionFileName + " doesn't exist!");
+   }
+
+   /**
+    * Checks that a module revision is unloaded (or being unloaded).
+    */
+   private void assertUnloaded(final HotBeanModule module) {
+      if (!module.isUnloaded() && !module.isUnloading()) super.fail("Module " + module + " not unloaded!");
+   }
+
+   /* ### TESTS ### */
+
+   public void testReactivationAfterIdleUnload() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testReactivationAfterIdleUnload ***");
+
+      this.repository.addHotBeanModule(new FileInputStream(this.createModuleFile()));
+
+      HotBeanProxyFactory hotBeanProxyFactory = this.repository.getHotBeanProxyFactory(MODULE_NAME, BEAN_NAME,
+               new Class[] { TestBeanInterface.class });
+      TestBeanInterface testInterface = (TestBeanInterface) hotBeanProxyFactory.getProxy();
+      testInterface.getTestBeanId();
+      File unloadedTempDir = getTempDir(hotBeanProxyFactory);
+
+      // Unload the idle revision, and reactivate it
+      this.repository.setIdleUnloadTimeout(1);
+      Thread.sleep(50);
+      this.repository.checkForIdleModules();
+      this.repository.setIdleUnloadTimeout(0);
+
+      testInterface.getTestBeanId();
+      HotBeanModule module = hotBeanProxyFactory.getCurrentModule();
+      if (!module.isActive()) super.fail("Module not reactivated!");
+      File tempDir = getTempDir(hotBeanProxyFactory);
+      if (tempDir.equals(unloadedTempDir))
+         super.fail("Reactivated revision uses the temporary directory of the unloaded revision!");
+
+      // Wait for the loader of the unloaded revision to be collected, which deletes its temporary directory
+      for (int i = 0; (i < 100) && unloadedTempDir.exists(); i++) {
+         System.gc();
+         System.runFinalization();
+         Thread.sleep(50);
+      }
+      if (unloadedTempDir.exists()) logger.warn("Loader of unloaded revision not collected.");
+
+      // Load a class that hasn't been loaded by the reactivated revision
+      Class moduleClass = module.getHotBeanModuleLoader().getClassLoader().loadClass(ModuleClass.class.getName());
+      if (moduleClass.getClassLoader() != module.getHotBeanModuleLoader().getClassLoader())
+         super.fail("Class not loaded from temporary directory of reactivated revision!");
+      if (!tempDir.isDirectory()) super.fail("Temporary directory of reactivated revision deleted!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testReactivationAfterIdleUnload ***");
+   }
+
+   public void testStateHandover() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testStateHandover ***");
+
+      this.repository.setStateHandoverEnabled(true);
+      String beans = statefulBean("StatefulA", "<value>state of A</value>", 0)
+               + statefulBean("StatefulB", "<bean class=\"MyLittleTestState\"/>", 0); // Class of the revision
+      this.repository.addHotBeanModule(this.createModuleFileWithBeans("stateful0.jar", beans));
+      if (this.repository.getLastStateHandoverResult(MODULE_NAME) != null)
+         super.fail("State handed over to first revision!");
+
+      this.repository.updateHotBeanModule(MODULE_NAME, this.createModuleFileWithBeans("stateful1.jar", beans));
+      HotBeanModule revision1 = this.repository.getHotBeanModule(MODULE_NAME);
+      if (revision1.getRevision() != 1) super.fail("Unexpected revision of updated module - " + revision1 + "!");
+
+      // State exported from revision 0 and imported into revision 1
+      if (!"state of A".equals(((StatefulBean) revision1.getHotBean("StatefulA")).getImportedState()))
+         super.fail("State not handed over to new revision!");
+
+      // State containing a class of the outgoing revision is rejected
+      if (((StatefulBean) revision1.getHotBean("StatefulB")).getImportedState() != null)
+         super.fail("State containing class of outgoing revision handed over!");
+
+      StateHandover.Result result = this.repository.getLastStateHandoverResult(MODULE_NAME);
+      if ((result.getFromRevision() != 0) || (result.getToRevision() != 1) || (result.getTransferredBeanCount() != 1)
+               || (result.getFailedBeanCount() != 1) || result.isBudgetExceeded())
+         super.fail("Unexpected state handover result - " + result + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testStateHandover ***");
+   }
+
+   public void testStateHandoverBudgets() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testStateHandoverBudgets ***");
+
+      this.repository.setStateHandoverEnabled(true);
+      StringBuffer largeState = new StringBuffer();
+      for (int i = 0; i < 1000; i++) {
+         largeState.append("large");
+      }
+      String beans = statefulBean("StatefulA", "<value>small</value>", 0)
+               + statefulBean("StatefulB", "<value>" + largeState + "</value>", 0);
+      this.repository.addHotBeanModule(this.createModuleFileWithBeans("stateful0.jar", beans));
+
+      // Size budget - the state of B doesn't fit after the state of A
+      this.repository.setStateHandoverMaxSize(1000);
+      this.repository.updateHotBeanModule(MODULE_NAME, this.createModuleFileWithBeans("stateful1.jar", beans));
+      HotBeanModule module = this.repository.getHotBeanModule(MODULE_NAME);
+      if (!"small".equals(((StatefulBean) module.getHotBean("StatefulA")).getImportedState()))
+         super.fail("State within size budget not handed over!");
+      if (((StatefulBean) module.getHotBean("StatefulB")).getImportedState() != null)
+         super.fail("State exceeding size budget handed over!");
+      StateHandover.Result result = this.repository.getLastStateHandoverResult(MODULE_NAME);
+      if ((result.getTransferredBeanCount() != 1) || (result.getSkippedBeanCount() != 1) || !result.isBudgetExceeded()
+               || (result.getTransferredBytes() > 1000))
+         super.fail("Unexpected state handover result with size budget - " + result + "!");
+
+      // Time budget - exporting the state of A takes longer than the timeout, so B is skipped
+      this.repository.setStateHandoverMaxSize(Long.MAX_VALUE);
+      this.repository.setStateHandoverTimeout(10);
+      beans = statefulBean("StatefulA", "<value>slow</value>", 100)
+               + statefulBean("StatefulB", "<value>fast</value>", 0);
+      this.repository.updateHotBeanModule(MODULE_NAME, this.createModuleFileWithBeans("stateful2.jar", beans));
+      this.repository.checkForObsoleteModules();
+      this.repository.updateHotBeanModule(MODULE_NAME, this.createModuleFileWithBeans("stateful3.jar", beans));
+      module = this.repository.getHotBeanModule(MODULE_NAME);
+      if (module.getRevision() != 3) super.fail("Unexpected revision of updated module - " + module + "!");
+      if (!"slow".equals(((StatefulBean) module.getHotBean("StatefulA")).getImportedState()))
+         super.fail("State exported within time budget not handed over!");
+      if (((StatefulBean) module.getHotBean("StatefulB")).getImportedState() != null)
+         super.fail("State handed over after time budget exceeded!");
+      result = this.repository.getLastStateHandoverResult(MODULE_NAME);
+      if ((result.getFromRevision() != 2) || (result.getSkippedBeanCount() != 1) || !result.isBudgetExceeded())
+         super.fail("Unexpected state handover result with time budget - " + result + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testStateHandoverBudgets ***");
+   }
+
+   public void testSharedContext() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testSharedContext ***");
+
+      String beanDefinitions = beanDefinitions("<bean id=\"" + BEAN_NAME + "\" class=\"MyLittleTestBean\"/>");
+      String sharedContextDefinitions = beanDefinitions("<bean id=\"SharedBean\" class=\""
+               + SharedBean.class.getName() + "\"/>");
+      SharedBean.createdCount = 0;
+
+      this.repository.addHotBeanModule(this.createModuleFile("shared0.jar", beanDefinitions,
+               sharedContextDefinitions));
+      HotBeanModule revision0 = this.repository.getHotBeanModule(MODULE_NAME);
+      ApplicationContext sharedContext = ((ApplicationContext) revision0.getHotBeanContext()).getParent();
+      if ((sharedContext == null) || !sharedContext.containsBean("SharedBean"))
+         super.fail("Shared context not parent of revision context!");
+      SharedBean sharedBean = (SharedBean) sharedContext.getBean("SharedBean");
+
+      // The shared context is created once, and is the parent of the context of the next revision
+      this.repository.updateHotBeanModule(MODULE_NAME, this.createModuleFile("shared1.jar", beanDefinitions,
+               sharedContextDefinitions));
+      HotBeanModule revision1 = this.repository.getHotBeanModule(MODULE_NAME);
+      if (revision1.getRevision() != 1) super.fail("Unexpected revision of updated module - " + revision1 + "!");
+      if (((ApplicationContext) revision1.getHotBeanContext()).getParent() != sharedContext)
+         super.fail("Shared context not parent of context of next revision!");
+      if (SharedBean.createdCount != 1) super.fail("Shared context created more than once!");
+
+      this.repository.checkForObsoleteModules();
+      this.repository.checkForObsoleteModules();
+      if (!revision0.isUnloaded() && !revision0.isUnloading()) super.fail("Previous revision not unloaded!");
+      if (sharedBean.isDestroyed()) super.fail("Shared context closed when previous revision unloaded!");
+
+      // The shared context is closed when the module is removed
+      this.repository.removeHotBeanModule(MODULE_NAME);
+      this.repository.checkForObsoleteModules();
+      if (!sharedBean.isDestroyed()) super.fail("Shared context not closed when module removed!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testSharedContext ***");
+   }
+
+   public void testReclaimModules() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testReclaimModules ***");
+
+      this.repository.setStandbyGracePeriod(60000);
+      this.repository.setMemoryPressureIdleTime(1);
+      File testModuleFile = new File("samples/simple/testmodule/testModule.jar");
+      this.repository.addHotBeanModule(testModuleFile);
+      HotBeanModule revision0 = this.repository.getHotBeanModule(MODULE_NAME);
+      this.repository.updateHotBeanModule(MODULE_NAME, testModuleFile);
+      HotBeanModule revision1 = this.repository.getHotBeanModule(MODULE_NAME);
+      this.repository.updateHotBeanModule(MODULE_NAME, testModuleFile);
+      HotBeanModule revision2 = this.repository.getHotBeanModule(MODULE_NAME);
+      this.repository.checkForObsoleteModules();
+      if (!revision0.isInactive() || !revision1.isInactive()) super.fail("Previous revisions not inactivated!");
+      if (this.repository.getStandbyModule(MODULE_NAME) != revision1) super.fail("Revision 1 not standby!");
+      Thread.sleep(50); // Let the current revision become idle
+
+      // Drained inactive revisions are reclaimed first...
+      int reclaimedCount = this.repository.reclaimModules("test");
+      if (reclaimedCount != 1) super.fail("Unexpected number of reclaimed revisions - " + reclaimedCount + "!");
+      this.assertUnloaded(revision0);
+      if (!revision1.isInactive()) super.fail("Standby revision reclaimed before drained inactive revision!");
+      if (!revision2.isActive()) super.fail("Idle revision reclaimed before drained inactive revision!");
+
+      // ...then standby and idle revisions
+      reclaimedCount = this.repository.reclaimModules("test");
+      if (reclaimedCount != 2) super.fail("Unexpected number of reclaimed revisions - " + reclaimedCount + "!");
+      this.assertUnloaded(revision1);
+      this.assertUnloaded(revision2);
+
+      // Nothing left to reclaim
+      reclaimedCount = this.repository.reclaimModules("test");
+      if (reclaimedCount != 0) super.fail("Unexpected number of reclaimed revisions - " + reclaimedCount + "!");
+
+      // The idle revision is activated again when accessed
+      HotBeanProxyFactory hotBeanProxyFactory = this.repository.getHotBeanProxyFactory(MODULE_NAME, BEAN_NAME,
+               new Class[] { TestBeanInterface.class });
+      ((TestBeanInterface) hotBeanProxyFactory.getProxy()).getTestBeanId();
+      if (!hotBeanProxyFactory.getCurrentModule().isActive()) super.fail("Reclaimed idle revision not reactivated!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testReclaimModules ***");
+   }
+
+   public void testStaleStagingFileCleanup() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testStaleStagingFileCleanup ***");
+
+      File moduleDirectory = new File(this.repository.getModuleRepositoryDirectory(), MODULE_NAME);
+      moduleDirectory.mkdirs();
+      long staleTime = System.currentTimeMillis() - FileSystemHotBeanModuleRepository.STALE_STAGING_FILE_AGE - 60000;
+
+      File staleStagingFile = new File(this.repository.getModuleRepositoryDirectory(), "stale"
+               + FileSystemHotBeanModuleRepository.STAGING_FILE_SUFFIX);
+      File staleModuleStagingFile = new File(moduleDirectory, "stale"
+               + FileSystemHotBeanModuleRepository.STAGING_FILE_SUFFIX);
+      File recentStagingFile = new File(moduleDirectory, "recent"
+               + FileSystemHotBeanModuleRepository.STAGING_FILE_SUFFIX);
+      staleStagingFile.createNewFile();
+      staleModuleStagingFile.createNewFile();
+      recentStagingFile.createNewFile();
+      staleStagingFile.setLastModified(staleTime);
+      staleModuleStagingFile.setLastModified(staleTime);
+
+      // Start a new repository on the same directory
+      TestRepository repository2 = new TestRepository();
+      repository2.setModuleRepositoryDirectory(this.repository.getModuleRepositoryDirectory());
+      repository2.setTemporaryDirectory(new File(TEST_DIRECTORY, "temp2"));
+      repository2.setCheckInterval(1000000);
+      repository2.init();
+      repository2.destroy();
+
+      if (staleStagingFile.exists() || staleModuleStagingFile.exists())
+         super.fail("Stale staging files not deleted on initialization!");
+      if (!recentStagingFile.exists()) super.fail("Recent staging file deleted on initialization!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testStaleStagingFileCleanup ***");
+   }
+
+   public void testContentDeduplication() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testContentDeduplication ***");
+
+      this.repository.setContentDeduplicationEnabled(true);
+      this.repository.setStandbyGracePeriod(60000);
+      File testModuleFile = new File("samples/simple/testmodule/testModule.jar");
+      File moduleClassModuleFile = this.createModuleFile();
+
+      HotBeanModuleInfo info = this.repository.addHotBeanModule(testModuleFile);
+      if (info.getRevision() != 0) super.fail("Unexpected revision of added module - " + info.getRevision() + "!");
+      HotBeanModule revision0 = this.repository.getHotBeanModule(MODULE_NAME);
+      Object revision0Loader = revision0.getHotBeanModuleLoader();
+
+      // Content identical to current revision - no new revision
+      info = this.repository.updateHotBeanModule(MODULE_NAME, testModuleFile);
+      if (info.getRevision() != 0) super.fail("Identical content published as revision " + info.getRevision() + "!");
+      File moduleDirectory = new File(this.repository.getModuleRepositoryDirectory(), MODULE_NAME);
+      if (new File(moduleDirectory, "1.jar").exists() || new File(moduleDirectory, "1.ref").exists())
+         super.fail("Revision file published for content identical to current revision!");
+
+      // New content
+      info = this.repository.updateHotBeanModule(MODULE_NAME, moduleClassModuleFile);
+      if (info.getRevision() != 1) super.fail("Unexpected revision of updated module - " + info.getRevision() + "!");
+      this.assertRevisionFileExists("1.jar");
+      this.repository.checkForObsoleteModules();
+      if (!revision0.isInactive()) super.fail("Previous revision not kept as standby!");
+
+      // Content identical to standby revision - switch to standby revision
+      info = this.repository.updateHotBeanModule(MODULE_NAME, testModuleFile);
+      if (info.getRevision() != 2) super.fail("Unexpected revision of standby switch - " + info.getRevision() + "!");
+      this.assertRevisionFileExists("2.ref");
+      HotBeanModule revision2 = this.repository.getHotBeanModule(MODULE_NAME);
+      if (revision2.getRevision() != 2) super.fail("Standby switch not made current!");
+      if (!revision2.isActive()) super.fail("Standby switch not active!");
+      if (revision2.getHotBeanModuleLoader() != revision0Loader)
+         super.fail("Standby switch doesn't reuse the loader of the standby revision!");
+
+      // Content identical to a revision that isn't standby - publish reference and load
+      this.repository.setStandbyGracePeriod(0);
+      info = this.repository.updateHotBeanModule(MODULE_NAME, moduleClassModuleFile);
+      if (info.getRevision() != 3) super.fail("Unexpected revision of updated module - " + info.getRevision() + "!");
+      this.assertRevisionFileExists("3.ref");
+      if (new File(moduleDirectory, "3.jar").exists()) super.fail("Module file published for identical content!");
+      HotBeanModule revision3 = this.repository.getHotBeanModule(MODULE_NAME);
+      if ((revision3.getRevision() != 3) || !revision3.isActive()) super.fail("Referencing revision not loaded!");
+      revision3.getHotBeanModuleLoader().getClassLoader().loadClass(ModuleClass.class.getName());
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testContentDeduplication ***");
+   }
+
+   public void testStandbyRevert() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testStandbyRevert ***");
+
+      this.repository.setStandbyGracePeriod(60000);
+      this.repository.addHotBeanModule(new File("samples/simple/testmodule/testModule.jar"));
+      HotBeanProxyFactory hotBeanProxyFactory = this.repository.getHotBeanProxyFactory(MODULE_NAME, BEAN_NAME,
+               new Class[] { TestBeanInterface.class });
+      TestBeanInterface testInterface = (TestBeanInterface) hotBeanProxyFactory.getProxy();
+      testInterface.getTestBeanId();
+      HotBeanModule revision0 = this.repository.getHotBeanModule(MODULE_NAME);
+      Object revision0Loader = revision0.getHotBeanModuleLoader();
+      Object revision0Bean = revision0.getHotBean(BEAN_NAME);
+
+      this.repository.updateHotBeanModule(MODULE_NAME, this.createModuleFile());
+      this.repository.checkForObsoleteModules();
+      testInterface.getTestBeanId();
+      if (hotBeanProxyFactory.getCurrentModule().getRevision() != 1) super.fail("Proxy not retargeted to update!");
+      HotBeanModule revision1 = hotBeanProxyFactory.getCurrentModule();
+      if (this.repository.getStandbyModule(MODULE_NAME) != revision0) super.fail("Previous revision not standby!");
+
+      // Revert within the grace period - reuse loader and context of the standby revision
+      HotBeanModuleInfo info = this.repository.revertHotBeanModule(MODULE_NAME, 0);
+      if (info.getRevision() != 2) super.fail("Unexpected revision of reverted module - " + info.getRevision() + "!");
+      HotBeanModule revision2 = this.repository.getHotBeanModule(MODULE_NAME);
+      if ((revision2.getRevision() != 2) || !revision2.isActive()) super.fail("Reverted revision not current!");
+      if (revision2.getHotBeanModuleLoader() != revision0Loader)
+         super.fail("Reverted revision doesn't reuse the loader of the standby revision!");
+      if (revision2.getHotBean(BEAN_NAME) != revision0Bean)
+         super.fail("Reverted revision doesn't reuse the context of the standby revision!");
+      if (!revision1.isInactive()) super.fail("Previous revision not inactivated at once!");
+      testInterface.getTestBeanId();
+      if (hotBeanProxyFactory.getCurrentModule() != revision2) super.fail("Proxy not retargeted to reverted revision!");
+
+      // Revert after the grace period - full reload
+      Object revision1Loader = revision1.getHotBeanModuleLoader();
+      this.repository.setStandbyGracePeriod(1);
+      Thread.sleep(50);
+      if (this.repository.getStandbyModule(MODULE_NAME) != null) super.fail("Standby revision after grace period!");
+      info = this.repository.revertHotBeanModule(MODULE_NAME, 1);
+      if (info.getRevision() != 3) super.fail("Unexpected revision of reverted module - " + info.getRevision() + "!");
+      HotBeanModule revision3 = this.repository.getHotBeanModule(MODULE_NAME);
+      if ((revision3.getRevision() != 3) || !revision3.isActive()) super.fail("Reverted revision not loaded!");
+      if (revision3.getHotBeanModuleLoader() == revision1Loader)
+         super.fail("Loader of revision reused after grace period!");
+      revision3.getHotBeanModuleLoader().getClassLoader().loadClass(ModuleClass.class.getName());
+      this.repository.checkForObsoleteModules();
+      testInterface.getTestBeanId();
+      if (hotBeanProxyFactory.getCurrentModule() != revision3) super.fail("Proxy not retargeted to reloaded revision!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testStandbyRevert ***");
+   }
+
+   public void testStandbyRevisionWithSideBySideVersions() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testStandbyRevisionWithSideBySideVersions ***");
+
+      this.repository.setStandbyGracePeriod(60000);
+      this.repository.setSideBySideVersionsEnabled(true);
+      this.repository.setContentDeduplicationEnabled(true);
+      File version1ModuleFile = this.createVersionedModuleFile("version1.jar", "1.0");
+      this.repository.addHotBeanModule(version1ModuleFile);
+      HotBeanModule revision0 = this.repository.getHotBeanModule(MODULE_NAME);
+      this.repository.updateHotBeanModule(MODULE_NAME, this.createVersionedModuleFile("version2.jar", "2.0"));
+      this.repository.checkForObsoleteModules();
+      if (!revision0.isActive()) super.fail("Latest revision of previous version not kept active!");
+
+      // A revision kept active as the latest revision of another version isn't a standby revision...
+      if (this.repository.getStandbyModule(MODULE_NAME) != null)
+         super.fail("Revision kept active side by side used as standby revision!");
+
+      // ...and so isn't taken over by an update with identical content
+      HotBeanModuleInfo info = this.repository.updateHotBeanModule(MODULE_NAME, version1ModuleFile);
+      if (info.getRevision() != 2) super.fail("Unexpected revision of updated module - " + info.getRevision() + "!");
+      HotBeanModule revision2 = this.repository.getHotBeanModule(MODULE_NAME);
+      if (revision2.getHotBeanModuleLoader() == revision0.getHotBeanModuleLoader())
+         super.fail("Loader of revision kept active side by side reused!");
+      if (!revision2.isActive()) super.fail("Updated revision not loaded!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testStandbyRevisionWithSideBySideVersions ***");
+   }
+
+   public void testChannelUpdate() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testChannelUpdate ***");
+
+      File testModuleFile = new File("samples/simple/testmodule/testModule.jar");
+      File moduleClassModuleFile = this.createModuleFile();
+      File moduleDirectory = new File(this.repository.getModuleRepositoryDirectory(), MODULE_NAME);
+
+      // File (transferred from a file channel)
+      HotBeanModuleInfo info = this.repository.addHotBeanModule(testModuleFile);
+      if (info.getRevision() != 0) super.fail("Unexpected revision of added module - " + info.getRevision() + "!");
+      String contentHash = BeanDefinitionCache.computeContentHash(testModuleFile);
+      if (!contentHash.equals(this.repository.stagedContentHash))
+         super.fail("Content hash not computed when staging from file channel!");
+      if (!contentHash.equals(BeanDefinitionCache.computeContentHash(new File(moduleDirectory, "0.jar"))))
+         super.fail("Module file transferred from file channel differs from source file!");
+
+      // Channel delivering the module file in small chunks, with reads returning no data
+      InputStream in = new FileInputStream(moduleClassModuleFile);
+      try {
+         info = this.repository.updateHotBeanModule(MODULE_NAME, new TricklingChannel(Channels.newChannel(in)));
+      } finally {
+         in.close();
+      }
+      if (info.getRevision() != 1) super.fail("Unexpected revision of updated module - " + info.getRevision() + "!");
+      contentHash = BeanDefinitionCache.computeContentHash(moduleClassModuleFile);
+      if (!contentHash.equals(this.repository.stagedContentHash))
+         super.fail("Content hash not computed when staging from channel!");
+      if (!contentHash.equals(BeanDefinitionCache.computeContentHash(new File(moduleDirectory, "1.jar"))))
+         super.fail("Module file read from channel differs from source file!");
+      HotBeanModule module = this.repository.getHotBeanModule(MODULE_NAME);
+      if ((module.getRevision() != 1) || !module.isActive()) super.fail("Revision read from channel not loaded!");
+      module.getHotBeanModuleLoader().getClassLoader().loadClass(ModuleClass.class.getName());
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testChannelUpdate ***");
+   }
+
+   public void testBatchRollbackOfContentIndex() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testBatchRollbackOfContentIndex ***");
+
+      this.repository.setContentDeduplicationEnabled(true);
+      File brokenModuleFile = new File("samples/simple/testmodule/testModuleBroken.jar");
+      this.repository.addHotBeanModule(new File("samples/simple/testmodule/testModule.jar"));
+
+      // Deploy a revision that cannot be loaded, which is rolled back
+      try {
+         this.repository.updateHotBeanModules(new String[] { MODULE_NAME },
+                  new InputStream[] { new FileInputStream(brokenModuleFile) });
+         super.fail("Batch with broken module not rolled back!");
+      } catch (HotBeansException e) {
+         // Expected
+      }
+
+      File moduleDirectory = new File(this.repository.getModuleRepositoryDirectory(), MODULE_NAME);
+      if (new File(moduleDirectory, "1.jar").exists()) super.fail("Rolled back revision file not removed!");
+      Properties contentIndex = new Properties();
+      InputStream contentIndexStream = new FileInputStream(new File(moduleDirectory,
+               FileSystemHotBeanModuleRepository.CONTENT_INDEX_FILE_NAME));
+      contentIndex.load(contentIndexStream);
+      contentIndexStream.close();
+      if (contentIndex.containsValue("1")) super.fail("Rolled back revision not removed from content index!");
+
+      // Reuse the revision number of the rolled back revision for other content
+      HotBeanModuleInfo info = this.repository.updateHotBeanModule(MODULE_NAME, this.createModuleFile());
+      if (info.getRevision() != 1) super.fail("Unexpected revision of updated module - " + info.getRevision() + "!");
+
+      // The content of the rolled back revision must not be mistaken for the content of the new revision
+      info = this.repository.updateHotBeanModule(MODULE_NAME, brokenModuleFile);
+      if (new File(moduleDirectory, info.getRevision() + ".ref").exists())
+         super.fail("Content of rolled back revision resolved to revision with other content!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testBatchRollbackOfContentIndex ***");
+   }
+
+   public void testModuleDeltaUpdate() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testModuleDeltaUpdate ***");
+
+      File baseModuleFile = this.createModuleFile();
+      File targetModuleFile = new File("samples/simple/testmodule/testModule.jar"); // ModuleClass removed
+      this.repository.addHotBeanModule(baseModuleFile);
+      HotBeanProxyFactory hotBeanProxyFactory = this.repository.getHotBeanProxyFactory(MODULE_NAME, BEAN_NAME,
+               new Class[] { TestBeanInterface.class });
+      TestBeanInterface testInterface = (TestBeanInterface) hotBeanProxyFactory.getProxy();
+      testInterface.getTestBeanId();
+
+      // Add a file to the extracted files of the base revision, which is only present if the files are reused
+      File baseTempDir = getTempDir(hotBeanProxyFactory);
+      String moduleClassEntryName = ModuleClass.class.getName().replace('.', '/') + ".class";
+      if (!new File(baseTempDir, moduleClassEntryName).isFile()) super.fail("Module class not extracted!");
+      new File(baseTempDir, "reused.txt").createNewFile();
+
+      ByteArrayOutputStream delta = new ByteArrayOutputStream();
+      ModuleDelta.create(baseModuleFile, targetModuleFile, delta);
+      HotBeanModuleInfo info = this.repository.updateHotBeanModule(MODULE_NAME, 0, new ByteArrayInputStream(delta
+               .toByteArray()));
+      if (info.getRevision() != 1) super.fail("Unexpected revision of updated module - " + info.getRevision() + "!");
+
+      HotBeanModule module = this.repository.getHotBeanModule(MODULE_NAME);
+      if ((module.getRevision() != 1) || !module.isActive()) super.fail("Revision created from delta not loaded!");
+      File tempDir = ((JarFileHotBeanModuleLoader) module.getHotBeanModuleLoader()).getTempDir();
+      if (!new File(tempDir, "reused.txt").isFile()) super.fail("Extracted files of base revision not reused!");
+      if (new File(tempDir, moduleClassEntryName).exists()) super.fail("Removed entry reused from base revision!");
+      ClassLoader classLoader = module.getHotBeanModuleLoader().getClassLoader();
+      if (classLoader.loadClass(ModuleClass.class.getName()).getClassLoader() == classLoader)
+         super.fail("Removed class loaded from revision created from delta!"); // Should be loaded by the parent
+
+      // The module file of the new revision has the same file entries as the target module file
+      Map expectedEntries = readFileEntries(targetModuleFile);
+      Map actualEntries = readFileEntries(new File(new File(this.repository.getModuleRepositoryDirectory(),
+               MODULE_NAME), "1.jar"));
+      if (!expectedEntries.equals(actualEntries))
+         super.fail("Module file created from delta differs from target module file - expected "
+                  + expectedEntries.keySet() + " but got " + actualEntries.keySet() + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testModuleDeltaUpdate ***");
+   }
+
+   public void testClassPreloading() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testClassPreloading ***");
+
+      File moduleFile = this.createModuleFile();
+      String moduleClassName = ModuleClass.class.getName();
+      if (this.repository.isClassPreloadingEnabled()) super.fail("Class preloading enabled by default!");
+
+      this.repository.addHotBeanModule(moduleFile);
+      this.repository.getHotBeanModule(MODULE_NAME).getHotBeanModuleLoader().getClassLoader().loadClass(
+               moduleClassName);
+
+      // Preloading disabled - classes loaded by the current revision aren't loaded by the new revision
+      this.repository.updateHotBeanModule(MODULE_NAME, moduleFile);
+      JarFileHotBeanModuleLoader loader = (JarFileHotBeanModuleLoader) this.repository.getHotBeanModule(MODULE_NAME)
+               .getHotBeanModuleLoader();
+      if (Arrays.asList(loader.getLoadedClassNames()).contains(moduleClassName))
+         super.fail("Class preloaded with class preloading disabled!");
+      loader.loadClass(moduleClassName);
+
+      // Preloading enabled - classes loaded by the current revision are loaded by the new revision before it's current
+      this.repository.setClassPreloadingEnabled(true);
+      this.repository.updateHotBeanModule(MODULE_NAME, moduleFile);
+      HotBeanModule module = this.repository.getHotBeanModule(MODULE_NAME);
+      if (module.getRevision() != 2) super.fail("Unexpected revision of updated module - " + module.getRevision() + "!");
+      loader = (JarFileHotBeanModuleLoader) module.getHotBeanModuleLoader();
+      if (!Arrays.asList(loader.getLoadedClassNames()).contains(moduleClassName))
+         super.fail("Class loaded by previous revision not preloaded - " + Arrays.asList(loader.getLoadedClassNames())
+                  + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testClassPreloading ***");
+   }
+
+   public void testBeanDefinitionCacheRevert() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testBeanDefinitionCacheRevert ***");
+
+      File testModuleFile = new File("samples/simple/testmodule/testModule.jar");
+      String contentHash = BeanDefinitionCache.computeContentHash(testModuleFile);
+      BeanDefinitionCache beanDefinitionCache = this.repository.getBeanDefinitionCache();
+      File moduleDirectory = new File(this.repository.getModuleRepositoryDirectory(), MODULE_NAME);
+
+      // Disabled by default
+      if (this.repository.isBeanDefinitionCacheEnabled()) super.fail("Bean definition cache enabled by default!");
+      this.repository.addHotBeanModule(testModuleFile);
+      if (new File(moduleDirectory, contentHash + BeanDefinitionCache.METADATA_FILE_SUFFIX).exists())
+         super.fail("Metadata persisted with bean definition cache disabled!");
+      if (beanDefinitionCache.getCachedDocumentCount() != 0)
+         super.fail("Document cached with bean definition cache disabled!");
+
+      this.repository.setBeanDefinitionCacheEnabled(true);
+      this.repository.updateHotBeanModule(MODULE_NAME, testModuleFile);
+      Document document = beanDefinitionCache.getDocument(contentHash, "class path resource [hotBeanContext.xml]");
+      if (document == null) super.fail("Bean definition document not cached!");
+      if (!beanDefinitionCache.isValidated(contentHash)) super.fail("Bean definitions not marked as validated!");
+      this.assertRevisionFileExists(contentHash + BeanDefinitionCache.METADATA_FILE_SUFFIX);
+
+      // Modify the cached document, so that it's possible to tell if it's used when reverting
+      ((Element) document.getElementsByTagName("bean").item(0)).setAttribute("id", "CachedBean");
+
+      this.repository.updateHotBeanModule(MODULE_NAME, this.createModuleFile());
+      this.repository.checkForObsoleteModules();
+      HotBeanModuleInfo info = this.repository.revertHotBeanModule(MODULE_NAME, 1);
+      if (info.getRevision() != 3) super.fail("Unexpected revision of reverted module - " + info.getRevision() + "!");
+
+      HotBeanModule module = this.repository.getHotBeanModule(MODULE_NAME);
+      if ((module.getRevision() != 3) || !module.isActive()) super.fail("Reverted revision not loaded!");
+      if (module.getHotBean("CachedBean") == null)
+         super.fail("Cached bean definition document not used when reverting!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testBeanDefinitionCacheRevert ***");
+   }
+
+   public void testBeanDefinitionCacheValidatedAfterRestart() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testBeanDefinitionCacheValidatedAfterRestart ***");
+
+      // Bean definitions that are well formed, but not valid according to the DTD
+      File moduleFile = this.createModuleFile("testModuleNotValidated.jar",
+               "<?xml version=\"1.0\" encoding=\"UTF-8\"?><!DOCTYPE beans PUBLIC \"-//SPRING//DTD BEAN//EN\" "
+                        + "\"http://www.springframework.org/dtd/spring-beans.dtd\"><beans>"
+                        + "<bean id=\"MyLittleTestBean\" class=\"MyLittleTestBean\" undeclared=\"true\"/></beans>");
+      String contentHash = BeanDefinitionCache.computeContentHash(moduleFile);
+      File moduleDirectory = new File(this.repository.getModuleRepositoryDirectory(), MODULE_NAME);
+
+      this.repository.addHotBeanModule(moduleFile);
+      if (this.repository.getHotBeanModule(MODULE_NAME).isActive())
+         super.fail("Module with bean definitions that aren't valid loaded with validation!");
+
+      // Mark the content as validated, as if it had been loaded successfully before
+      JarFile jarFile = new JarFile(moduleFile);
+      try {
+         this.repository.getBeanDefinitionCache().storeValidated(moduleDirectory, contentHash, jarFile.getManifest());
+      } finally {
+         jarFile.close();
+      }
+
+      // Restart - the persisted marker makes the repository skip validation
+      this.repository.destroy();
+      this.repository = new TestRepository();
+      this.repository.setModuleRepositoryDirectory(new File(TEST_DIRECTORY, "repository"));
+      this.repository.setTemporaryDirectory(new File(TEST_DIRECTORY, "temp"));
+      this.repository.setCheckInterval(1000000);
+      this.repository.setBeanDefinitionCacheEnabled(true);
+      this.repository.init();
+      this.repository.checkForModuleUpdates();
+
+      HotBeanModule module = this.repository.getHotBeanModule(MODULE_NAME);
+      if (!this.repository.getBeanDefinitionCache().isValidated(contentHash))
+         super.fail("Persisted validated marker not loaded!");
+      if ((module == null) || !module.isActive() || (module.getHotBean(BEAN_NAME) == null))
+         super.fail("Module not loaded without validation after restart - " + module + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testBeanDefinitionCacheValidatedAfterRestart ***");
+   }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.test.junit;
+
+import hotbeans.HotBeanModule;
+import hotbeans.HotBeanModuleInfo;
+import hotbeans.support.FileSystemHotBeanModuleRepository;
+import hotbeans.support.HotBeanProxyFactory;
+import hotbeans.support.JarFileHotBeanModuleLoader;
+import hotbeans.support.SpringHotBeanContext;
+import hotbeans.test.TestBeanInterface;
+import hotbeans.util.FileDeletor;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.test.AbstractDependencyInjectionSpringContextTests;
+
+/**
+ * Test for the optional loading modes of FileSystemHotBeanModuleRepository (indexed module archives, lazy
+ * initialization and lazy activation).
+ * 
+ * @author Tobias Lfstrand
+ */
+public class HotBeanModuleRepositoryModesTest extends AbstractDependencyInjectionSpringContextTests {
+
+   private static final String MODULE_NAME = "TestModule";
+
+   private static final String BEAN_NAME = "MyLittleTestBean";
+
+   protected FileSystemHotBeanModuleRepository IndexedArchiveRepository;
+
+   protected FileSystemHotBeanModuleRepository LazyActivationRepository;
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   /**
+    */
+   public HotBeanModuleRepositoryModesTest() {
+      super.setPopulateProtectedVariables(true);
+   }
+
+   /**
+    */
+   protected String[] getConfigLocations() {
+      return new String[] { "hotbeans/test/junit/applicationContext-HotBeanModuleRepositoryModesTest.xml" };
+   }
+
+   /**
+    */
+   protected void onSetUp() throws Exception {
+      super.onSetUp();
+
+      FileDeletor.deleteTreeImpl("test/junit/hotModules");
+      new File("test/junit/hotModules").mkdirs();
+   }
+
+   /**
+    */
+   protected void onTearDown() throws Exception {
+      this.IndexedArchiveRepository.destroy();
+      this.LazyActivationRepository.destroy();
+
+      // The repositories are destroyed - make sure the next test gets new ones
+      super.setDirty();
+   }
+
+   /* ### TESTS ### */
+
+   public void testIndexedArchiveAndLazyInit() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testIndexedArchiveAndLazyInit ***");
+
+      IndexedArchiveRepository.addHotBeanModule(new FileInputStream("samples/simple/testmodule/testModule.jar"));
+
+      HotBeanProxyFactory hotBeanProxyFactory = IndexedArchiveRepository.getHotBeanProxyFactory(MODULE_NAME,
+               BEAN_NAME, new Class[] { TestBeanInterface.class });
+      TestBeanInterface testInterface = (TestBeanInterface) hotBeanProxyFactory.getProxy();
+      testInterface.getTestBeanId();
+
+      HotBeanModule module = hotBeanProxyFactory.getCurrentModule();
+      if (!(module.getHotBeanModuleLoader() instanceof JarFileHotBeanModuleLoader)
+               || (((JarFileHotBeanModuleLoader) module.getHotBeanModuleLoader()).getModuleArchive() == null))
+         super.fail("Module not loaded from indexed module archive!");
+      if (!(module.getHotBeanContext() instanceof SpringHotBeanContext)
+               || !((SpringHotBeanContext) module.getHotBeanContext()).isLazyInit())
+         super.fail("Lazy initialization not enabled for module!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testIndexedArchiveAndLazyInit ***");
+   }
+
+   public void testLazyActivation() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testLazyActivation ***");
+
+      IndexedArchiveRepository.addHotBeanModule(new FileInputStream("samples/simple/testmodule/testModule.jar"));
+
+      // Wait for the module to be registered (but not loaded) by the lazy activation repository
+      HotBeanModuleInfo info = null;
+      for (int i = 0; (i < 40) && (info == null); i++) {
+         Thread.sleep(250);
+         info = LazyActivationRepository.getCurrentHotBeanModuleInfo(MODULE_NAME);
+      }
+      if (info == null) super.fail("Module not registered by lazy activation repository!");
+      if (info.getState() != HotBeanModuleInfo.UNLOADED)
+         super.fail("Module activated before first access - " + info + "!");
+
+      TestBeanInterface testInterface = (TestBeanInterface) LazyActivationRepository.getHotBean(MODULE_NAME,
+               BEAN_NAME, TestBeanInterface.class);
+      testInterface.getTestBeanId();
+
+      info = LazyActivationRepository.getCurrentHotBeanModuleInfo(MODULE_NAME);
+      if (info.getState() != HotBeanModuleInfo.ACTIVE)
+         super.fail("Module not activated on first access - " + info + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testLazyActivation ***");
+   }
+}
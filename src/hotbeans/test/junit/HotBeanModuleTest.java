@@ -19,6 +19,7 @@ import hotbeans.HotBeanContext;
 import hotbeans.HotBeanModule;
 import hotbeans.HotBeanModuleInfo;
 import hotbeans.HotBeanModuleLoader;
+import hotbeans.ModuleUnloadExecutor;
 import junit.framework.TestCase;
 
 import org.apache.commons.logging.Log;
@@ -141,6 +142,38 @@ public class HotBeanModuleTest extends TestCase {
       if (logger.isDebugEnabled()) logger.debug("*** End testUnload ***");
    }
 
+   public void testUnloadDrain() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testUnloadDrain ***");
+
+      ModuleUnloadExecutor moduleUnloadExecutor = new ModuleUnloadExecutor();
+      moduleUnloadExecutor.setDrainTimeout(5000);
+
+      this.hotBeanModule.incrementUsageCount();
+      this.hotBeanModule.unload(moduleUnloadExecutor);
+
+      try {
+         Thread.sleep(200);
+      } catch (Exception e) {
+      }
+
+      if (this.testHotBeanContext.destroyCalled) super.fail("Context destroyed while module is in use!");
+
+      this.hotBeanModule.decrementUsageCount();
+
+      try {
+         Thread.sleep(500);
+      } catch (Exception e) {
+      }
+
+      if (!this.testHotBeanContext.destroyCalled) super.fail("Context is not destroyed!");
+      if (!this.hotBeanModule.isUnloaded()) super.fail("Module is not unloaded!");
+
+      assertEquals(1, moduleUnloadExecutor.getCompletedUnloadCount());
+      assertEquals(0, moduleUnloadExecutor.getForcedUnloadCount());
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testUnloadDrain ***");
+   }
+
    public void testGetBean() {
       if (logger.isDebugEnabled()) logger.debug("*** Begin testGetBean ***");
 
@@ -19,11 +19,20 @@ import hotbeans.HotBeanContext;
 import hotbeans.HotBeanModule;
 import hotbeans.HotBeanModuleInfo;
 import hotbeans.HotBeanModuleLoader;
+import hotbeans.ModuleNotFoundException;
 import hotbeans.support.AbstractHotBeanModuleRepository;
+import hotbeans.support.CanaryDeployment;
 import hotbeans.support.HotBeanProxyFactory;
+import hotbeans.support.InvocationRecorder;
+import hotbeans.support.InvocationStatistics;
+import hotbeans.support.ShadowDeployment;
 import hotbeans.test.TestBeanInterface;
 
 import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -89,6 +98,8 @@ public class HotBeanProxyFactoryTest extends TestCase {
 
    public static class TestHotBeanModuleRepository extends AbstractHotBeanModuleRepository {
 
+      private final List revertedRevisions = new ArrayList(); // Long
+
       public HotBeanModuleInfo addHotBeanModule(InputStream moduleFile) {
          return null;
       }
@@ -96,8 +107,44 @@ public class HotBeanProxyFactoryTest extends TestCase {
       public void removeHotBeanModule(String moduleName) {
       }
 
+      /**
+       * Reverts a module by registering a new revision that uses the context of the specified revision.
+       */
       public HotBeanModuleInfo revertHotBeanModule(String moduleName, long revision) {
-         return null;
+         this.revertedRevisions.add(new Long(revision));
+
+         HotBeanModule[] modules = super.getHotBeanModules(moduleName);
+         HotBeanModule revertedModule = null;
+         long lastRevision = -1;
+         for (int i = 0; i < modules.length; i++) {
+            if (modules[i] == null) continue;
+            if (modules[i].getRevision() == revision) revertedModule = modules[i];
+            lastRevision = Math.max(lastRevision, modules[i].getRevision());
+         }
+         if (revertedModule == null) return null;
+
+         TestHotBeanModuleLoader testHotBeanModuleLoader = new TestHotBeanModuleLoader();
+         HotBeanModule module = new HotBeanModule(new HotBeanModuleInfo(moduleName, null, lastRevision + 1,
+                  revertedModule.getVersion(), System.currentTimeMillis()), testHotBeanModuleLoader, revertedModule
+                  .getHotBeanContext());
+         testHotBeanModuleLoader.init(module);
+
+         this.registerHotBeanModule(module);
+         super.checkForObsoleteModules(moduleName);
+
+         return module.getHotBeanModuleInfo();
+      }
+
+      public List getRevertedRevisions() {
+         return revertedRevisions;
+      }
+
+      public void checkForRegressions() {
+         super.checkForRegressions();
+      }
+
+      public ShadowDeployment startShadowDeployment(HotBeanModule shadowModule) {
+         return super.startShadowDeployment(shadowModule);
       }
 
       public HotBeanModuleInfo updateHotBeanModule(String moduleName, InputStream moduleFile) {
@@ -107,6 +154,14 @@ public class HotBeanProxyFactoryTest extends TestCase {
       public void registerHotBeanModule(HotBeanModule module) {
          super.registerHotBeanModule(module);
       }
+
+      public InvocationRecorder getInvocationRecorder(String moduleName) {
+         return super.getInvocationRecorder(moduleName, false);
+      }
+
+      public Object getRepositoryLock() {
+         return super.getLock();
+      }
    }
 
    public static class TestBean implements TestBeanInterface {
@@ -122,6 +177,31 @@ public class HotBeanProxyFactoryTest extends TestCase {
       }
    }
 
+   public static interface ListBeanInterface {
+
+      public int clear(List list);
+   }
+
+   public static class ListBean implements ListBeanInterface {
+
+      private List lastList;
+
+      public int size(List list) {
+         this.lastList = list;
+         return list.size();
+      }
+
+      public int clear(List list) {
+         int size = this.size(list);
+         list.clear();
+         return size;
+      }
+
+      public List getLastList() {
+         return lastList;
+      }
+   }
+
    private TestHotBeanModuleRepository testHotBeanModuleRepository;
 
    private TestBean bean1;
@@ -171,6 +251,81 @@ public class HotBeanProxyFactoryTest extends TestCase {
    protected void tearDown() {
    }
 
+   /**
+    * Invokes the proxy a number of times, and returns the number of invocations that were routed to the specified bean.
+    */
+   private int countInvocations(final int invocations, final TestBean bean) {
+      int count = 0;
+      for (int i = 0; i < invocations; i++) {
+         if (this.proxy.getTestBeanId() == bean.getTestBeanId()) count++;
+      }
+      return count;
+   }
+
+   /**
+    * Starts a canary deployment of revision 2, with revision 1 as baseline.
+    */
+   private CanaryDeployment startCanaryDeployment(final int weight) {
+      this.testHotBeanModuleRepository.setCanaryEnabled(true);
+      this.testHotBeanModuleRepository.setDefaultCanaryWeight(weight);
+      this.testHotBeanModuleRepository.registerHotBeanModule(hotBeanModule2);
+
+      CanaryDeployment canaryDeployment = this.testHotBeanModuleRepository.getCanaryDeployment("pfTest");
+      if (canaryDeployment == null) super.fail("Canary deployment not started!");
+      if ((canaryDeployment.getBaselineModule() != hotBeanModule1)
+               || (canaryDeployment.getCanaryModule() != hotBeanModule2))
+         super.fail("Unexpected revisions of canary deployment - " + canaryDeployment + "!");
+
+      return canaryDeployment;
+   }
+
+   /**
+    * Creates a revision of the test module.
+    */
+   private static HotBeanModule createHotBeanModule(final long revision, final TestBean bean) {
+      return createHotBeanModule(revision, String.valueOf(revision), bean);
+   }
+
+   /**
+    * Creates a revision of the test module, with the specified version.
+    */
+   private static HotBeanModule createHotBeanModule(final long revision, final String version, final TestBean bean) {
+      TestHotBeanModuleLoader testHotBeanModuleLoader = new TestHotBeanModuleLoader();
+      HotBeanModule hotBeanModule = new HotBeanModule(new HotBeanModuleInfo("pfTest", null, revision, version, System
+               .currentTimeMillis()), testHotBeanModuleLoader, new TestHotBeanContext(bean));
+      testHotBeanModuleLoader.init(hotBeanModule);
+      return hotBeanModule;
+   }
+
+   /**
+    * Creates a repository with automatic rollback enabled, in which revision 2 is watched for regressions compared with
+    * revision 1.
+    */
+   private TestHotBeanModuleRepository createAutoRollbackRepository(final boolean canaryEnabled) {
+      TestHotBeanModuleRepository repository = new TestHotBeanModuleRepository();
+      repository.setAutoRollbackEnabled(true);
+      repository.setAutoRollbackMinInvocations(10);
+      repository.setCanaryEnabled(canaryEnabled);
+      repository.registerHotBeanModule(createHotBeanModule(1, this.bean1));
+      repository.registerHotBeanModule(createHotBeanModule(2, this.bean2));
+
+      if ((repository.getInvocationStatistics("pfTest", 1) == null)
+               || (repository.getInvocationStatistics("pfTest", 2) == null))
+         super.fail("Invocation statistics not collected!");
+
+      return repository;
+   }
+
+   /**
+    * Records a number of invocations in the statistics of a revision.
+    */
+   private static void record(final InvocationStatistics statistics, final int invocations,
+            final long invocationTime, final int errors) {
+      for (int i = 0; i < invocations; i++) {
+         statistics.record(invocationTime, i < errors);
+      }
+   }
+
    /* ### TESTS ### */
 
    public void testModuleUpdate() {
@@ -187,4 +342,317 @@ public class HotBeanProxyFactoryTest extends TestCase {
 
       if (logger.isDebugEnabled()) logger.debug("*** End testModuleUpdate ***");
    }
+
+   public void testWarmUpRecordAndReplay() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testWarmUpRecordAndReplay ***");
+
+      this.testHotBeanModuleRepository.setWarmUpEnabled(true);
+      this.testHotBeanModuleRepository.setWarmUpSampleInterval(1);
+      this.testHotBeanModuleRepository.setWarmUpSampleSize(5);
+
+      for (int i = 0; i < 10; i++) {
+         this.proxy.getTestBeanId();
+      }
+
+      InvocationRecorder invocationRecorder = this.testHotBeanModuleRepository.getInvocationRecorder("pfTest");
+      if ((invocationRecorder == null) || (invocationRecorder.getRecordedInvocationCount() != 5))
+         super.fail("Expected 5 recorded invocations!");
+
+      InvocationRecorder.ReplayResult replayResult = invocationRecorder.replay(new TestHotBeanContext(this.bean2),
+               this.getClass().getClassLoader(), 3, 10000);
+      if ((replayResult.getInvocationCount() != 15) || (replayResult.getErrorCount() != 0))
+         super.fail("Expected 15 successfully replayed invocations, but got " + replayResult.getInvocationCount()
+                  + " (" + replayResult.getErrorCount() + " errors)!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testWarmUpRecordAndReplay ***");
+   }
+
+   public void testWarmUpRecordingWhileRepositoryLocked() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testWarmUpRecordingWhileRepositoryLocked ***");
+
+      this.testHotBeanModuleRepository.setWarmUpEnabled(true);
+      this.testHotBeanModuleRepository.setWarmUpSampleInterval(1);
+      this.proxy.getTestBeanId(); // Resolve the current module of the proxy, which requires the lock
+
+      // The repository lock is held while a new revision is warmed up - recording must not block on it
+      Thread invoker = new Thread() {
+         public void run() {
+            for (int i = 0; i < 9; i++) {
+               proxy.getTestBeanId();
+            }
+         }
+      };
+      synchronized (this.testHotBeanModuleRepository.getRepositoryLock()) {
+         invoker.start();
+         invoker.join(5000);
+      }
+
+      if (invoker.isAlive()) super.fail("Invocations blocked while the repository lock was held!");
+      InvocationRecorder invocationRecorder = this.testHotBeanModuleRepository.getInvocationRecorder("pfTest");
+      if ((invocationRecorder == null) || (invocationRecorder.getRecordedInvocationCount() != 10))
+         super.fail("Expected 10 recorded invocations!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testWarmUpRecordingWhileRepositoryLocked ***");
+   }
+
+   public void testCanaryWeightSplit() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testCanaryWeightSplit ***");
+
+      CanaryDeployment canaryDeployment = this.startCanaryDeployment(25);
+
+      int canaryInvocations = this.countInvocations(100, this.bean2);
+      if (canaryInvocations != 25)
+         super.fail("Expected 25 invocations of canary revision, but got " + canaryInvocations + "!");
+      if ((canaryDeployment.getCanaryStatistics().getInvocationCount() != 25)
+               || (canaryDeployment.getBaselineStatistics().getInvocationCount() != 75))
+         super.fail("Unexpected invocation statistics - " + canaryDeployment + "!");
+
+      this.testHotBeanModuleRepository.setCanaryWeight("pfTest", 60);
+      canaryInvocations = this.countInvocations(100, this.bean2);
+      if (canaryInvocations != 60)
+         super.fail("Expected 60 invocations of canary revision, but got " + canaryInvocations + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testCanaryWeightSplit ***");
+   }
+
+   public void testCanaryPromote() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testCanaryPromote ***");
+
+      this.startCanaryDeployment(10);
+      this.countInvocations(100, this.bean2);
+
+      this.testHotBeanModuleRepository.promoteCanary("pfTest");
+
+      if (this.testHotBeanModuleRepository.getCanaryDeployment("pfTest") != null)
+         super.fail("Canary deployment not ended by promotion!");
+      if (!hotBeanModule1.isInactive()) super.fail("Baseline revision not inactivated by promotion!");
+      int canaryInvocations = this.countInvocations(100, this.bean2);
+      if (canaryInvocations != 100)
+         super.fail("Expected 100 invocations of promoted revision, but got " + canaryInvocations + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testCanaryPromote ***");
+   }
+
+   public void testCanaryAbort() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testCanaryAbort ***");
+
+      this.startCanaryDeployment(50);
+      this.countInvocations(100, this.bean2);
+
+      HotBeanModuleInfo hotBeanModuleInfo = this.testHotBeanModuleRepository.abortCanary("pfTest");
+
+      if (!this.testHotBeanModuleRepository.getRevertedRevisions().equals(Arrays.asList(new Long[] { new Long(1) })))
+         super.fail("Expected revert to baseline revision, but got " + this.testHotBeanModuleRepository
+                  .getRevertedRevisions() + "!");
+      if ((hotBeanModuleInfo == null) || (hotBeanModuleInfo.getRevision() != 3))
+         super.fail("Unexpected revision after abort - " + hotBeanModuleInfo + "!");
+      if (this.testHotBeanModuleRepository.getCanaryDeployment("pfTest") != null)
+         super.fail("Canary deployment not ended by abort!");
+      if (!hotBeanModule2.isInactive()) super.fail("Canary revision not inactivated by abort!");
+      int baselineInvocations = this.countInvocations(100, this.bean1);
+      if (baselineInvocations != 100)
+         super.fail("Expected 100 invocations of baseline bean, but got " + baselineInvocations + "!");
+      if (this.hotBeanProxyFactory.getCurrentModule().getRevision() != 3)
+         super.fail("Proxy not switched to reverted revision!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testCanaryAbort ***");
+   }
+
+   public void testRegressionBelowMinInvocations() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testRegressionBelowMinInvocations ***");
+
+      TestHotBeanModuleRepository repository = this.createAutoRollbackRepository(false);
+      record(repository.getInvocationStatistics("pfTest", 1), 20, 1, 0);
+      record(repository.getInvocationStatistics("pfTest", 2), 9, 100, 9);
+
+      repository.checkForRegressions();
+
+      if (!repository.getRevertedRevisions().isEmpty() || (repository.getAutoRollbackCount() != 0))
+         super.fail("Module rolled back below the minimum number of invocations!");
+      if (repository.getCurrentHotBeanModuleInfo("pfTest").getRevision() != 2)
+         super.fail("Current revision changed below the minimum number of invocations!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testRegressionBelowMinInvocations ***");
+   }
+
+   public void testRegressionErrorRate() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testRegressionErrorRate ***");
+
+      TestHotBeanModuleRepository repository = this.createAutoRollbackRepository(false);
+      record(repository.getInvocationStatistics("pfTest", 1), 20, 1, 0);
+      record(repository.getInvocationStatistics("pfTest", 2), 20, 1, 2); // Error rate 0.1
+
+      repository.checkForRegressions();
+
+      if (!repository.getRevertedRevisions().equals(Arrays.asList(new Long[] { new Long(1) })))
+         super.fail("Expected revert to previous revision, but got " + repository.getRevertedRevisions() + "!");
+      if (repository.getAutoRollbackCount() != 1) super.fail("Automatic rollback not counted!");
+      if (repository.getCurrentHotBeanModuleInfo("pfTest").getRevision() != 3)
+         super.fail("Reverted revision not made current!");
+
+      // The revision created by the rollback isn't watched
+      repository.checkForRegressions();
+      if (repository.getRevertedRevisions().size() != 1) super.fail("Rolled back more than once!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testRegressionErrorRate ***");
+   }
+
+   public void testRegressionLatency() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testRegressionLatency ***");
+
+      TestHotBeanModuleRepository repository = this.createAutoRollbackRepository(false);
+      record(repository.getInvocationStatistics("pfTest", 1), 20, 10, 0);
+      record(repository.getInvocationStatistics("pfTest", 2), 20, 15, 0); // Within latency factor
+
+      repository.checkForRegressions();
+      if (!repository.getRevertedRevisions().isEmpty()) super.fail("Module rolled back within latency factor!");
+
+      record(repository.getInvocationStatistics("pfTest", 2), 20, 100, 0);
+
+      repository.checkForRegressions();
+      if (!repository.getRevertedRevisions().equals(Arrays.asList(new Long[] { new Long(1) })))
+         super.fail("Expected revert to previous revision, but got " + repository.getRevertedRevisions() + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testRegressionLatency ***");
+   }
+
+   public void testRegressionCanaryAbort() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testRegressionCanaryAbort ***");
+
+      TestHotBeanModuleRepository repository = this.createAutoRollbackRepository(true);
+      if (repository.getCanaryDeployment("pfTest") == null) super.fail("Canary deployment not started!");
+      record(repository.getInvocationStatistics("pfTest", 1), 20, 1, 0);
+      record(repository.getInvocationStatistics("pfTest", 2), 20, 1, 10);
+
+      repository.checkForRegressions();
+
+      if (repository.getCanaryDeployment("pfTest") != null) super.fail("Canary deployment not aborted!");
+      if (!repository.getRevertedRevisions().equals(Arrays.asList(new Long[] { new Long(1) })))
+         super.fail("Expected revert to baseline revision, but got " + repository.getRevertedRevisions() + "!");
+      if (repository.getAutoRollbackCount() != 1) super.fail("Automatic rollback not counted!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testRegressionCanaryAbort ***");
+   }
+
+   public void testShadowInvocationArguments() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testShadowInvocationArguments ***");
+
+      ListBean shadowBean = new ListBean();
+      TestHotBeanModuleLoader testHotBeanModuleLoader = new TestHotBeanModuleLoader();
+      HotBeanModule shadowModule = new HotBeanModule(new HotBeanModuleInfo("pfTest", null,
+               ShadowDeployment.SHADOW_REVISION, "2", System.currentTimeMillis()), testHotBeanModuleLoader,
+               new TestHotBeanContext(shadowBean));
+      testHotBeanModuleLoader.init(shadowModule);
+      ShadowDeployment shadowDeployment = this.testHotBeanModuleRepository.startShadowDeployment(shadowModule);
+      Method method = ListBean.class.getMethod("size", new Class[] { List.class });
+
+      // The mirrored invocation gets a copy of the arguments, taken before the live invocation, which isn't affected
+      // by changes made by the live invocation
+      List list = new ArrayList(Arrays.asList(new String[] { "a", "b", "c" }));
+      Object argumentsCopy = this.testHotBeanModuleRepository.copyShadowInvocationArguments(this.hotBeanProxyFactory,
+               shadowModule, method, new Object[] { list });
+      list.clear();
+      this.testHotBeanModuleRepository.mirrorHotBeanInvocation(this.hotBeanProxyFactory, shadowModule, shadowBean,
+               method, argumentsCopy, new Integer(3), null, 1);
+
+      for (int i = 0; (i < 100) && (shadowDeployment.getMatchCount() == 0)
+               && (shadowDeployment.getDifferenceCount() == 0); i++) {
+         Thread.sleep(10);
+      }
+      if (shadowDeployment.getMatchCount() != 1)
+         super.fail("Expected a matching mirrored invocation - " + shadowDeployment + "!");
+      if ((shadowBean.getLastList() == list) || (shadowBean.getLastList().size() != 3))
+         super.fail("Mirrored invocation didn't get a copy of the arguments!");
+
+      // Invocations with arguments that aren't serializable are dropped
+      if (this.testHotBeanModuleRepository.copyShadowInvocationArguments(this.hotBeanProxyFactory, shadowModule,
+               method, new Object[] { new Object() }) != null) super.fail("Arguments that aren't serializable copied!");
+      if (shadowDeployment.getDroppedCount() != 1)
+         super.fail("Invocation with argument that isn't serializable not dropped - " + shadowDeployment + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testShadowInvocationArguments ***");
+   }
+
+   public void testShadowInvocationArgumentsModifiedByLiveInvocation() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testShadowInvocationArgumentsModifiedByLiveInvocation ***");
+
+      TestHotBeanModuleRepository repository = new TestHotBeanModuleRepository();
+      repository.setDefaultShadowSampleRate(100);
+      TestHotBeanModuleLoader testHotBeanModuleLoader = new TestHotBeanModuleLoader();
+      HotBeanModule liveModule = new HotBeanModule(new HotBeanModuleInfo("pfTest", null, 1, "1", System
+               .currentTimeMillis()), testHotBeanModuleLoader, new TestHotBeanContext(new ListBean()));
+      testHotBeanModuleLoader.init(liveModule);
+      repository.registerHotBeanModule(liveModule);
+
+      ListBean shadowBean = new ListBean();
+      testHotBeanModuleLoader = new TestHotBeanModuleLoader();
+      HotBeanModule shadowModule = new HotBeanModule(new HotBeanModuleInfo("pfTest", null,
+               ShadowDeployment.SHADOW_REVISION, "2", System.currentTimeMillis()), testHotBeanModuleLoader,
+               new TestHotBeanContext(shadowBean));
+      testHotBeanModuleLoader.init(shadowModule);
+      ShadowDeployment shadowDeployment = repository.startShadowDeployment(shadowModule);
+
+      // The live bean clears the list - the mirrored invocation must still get the list as passed by the caller
+      ListBeanInterface listBean = (ListBeanInterface) repository.getHotBeanProxyFactory("pfTest", "test",
+               new Class[] { ListBeanInterface.class }).getProxy();
+      List list = new ArrayList(Arrays.asList(new String[] { "a", "b", "c" }));
+      if (listBean.clear(list) != 3) super.fail("Wrong result of live invocation!");
+
+      for (int i = 0; (i < 100) && (shadowDeployment.getMatchCount() == 0)
+               && (shadowDeployment.getDifferenceCount() == 0); i++) {
+         Thread.sleep(10);
+      }
+      // The shadow bean returns the size of the list before clearing it, so it matches only if it got all elements
+      if ((shadowDeployment.getMatchCount() != 1) || (shadowBean.getLastList() == list))
+         super.fail("Mirrored invocation didn't get the arguments as passed by the caller - " + shadowDeployment + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testShadowInvocationArgumentsModifiedByLiveInvocation ***");
+   }
+
+   public void testVersionRangeResolution() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testVersionRangeResolution ***");
+
+      TestHotBeanModuleRepository repository = new TestHotBeanModuleRepository();
+      repository.setSideBySideVersionsEnabled(true);
+      HotBeanModule version10 = createHotBeanModule(1, "1.0 (200710101200)", new TestBean(10));
+      HotBeanModule version11 = createHotBeanModule(2, "1.1", new TestBean(11));
+      HotBeanModule version20 = createHotBeanModule(3, "2.0", new TestBean(20));
+      HotBeanModule version11Latest = createHotBeanModule(4, "1.1", new TestBean(12));
+      repository.registerHotBeanModule(version10);
+      repository.registerHotBeanModule(version11);
+      repository.registerHotBeanModule(version20);
+      repository.registerHotBeanModule(version11Latest);
+
+      Class[] interfaces = new Class[] { TestBeanInterface.class };
+      TestBeanInterface latest = (TestBeanInterface) repository.getHotBeanProxyFactory("pfTest", "1.0", "test",
+               interfaces).getProxy();
+      TestBeanInterface version1 = (TestBeanInterface) repository.getHotBeanProxyFactory("pfTest", "[1.0,2.0)", "test",
+               interfaces).getProxy();
+      TestBeanInterface version10Only = (TestBeanInterface) repository.getHotBeanProxyFactory("pfTest", "[1.0,1.1)",
+               "test", interfaces).getProxy();
+      TestBeanInterface noVersion = (TestBeanInterface) repository.getHotBeanProxyFactory("pfTest", "(1.0,1.1)",
+               "test", interfaces).getProxy();
+
+      // The latest revision of the newest version in the range is resolved
+      assertEquals(20, latest.getTestBeanId());
+      assertEquals(12, version1.getTestBeanId());
+      assertEquals(10, version10Only.getTestBeanId());
+      try {
+         noVersion.getTestBeanId();
+         super.fail("Module resolved for version range without versions!");
+      } catch (ModuleNotFoundException e) {
+         // Expected
+      }
+
+      // A newer version is resolved when registered
+      repository.registerHotBeanModule(createHotBeanModule(5, "3.0", new TestBean(30)));
+      assertEquals(30, latest.getTestBeanId());
+
+      // An older version is resolved when the newest version in the range is inactivated (revision 2 isn't the latest
+      // revision of version 1.1, and isn't resolved)
+      version11Latest.inactivate();
+      assertEquals(10, version1.getTestBeanId());
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testVersionRangeResolution ***");
+   }
 }
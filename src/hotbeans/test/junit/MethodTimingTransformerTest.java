@@ -0,0 +1,154 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.test.junit;
+
+import hotbeans.support.MethodTimingTransformer;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * Test for MethodTimingTransformer.
+ * 
+ * @author Tobias Lfstrand
+ */
+public class MethodTimingTransformerTest extends TestCase {
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   /**
+    * Class that is transformed in the test.
+    */
+   public static class TimedObject {
+
+      private int counter = 0;
+
+      public long sum(int a, long b, double c, String s, int[] array) {
+         return a + b + (long) c + s.length() + array.length;
+      }
+
+      public static String concat(String a, String b) {
+         return a + b;
+      }
+
+      public synchronized void increment() {
+         this.counter++;
+      }
+
+      public int getCounter() {
+         return this.counter;
+      }
+
+      public void fail() {
+         throw new IllegalStateException("failure");
+      }
+   }
+
+   /**
+    * Class loader that defines a transformed version of a single class.
+    */
+   private static class TransformingClassLoader extends ClassLoader {
+
+      private final String className;
+
+      public TransformingClassLoader(String className) {
+         super(MethodTimingTransformerTest.class.getClassLoader());
+         this.className = className;
+      }
+
+      protected synchronized Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
+         if (!this.className.equals(name)) return super.loadClass(name, resolve);
+
+         Class clazz = super.findLoadedClass(name);
+         if (clazz == null) {
+            try {
+               ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+               FileCopyUtils.copy(super.getResourceAsStream(name.replace('.', '/') + ".class"), bytes);
+               byte[] classBytes = new MethodTimingTransformer().transform(this, name, bytes.toByteArray());
+               if (classBytes == null) throw new ClassNotFoundException("Class " + name + " not transformed!");
+               clazz = super.defineClass(name, classBytes, 0, classBytes.length);
+            } catch (ClassNotFoundException e) {
+               throw e;
+            } catch (Exception e) {
+               throw new ClassNotFoundException(name, e);
+            }
+         }
+         if (resolve) super.resolveClass(clazz);
+
+         return clazz;
+      }
+   }
+
+   /**
+    * Gets the timing of the method with the specified name in the class TimedObject.
+    */
+   private MethodTimingTransformer.MethodTiming getMethodTiming(String methodName) {
+      MethodTimingTransformer.MethodTiming[] methodTimings = MethodTimingTransformer.getMethodTimings();
+      for (int i = 0; i < methodTimings.length; i++) {
+         if (methodTimings[i].getClassName().equals(TimedObject.class.getName())
+                  && methodTimings[i].getMethodName().equals(methodName)) return methodTimings[i];
+      }
+      super.fail("No timing found for method " + methodName + "!");
+      return null;
+   }
+
+   /* ### TESTS ### */
+
+   public void testMethodTiming() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testMethodTiming ***");
+
+      Class timedClass = new TransformingClassLoader(TimedObject.class.getName()).loadClass(TimedObject.class.getName());
+      if (timedClass == TimedObject.class) super.fail("Class not loaded by transforming class loader!");
+      Object timedObject = timedClass.newInstance();
+
+      Method sum = timedClass.getMethod("sum", new Class[] { int.class, long.class, double.class, String.class,
+               int[].class });
+      Object result = sum.invoke(timedObject, new Object[] { new Integer(1), new Long(2), new Double(3),
+               "four", new int[5] });
+      assertEquals(new Long(15), result);
+
+      Method concat = timedClass.getMethod("concat", new Class[] { String.class, String.class });
+      assertEquals("ab", concat.invoke(null, new Object[] { "a", "b" }));
+
+      Method increment = timedClass.getMethod("increment", new Class[0]);
+      increment.invoke(timedObject, new Object[0]);
+      increment.invoke(timedObject, new Object[0]);
+      assertEquals(new Integer(2), timedClass.getMethod("getCounter", new Class[0]).invoke(timedObject, new Object[0]));
+
+      try {
+         timedClass.getMethod("fail", new Class[0]).invoke(timedObject, new Object[0]);
+         super.fail("Expected exception not thrown!");
+      } catch (InvocationTargetException ite) {
+         if (!(ite.getTargetException() instanceof IllegalStateException))
+            super.fail("Unexpected exception - " + ite.getTargetException());
+      }
+
+      assertEquals(1, this.getMethodTiming("sum").getInvocationCount());
+      assertEquals(1, this.getMethodTiming("concat").getInvocationCount());
+      assertEquals(2, this.getMethodTiming("increment").getInvocationCount());
+      assertEquals(1, this.getMethodTiming("getCounter").getInvocationCount());
+      assertEquals(1, this.getMethodTiming("fail").getInvocationCount());
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testMethodTiming ***");
+   }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.test.junit;
+
+import hotbeans.support.ModuleCache;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Test for ModuleCache.
+ * 
+ * @author Tobias Lfstrand
+ */
+public class ModuleCacheTest extends TestCase {
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   /* ### TESTS ### */
+
+   public void testModuleCache() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testModuleCache ***");
+
+      ModuleCache moduleCache = new ModuleCache("test", 1024, 3);
+      ModuleCache view = moduleCache.withClassLoader(this.getClass().getClassLoader());
+
+      ArrayList value = new ArrayList();
+      value.add("value");
+      moduleCache.put("a", value);
+      moduleCache.putBytes("b", new byte[] { 1, 2, 3 });
+      moduleCache.put("c", "c");
+
+      assertEquals(value, view.get("a"));
+      assertNotSame(value, view.get("a"));
+      assertEquals(3, view.getBytes("b").length);
+      assertNull(view.get("x"));
+
+      // Least recently used entry ("c") is evicted
+      moduleCache.put("d", "d");
+      assertEquals(3, moduleCache.getEntryCount());
+      assertFalse(moduleCache.containsKey("c"));
+      assertEquals(1, moduleCache.getEvictionCount());
+
+      // Size based eviction
+      moduleCache.putBytes("e", new byte[1000]);
+      assertTrue(moduleCache.getSize() <= 1024);
+      assertTrue(moduleCache.containsKey("e"));
+
+      // Values larger than the cache aren't stored
+      moduleCache.putBytes("f", new byte[2000]);
+      assertFalse(moduleCache.containsKey("f"));
+
+      moduleCache.clear();
+      assertEquals(0, view.getEntryCount());
+      assertEquals(0, view.getSize());
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testModuleCache ***");
+   }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.test.junit;
+
+import hotbeans.support.ModuleDelta;
+import hotbeans.util.FileDeletor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Test for ModuleDelta.
+ * 
+ * @author Tobias Lfstrand
+ */
+public class ModuleDeltaTest extends TestCase {
+
+   private static final File TEST_DIRECTORY = new File("test/junit/moduleDelta");
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   /**
+    */
+   protected void setUp() throws Exception {
+      FileDeletor.deleteTreeImpl(TEST_DIRECTORY.getPath());
+      TEST_DIRECTORY.mkdirs();
+   }
+
+   /**
+    * Creates a zip file with the specified entries (entry name (String) -> content (byte[])).
+    */
+   private static byte[] createZip(final Map entries) throws IOException {
+      ByteArrayOutputStream zip = new ByteArrayOutputStream();
+      ZipOutputStream out = new ZipOutputStream(zip);
+      Map.Entry mapEntry;
+      for (Iterator it = entries.entrySet().iterator(); it.hasNext();) {
+         mapEntry = (Map.Entry) it.next();
+         out.putNextEntry(new ZipEntry((String) mapEntry.getKey()));
+         out.write((byte[]) mapEntry.getValue());
+         out.closeEntry();
+      }
+      out.close();
+      return zip.toByteArray();
+   }
+
+   /**
+    * Writes a zip file with the specified entries (entry name (String) -> content (byte[])) to the test directory.
+    */
+   private static File createZipFile(final String fileName, final Map entries) throws IOException {
+      File file = new File(TEST_DIRECTORY, fileName);
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+         out.write(createZip(entries));
+      } finally {
+         out.close();
+      }
+      return file;
+   }
+
+   /**
+    * Reads the entries of a zip file.
+    * 
+    * @return a map of entry names (String) to contents (byte[]), in the order of the zip file.
+    */
+   private static LinkedHashMap readZip(final InputStream in) throws IOException {
+      LinkedHashMap entries = new LinkedHashMap();
+      ZipInputStream zipIn = new ZipInputStream(in);
+      ZipEntry zipEntry;
+      ByteArrayOutputStream content;
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((zipEntry = zipIn.getNextEntry()) != null) {
+         content = new ByteArrayOutputStream();
+         while ((read = zipIn.read(buffer)) >= 0) {
+            content.write(buffer, 0, read);
+         }
+         entries.put(zipEntry.getName(), content.toByteArray());
+      }
+      return entries;
+   }
+
+   /**
+    * Checks that the entries of two zip files have the same names, order and contents. Nested jar files are compared
+    * by their entries, since they may not be identical byte for byte when rebuilt by a delta.
+    */
+   private void assertEntriesEqual(final String zipName, final Map expected, final Map actual) throws IOException {
+      if (!new ArrayList(expected.keySet()).equals(new ArrayList(actual.keySet())))
+         super.fail("Entries of " + zipName + " differ - expected " + expected.keySet() + " but got "
+                  + actual.keySet() + "!");
+
+      String name;
+      for (Iterator it = expected.keySet().iterator(); it.hasNext();) {
+         name = (String) it.next();
+         if (name.endsWith(".jar")) {
+            this.assertEntriesEqual(name, readZip(new ByteArrayInputStream((byte[]) expected.get(name))),
+                     readZip(new ByteArrayInputStream((byte[]) actual.get(name))));
+         } else if (!Arrays.equals((byte[]) expected.get(name), (byte[]) actual.get(name)))
+            super.fail("Content of entry " + name + " in " + zipName + " differs!");
+      }
+   }
+
+   /* ### TESTS ### */
+
+   public void testCreateAndApply() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testCreateAndApply ***");
+
+      byte[] nestedLibrary = new byte[16384]; // Random content, so that it doesn't compress
+      new Random(4711).nextBytes(nestedLibrary);
+
+      LinkedHashMap baseNestedEntries = new LinkedHashMap();
+      baseNestedEntries.put("library.bin", nestedLibrary);
+      baseNestedEntries.put("changed.properties", "value=1".getBytes());
+      baseNestedEntries.put("removed.properties", "value=1".getBytes());
+      LinkedHashMap targetNestedEntries = new LinkedHashMap();
+      targetNestedEntries.put("library.bin", nestedLibrary);
+      targetNestedEntries.put("changed.properties", "value=2".getBytes());
+      targetNestedEntries.put("added.properties", "value=3".getBytes());
+
+      LinkedHashMap baseEntries = new LinkedHashMap();
+      baseEntries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes());
+      baseEntries.put("unchanged.xml", "<unchanged/>".getBytes());
+      baseEntries.put("changed.xml", "<base/>".getBytes());
+      baseEntries.put("removed.xml", "<removed/>".getBytes());
+      baseEntries.put("lib/nested.jar", createZip(baseNestedEntries));
+      LinkedHashMap targetEntries = new LinkedHashMap();
+      targetEntries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes());
+      targetEntries.put("unchanged.xml", "<unchanged/>".getBytes());
+      targetEntries.put("changed.xml", "<target/>".getBytes());
+      targetEntries.put("lib/nested.jar", createZip(targetNestedEntries));
+      targetEntries.put("added.xml", "<added/>".getBytes());
+
+      File baseFile = createZipFile("base.jar", baseEntries);
+      File targetFile = createZipFile("target.jar", targetEntries);
+
+      // Create delta
+      ByteArrayOutputStream delta = new ByteArrayOutputStream();
+      ModuleDelta.create(baseFile, targetFile, delta);
+
+      LinkedHashMap deltaEntries = readZip(new ByteArrayInputStream(delta.toByteArray()));
+      if (deltaEntries.containsKey("unchanged.xml") || deltaEntries.containsKey("META-INF/MANIFEST.MF"))
+         super.fail("Unchanged entries included in delta - " + deltaEntries.keySet() + "!");
+      if (!deltaEntries.containsKey("changed.xml") || !deltaEntries.containsKey("added.xml"))
+         super.fail("Changed or added entries not included in delta - " + deltaEntries.keySet() + "!");
+      if (!deltaEntries.containsKey("lib/nested.jar" + ModuleDelta.NESTED_DELTA_SUFFIX)
+               || deltaEntries.containsKey("lib/nested.jar"))
+         super.fail("Changed nested jar file not included as nested delta - " + deltaEntries.keySet() + "!");
+      String removedEntryNames = new String((byte[]) deltaEntries.get(ModuleDelta.REMOVED_ENTRIES_ENTRY_NAME));
+      if (!removedEntryNames.trim().equals("removed.xml"))
+         super.fail("Unexpected removed entries - '" + removedEntryNames + "'!");
+      if (delta.size() >= targetFile.length()) super.fail("Delta not smaller than target jar file!");
+
+      // Apply delta
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      Set affectedEntryNames = ModuleDelta.apply(baseFile, new ByteArrayInputStream(delta.toByteArray()), result);
+
+      this.assertEntriesEqual("result", targetEntries, readZip(new ByteArrayInputStream(result.toByteArray())));
+      if (!affectedEntryNames.containsAll(Arrays.asList(new String[] { "changed.xml", "removed.xml", "added.xml",
+               "lib/nested.jar" })) || affectedEntryNames.contains("unchanged.xml"))
+         super.fail("Unexpected affected entries - " + affectedEntryNames + "!");
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testCreateAndApply ***");
+   }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.test.junit;
+
+import hotbeans.support.PropertiesHotBeanContext;
+import hotbeans.util.FileDeletor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Test for PropertiesHotBeanContext.
+ * 
+ * @author Tobias Lfstrand
+ */
+public class PropertiesHotBeanContextTest extends TestCase {
+
+   private static final File CONTEXT_DIR = new File("test/junit/propertiesContext");
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   /**
+    * Bean class used in the test.
+    */
+   public static class TestBean {
+
+      private String name;
+
+      private int count;
+
+      private TestBean other;
+
+      private boolean initialized = false;
+
+      private boolean destroyed = false;
+
+      public void setName(String name) {
+         this.name = name;
+      }
+
+      public void setCount(int count) {
+         this.count = count;
+      }
+
+      public void setOther(TestBean other) {
+         this.other = other;
+      }
+
+      public void start() {
+         this.initialized = true;
+      }
+
+      public void stop() {
+         this.destroyed = true;
+      }
+   }
+
+   /**
+    */
+   protected void setUp() throws Exception {
+      FileDeletor.deleteTreeImpl(CONTEXT_DIR.getPath());
+      CONTEXT_DIR.mkdirs();
+   }
+
+   /**
+    */
+   protected void tearDown() {
+      FileDeletor.deleteTreeImpl(CONTEXT_DIR.getPath());
+   }
+
+   /* ### TESTS ### */
+
+   public void testPropertiesHotBeanContext() throws Exception {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testPropertiesHotBeanContext ***");
+
+      Properties descriptor = new Properties();
+      descriptor.setProperty("first.class", TestBean.class.getName());
+      descriptor.setProperty("first.property.name", "First");
+      descriptor.setProperty("first.property.count", "42");
+      descriptor.setProperty("first.ref.other", "second");
+      descriptor.setProperty("first.initMethod", "start");
+      descriptor.setProperty("first.destroyMethod", "stop");
+      descriptor.setProperty("second.class", TestBean.class.getName());
+      descriptor.setProperty("second.property.name", "Second");
+
+      FileOutputStream out = new FileOutputStream(new File(CONTEXT_DIR, PropertiesHotBeanContext.DESCRIPTOR_FILE_NAME));
+      descriptor.store(out, null);
+      out.close();
+
+      ClassLoader classLoader = new URLClassLoader(new URL[] { CONTEXT_DIR.toURI().toURL() }, this.getClass()
+               .getClassLoader());
+      PropertiesHotBeanContext context = new PropertiesHotBeanContext(classLoader);
+      context.init();
+
+      assertTrue(context.hasHotBean("first"));
+      assertFalse(context.hasHotBean("third"));
+      assertEquals(TestBean.class.getName(), context.getHotBeanClassName("first"));
+      assertEquals(TestBean.class, context.getHotBeanClass("first"));
+
+      TestBean first = (TestBean) context.getHotBean("first");
+      TestBean second = (TestBean) context.getHotBean("second");
+      assertEquals("First", first.name);
+      assertEquals(42, first.count);
+      assertSame(second, first.other);
+      assertEquals("Second", second.name);
+      assertTrue(first.initialized);
+      assertFalse(second.initialized);
+
+      context.destroy();
+      assertTrue(first.destroyed);
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testPropertiesHotBeanContext ***");
+   }
+}
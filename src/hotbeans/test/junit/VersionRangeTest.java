@@ -0,0 +1,107 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.test.junit;
+
+import hotbeans.HotBeansException;
+import hotbeans.support.VersionRange;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Test for VersionRange.
+ * 
+ * @author Tobias Lfstrand
+ */
+public class VersionRangeTest extends TestCase {
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   /* ### TESTS ### */
+
+   public void testParse() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testParse ***");
+
+      VersionRange versionRange = VersionRange.parse(" 1.2 ");
+      assertEquals("1.2", versionRange.getMinVersion());
+      assertNull(versionRange.getMaxVersion());
+      assertEquals("[1.2,)", versionRange.toString());
+
+      versionRange = VersionRange.parse("[1.0, 2.0)");
+      assertEquals("1.0", versionRange.getMinVersion());
+      assertEquals("2.0", versionRange.getMaxVersion());
+      assertEquals("[1.0,2.0)", versionRange.toString());
+
+      versionRange = VersionRange.parse("(1.0,]");
+      assertNull(versionRange.getMaxVersion());
+      assertEquals("(1.0,]", versionRange.toString());
+
+      String[] invalidRanges = new String[] { "", " ", "[1.0", "[1.0 2.0]", "[,2.0]", "(1.0,2.0" };
+      for (int i = 0; i < invalidRanges.length; i++) {
+         try {
+            VersionRange.parse(invalidRanges[i]);
+            super.fail("Invalid version range '" + invalidRanges[i] + "' parsed!");
+         } catch (HotBeansException e) {
+            // Expected
+         }
+      }
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testParse ***");
+   }
+
+   public void testCompareVersions() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testCompareVersions ***");
+
+      assertEquals(0, VersionRange.compareVersions("1.0", "1.0"));
+      assertEquals(0, VersionRange.compareVersions("1.0", "1.0.0"));
+      assertEquals(0, VersionRange.compareVersions("1.0 (200710101200)", "1.0"));
+      assertEquals(0, VersionRange.compareVersions("1-0", "1.0"));
+      assertTrue(VersionRange.compareVersions("1.10", "1.9") > 0);
+      assertTrue(VersionRange.compareVersions("1.9", "1.10") < 0);
+      assertTrue(VersionRange.compareVersions("2", "1.9.9") > 0);
+      assertTrue(VersionRange.compareVersions("1.0.beta", "1.0.1") < 0);
+      assertTrue(VersionRange.compareVersions("1.0-beta", "1.0") < 0);
+      assertTrue(VersionRange.compareVersions("1.0.beta", "1.0.alpha") > 0);
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testCompareVersions ***");
+   }
+
+   public void testIncludes() {
+      if (logger.isDebugEnabled()) logger.debug("*** Begin testIncludes ***");
+
+      VersionRange versionRange = VersionRange.parse("1.2");
+      assertFalse(versionRange.includes("1.1.9"));
+      assertTrue(versionRange.includes("1.2"));
+      assertTrue(versionRange.includes("10.0"));
+      assertFalse(versionRange.includes(null));
+
+      versionRange = VersionRange.parse("[1.0,2.0)");
+      assertTrue(versionRange.includes("1.0.0"));
+      assertTrue(versionRange.includes("1.9.9 (200710101200)"));
+      assertFalse(versionRange.includes("2.0"));
+      assertFalse(versionRange.includes("0.9"));
+
+      versionRange = VersionRange.parse("(1.0,2.0]");
+      assertFalse(versionRange.includes("1.0"));
+      assertTrue(versionRange.includes("1.0.1"));
+      assertTrue(versionRange.includes("2.0"));
+      assertFalse(versionRange.includes("2.0.1"));
+
+      if (logger.isDebugEnabled()) logger.debug("*** End testIncludes ***");
+   }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+
+/**
+ * Utility methods for serializing objects to byte arrays, and deserializing them using a specific class loader. This
+ * makes it possible to pass objects between class loaders, such as the class loaders of different revisions of a hot
+ * bean module.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class SerializationUtils {
+
+   /**
+    * ObjectInputStream subclass that resolves classes using a specific class loader.
+    */
+   private static final class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+      private final ClassLoader classLoader;
+
+      public ClassLoaderObjectInputStream(final InputStream in, final ClassLoader classLoader) throws IOException {
+         super(in);
+         this.classLoader = classLoader;
+      }
+
+      protected Class resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+         if (this.classLoader == null) return super.resolveClass(desc);
+
+         try {
+            return Class.forName(desc.getName(), false, this.classLoader);
+         } catch (ClassNotFoundException cnfe) {
+            return super.resolveClass(desc); // Handles primitive types
+         }
+      }
+   }
+
+   /**
+    * Serializes the specified object into a byte array.
+    */
+   public static byte[] serialize(final Object object) throws IOException {
+      ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+      ObjectOutputStream objectStream = new ObjectOutputStream(byteStream);
+      objectStream.writeObject(object);
+      objectStream.close();
+
+      return byteStream.toByteArray();
+   }
+
+   /**
+    * Deserializes an object from the specified byte array, resolving classes using the specified class loader.
+    */
+   public static Object deserialize(final byte[] bytes, final ClassLoader classLoader) throws IOException,
+            ClassNotFoundException {
+      ObjectInputStream objectStream = new ClassLoaderObjectInputStream(new ByteArrayInputStream(bytes), classLoader);
+      try {
+         return objectStream.readObject();
+      } finally {
+         objectStream.close();
+      }
+   }
+
+   /**
+    * Checks if all the specified objects are serializable (or <code>null</code>).
+    */
+   public static boolean isSerializable(final Object[] objects) {
+      if (objects == null) return true;
+
+      for (int i = 0; i < objects.length; i++) {
+         if ((objects[i] != null) && !(objects[i] instanceof Serializable)) return false;
+      }
+
+      return true;
+   }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2007 the project originators.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hotbeans.util;
+
+import java.util.LinkedList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Pool of worker threads performing queued tasks. The number of worker threads is bounded, and worker threads are
+ * started on demand and stopped when they have been idle for a while. The queue may be bounded as well, in which case
+ * tasks that don't fit in the queue are rejected rather than blocking the caller.
+ * 
+ * @author Tobias Lfstrand
+ * @since 1.3
+ */
+public class WorkerPool {
+
+   private static final long WORKER_IDLE_TIMEOUT = 5000;
+
+   private final Log logger = LogFactory.getLog(this.getClass());
+
+   private final String name;
+
+   private final LinkedList queue; // Runnable
+
+   private int maxThreads;
+
+   private int maxQueueSize;
+
+   private int workerCount = 0;
+
+   private int idleWorkerCount = 0;
+
+   private int workerNumber = 0;
+
+   private long executedCount = 0;
+
+   private long rejectedCount = 0;
+
+   /**
+    * Creates a new WorkerPool with an unbounded queue.
+    * 
+    * @param name the name of the pool, used to name the worker threads.
+    */
+   public WorkerPool(final String name, final int maxThreads) {
+      this(name, maxThreads, Integer.MAX_VALUE);
+   }
+
+   /**
+    * Creates a new WorkerPool.
+    * 
+    * @param name the name of the pool, used to name the worker threads.
+    */
+   public WorkerPool(final String name, final int maxThreads, final int maxQueueSize) {
+      this.name = name;
+      this.queue = new LinkedList();
+      this.setMaxThreads(maxThreads);
+      this.setMaxQueueSize(maxQueueSize);
+   }
+
+   /**
+    * Gets the name of this pool.
+    */
+   public String getName() {
+      return name;
+   }
+
+   /**
+    * Gets the maximum number of worker threads.
+    */
+   public synchronized int getMaxThreads() {
+      return maxThreads;
+   }
+
+   /**
+    * Sets the maximum number of worker threads.
+    */
+   public synchronized void setMaxThreads(int maxThreads) {
+      this.maxThreads = Math.max(1, maxThreads);
+   }
+
+   /**
+    * Gets the maximum number of tasks waiting to be performed.
+    */
+   public synchronized int getMaxQueueSize() {
+      return maxQueueSize;
+   }
+
+   /**
+    * Sets the maximum number of tasks waiting to be performed.
+    */
+   public synchronized void setMaxQueueSize(int maxQueueSize) {
+      this.maxQueueSize = Math.max(1, maxQueueSize);
+   }
+
+   /**
+    * Queues a task.
+    * 
+    * @return <code>false</code> if the task was rejected because the queue is full.
+    */
+   public synchronized boolean execute(final Runnable task) {
+      if (this.queue.size() >= this.maxQueueSize) {
+         this.rejectedCount++;
+         return false;
+      }
+
+      this.queue.addLast(task);
+
+      if ((this.idleWorkerCount == 0) && (this.workerCount < this.maxThreads)) {
+         this.workerCount++;
+         this.workerNumber++;
+         new Worker(this.workerNumber).start();
+      } else this.notify();
+
+      return true;
+   }
+
+   /**
+    * Gets the next task from the queue, or <code>null</code> if the worker thread has been idle for too long.
+    */
+   private synchronized Runnable nextTask() {
+      long idleDeadline = System.currentTimeMillis() + WORKER_IDLE_TIMEOUT;
+
+      while (this.queue.isEmpty()) {
+         long waitTime = idleDeadline - System.currentTimeMillis();
+         if (waitTime <= 0) {
+            this.workerCount--;
+            return null;
+         }
+
+         this.idleWorkerCount++;
+         try {
+            this.wait(waitTime);
+         } catch (InterruptedException ie) {
+            this.workerCount--;
+            return null;
+         } finally {
+            this.idleWorkerCount--;
+         }
+      }
+
+      this.executedCount++;
+      return (Runnable) this.queue.removeFirst();
+   }
+
+   /**
+    * Gets the number of tasks that have been taken from the queue to be performed.
+    */
+   public synchronized long getExecutedCount() {
+      return executedCount;
+   }
+
+   /**
+    * Gets the number of tasks that were rejected because the queue was full.
+    */
+   public synchronized long getRejectedCount() {
+      return rejectedCount;
+   }
+
+   /**
+    * Gets the number of tasks that are waiting to be performed.
+    */
+   public synchronized int getPendingCount() {
+      return this.queue.size();
+   }
+
+   /**
+    * Gets the number of currently running worker threads.
+    */
+   public synchronized int getWorkerCount() {
+      return workerCount;
+   }
+
+   /* ### ### */
+
+   /**
+    * Worker thread performing queued tasks.
+    */
+   private final class Worker extends Thread {
+
+      public Worker(int workerNumber) {
+         super(name + " worker " + workerNumber);
+         this.setDaemon(true);
+      }
+
+      public void run() {
+         Runnable task;
+         while ((task = nextTask()) != null) {
+            try {
+               task.run();
+            } catch (Throwable t) {
+               logger.error("Unexpected error performing task in " + name + " - " + t + "!", t);
+            }
+         }
+      }
+   }
+}